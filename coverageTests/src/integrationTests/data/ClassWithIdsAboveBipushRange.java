@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package integrationTests.data;
+
+public final class ClassWithIdsAboveBipushRange
+{
+   private static int total;
+   private int last;
+
+   public int add(int value)
+   {
+      if (value < 0) {
+         return total;
+      }
+
+      last = value;
+      total += last;
+      return total;
+   }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package integrationTests.notLoaded;
+
+public final class ClassNotLoaded
+{
+   private static int count;
+   private String name;
+
+   public ClassNotLoaded(String name) { this.name = name; }
+
+   public String describe(boolean verbose)
+   {
+      count++;
+
+      if (verbose) {
+         return name + count;
+      }
+
+      return name;
+   }
+
+   public static final class Nested
+   {
+      private int value;
+
+      public int next() { return ++value; }
+   }
+}
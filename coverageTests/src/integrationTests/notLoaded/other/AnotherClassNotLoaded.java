@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package integrationTests.notLoaded.other;
+
+public final class AnotherClassNotLoaded
+{
+   private int total;
+
+   public int add(int value)
+   {
+      if (value > 0) {
+         total += value;
+      }
+
+      return total;
+   }
+}
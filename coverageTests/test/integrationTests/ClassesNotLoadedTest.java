@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package integrationTests;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.jar.*;
+import java.util.regex.*;
+import javax.annotation.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+import mockit.*;
+import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
+import mockit.coverage.modification.*;
+
+/**
+ * Gathers coverage data for classes which are never loaded, from copies of their classfiles placed in a new directory
+ * or jar file.
+ * The classes are in two packages, so that the analysis of one directory or jar file is done in parallel, while that
+ * of each package in isolation is done by the calling thread.
+ */
+public final class ClassesNotLoadedTest extends CoverageTest
+{
+   static
+   {
+      System.setProperty("coverage-analysisThreads", "2");
+   }
+
+   static final String PACKAGE_PATH = "integrationTests/notLoaded/";
+   static final String OTHER_PACKAGE_PATH = PACKAGE_PATH + "other/";
+   static final String[] CLASS_FILES = {
+      PACKAGE_PATH + "ClassNotLoaded.class", PACKAGE_PATH + "ClassNotLoaded$Nested.class",
+      OTHER_PACKAGE_PATH + "AnotherClassNotLoaded.class"
+   };
+   static final String SOURCE_FILE = PACKAGE_PATH + "ClassNotLoaded.java";
+   static final String OTHER_SOURCE_FILE = OTHER_PACKAGE_PATH + "AnotherClassNotLoaded.java";
+
+   Object tested;
+
+   @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+   @BeforeClass
+   public static void verifyThatTheAnalysisOfSeveralPackagesIsParallel()
+   {
+      int analysisThreads = Deencapsulation.getField(ClassesNotLoaded.class, "ANALYSIS_THREADS");
+      assertEquals(2, analysisThreads);
+   }
+
+   @After
+   public void discardCoverageDataOfClassesNotLoaded() throws ClassNotFoundException
+   {
+      Map<String, FileCoverageData> fileToFileData = CoverageData.instance().getRawFileToFileData();
+      fileToFileData.remove(SOURCE_FILE);
+      fileToFileData.remove(OTHER_SOURCE_FILE);
+      fileData = null;
+
+      // Nested classes are analyzed together with their outer classes, and then kept for when they get loaded.
+      Class<?> coverageModifierClass = Class.forName("mockit.coverage.modification.CoverageModifier");
+      Map<String, ?> innerClassModifiers = Deencapsulation.getField(coverageModifierClass, "INNER_CLASS_MODIFIERS");
+      innerClassModifiers.remove("integrationTests.notLoaded.ClassNotLoaded$Nested");
+   }
+
+   @Test
+   public void gatherCoverageDataForClassesNotLoadedFromADirectory() throws Exception
+   {
+      File classPathEntry = newDirectoryWithClassFiles(CLASS_FILES);
+
+      new ClassesNotLoaded(newClassModification(classPathEntry)).gatherCoverageData();
+
+      assertCoverageDataForClassesNotLoaded();
+   }
+
+   @Test
+   public void gatherCoverageDataForClassesNotLoadedFromAJarFile() throws Exception
+   {
+      File classPathEntry = newJarFileWithClassFiles(CLASS_FILES);
+
+      new ClassesNotLoaded(newClassModification(classPathEntry)).gatherCoverageData();
+
+      assertCoverageDataForClassesNotLoaded();
+   }
+
+   @Test
+   public void gatherSameCoverageDataWhenAnalyzingPackagesInParallelAsWhenAnalyzingEachOneAlone() throws Exception
+   {
+      File directoryWithBothPackages = newDirectoryWithClassFiles(CLASS_FILES);
+      new ClassesNotLoaded(newClassModification(directoryWithBothPackages)).gatherCoverageData();
+      byte[] digestFromParallelAnalysis = digestOfCoverageDataForClassesNotLoaded();
+      discardCoverageDataOfClassesNotLoaded();
+
+      File directoryWithFirstPackage = newDirectoryWithClassFiles(CLASS_FILES[0], CLASS_FILES[1]);
+      new ClassesNotLoaded(newClassModification(directoryWithFirstPackage)).gatherCoverageData();
+      File jarFileWithSecondPackage = newJarFileWithClassFiles(CLASS_FILES[2]);
+      new ClassesNotLoaded(newClassModification(jarFileWithSecondPackage)).gatherCoverageData();
+      byte[] digestFromSingleThreadedAnalysis = digestOfCoverageDataForClassesNotLoaded();
+
+      assertArrayEquals(digestFromSingleThreadedAnalysis, digestFromParallelAnalysis);
+      assertCoverageDataForClassesNotLoaded();
+   }
+
+   @Nonnull
+   private File newDirectoryWithClassFiles(@Nonnull String... classFiles) throws IOException
+   {
+      File directory = temporaryFolder.newFolder();
+
+      for (String classFile : classFiles) {
+         Path classFilePath = directory.toPath().resolve(classFile);
+         Files.createDirectories(classFilePath.getParent());
+         Files.write(classFilePath, readClassFile(classFile));
+      }
+
+      return directory;
+   }
+
+   @Nonnull
+   private File newJarFileWithClassFiles(@Nonnull String... classFiles) throws IOException
+   {
+      File jarFile = new File(temporaryFolder.getRoot(), "classesNotLoaded" + classFiles.length + ".jar");
+      JarOutputStream output = new JarOutputStream(new FileOutputStream(jarFile));
+
+      try {
+         for (String classFile : classFiles) {
+            output.putNextEntry(new JarEntry(classFile));
+            output.write(readClassFile(classFile));
+            output.closeEntry();
+         }
+      }
+      finally {
+         output.close();
+      }
+
+      return jarFile;
+   }
+
+   // Reads the classfile as a resource, so that the class doesn't get loaded.
+   @Nonnull
+   private static byte[] readClassFile(@Nonnull String classFile) throws IOException
+   {
+      InputStream input = ClassesNotLoadedTest.class.getClassLoader().getResourceAsStream(classFile);
+      assertNotNull("Classfile not found: " + classFile, input);
+
+      try {
+         ByteArrayOutputStream bytecode = new ByteArrayOutputStream();
+         byte[] buffer = new byte[8192];
+         int bytesRead;
+
+         while ((bytesRead = input.read(buffer)) >= 0) {
+            bytecode.write(buffer, 0, bytesRead);
+         }
+
+         return bytecode.toByteArray();
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   // Creates the class modification without going through its constructor, which would modify all classes already
+   // loaded, and with a class selection which includes the classes not loaded even when they come from a jar file.
+   @Nonnull
+   private static ClassModification newClassModification(@Nonnull File classPathEntry)
+      throws MalformedURLException, ClassNotFoundException
+   {
+      URL location = classPathEntry.toURI().toURL();
+      CodeSource codeSource = new CodeSource(location, (CodeSigner[]) null);
+      ClassLoader classLoader = ClassesNotLoadedTest.class.getClassLoader();
+      ProtectionDomain protectionDomain = new ProtectionDomain(codeSource, null, classLoader, null);
+
+      Class<?> classSelectionClass = Class.forName("mockit.coverage.modification.ClassSelection");
+      Object classSelection = Deencapsulation.newUninitializedInstance(classSelectionClass);
+      Matcher classesToInclude = Pattern.compile("integrationTests\\.notLoaded\\..+").matcher("");
+      Deencapsulation.setField(classSelection, "classesToInclude", classesToInclude);
+      Deencapsulation.setField(classSelection, "configurationRead", true);
+
+      ClassModification classModification = Deencapsulation.newUninitializedInstance(ClassModification.class);
+      Deencapsulation.setField(
+         classModification, "protectionDomainPerModifiedClass", new HashMap<String, ProtectionDomain>());
+      Deencapsulation.setField(
+         classModification, "protectionDomainsWithUniqueLocations",
+         new ArrayList<ProtectionDomain>(Collections.singletonList(protectionDomain)));
+      Deencapsulation.setField(classModification, "classSelection", classSelection);
+      return classModification;
+   }
+
+   @Nonnull
+   private static byte[] digestOfCoverageDataForClassesNotLoaded() throws NoSuchAlgorithmException
+   {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      CoverageData.instance().getFileData(SOURCE_FILE).updateDigest(digest);
+      CoverageData.instance().getFileData(OTHER_SOURCE_FILE).updateDigest(digest);
+      return digest.digest();
+   }
+
+   private void assertCoverageDataForClassesNotLoaded()
+   {
+      fileData = CoverageData.instance().getFileData(SOURCE_FILE);
+      assertNotNull(fileData);
+      assertEquals(7, fileData.lineCoverageInfo.getExecutableLineCount());
+      assertLines(12, 29, 0);
+      assertSegments(12, 1);
+      assertSegments(18, 1);
+      assertSegments(29, 1);
+
+      findMethodData(16);
+      assertPaths(2, 0, 0);
+      findMethodData(29);
+      assertPaths(1, 0, 0);
+
+      assertFalse(fileData.dataCoverageInfo.staticFieldsData.get("ClassNotLoaded.count").isCovered());
+      assertFalse(fileData.dataCoverageInfo.instanceFieldsData.get("ClassNotLoaded.name").isCovered());
+      assertFalse(fileData.dataCoverageInfo.instanceFieldsData.get("Nested.value").isCovered());
+
+      fileData = CoverageData.instance().getFileData(OTHER_SOURCE_FILE);
+      assertNotNull(fileData);
+      assertEquals(4, fileData.lineCoverageInfo.getExecutableLineCount());
+      assertLines(7, 17, 0);
+      assertSegments(13, 1);
+
+      findMethodData(13);
+      assertPaths(2, 0, 0);
+
+      assertFalse(fileData.dataCoverageInfo.instanceFieldsData.get("AnotherClassNotLoaded.total").isCovered());
+   }
+
+   // Lines of classes never executed have no execution counts, so they are not verified with "assertLine".
+   private static void assertSegments(int line, int expectedSegments)
+   {
+      PerFileLineCoverage lineCoverageInfo = fileData.lineCoverageInfo;
+      assertEquals("Segments:", expectedSegments, lineCoverageInfo.getNumberOfSegments(line));
+      assertEquals(-1, lineCoverageInfo.getExecutionCount(line));
+   }
+}
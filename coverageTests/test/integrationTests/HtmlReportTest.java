@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package integrationTests;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.annotation.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+import mockit.*;
+import mockit.coverage.data.*;
+import mockit.coverage.reporting.*;
+
+/**
+ * Generates HTML reports for source files already measured, with their pages written by several threads.
+ * A report for a single source file always has its page written by the calling thread.
+ */
+public final class HtmlReportTest
+{
+   static
+   {
+      System.setProperty("coverage-reportThreads", "4");
+   }
+
+   static final String[] SOURCE_DIRS = {"src"};
+   static final String[] SOURCE_FILES = {
+      "integrationTests/BooleanExpressions.java", "integrationTests/IfElseStatements.java"
+   };
+
+   @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+   @BeforeClass
+   public static void verifyThatPagesAreWrittenInParallel() throws ClassNotFoundException
+   {
+      Class<?> coverageReportClass = Class.forName("mockit.coverage.reporting.CoverageReport");
+      int reportThreads = Deencapsulation.getField(coverageReportClass, "REPORT_THREADS");
+      assertEquals(4, reportThreads);
+   }
+
+   @Test
+   public void generateSamePagesWhenWrittenInParallelAsWhenWrittenByTheCallingThread() throws Exception
+   {
+      new BooleanExpressions().eval1(true, false, 1);
+      new IfElseStatements().simpleIf(true);
+
+      File parallelReportDir = temporaryFolder.newFolder("parallel");
+      generateReport(parallelReportDir, SOURCE_FILES);
+
+      File sequentialReportDir = temporaryFolder.newFolder("sequential");
+
+      for (String sourceFile : SOURCE_FILES) {
+         generateReport(sequentialReportDir, sourceFile);
+      }
+
+      for (String sourceFile : SOURCE_FILES) {
+         String page = sourceFile.replace(".java", ".html");
+         byte[] pageWrittenInParallel = Files.readAllBytes(new File(parallelReportDir, page).toPath());
+         byte[] pageWrittenSequentially = Files.readAllBytes(new File(sequentialReportDir, page).toPath());
+
+         assertArrayEquals("Different page for " + sourceFile, pageWrittenSequentially, pageWrittenInParallel);
+      }
+   }
+
+   private static void generateReport(@Nonnull File outputDir, @Nonnull String... sourceFiles) throws IOException
+   {
+      CoverageData coverageData = new CoverageData();
+
+      for (String sourceFile : sourceFiles) {
+         FileCoverageData fileData = CoverageData.instance().getFileData(sourceFile);
+         assertNotNull("No coverage data for " + sourceFile, fileData);
+         coverageData.getRawFileToFileData().put(sourceFile, fileData);
+      }
+
+      new BasicCoverageReport(outputDir.getPath(), true, SOURCE_DIRS, coverageData).generate();
+   }
+
+   // The race is repeated with new, deeply nested, parent dirs, so that it's likely to occur even on a single CPU.
+   @Test
+   public void createTheSameParentDirForOutputFilesCreatedConcurrently() throws Exception
+   {
+      int threads = 8;
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+      try {
+         for (int round = 0; round < 50; round++) {
+            String outputDir = new File(temporaryFolder.getRoot(), "concurrent" + round).getPath();
+            createOutputFilesConcurrently(executor, threads, outputDir, "a/b/c/d/e/f/g/h/SourceFile");
+         }
+      }
+      finally {
+         executor.shutdownNow();
+      }
+   }
+
+   private static void createOutputFilesConcurrently(
+      @Nonnull ExecutorService executor, int threads, @Nonnull final String outputDir, @Nonnull String filePrefix)
+      throws Exception
+   {
+      final CyclicBarrier start = new CyclicBarrier(threads);
+      List<Future<?>> outputFilesCreated = new ArrayList<Future<?>>(threads);
+
+      for (int i = 0; i < threads; i++) {
+         final String sourceFile = filePrefix + i + ".java";
+
+         outputFilesCreated.add(executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception
+            {
+               start.await();
+               new OutputFile(outputDir, sourceFile).close();
+               return null;
+            }
+         }));
+      }
+
+      for (Future<?> outputFileCreated : outputFilesCreated) {
+         outputFileCreated.get();
+      }
+
+      for (int i = 0; i < threads; i++) {
+         assertTrue(new File(outputDir, filePrefix + i + ".html").isFile());
+      }
+   }
+}
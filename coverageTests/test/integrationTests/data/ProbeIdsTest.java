@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package integrationTests.data;
+
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.*;
+import mockit.coverage.data.*;
+import mockit.coverage.paths.*;
+
+/**
+ * Checks that the method and field indexes which instrumented code passes when recording path and data coverage reach
+ * the right items, once a source file has more methods or fields than fit in the operand of BIPUSH or of SIPUSH.
+ * The sample classes must not be loaded before the indexes below them are reserved.
+ */
+public final class ProbeIdsTest
+{
+   static final String FILE_WITH_IDS_ABOVE_BIPUSH_RANGE = "integrationTests/data/ClassWithIdsAboveBipushRange.java";
+   static final String FILE_WITH_IDS_ABOVE_SIPUSH_RANGE = "integrationTests/data/ClassWithIdsAboveSipushRange.java";
+
+   @BeforeClass
+   public static void reserveIndexesBelowThoseOfTheSampleClasses()
+   {
+      reserveIndexes(FILE_WITH_IDS_ABOVE_BIPUSH_RANGE, Byte.MAX_VALUE + 100);
+      reserveIndexes(FILE_WITH_IDS_ABOVE_SIPUSH_RANGE, Short.MAX_VALUE + 100);
+   }
+
+   static void reserveIndexes(String sourceFile, int count)
+   {
+      FileCoverageData fileData = CoverageData.instance().getOrAddFile(sourceFile, null);
+      Map<String, Integer> fieldIndexes = Deencapsulation.getField(fileData.dataCoverageInfo, "fieldToFieldIndex");
+
+      for (int i = 1; i <= count; i++) {
+         fileData.pathCoverageInfo.getOrAssignMethodIndex(-i);
+         fieldIndexes.put("Reserved.field" + i, fieldIndexes.size());
+      }
+   }
+
+   static void assertPathAndFieldsCovered(String sourceFile, String className)
+   {
+      FileCoverageData fileData = CoverageData.instance().getFileData(sourceFile);
+      assertNotNull(fileData);
+
+      MethodCoverageData methodData = fileData.pathCoverageInfo.firstLineToMethodData.get(14);
+      assertNotNull(methodData);
+      assertEquals(2, methodData.getTotalPaths());
+      assertEquals(2, methodData.getCoveredPaths());
+      assertEquals(3, methodData.getExecutionCount());
+
+      assertTrue(fileData.dataCoverageInfo.staticFieldsData.get(className + ".total").isCovered());
+      assertTrue(fileData.dataCoverageInfo.instanceFieldsData.get(className + ".last").isCovered());
+   }
+
+   @Test
+   public void recordPathAndFieldCoverageThroughIndexesAboveTheRangeOfBipush()
+   {
+      ClassWithIdsAboveBipushRange tested = new ClassWithIdsAboveBipushRange();
+      assertEquals(2, tested.add(2));
+      assertEquals(5, tested.add(3));
+      assertEquals(5, tested.add(-1));
+
+      assertPathAndFieldsCovered(FILE_WITH_IDS_ABOVE_BIPUSH_RANGE, "ClassWithIdsAboveBipushRange");
+   }
+
+   @Test
+   public void recordPathAndFieldCoverageThroughIndexesAboveTheRangeOfSipush()
+   {
+      ClassWithIdsAboveSipushRange tested = new ClassWithIdsAboveSipushRange();
+      assertEquals(2, tested.add(2));
+      assertEquals(5, tested.add(3));
+      assertEquals(5, tested.add(-1));
+
+      assertPathAndFieldsCovered(FILE_WITH_IDS_ABOVE_SIPUSH_RANGE, "ClassWithIdsAboveSipushRange");
+   }
+}
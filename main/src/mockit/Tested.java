@@ -148,4 +148,27 @@ public @interface Tested
     * Finally, objects made available during setup are also available during the execution of any tear-down methods.
     */
    boolean availableDuringSetup() default false;
+
+   /**
+    * Indicates that the tested object, together with any dependencies created for it, is to be created only once and
+    * then reused by all tests in the same test run (that is, in the same JVM instance) which have a tested field of the
+    * same type and name, instead of getting recreated for each test.
+    * This is meant for tested classes which are expensive to instantiate and initialize, typically when
+    * {@link #fullyInitialized} is also <tt>true</tt>; it is ignored if applied to a tested parameter.
+    * <p/>
+    * Any global tested field with the same declared type and the same name gets the same instance, whichever test class
+    * declares it, while a field of the same type but a different name gets a separate one.
+    * Creation happens at most once even when tests run concurrently, but the object itself is then used by all those
+    * tests, so it should be thread-safe in such case.
+    * <p/>
+    * Available {@linkplain Injectable injectables} are only used when the object gets created, so it should not depend
+    * on mocked values which are only valid for a single test.
+    * Initialization methods (those annotated with <tt>@PostConstruct</tt>, or the <tt>init</tt> method of a servlet) of
+    * the tested object and its dependencies are executed only once, on creation.
+    * Termination methods (those annotated with <tt>@PreDestroy</tt>, or the <tt>destroy</tt> method of a servlet) are
+    * only executed if the object gets discarded, which happens when a test method assigns <tt>null</tt> to the tested
+    * field (a new instance is then created for the next test that needs it), or when the JVM shuts down at the end of
+    * the test run.
+    */
+   boolean global() default false;
 }
@@ -11,11 +11,21 @@ import java.util.*;
 import javax.annotation.*;
 import static java.lang.reflect.Modifier.*;
 
+import mockit.coverage.data.*;
+import mockit.coverage.testRedundancy.*;
 import mockit.internal.util.*;
 
 public final class CallPoint implements Serializable
 {
    private static final long serialVersionUID = 362727169057343840L;
+
+   /**
+    * Whether call points are to be taken from the test method currently running, as informed by the test runner
+    * integration, rather than from a walk over the current stack trace.
+    * In this mode, call points identify only the test method, not the line in test code which led to the execution.
+    */
+   public static final boolean PER_TEST_METHOD = "test".equalsIgnoreCase(Configuration.getProperty("callPoints", ""));
+
    private static final Map<StackTraceElement, Boolean> steCache = new HashMap<StackTraceElement, Boolean>();
    private static final Class<? extends Annotation> testAnnotation;
    private static final boolean checkTestAnnotationOnClass;
@@ -73,6 +83,28 @@ public final class CallPoint implements Serializable
 
    private CallPoint(@Nonnull StackTraceElement ste) { this.ste = ste; }
 
+   @Nonnull
+   public static CallPoint readFrom(@Nonnull CoverageDataInput input)
+   {
+      String className = input.readNonNullString();
+      String methodName = input.readNonNullString();
+      String fileName = input.readString();
+      int lineNumber = input.readVarInt();
+
+      CallPoint callPoint = new CallPoint(new StackTraceElement(className, methodName, fileName, lineNumber));
+      callPoint.repetitionCount = input.readVarInt();
+      return callPoint;
+   }
+
+   public void writeTo(@Nonnull CoverageDataOutput output)
+   {
+      output.writeString(ste.getClassName());
+      output.writeString(ste.getMethodName());
+      output.writeString(ste.getFileName());
+      output.writeVarInt(ste.getLineNumber());
+      output.writeVarInt(repetitionCount);
+   }
+
    @Nonnull public StackTraceElement getStackTraceElement() { return ste; }
    public int getRepetitionCount() { return repetitionCount; }
 
@@ -93,6 +125,16 @@ public final class CallPoint implements Serializable
       return isSameTestMethod(other) && ste.getLineNumber() == other.ste.getLineNumber();
    }
 
+   @Nullable
+   static CallPoint forCurrentTestMethod() { return PER_TEST_METHOD ? fromTestMethodRunningInCurrentThread() : null; }
+
+   @Nullable
+   static CallPoint fromTestMethodRunningInCurrentThread()
+   {
+      StackTraceElement testMethod = TestCoverage.INSTANCE.getCurrentTestMethodElement();
+      return testMethod == null ? null : new CallPoint(testMethod);
+   }
+
    @Nullable
    static CallPoint create(@Nonnull Throwable newThrowable)
    {
@@ -52,6 +52,10 @@ public final class CodeCoverage implements ClassFileTransformer
       classModification = new ClassModification();
       outputGenerator = createOutputFileGenerator(classModification);
       outputPendingForShutdown = true;
+
+      if (outputGenerator.isWithCallPoints() && CallPoint.PER_TEST_METHOD) {
+         mockit.internal.state.TestRun.reportTestMethodsToCoverage();
+      }
       instance = this;
 
       Runtime.getRuntime().addShutdownHook(new Thread() {
@@ -109,7 +113,7 @@ public final class CodeCoverage implements ClassFileTransformer
 
       String className = internalClassName.replace('/', '.');
 
-      byte[] modifiedClassfile = classModification.modifyClass(className, protectionDomain, originalClassfile);
+      byte[] modifiedClassfile = classModification.modifyClass(loader, className, protectionDomain, originalClassfile);
       return modifiedClassfile;
    }
 
@@ -10,6 +10,7 @@ import java.util.regex.*;
 import javax.annotation.*;
 
 import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
 
 final class CoverageCheck
 {
@@ -117,6 +118,7 @@ final class CoverageCheck
    void verifyThresholds()
    {
       if (thresholds == null) return;
+      ThreadLocalExecutionCounts.mergeIntoCoverageData();
       allThresholdsSatisfied = true;
 
       for (final Threshold threshold : thresholds) {
@@ -6,10 +6,20 @@ package mockit.coverage;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import javax.annotation.*;
 
 import mockit.coverage.data.*;
 
+/**
+ * Merges the coverage data from multiple data files, such as those written by forked test JVMs.
+ * <p/>
+ * The input files are split into as many consecutive groups as there are available processors.
+ * The files in each group are merged one after the other into a single <tt>CoverageData</tt> object, and then the
+ * objects for adjacent groups are merged pairwise in a fork/join tree, so that at most one object per group is kept in
+ * memory rather than one per input file.
+ * Files earlier in the list take precedence over later ones, just like when merging sequentially.
+ */
 final class DataFileMerging
 {
    @Nonnull private final List<File> inputFiles;
@@ -32,31 +42,88 @@ final class DataFileMerging
             inputFile = new File(inputFile, "coverage.ser");
          }
 
-         inputFiles.add(inputFile);
+         if (inputFile.exists()) {
+            inputFiles.add(inputFile);
+         }
       }
    }
 
    @Nonnull CoverageData merge() throws IOException
    {
-      CoverageData mergedData = null;
+      int fileCount = inputFiles.size();
 
-      for (File inputFile : inputFiles) {
-         if (inputFile.exists()) {
-            CoverageData existingData = CoverageData.readDataFromFile(inputFile);
+      if (fileCount == 0) {
+         throw new IllegalArgumentException("No input \"coverage.ser\" files found");
+      }
 
-            if (mergedData == null) {
-               mergedData = existingData;
-            }
-            else {
-               mergedData.merge(existingData);
+      ForkJoinPool pool = new ForkJoinPool();
+
+      try {
+         int filesPerGroup = (fileCount + pool.getParallelism() - 1) / pool.getParallelism();
+         return pool.invoke(new MergeTask(0, fileCount, filesPerGroup));
+      }
+      catch (RuntimeException e) {
+         for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+               throw (IOException) cause;
             }
          }
+
+         throw e;
+      }
+      finally {
+         pool.shutdown();
       }
+   }
 
-      if (mergedData == null) {
-         throw new IllegalArgumentException("No input \"coverage.ser\" files found");
+   private final class MergeTask extends RecursiveTask<CoverageData>
+   {
+      private static final long serialVersionUID = 1L;
+      private final int firstFile;
+      private final int endFile;
+      private final int filesPerGroup;
+
+      MergeTask(int firstFile, int endFile, int filesPerGroup)
+      {
+         this.firstFile = firstFile;
+         this.endFile = endFile;
+         this.filesPerGroup = filesPerGroup;
+      }
+
+      @Override
+      protected CoverageData compute()
+      {
+         if (endFile - firstFile <= filesPerGroup) {
+            return mergeFilesInGroup();
+         }
+
+         int middleFile = (firstFile + endFile) >>> 1;
+         MergeTask firstHalf = new MergeTask(firstFile, middleFile, filesPerGroup);
+         MergeTask secondHalf = new MergeTask(middleFile, endFile, filesPerGroup);
+
+         firstHalf.fork();
+         CoverageData secondHalfData = secondHalf.compute();
+         CoverageData firstHalfData = firstHalf.join();
+
+         firstHalfData.merge(secondHalfData);
+         return firstHalfData;
       }
 
-      return mergedData;
+      @Nonnull
+      private CoverageData mergeFilesInGroup()
+      {
+         CoverageData mergedData = new CoverageData();
+
+         try {
+            for (int i = firstFile; i < endFile; i++) {
+               mergedData.mergeDataFromFile(inputFiles.get(i));
+            }
+         }
+         catch (IOException e) {
+            throw new RuntimeException(e);
+         }
+
+         return mergedData;
+      }
    }
 }
@@ -8,6 +8,7 @@ import java.io.*;
 import javax.annotation.*;
 
 import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
 import mockit.coverage.modification.*;
 import mockit.coverage.reporting.*;
 
@@ -83,6 +84,8 @@ final class OutputFileGenerator
          codeCoverage.deactivate();
       }
 
+      ThreadLocalExecutionCounts.mergeIntoCoverageData();
+
       CoverageData coverageData = CoverageData.instance();
 
       if (coverageData.isEmpty()) {
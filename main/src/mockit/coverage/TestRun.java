@@ -7,6 +7,7 @@ package mockit.coverage;
 import mockit.coverage.data.CoverageData;
 import mockit.coverage.data.FileCoverageData;
 import mockit.coverage.lines.PerFileLineCoverage;
+import mockit.coverage.lines.ThreadLocalExecutionCounts;
 import mockit.coverage.testRedundancy.TestCoverage;
 
 import javax.annotation.Nonnull;
@@ -24,13 +25,23 @@ public final class TestRun
    {
       if (terminated) return;
 
+      if (isLockFreeRecording()) {
+         int previousExecutionCount = ThreadLocalExecutionCounts.forCurrentThread().registerExecution(fileIndex, line);
+         TestCoverage.INSTANCE.recordNewItemCoveredByTestIfApplicable(previousExecutionCount);
+         return;
+      }
+
       synchronized (TestRun.class) {
          CoverageData coverageData = CoverageData.instance();
          PerFileLineCoverage fileData = coverageData.getFileData(fileIndex).lineCoverageInfo;
          CallPoint callPoint = null;
 
          if (coverageData.isWithCallPoints() && fileData.acceptsAdditionalCallPoints(line)) {
-            callPoint = CallPoint.create(new Throwable());
+            callPoint = CallPoint.forCurrentTestMethod();
+
+            if (callPoint == null) {
+               callPoint = CallPoint.create(new Throwable());
+            }
          }
 
          int previousExecutionCount = fileData.registerExecution(line, callPoint);
@@ -42,6 +53,13 @@ public final class TestRun
    {
       if (terminated) return;
 
+      if (isLockFreeRecording()) {
+         int previousExecutionCount =
+            ThreadLocalExecutionCounts.forCurrentThread().registerExecution(fileIndex, line, branchIndex);
+         TestCoverage.INSTANCE.recordNewItemCoveredByTestIfApplicable(previousExecutionCount);
+         return;
+      }
+
       synchronized (TestRun.class) {
          CoverageData coverageData = CoverageData.instance();
          PerFileLineCoverage fileData = coverageData.getFileData(fileIndex).lineCoverageInfo;
@@ -50,7 +68,11 @@ public final class TestRun
             CallPoint callPoint = null;
 
             if (coverageData.isWithCallPoints() && fileData.acceptsAdditionalCallPoints(line, branchIndex)) {
-               callPoint = CallPoint.create(new Throwable());
+               callPoint = CallPoint.forCurrentTestMethod();
+
+               if (callPoint == null) {
+                  callPoint = CallPoint.create(new Throwable());
+               }
             }
 
             int previousExecutionCount = fileData.registerExecution(line, branchIndex, callPoint);
@@ -59,63 +81,71 @@ public final class TestRun
       }
    }
 
-   public static void nodeReached(@Nonnull String file, int firstLineInMethodBody, int node)
+   public static void nodeReached(int fileIndex, int methodIndex, int node)
    {
       if (terminated) return;
 
       synchronized (TestRun.class) {
          CoverageData coverageData = CoverageData.instance();
-         FileCoverageData fileData = coverageData.getFileData(file);
+         FileCoverageData fileData = coverageData.getFileData(fileIndex);
 
-         int previousExecutionCount = PathCoverage.active ? fileData.pathCoverageInfo.registerExecution(firstLineInMethodBody, node) : fileData.ppathCoverageInfo.registerExecution(firstLineInMethodBody, node);
+         int previousExecutionCount = PathCoverage.active ?
+            fileData.pathCoverageInfo.registerExecution(methodIndex, node) :
+            fileData.ppathCoverageInfo.registerExecution(methodIndex, node);
          TestCoverage.INSTANCE.recordNewItemCoveredByTestIfApplicable(previousExecutionCount);
       }
    }
 
-   public static void fieldAssigned(@Nonnull String file, @Nonnull String classAndFieldNames)
+   public static void fieldAssigned(int fileIndex, int fieldIndex)
    {
       if (terminated) return;
 
       synchronized (TestRun.class) {
          CoverageData coverageData = CoverageData.instance();
-         FileCoverageData fileData = coverageData.getFileData(file);
-         fileData.dataCoverageInfo.registerAssignmentToStaticField(classAndFieldNames);
+         FileCoverageData fileData = coverageData.getFileData(fileIndex);
+         fileData.dataCoverageInfo.registerAssignmentToStaticField(fieldIndex);
       }
    }
 
-   public static void fieldRead(@Nonnull String file, @Nonnull String classAndFieldNames)
+   public static void fieldRead(int fileIndex, int fieldIndex)
    {
       if (terminated) return;
 
       synchronized (TestRun.class) {
          CoverageData coverageData = CoverageData.instance();
-         FileCoverageData fileData = coverageData.getFileData(file);
-         fileData.dataCoverageInfo.registerReadOfStaticField(classAndFieldNames);
+         FileCoverageData fileData = coverageData.getFileData(fileIndex);
+         fileData.dataCoverageInfo.registerReadOfStaticField(fieldIndex);
       }
    }
 
-   public static void fieldAssigned(@Nonnull Object instance, @Nonnull String file, @Nonnull String classAndFieldNames)
+   public static void fieldAssigned(@Nonnull Object instance, int fileIndex, int fieldIndex)
    {
       if (terminated) return;
 
       synchronized (TestRun.class) {
          CoverageData coverageData = CoverageData.instance();
-         FileCoverageData fileData = coverageData.getFileData(file);
-         fileData.dataCoverageInfo.registerAssignmentToInstanceField(instance, classAndFieldNames);
+         FileCoverageData fileData = coverageData.getFileData(fileIndex);
+         fileData.dataCoverageInfo.registerAssignmentToInstanceField(instance, fieldIndex);
       }
    }
 
-   public static void fieldRead(@Nonnull Object instance, @Nonnull String file, @Nonnull String classAndFieldNames)
+   public static void fieldRead(@Nonnull Object instance, int fileIndex, int fieldIndex)
    {
       if (terminated) return;
 
       synchronized (TestRun.class) {
          CoverageData coverageData = CoverageData.instance();
-         FileCoverageData fileData = coverageData.getFileData(file);
-         fileData.dataCoverageInfo.registerReadOfInstanceField(instance, classAndFieldNames);
+         FileCoverageData fileData = coverageData.getFileData(fileIndex);
+         fileData.dataCoverageInfo.registerReadOfInstanceField(instance, fieldIndex);
       }
    }
 
+   // Call points are kept in shared lists, so they can only be gathered while holding the lock.
+   private static boolean isLockFreeRecording()
+   {
+      return ThreadLocalExecutionCounts.ACTIVE && !CoverageData.instance().isWithCallPoints();
+   }
+
    static void terminate() { terminated = true; }
    public static boolean isTerminated() { return terminated; }
 }
@@ -5,6 +5,9 @@
 package mockit.coverage.data;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
 import java.util.*;
 import java.util.Map.*;
 import java.util.jar.*;
@@ -55,7 +58,7 @@ public final class CoverageData implements Serializable
    }
 
    @Nonnull
-   public FileCoverageData getOrAddFile(@Nonnull String file, @Nullable String kindOfTopLevelType)
+   public synchronized FileCoverageData getOrAddFile(@Nonnull String file, @Nullable String kindOfTopLevelType)
    {
       FileCoverageData fileData = fileToFileData.get(file);
 
@@ -73,6 +76,32 @@ public final class CoverageData implements Serializable
       return fileData;
    }
 
+   /**
+    * Returns the index which will be assigned to the next source file added by {@link #getOrAddFile}.
+    */
+   public synchronized int getNextFileIndex() { return indexedFileData.size(); }
+
+   /**
+    * Adds the data for a source file which isn't yet present, assigning it the next file index and restoring its
+    * instrumentation state as saved in a previous test run.
+    *
+    * @return the data added for the file, or <tt>null</tt> if the file was already present
+    */
+   @Nullable
+   public synchronized FileCoverageData addFileIfAbsent(
+      @Nonnull String file, @Nullable String kindOfTopLevelType, @Nonnull CoverageDataInput instrumentationState)
+   {
+      if (fileToFileData.containsKey(file)) {
+         return null;
+      }
+
+      FileCoverageData fileData = new FileCoverageData(indexedFileData.size(), kindOfTopLevelType);
+      fileData.readInstrumentationStateFrom(instrumentationState);
+      indexedFileData.add(fileData);
+      fileToFileData.put(file, fileData);
+      return fileData;
+   }
+
    @Nonnull public FileCoverageData getFileData(@Nonnull String file) { return fileToFileData.get(file); }
    @Nonnull public FileCoverageData getFileData(int fileIndex) { return indexedFileData.get(fileIndex); }
 
@@ -221,15 +250,48 @@ public final class CoverageData implements Serializable
    }
 
    /**
-    * Reads a serialized <tt>CoverageData</tt> object from the given file (normally, a "<tt>coverage.ser</tt>" file
-    * generated at the end of a previous test run).
+    * Reads a <tt>CoverageData</tt> object from the given file (normally, a "<tt>coverage.ser</tt>" file generated at the
+    * end of a previous test run).
+    * Files written in the binary format of {@link #writeDataToFile(File)} are read, as well as files containing a
+    * serialized <tt>CoverageData</tt> instance, as written by previous versions.
     *
-    * @param dataFile the ".ser" file containing a serialized <tt>CoverageData</tt> instance
+    * @param dataFile the ".ser" file containing coverage data
     *
     * @return a new object containing all coverage data resulting from a previous test run
     */
    @Nonnull
    public static CoverageData readDataFromFile(@Nonnull File dataFile) throws IOException
+   {
+      ByteBuffer buffer = readFileContents(dataFile);
+
+      if (CoverageDataInput.isInBinaryFormat(buffer)) {
+         CoverageDataInput input = new CoverageDataInput(buffer);
+         return readFrom(input);
+      }
+
+      return readSerializedData(dataFile);
+   }
+
+   @Nonnull
+   private static ByteBuffer readFileContents(@Nonnull File dataFile) throws IOException
+   {
+      FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+
+      try {
+         ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+
+         while (buffer.hasRemaining() && channel.read(buffer) >= 0) {}
+
+         buffer.flip();
+         return buffer;
+      }
+      finally {
+         channel.close();
+      }
+   }
+
+   @Nonnull
+   private static CoverageData readSerializedData(@Nonnull File dataFile) throws IOException
    {
       ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(dataFile)));
 
@@ -245,15 +307,85 @@ public final class CoverageData implements Serializable
       }
    }
 
+   @Nonnull
+   private static CoverageData readFrom(@Nonnull CoverageDataInput input)
+   {
+      CoverageData data = new CoverageData();
+      data.withCallPoints = input.readBoolean();
+
+      for (int fileCount = input.readVarInt(); fileCount > 0; fileCount--) {
+         String file = input.readNonNullString();
+         FileCoverageData fileData = FileCoverageData.readFrom(input);
+         data.fileToFileData.put(file, fileData);
+         data.indexedFileData.add(fileData);
+      }
+
+      return data;
+   }
+
+   /**
+    * Writes all coverage data to the given file, in a compact binary format where each distinct string is written only
+    * once and numbers are written with a variable-length encoding.
+    */
    public void writeDataToFile(@Nonnull File dataFile) throws IOException
    {
-      ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile)));
+      CoverageDataOutput output = new CoverageDataOutput();
+      output.writeBoolean(withCallPoints);
+      output.writeVarInt(fileToFileData.size());
+
+      for (Entry<String, FileCoverageData> fileAndFileData : fileToFileData.entrySet()) {
+         output.writeString(fileAndFileData.getKey());
+         fileAndFileData.getValue().writeTo(output);
+      }
+
+      FileChannel channel = FileChannel.open(
+         dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
 
       try {
-         output.writeObject(this);
+         output.writeTo(channel);
       }
       finally {
-         output.close();
+         channel.close();
+      }
+   }
+
+   /**
+    * Merges the coverage data in the given file into this object, as {@link #merge(CoverageData)} does for the data
+    * returned by {@link #readDataFromFile(File)}.
+    * <p/>
+    * For a file in the binary format, the file is memory-mapped and the data for each source file is merged as soon as
+    * it gets read, so that no separate object graph is built for the whole file; the file must not be modified while
+    * it's still mapped, therefore this method is meant for merging data files which are only read.
+    */
+   public void mergeDataFromFile(@Nonnull File dataFile) throws IOException
+   {
+      ByteBuffer buffer = mapFileContents(dataFile);
+
+      if (!CoverageDataInput.isInBinaryFormat(buffer)) {
+         merge(readSerializedData(dataFile));
+         return;
+      }
+
+      CoverageDataInput input = new CoverageDataInput(buffer);
+      withCallPoints |= input.readBoolean();
+
+      for (int fileCount = input.readVarInt(); fileCount > 0; fileCount--) {
+         String file = input.readNonNullString();
+         FileCoverageData fileData = FileCoverageData.readFrom(input);
+         mergeFileData(file, fileData);
+      }
+   }
+
+   @Nonnull
+   private static ByteBuffer mapFileContents(@Nonnull File dataFile) throws IOException
+   {
+      FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+
+      try {
+         return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      finally {
+         channel.close();
       }
    }
 
@@ -262,16 +394,19 @@ public final class CoverageData implements Serializable
       withCallPoints |= previousData.withCallPoints;
 
       for (Entry<String, FileCoverageData> previousFileAndFileData : previousData.fileToFileData.entrySet()) {
-         String previousFile = previousFileAndFileData.getKey();
-         FileCoverageData previousFileData = previousFileAndFileData.getValue();
-         FileCoverageData fileData = fileToFileData.get(previousFile);
+         mergeFileData(previousFileAndFileData.getKey(), previousFileAndFileData.getValue());
+      }
+   }
 
-         if (fileData == null) {
-            fileToFileData.put(previousFile, previousFileData);
-         }
-         else if (fileData.lastModified > 0 && previousFileData.lastModified == fileData.lastModified) {
-            fileData.mergeWithDataFromPreviousTestRun(previousFileData);
-         }
+   private void mergeFileData(@Nonnull String previousFile, @Nonnull FileCoverageData previousFileData)
+   {
+      FileCoverageData fileData = fileToFileData.get(previousFile);
+
+      if (fileData == null) {
+         fileToFileData.put(previousFile, previousFileData);
+      }
+      else if (fileData.lastModified > 0 && previousFileData.lastModified == fileData.lastModified) {
+         fileData.mergeWithDataFromPreviousTestRun(previousFileData);
       }
    }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.data;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import javax.annotation.*;
+
+import static mockit.coverage.data.CoverageDataOutput.*;
+
+/**
+ * Decoder for coverage data written by {@link CoverageDataOutput}.
+ */
+public final class CoverageDataInput
+{
+   @Nonnull private final ByteBuffer buffer;
+   @Nonnull private final String[] strings;
+
+   public CoverageDataInput(@Nonnull ByteBuffer buffer) throws IOException
+   {
+      this.buffer = buffer;
+      buffer.getInt();
+
+      int version = buffer.getInt();
+
+      if (version != VERSION) {
+         throw new IOException("Unsupported version " + version + " of coverage data format");
+      }
+
+      strings = readStringTable();
+   }
+
+   /**
+    * Indicates whether the given buffer, positioned at the start of a coverage data file, has data in the binary
+    * format rather than in the Java serialization format used by previous versions.
+    */
+   public static boolean isInBinaryFormat(@Nonnull ByteBuffer buffer)
+   {
+      return buffer.remaining() >= 4 && buffer.getInt(buffer.position()) == MAGIC;
+   }
+
+   @Nonnull
+   private String[] readStringTable()
+   {
+      Charset utf8 = StandardCharsets.UTF_8;
+      String[] table = new String[readVarInt()];
+
+      for (int i = 0; i < table.length; i++) {
+         byte[] bytes = new byte[readVarInt()];
+         buffer.get(bytes);
+         table[i] = new String(bytes, utf8);
+      }
+
+      return table;
+   }
+
+   public boolean readBoolean() { return buffer.get() != 0; }
+
+   public int readVarInt()
+   {
+      int value = 0;
+      int shift = 0;
+      byte b;
+
+      do {
+         b = buffer.get();
+         value |= (b & 0x7F) << shift;
+         shift += 7;
+      }
+      while (b < 0);
+
+      return value;
+   }
+
+   public long readLong() { return buffer.getLong(); }
+
+   @Nullable
+   public String readString()
+   {
+      int index = readVarInt();
+      return index == 0 ? null : strings[index - 1];
+   }
+
+   @Nonnull
+   public String readNonNullString()
+   {
+      String value = readString();
+      assert value != null;
+      return value;
+   }
+
+   @Nonnull
+   public int[] readIntArray()
+   {
+      int[] values = new int[readVarInt()];
+
+      for (int i = 0; i < values.length; i++) {
+         values[i] = readVarInt();
+      }
+
+      return values;
+   }
+
+   @Nonnull
+   public byte[] readBytes()
+   {
+      byte[] values = new byte[readVarInt()];
+      buffer.get(values);
+      return values;
+   }
+}
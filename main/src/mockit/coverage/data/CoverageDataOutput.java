@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.data;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.security.*;
+import java.util.*;
+import javax.annotation.*;
+
+/**
+ * Encoder for the binary coverage data format, read back by {@link CoverageDataInput}.
+ * <p/>
+ * The data is made of a header (a "magic" number followed by the format version), a table with all distinct strings,
+ * and a body of variable-length encoded ints where each string is represented by its index in the table.
+ * The body is accumulated in memory while the string table gets built, and then written in one go by
+ * {@link #writeTo(FileChannel)}.
+ */
+public final class CoverageDataOutput
+{
+   static final int MAGIC = 0x4A4D4344; // "JMCD"
+   static final int VERSION = 2;
+
+   @Nonnull private final Map<String, Integer> stringIndexes;
+   @Nonnull private final List<String> strings;
+   @Nonnull private ByteBuffer body;
+
+   public CoverageDataOutput()
+   {
+      stringIndexes = new HashMap<String, Integer>();
+      strings = new ArrayList<String>();
+      body = ByteBuffer.allocate(64 * 1024);
+   }
+
+   private void ensureRemaining(int bytes)
+   {
+      if (body.remaining() < bytes) {
+         ByteBuffer newBody = ByteBuffer.allocate(Math.max(2 * body.capacity(), body.position() + bytes));
+         body.flip();
+         newBody.put(body);
+         body = newBody;
+      }
+   }
+
+   public void writeBoolean(boolean value)
+   {
+      ensureRemaining(1);
+      body.put(value ? (byte) 1 : (byte) 0);
+   }
+
+   /**
+    * Writes an int in one to five bytes, using fewer bytes for smaller non-negative values.
+    */
+   public void writeVarInt(int value)
+   {
+      ensureRemaining(5);
+      putVarInt(body, value);
+   }
+
+   private static void putVarInt(@Nonnull ByteBuffer buffer, int value)
+   {
+      int remainingBits = value;
+
+      while ((remainingBits & ~0x7F) != 0) {
+         buffer.put((byte) (remainingBits & 0x7F | 0x80));
+         remainingBits >>>= 7;
+      }
+
+      buffer.put((byte) remainingBits);
+   }
+
+   public void writeLong(long value)
+   {
+      ensureRemaining(8);
+      body.putLong(value);
+   }
+
+   public void writeString(@Nullable String value)
+   {
+      if (value == null) {
+         writeVarInt(0);
+         return;
+      }
+
+      Integer index = stringIndexes.get(value);
+
+      if (index == null) {
+         index = strings.size();
+         stringIndexes.put(value, index);
+         strings.add(value);
+      }
+
+      writeVarInt(index + 1);
+   }
+
+   public void writeIntArray(@Nonnull int[] values)
+   {
+      writeVarInt(values.length);
+
+      for (int value : values) {
+         writeVarInt(value);
+      }
+   }
+
+   public void writeBytes(@Nonnull byte[] values)
+   {
+      writeVarInt(values.length);
+      ensureRemaining(values.length);
+      body.put(values);
+   }
+
+   public void writeTo(@Nonnull FileChannel channel) throws IOException
+   {
+      ByteBuffer header = encodeHeaderAndStringTable();
+      body.flip();
+
+      ByteBuffer[] buffers = {header, body};
+
+      while (header.hasRemaining() || body.hasRemaining()) {
+         channel.write(buffers);
+      }
+   }
+
+   void updateDigest(@Nonnull MessageDigest digest)
+   {
+      ByteBuffer content = body.duplicate();
+      content.flip();
+      digest.update(encodeHeaderAndStringTable());
+      digest.update(content);
+   }
+
+   @Nonnull
+   private ByteBuffer encodeHeaderAndStringTable()
+   {
+      Charset utf8 = StandardCharsets.UTF_8;
+      List<byte[]> encodedStrings = new ArrayList<byte[]>(strings.size());
+      int size = 4 + 4 + 5;
+
+      for (String value : strings) {
+         byte[] bytes = value.getBytes(utf8);
+         encodedStrings.add(bytes);
+         size += 5 + bytes.length;
+      }
+
+      ByteBuffer header = ByteBuffer.allocate(size);
+      header.putInt(MAGIC).putInt(VERSION);
+      putVarInt(header, encodedStrings.size());
+
+      for (byte[] bytes : encodedStrings) {
+         putVarInt(header, bytes.length);
+         header.put(bytes);
+      }
+
+      header.flip();
+      return header;
+   }
+}
@@ -16,6 +16,7 @@ import mockit.coverage.primepaths.PerFilePPathCoverage;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.Serializable;
+import java.security.MessageDigest;
 import java.util.*;
 
 import static mockit.coverage.Metrics.*;
@@ -59,6 +60,131 @@ public final class FileCoverageData implements Serializable
       loadedAfterTestCompletion = TestRun.isTerminated();
    }
 
+   private FileCoverageData(int index, @Nullable String kindOfTopLevelType, boolean loadedAfterTestCompletion)
+   {
+      this.index = index;
+      this.kindOfTopLevelType = kindOfTopLevelType;
+      lineCoverageInfo = NO_LINE_INFO;
+      pathCoverageInfo = NO_PATH_INFO;
+      ppathCoverageInfo = NO_PRIMEPATH_INFO;
+      dataCoverageInfo = NO_DATA_INFO;
+      this.loadedAfterTestCompletion = loadedAfterTestCompletion;
+   }
+
+   // Flags indicating which metrics have data for the file, as written to coverage data files.
+   private static final int WITH_LINE_INFO = 1;
+   private static final int WITH_PATH_INFO = 2;
+   private static final int WITH_PRIMEPATH_INFO = 4;
+   private static final int WITH_DATA_INFO = 8;
+
+   @Nonnull
+   static FileCoverageData readFrom(@Nonnull CoverageDataInput input)
+   {
+      int index = input.readVarInt();
+      String kindOfTopLevelType = input.readString();
+      boolean loadedAfterTestCompletion = input.readBoolean();
+      FileCoverageData fileData = new FileCoverageData(index, kindOfTopLevelType, loadedAfterTestCompletion);
+      fileData.lastModified = input.readLong();
+      fileData.readMetricsFrom(input);
+      return fileData;
+   }
+
+   private void readMetricsFrom(@Nonnull CoverageDataInput input)
+   {
+      int metrics = input.readVarInt();
+      lineCoverageInfo = (metrics & WITH_LINE_INFO) == 0 ? NO_LINE_INFO : PerFileLineCoverage.readFrom(input);
+      pathCoverageInfo = (metrics & WITH_PATH_INFO) == 0 ? NO_PATH_INFO : PerFilePathCoverage.readFrom(input);
+      ppathCoverageInfo =
+         (metrics & WITH_PRIMEPATH_INFO) == 0 ? NO_PRIMEPATH_INFO : PerFilePPathCoverage.readFrom(input);
+      dataCoverageInfo = (metrics & WITH_DATA_INFO) == 0 ? NO_DATA_INFO : PerFileDataCoverage.readFrom(input);
+   }
+
+   void writeTo(@Nonnull CoverageDataOutput output)
+   {
+      output.writeVarInt(index);
+      output.writeString(kindOfTopLevelType);
+      output.writeBoolean(loadedAfterTestCompletion);
+      output.writeLong(lastModified);
+      writeMetricsTo(output);
+   }
+
+   private void writeMetricsTo(@Nonnull CoverageDataOutput output)
+   {
+      int metrics =
+         (lineCoverageInfo == NO_LINE_INFO ? 0 : WITH_LINE_INFO) |
+         (pathCoverageInfo == NO_PATH_INFO ? 0 : WITH_PATH_INFO) |
+         (ppathCoverageInfo == NO_PRIMEPATH_INFO ? 0 : WITH_PRIMEPATH_INFO) |
+         (dataCoverageInfo == NO_DATA_INFO ? 0 : WITH_DATA_INFO);
+      output.writeVarInt(metrics);
+
+      if (lineCoverageInfo != NO_LINE_INFO) {
+         lineCoverageInfo.writeTo(output);
+      }
+
+      if (pathCoverageInfo != NO_PATH_INFO) {
+         pathCoverageInfo.writeTo(output);
+      }
+
+      if (ppathCoverageInfo != NO_PRIMEPATH_INFO) {
+         ppathCoverageInfo.writeTo(output);
+      }
+
+      if (dataCoverageInfo != NO_DATA_INFO) {
+         dataCoverageInfo.writeTo(output);
+      }
+   }
+
+   /**
+    * Writes the data for each metric together with the indexes assigned to methods and fields while the classes in
+    * the file were being instrumented, which are needed for the recording of executions by instrumented code.
+    * Unlike the data written to coverage data files, this allows the instrumentation of the classes to be reused in
+    * a later test run, as long as the file data is restored before any other class in the file gets instrumented.
+    */
+   public void writeInstrumentationStateTo(@Nonnull CoverageDataOutput output)
+   {
+      writeMetricsTo(output);
+
+      if (pathCoverageInfo != NO_PATH_INFO) {
+         pathCoverageInfo.writeMethodIndexesTo(output);
+      }
+
+      if (ppathCoverageInfo != NO_PRIMEPATH_INFO) {
+         ppathCoverageInfo.writeMethodIndexesTo(output);
+      }
+
+      if (dataCoverageInfo != NO_DATA_INFO) {
+         dataCoverageInfo.writeFieldIndexesTo(output);
+      }
+   }
+
+   public void readInstrumentationStateFrom(@Nonnull CoverageDataInput input)
+   {
+      readMetricsFrom(input);
+
+      if (pathCoverageInfo != NO_PATH_INFO) {
+         pathCoverageInfo.readMethodIndexesFrom(input);
+      }
+
+      if (ppathCoverageInfo != NO_PRIMEPATH_INFO) {
+         ppathCoverageInfo.readMethodIndexesFrom(input);
+      }
+
+      if (dataCoverageInfo != NO_DATA_INFO) {
+         dataCoverageInfo.readFieldIndexesFrom(input);
+      }
+   }
+
+   /**
+    * Updates the given digest with the coverage data for each metric, so that two files with the same data will have
+    * the same digest regardless of the order in which their classes were loaded.
+    */
+   public void updateDigest(@Nonnull MessageDigest digest)
+   {
+      CoverageDataOutput output = new CoverageDataOutput();
+      writeMetricsTo(output);
+      output.updateDigest(digest);
+   }
+
    public boolean wasLoadedAfterTestCompletion() { return loadedAfterTestCompletion; }
 
    @Nonnull
@@ -7,6 +7,8 @@ package mockit.coverage.dataItems;
 import java.io.*;
 import javax.annotation.*;
 
+import mockit.coverage.data.*;
+
 public abstract class FieldData implements Serializable
 {
    private static final long serialVersionUID = 8565599590976858508L;
@@ -21,6 +23,20 @@ public abstract class FieldData implements Serializable
       out.defaultWriteObject();
    }
 
+   final void writeTo(@Nonnull CoverageDataOutput output)
+   {
+      output.writeVarInt(readCount);
+      output.writeVarInt(writeCount);
+      output.writeBoolean(isCovered());
+   }
+
+   final void readFrom(@Nonnull CoverageDataInput input)
+   {
+      readCount = input.readVarInt();
+      writeCount = input.readVarInt();
+      covered = input.readBoolean();
+   }
+
    public final int getReadCount() { return readCount; }
    public final int getWriteCount() { return writeCount; }
 
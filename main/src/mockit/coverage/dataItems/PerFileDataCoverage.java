@@ -20,14 +20,118 @@ public final class PerFileDataCoverage implements PerFileCoverage
    @Nonnull public final Map<String, StaticFieldData> staticFieldsData = new LinkedHashMap<String, StaticFieldData>();
    @Nonnull public final Map<String, InstanceFieldData> instanceFieldsData = new LinkedHashMap<String, InstanceFieldData>();
 
+   // Used for fast indexed access from instrumented code, assigned while classes are being instrumented:
+   @Nonnull private transient Map<String, Integer> fieldToFieldIndex = new HashMap<String, Integer>();
+   @Nonnull private transient FieldData[] indexedFieldData = new FieldData[0];
+
    private transient int coveredDataItems = -1;
 
    private void readObject(@Nonnull ObjectInputStream in) throws IOException, ClassNotFoundException
    {
+      fieldToFieldIndex = new HashMap<String, Integer>();
+      indexedFieldData = new FieldData[0];
       coveredDataItems = -1;
       in.defaultReadObject();
    }
 
+   @Nonnull
+   public static PerFileDataCoverage readFrom(@Nonnull CoverageDataInput input)
+   {
+      PerFileDataCoverage dataCoverage = new PerFileDataCoverage();
+
+      for (int fieldCount = input.readVarInt(); fieldCount > 0; fieldCount--) {
+         dataCoverage.allFields.add(input.readNonNullString());
+      }
+
+      for (int fieldCount = input.readVarInt(); fieldCount > 0; fieldCount--) {
+         StaticFieldData staticData = new StaticFieldData();
+         String classAndField = input.readNonNullString();
+         staticData.readFrom(input);
+         dataCoverage.staticFieldsData.put(classAndField, staticData);
+      }
+
+      for (int fieldCount = input.readVarInt(); fieldCount > 0; fieldCount--) {
+         InstanceFieldData instanceData = new InstanceFieldData();
+         String classAndField = input.readNonNullString();
+         instanceData.readFrom(input);
+         dataCoverage.instanceFieldsData.put(classAndField, instanceData);
+      }
+
+      return dataCoverage;
+   }
+
+   public void writeTo(@Nonnull CoverageDataOutput output)
+   {
+      output.writeVarInt(allFields.size());
+
+      for (String classAndField : allFields) {
+         output.writeString(classAndField);
+      }
+
+      writeFieldsData(output, staticFieldsData);
+      writeFieldsData(output, instanceFieldsData);
+   }
+
+   private static void writeFieldsData(
+      @Nonnull CoverageDataOutput output, @Nonnull Map<String, ? extends FieldData> fieldsData)
+   {
+      output.writeVarInt(fieldsData.size());
+
+      for (Entry<String, ? extends FieldData> nameAndData : fieldsData.entrySet()) {
+         output.writeString(nameAndData.getKey());
+         nameAndData.getValue().writeTo(output);
+      }
+   }
+
+   /**
+    * Writes the names of the fields to which indexes were assigned so far, in the same order as the indexes.
+    */
+   public void writeFieldIndexesTo(@Nonnull CoverageDataOutput output)
+   {
+      String[] fieldsByIndex = new String[fieldToFieldIndex.size()];
+
+      for (Entry<String, Integer> fieldAndIndex : fieldToFieldIndex.entrySet()) {
+         fieldsByIndex[fieldAndIndex.getValue()] = fieldAndIndex.getKey();
+      }
+
+      output.writeVarInt(fieldsByIndex.length);
+
+      for (String classAndFieldNames : fieldsByIndex) {
+         output.writeString(classAndFieldNames);
+      }
+
+      clearCoveredFlags();
+   }
+
+   // Writing the data for a field determines whether it's covered, which is then remembered; since the indexes are
+   // written and read back before any field gets accessed, the flags are cleared so they get determined again later.
+   private void clearCoveredFlags()
+   {
+      for (FieldData fieldData : staticFieldsData.values()) {
+         fieldData.covered = null;
+      }
+
+      for (FieldData fieldData : instanceFieldsData.values()) {
+         fieldData.covered = null;
+      }
+   }
+
+   public void readFieldIndexesFrom(@Nonnull CoverageDataInput input)
+   {
+      for (int fieldCount = input.readVarInt(); fieldCount > 0; fieldCount--) {
+         String classAndFieldNames = input.readNonNullString();
+         FieldData fieldData = staticFieldsData.get(classAndFieldNames);
+
+         if (fieldData == null) {
+            fieldData = instanceFieldsData.get(classAndFieldNames);
+         }
+
+         updateIndexedFieldData(classAndFieldNames, fieldData);
+      }
+
+      clearCoveredFlags();
+   }
+
    public void addField(@Nonnull String className, @Nonnull String fieldName, boolean isStatic)
    {
       String classAndField = className + '.' + fieldName;
@@ -36,12 +140,41 @@ public final class PerFileDataCoverage implements PerFileCoverage
          allFields.add(classAndField);
       }
 
+      FieldData fieldData;
+
       if (isStatic) {
-         staticFieldsData.put(classAndField, new StaticFieldData());
+         StaticFieldData staticData = new StaticFieldData();
+         staticFieldsData.put(classAndField, staticData);
+         fieldData = staticData;
       }
       else {
-         instanceFieldsData.put(classAndField, new InstanceFieldData());
+         InstanceFieldData instanceData = new InstanceFieldData();
+         instanceFieldsData.put(classAndField, instanceData);
+         fieldData = instanceData;
+      }
+
+      updateIndexedFieldData(classAndField, fieldData);
+   }
+
+   private void updateIndexedFieldData(@Nonnull String classAndFieldNames, @Nonnull FieldData fieldData)
+   {
+      Integer fieldIndex = fieldToFieldIndex.get(classAndFieldNames);
+
+      if (fieldIndex == null) {
+         fieldIndex = fieldToFieldIndex.size();
+         fieldToFieldIndex.put(classAndFieldNames, fieldIndex);
+      }
+
+      FieldData[] fields = indexedFieldData;
+
+      if (fieldIndex >= fields.length) {
+         FieldData[] newFields = new FieldData[fieldIndex + 8];
+         System.arraycopy(fields, 0, newFields, 0, fields.length);
+         fields = newFields;
       }
+
+      fields[fieldIndex] = fieldData;
+      indexedFieldData = fields;
    }
 
    public boolean isFieldWithCoverageData(@Nonnull String classAndFieldNames)
@@ -51,52 +184,69 @@ public final class PerFileDataCoverage implements PerFileCoverage
          staticFieldsData.containsKey(classAndFieldNames);
    }
 
-   public void registerAssignmentToStaticField(@Nonnull String classAndFieldNames)
+   /**
+    * Returns the index to be used by instrumented code when registering reads and assignments of the given field, or
+    * <tt>-1</tt> if the field has no coverage data.
+    */
+   public int getFieldIndex(@Nonnull String classAndFieldNames)
    {
-      StaticFieldData staticData = getStaticFieldData(classAndFieldNames);
-
-      if (staticData != null) {
-         staticData.registerAssignment();
-      }
+      Integer fieldIndex = fieldToFieldIndex.get(classAndFieldNames);
+      return fieldIndex == null ? -1 : fieldIndex;
    }
 
-   @Nullable public StaticFieldData getStaticFieldData(@Nonnull String classAndFieldNames)
+   @Nullable
+   private FieldData getFieldData(int fieldIndex)
    {
-      return staticFieldsData.get(classAndFieldNames);
+      FieldData[] fields = indexedFieldData;
+      return fieldIndex < fields.length ? fields[fieldIndex] : null;
    }
 
-   public void registerReadOfStaticField(@Nonnull String classAndFieldNames)
+   public void registerAssignmentToStaticField(int fieldIndex)
    {
-      StaticFieldData staticData = getStaticFieldData(classAndFieldNames);
+      FieldData fieldData = getFieldData(fieldIndex);
 
-      if (staticData != null) {
-         staticData.registerRead();
+      if (fieldData instanceof StaticFieldData) {
+         ((StaticFieldData) fieldData).registerAssignment();
       }
    }
 
-   public void registerAssignmentToInstanceField(@Nonnull Object instance, @Nonnull String classAndFieldNames)
+   public void registerReadOfStaticField(int fieldIndex)
    {
-      InstanceFieldData instanceData = getInstanceFieldData(classAndFieldNames);
+      FieldData fieldData = getFieldData(fieldIndex);
 
-      if (instanceData != null) {
-         instanceData.registerAssignment(instance);
+      if (fieldData instanceof StaticFieldData) {
+         ((StaticFieldData) fieldData).registerRead();
       }
    }
 
-   @Nullable public InstanceFieldData getInstanceFieldData(@Nonnull String classAndFieldNames)
+   public void registerAssignmentToInstanceField(@Nonnull Object instance, int fieldIndex)
    {
-      return instanceFieldsData.get(classAndFieldNames);
+      FieldData fieldData = getFieldData(fieldIndex);
+
+      if (fieldData instanceof InstanceFieldData) {
+         ((InstanceFieldData) fieldData).registerAssignment(instance);
+      }
    }
 
-   public void registerReadOfInstanceField(@Nonnull Object instance, @Nonnull String classAndFieldNames)
+   public void registerReadOfInstanceField(@Nonnull Object instance, int fieldIndex)
    {
-      InstanceFieldData instanceData = getInstanceFieldData(classAndFieldNames);
+      FieldData fieldData = getFieldData(fieldIndex);
 
-      if (instanceData != null) {
-         instanceData.registerRead(instance);
+      if (fieldData instanceof InstanceFieldData) {
+         ((InstanceFieldData) fieldData).registerRead(instance);
       }
    }
 
+   @Nullable public StaticFieldData getStaticFieldData(@Nonnull String classAndFieldNames)
+   {
+      return staticFieldsData.get(classAndFieldNames);
+   }
+
+   @Nullable public InstanceFieldData getInstanceFieldData(@Nonnull String classAndFieldNames)
+   {
+      return instanceFieldsData.get(classAndFieldNames);
+   }
+
    public boolean hasFields() { return !allFields.isEmpty(); }
 
    public boolean isCovered(@Nonnull String classAndFieldNames)
@@ -7,6 +7,7 @@ package mockit.coverage.lines;
 import java.io.*;
 import javax.annotation.*;
 
+import mockit.coverage.data.*;
 import mockit.external.asm.*;
 
 /**
@@ -23,6 +24,23 @@ public final class BranchCoverageData extends LineSegmentData
 
    int getLine() { return label.info == null ? label.line : (Integer) label.info; }
 
+   @Nonnull
+   static BranchCoverageData readFrom(@Nonnull CoverageDataInput input)
+   {
+      Label label = new Label();
+      label.line = input.readVarInt();
+
+      BranchCoverageData branchData = new BranchCoverageData(label);
+      branchData.readSegmentData(input);
+      return branchData;
+   }
+
+   void writeTo(@Nonnull CoverageDataOutput output)
+   {
+      output.writeVarInt(getLine());
+      writeSegmentData(output);
+   }
+
    private void readObject(@Nonnull ObjectInputStream in) throws IOException, ClassNotFoundException
    {
       label = new Label();
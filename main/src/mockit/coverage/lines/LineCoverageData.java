@@ -8,6 +8,7 @@ import java.util.*;
 import javax.annotation.*;
 
 import mockit.coverage.*;
+import mockit.coverage.data.*;
 import mockit.external.asm.*;
 
 /**
@@ -63,6 +64,17 @@ public final class LineCoverageData extends LineSegmentData
       return data.registerExecution(callPoint);
    }
 
+   void addBranchExecutionCounts(@Nonnull int[] branchCounts)
+   {
+      for (int i = 0, n = Math.min(branchCounts.length, branches.size()); i < n; i++) {
+         BranchCoverageData data = branches.get(i);
+
+         if (data != BranchCoverageData.INVALID) {
+            data.executionCount += branchCounts[i];
+         }
+      }
+   }
+
    public boolean containsBranches() { return !noBranchesYet(); }
 
    @Nonnull public List<BranchCoverageData> getBranches() { return branches; }
@@ -189,6 +201,37 @@ public final class LineCoverageData extends LineSegmentData
       return sourcesAndTargetsCovered;
    }
 
+   @Nonnull
+   static LineCoverageData readFrom(@Nonnull CoverageDataInput input)
+   {
+      LineCoverageData lineData = new LineCoverageData();
+      lineData.readSegmentData(input);
+
+      int branchCount = input.readVarInt();
+
+      if (branchCount > 0) {
+         List<BranchCoverageData> readBranches = new ArrayList<BranchCoverageData>(branchCount);
+
+         for (int i = 0; i < branchCount; i++) {
+            readBranches.add(BranchCoverageData.readFrom(input));
+         }
+
+         lineData.branches = readBranches;
+      }
+
+      return lineData;
+   }
+
+   void writeTo(@Nonnull CoverageDataOutput output)
+   {
+      writeSegmentData(output);
+      output.writeVarInt(branches.size());
+
+      for (BranchCoverageData branch : branches) {
+         branch.writeTo(output);
+      }
+   }
+
    void addCountsFromPreviousTestRun(@Nonnull LineCoverageData previousData)
    {
       addExecutionCountAndCallPointsFromPreviousTestRun(previousData);
@@ -9,6 +9,7 @@ import java.util.*;
 import javax.annotation.*;
 
 import mockit.coverage.*;
+import mockit.coverage.data.*;
 
 public class LineSegmentData implements Serializable
 {
@@ -70,6 +71,45 @@ public class LineSegmentData implements Serializable
 
    public final boolean isCovered() { return unreachable || !empty && executionCount > 0; }
 
+   final void writeSegmentData(@Nonnull CoverageDataOutput output)
+   {
+      output.writeVarInt((unreachable ? 1 : 0) | (empty ? 2 : 0));
+      output.writeVarInt(executionCount);
+
+      List<CallPoint> currentCallPoints = callPoints;
+
+      if (currentCallPoints == null) {
+         output.writeVarInt(0);
+      }
+      else {
+         output.writeVarInt(currentCallPoints.size() + 1);
+
+         for (CallPoint callPoint : currentCallPoints) {
+            callPoint.writeTo(output);
+         }
+      }
+   }
+
+   final void readSegmentData(@Nonnull CoverageDataInput input)
+   {
+      int flags = input.readVarInt();
+      unreachable = (flags & 1) != 0;
+      empty = (flags & 2) != 0;
+      executionCount = input.readVarInt();
+
+      int callPointCount = input.readVarInt() - 1;
+
+      if (callPointCount >= 0) {
+         List<CallPoint> readCallPoints = new ArrayList<CallPoint>(Math.max(callPointCount, MAX_CALL_POINTS));
+
+         for (int i = 0; i < callPointCount; i++) {
+            readCallPoints.add(CallPoint.readFrom(input));
+         }
+
+         callPoints = readCallPoints;
+      }
+   }
+
    final void addExecutionCountAndCallPointsFromPreviousTestRun(@Nonnull LineSegmentData previousData)
    {
       executionCount += previousData.executionCount;
@@ -47,6 +47,44 @@ public final class PerFileLineCoverage implements PerFileCoverage
       }
    }
 
+   @Nonnull
+   public static PerFileLineCoverage readFrom(@Nonnull CoverageDataInput input)
+   {
+      PerFileLineCoverage lineCoverage = new PerFileLineCoverage();
+      lineCoverage.lastLine = input.readVarInt();
+
+      int[] executionCounts = input.readIntArray();
+
+      if (executionCounts.length > 0) {
+         lineCoverage.executionCounts = executionCounts;
+      }
+
+      for (int lineCount = input.readVarInt(); lineCount > 0; lineCount--) {
+         int line = input.readVarInt();
+         LineCoverageData lineData = input.readBoolean() ? LineCoverageData.readFrom(input) : null;
+         lineCoverage.lineToLineData.put(line, lineData);
+      }
+
+      return lineCoverage;
+   }
+
+   public void writeTo(@Nonnull CoverageDataOutput output)
+   {
+      output.writeVarInt(lastLine);
+      output.writeIntArray(executionCounts);
+      output.writeVarInt(lineToLineData.size());
+
+      for (Map.Entry<Integer, LineCoverageData> lineAndData : lineToLineData.entrySet()) {
+         LineCoverageData lineData = lineAndData.getValue();
+         output.writeVarInt(lineAndData.getKey());
+         output.writeBoolean(lineData != null);
+
+         if (lineData != null) {
+            lineData.writeTo(output);
+         }
+      }
+   }
+
    public void addLine(int line, boolean reprocessing)
    {
       if (lineToLineData.containsKey(line)) {
@@ -143,6 +181,44 @@ public final class PerFileLineCoverage implements PerFileCoverage
       return lineData.registerExecution(branchIndex, callPoint);
    }
 
+   int getNumberOfBranches(int line)
+   {
+      LineCoverageData lineData = lineToLineData.get(line);
+      return lineData == null ? 0 : lineData.getBranches().size();
+   }
+
+   void addExecutionCounts(@Nonnull int[] lineCounts)
+   {
+      if (executionCounts == NO_EXECUTIONS_YET) {
+         executionCounts = new int[lastLine + 1];
+      }
+
+      int n = Math.min(lineCounts.length, executionCounts.length);
+
+      for (int line = 0; line < n; line++) {
+         executionCounts[line] += lineCounts[line];
+      }
+
+      initializeCache();
+   }
+
+   void addBranchExecutionCounts(@Nonnull int[][] branchCounts)
+   {
+      for (int line = 0; line < branchCounts.length; line++) {
+         int[] countsForLine = branchCounts[line];
+
+         if (countsForLine.length > 0) {
+            LineCoverageData lineData = lineToLineData.get(line);
+
+            if (lineData != null) {
+               lineData.addBranchExecutionCounts(countsForLine);
+            }
+         }
+      }
+
+      initializeCache();
+   }
+
    public int getLineCount() { return lastLine; }
    public int getExecutableLineCount() { return lineToLineData.size(); }
 
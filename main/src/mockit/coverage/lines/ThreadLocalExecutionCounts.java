@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.lines;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.annotation.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+
+/**
+ * Per-thread execution counters for lines and branches, used when the "<tt>lockfree</tt>" recording mode is selected.
+ * <p/>
+ * Each thread increments its own counters, so that probes executed concurrently never contend on a shared monitor;
+ * the counts from all threads are later added to the corresponding {@link PerFileLineCoverage} objects through
+ * {@link #mergeIntoCoverageData()}, before any output is generated.
+ * <p/>
+ * A counter holds zero while the line or branch was not yet executed by its thread, and otherwise one plus the number
+ * of executions not yet merged.
+ * The first execution by each thread is registered directly in the shared coverage data, while holding the
+ * <tt>TestRun</tt> lock; therefore, the previous execution count seen by test redundancy detection is zero only for the
+ * very first execution by any thread, just like when recording with the lock.
+ * Counters are atomic, so that a merge happening concurrently with executions neither loses nor duplicates any of
+ * them; counter arrays are only replaced (when they need to grow) or merged while holding the same lock.
+ */
+public final class ThreadLocalExecutionCounts
+{
+   public static final boolean ACTIVE = "lockfree".equalsIgnoreCase(Configuration.getProperty("recording", ""));
+
+   private static final AtomicIntegerArray NO_COUNTS = new AtomicIntegerArray(0);
+   private static final AtomicIntegerArray[] NO_BRANCH_COUNTS = new AtomicIntegerArray[0];
+
+   @Nonnull private static final Queue<ThreadLocalExecutionCounts> allCounts =
+      new ConcurrentLinkedQueue<ThreadLocalExecutionCounts>();
+
+   @Nonnull private static final ThreadLocal<ThreadLocalExecutionCounts> countsForCurrentThread =
+      new ThreadLocal<ThreadLocalExecutionCounts>() {
+         @Override
+         protected ThreadLocalExecutionCounts initialValue()
+         {
+            ThreadLocalExecutionCounts counts = new ThreadLocalExecutionCounts();
+            allCounts.add(counts);
+            return counts;
+         }
+      };
+
+   // Indexed by file index, then by line number.
+   @Nonnull private AtomicIntegerArray[] lineCounts;
+
+   // Indexed by file index, then by line number, then by branch index.
+   @Nonnull private AtomicIntegerArray[][] branchCounts;
+
+   private ThreadLocalExecutionCounts()
+   {
+      lineCounts = new AtomicIntegerArray[0];
+      branchCounts = new AtomicIntegerArray[0][];
+   }
+
+   @Nonnull
+   public static ThreadLocalExecutionCounts forCurrentThread() { return countsForCurrentThread.get(); }
+
+   /**
+    * Increments the execution count of the given line, returning the count previously observed, which is zero only
+    * for the first execution of the line by any thread.
+    */
+   public int registerExecution(int fileIndex, int line)
+   {
+      AtomicIntegerArray[] allLineCounts = lineCounts;
+      AtomicIntegerArray countsForFile = fileIndex < allLineCounts.length ? allLineCounts[fileIndex] : NO_COUNTS;
+
+      if (line >= countsForFile.length()) {
+         countsForFile = growLineCounts(fileIndex, line);
+      }
+
+      int previousCount = countsForFile.getAndIncrement(line);
+
+      if (previousCount > 0) {
+         return previousCount;
+      }
+
+      synchronized (TestRun.class) {
+         PerFileLineCoverage fileData = CoverageData.instance().getFileData(fileIndex).lineCoverageInfo;
+         return fileData.registerExecution(line, null);
+      }
+   }
+
+   @Nonnull
+   private AtomicIntegerArray growLineCounts(int fileIndex, int line)
+   {
+      synchronized (TestRun.class) {
+         if (fileIndex >= lineCounts.length) {
+            lineCounts = grow(lineCounts, fileIndex + 16, NO_COUNTS);
+         }
+
+         PerFileLineCoverage fileData = CoverageData.instance().getFileData(fileIndex).lineCoverageInfo;
+         AtomicIntegerArray previousCounts = lineCounts[fileIndex];
+         AtomicIntegerArray newCounts = grow(previousCounts, Math.max(line, fileData.getLineCount()) + 1);
+         lineCounts[fileIndex] = newCounts;
+         return newCounts;
+      }
+   }
+
+   @Nonnull
+   private static <A> A[] grow(@Nonnull A[] previousArray, int newLength, @Nonnull A initialElement)
+   {
+      A[] newArray = Arrays.copyOf(previousArray, newLength);
+      Arrays.fill(newArray, previousArray.length, newLength, initialElement);
+      return newArray;
+   }
+
+   @Nonnull
+   private static AtomicIntegerArray grow(@Nonnull AtomicIntegerArray previousCounts, int newLength)
+   {
+      AtomicIntegerArray newCounts = new AtomicIntegerArray(newLength);
+
+      for (int i = 0, n = previousCounts.length(); i < n; i++) {
+         newCounts.set(i, previousCounts.get(i));
+      }
+
+      return newCounts;
+   }
+
+   /**
+    * Increments the execution count of the given branch, returning the count previously observed, which is zero only
+    * for the first execution of the branch by any thread, or <tt>-1</tt> if the branch is not valid.
+    */
+   public int registerExecution(int fileIndex, int line, int branchIndex)
+   {
+      AtomicIntegerArray[][] allBranchCounts = branchCounts;
+      AtomicIntegerArray[] countsForFile =
+         fileIndex < allBranchCounts.length ? allBranchCounts[fileIndex] : NO_BRANCH_COUNTS;
+      AtomicIntegerArray countsForLine = line < countsForFile.length ? countsForFile[line] : NO_COUNTS;
+
+      if (branchIndex >= countsForLine.length()) {
+         countsForLine = growBranchCounts(fileIndex, line, branchIndex);
+      }
+
+      int previousCount = countsForLine.getAndIncrement(branchIndex);
+
+      if (previousCount > 0) {
+         return previousCount;
+      }
+
+      synchronized (TestRun.class) {
+         PerFileLineCoverage fileData = CoverageData.instance().getFileData(fileIndex).lineCoverageInfo;
+
+         if (!fileData.hasValidBranch(line, branchIndex)) {
+            return -1;
+         }
+
+         return fileData.registerExecution(line, branchIndex, null);
+      }
+   }
+
+   @Nonnull
+   private AtomicIntegerArray growBranchCounts(int fileIndex, int line, int branchIndex)
+   {
+      synchronized (TestRun.class) {
+         if (fileIndex >= branchCounts.length) {
+            branchCounts = grow(branchCounts, fileIndex + 16, NO_BRANCH_COUNTS);
+         }
+
+         PerFileLineCoverage fileData = CoverageData.instance().getFileData(fileIndex).lineCoverageInfo;
+         AtomicIntegerArray[] countsForFile = branchCounts[fileIndex];
+
+         if (line >= countsForFile.length) {
+            countsForFile = grow(countsForFile, Math.max(line, fileData.getLineCount()) + 1, NO_COUNTS);
+            branchCounts[fileIndex] = countsForFile;
+         }
+
+         AtomicIntegerArray newCounts =
+            grow(countsForFile[line], Math.max(branchIndex + 1, fileData.getNumberOfBranches(line)));
+         countsForFile[line] = newCounts;
+         return newCounts;
+      }
+   }
+
+   /**
+    * Adds the counts recorded so far by all threads to the shared coverage data, resetting them afterwards so that
+    * repeated calls don't count the same executions twice.
+    */
+   public static void mergeIntoCoverageData()
+   {
+      if (ACTIVE) {
+         mergeIntoCoverageData(CoverageData.instance());
+      }
+   }
+
+   static void mergeIntoCoverageData(@Nonnull CoverageData coverageData)
+   {
+      synchronized (TestRun.class) {
+         for (ThreadLocalExecutionCounts counts : allCounts) {
+            counts.mergeInto(coverageData);
+         }
+      }
+   }
+
+   private void mergeInto(@Nonnull CoverageData coverageData)
+   {
+      AtomicIntegerArray[] allLineCounts = lineCounts;
+
+      for (int fileIndex = 0; fileIndex < allLineCounts.length; fileIndex++) {
+         AtomicIntegerArray countsForFile = allLineCounts[fileIndex];
+
+         if (countsForFile != NO_COUNTS) {
+            PerFileLineCoverage fileData = coverageData.getFileData(fileIndex).lineCoverageInfo;
+            fileData.addExecutionCounts(takePendingCounts(countsForFile));
+         }
+      }
+
+      AtomicIntegerArray[][] allBranchCounts = branchCounts;
+
+      for (int fileIndex = 0; fileIndex < allBranchCounts.length; fileIndex++) {
+         AtomicIntegerArray[] countsForFile = allBranchCounts[fileIndex];
+
+         if (countsForFile != NO_BRANCH_COUNTS) {
+            int[][] pendingCounts = new int[countsForFile.length][];
+
+            for (int line = 0; line < countsForFile.length; line++) {
+               pendingCounts[line] = takePendingCounts(countsForFile[line]);
+            }
+
+            PerFileLineCoverage fileData = coverageData.getFileData(fileIndex).lineCoverageInfo;
+            fileData.addBranchExecutionCounts(pendingCounts);
+         }
+      }
+   }
+
+   @Nonnull
+   private static int[] takePendingCounts(@Nonnull AtomicIntegerArray counts)
+   {
+      int[] pendingCounts = new int[counts.length()];
+
+      for (int i = 0; i < pendingCounts.length; i++) {
+         int count;
+
+         do {
+            count = counts.get(i);
+         }
+         while (count > 1 && !counts.compareAndSet(i, count, 1));
+
+         if (count > 1) {
+            pendingCounts[i] = count - 1;
+         }
+      }
+
+      return pendingCounts;
+   }
+}
@@ -4,6 +4,7 @@
  */
 package mockit.coverage.modification;
 
+import mockit.coverage.data.CoverageData;
 import mockit.external.asm.ClassReader;
 import mockit.external.asm.ClassVisitor;
 import mockit.internal.startup.Startup;
@@ -28,13 +29,16 @@ public final class ClassModification
    @Nonnull private final Map<String, ProtectionDomain> protectionDomainPerModifiedClass;
    @Nonnull final List<ProtectionDomain> protectionDomainsWithUniqueLocations;
    @Nonnull private final ClassSelection classSelection;
+   @Nullable private final InstrumentedClassCache instrumentedClassCache;
    private boolean reprocessing;
+   private volatile boolean modificationSuspended;
 
    public ClassModification()
    {
       protectionDomainPerModifiedClass = new HashMap<String, ProtectionDomain>();
       protectionDomainsWithUniqueLocations = new ArrayList<ProtectionDomain>();
       classSelection = new ClassSelection();
+      instrumentedClassCache = InstrumentedClassCache.createIfConfigured();
       redefineClassesAlreadyLoadedForCoverage();
    }
 
@@ -78,7 +82,7 @@ public final class ClassModification
       }
    }
 
-   private void registerModifiedClass(@Nonnull String className, @Nonnull ProtectionDomain pd)
+   void registerModifiedClass(@Nonnull String className, @Nonnull ProtectionDomain pd)
    {
       if (!protectionDomainPerModifiedClass.containsKey(className)) {
          protectionDomainPerModifiedClass.put(className, pd);
@@ -157,6 +161,7 @@ public final class ClassModification
 
       try {
          Startup.instrumentation().redefineClasses(classDefs);
+         Startup.forgetRedefinition(loadedClass);
       }
       catch (ClassNotFoundException e) {
          throw new RuntimeException(e);
@@ -189,15 +194,52 @@ public final class ClassModification
          classSelection.isSelected(className, protectionDomain);
    }
 
+   /**
+    * While suspended, classes loaded from any thread are left unmodified.
+    * This is used while classes not loaded are found and analyzed, since other threads may still be loading some of
+    * them, and the analysis itself may need to load other classes (to find common super-types).
+    */
+   void suspendModificationOfLoadedClasses(boolean suspended) { modificationSuspended = suspended; }
+
+   /**
+    * Gathers the coverage data of a class which was not loaded, by passing its classfile through the coverage modifier
+    * and discarding the modified bytecode.
+    * Nested classes already analyzed together with their outer classes are skipped.
+    */
+   void analyzeClassNotLoaded(@Nonnull String className, @Nonnull byte[] classfile)
+   {
+      boolean alreadyAnalyzed = PrimePathCoverage.active ?
+         PPCoverageModifier.isModifiedInnerClassAvailable(className) :
+         CoverageModifier.isModifiedInnerClassAvailable(className);
+
+      if (!alreadyAnalyzed) {
+         try {
+            ClassReader cr = new ClassReader(classfile);
+            ClassVisitor modifier = PrimePathCoverage.active ? new PPCoverageModifier(cr, false) : new CoverageModifier(cr, false);
+            cr.accept(modifier);
+         }
+         catch (VisitInterruptedException ignore) {
+            // Ignore the class if the modification was refused for some reason.
+         }
+         catch (RuntimeException e) { e.printStackTrace(); }
+         catch (AssertionError e) { e.printStackTrace(); }
+      }
+   }
+
    @Nullable
    public byte[] modifyClass(
-      @Nonnull String className, @Nonnull ProtectionDomain protectionDomain, @Nonnull byte[] originalClassfile)
+      @Nonnull ClassLoader loader, @Nonnull String className, @Nonnull ProtectionDomain protectionDomain,
+      @Nonnull byte[] originalClassfile)
    {
+      if (modificationSuspended) {
+         return null;
+      }
+
       boolean modifyClassForCoverage = isToBeConsideredForCoverage(className, protectionDomain);
 
       if (modifyClassForCoverage) {
          try {
-            byte[] modifiedClassfile = modifyClassForCoverage(className, originalClassfile);
+            byte[] modifiedClassfile = modifyClassForCoverage(loader, className, originalClassfile);
             registerModifiedClass(className, protectionDomain);
             return modifiedClassfile;
          }
@@ -213,7 +255,8 @@ public final class ClassModification
    }
 
    @Nonnull
-   private byte[] modifyClassForCoverage(@Nonnull String className, @Nonnull byte[] classBytecode)
+   private byte[] modifyClassForCoverage(
+      @Nonnull ClassLoader loader, @Nonnull String className, @Nonnull byte[] classBytecode)
    {
       byte[] modifiedBytecode = CoverageModifier.recoverModifiedByteCodeIfAvailable(className);
 
@@ -221,7 +264,44 @@ public final class ClassModification
          return modifiedBytecode;
       }
 
+      InstrumentedClassCache cache = instrumentedClassCache;
+
+      if (cache != null) {
+         modifiedBytecode = cache.recoverModifiedInnerClass(className);
+
+         if (modifiedBytecode != null) {
+            return modifiedBytecode;
+         }
+
+         if (!reprocessing && className.indexOf('$') < 0) {
+            return modifyClassForCoverageUsingCache(cache, loader, className, classBytecode);
+         }
+      }
+
       ClassReader cr = new ClassReader(classBytecode);
       return modifyClassForCoverage(cr);
    }
+
+   @Nonnull
+   private static byte[] modifyClassForCoverageUsingCache(
+      @Nonnull InstrumentedClassCache cache, @Nonnull ClassLoader loader, @Nonnull String className,
+      @Nonnull byte[] classBytecode)
+   {
+      String key = cache.getKey(className, classBytecode);
+      byte[] modifiedBytecode = cache.recoverModifiedClass(key, loader, className);
+
+      if (modifiedBytecode != null) {
+         return modifiedBytecode;
+      }
+
+      int fileIndexBeforeModification = CoverageData.instance().getNextFileIndex();
+      ClassReader cr = new ClassReader(classBytecode);
+      ClassVisitor modifier = PrimePathCoverage.active ? new PPCoverageModifier(cr, false) : new CoverageModifier(cr, false);
+      cr.accept(modifier);
+      modifiedBytecode = modifier.toByteArray();
+
+      cache.storeModifiedClass(
+         key, loader, className, (ModifiedClass) modifier, modifiedBytecode, fileIndexBeforeModification);
+      return modifiedBytecode;
+   }
 }
@@ -4,74 +4,287 @@
  */
 package mockit.coverage.modification;
 
-import javax.annotation.Nonnull;
-import java.io.File;
-import java.security.ProtectionDomain;
-import java.util.HashSet;
-import java.util.Set;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+import javax.annotation.*;
+
+import mockit.coverage.*;
+import static mockit.coverage.Metrics.PrimePathCoverage;
 
 /**
- * Finds and loads all classes that should also be measured, but were not loaded until now.
+ * Finds all classes that should also be measured, but were not loaded until now, and gathers their coverage data
+ * directly from their classfiles, without loading them.
+ * <p/>
+ * Classes are searched for in the directories and jar files of the code sources of classes already modified for
+ * coverage.
+ * The classfiles in each package are analyzed in name order (so that an outer class precedes its nested classes) by a
+ * single worker thread, since classes from the same source file share the same coverage data; different packages are
+ * analyzed in parallel.
+ * Path coverage is the exception: its modifier resolves the methods invoked by measured code through a class loader of
+ * its own, so all classes are analyzed by the calling thread.
  */
 public final class ClassesNotLoaded
 {
+   private static final int ANALYSIS_THREADS = PrimePathCoverage.active ? 1 : Integer.parseInt(
+      Configuration.getProperty("analysisThreads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
    @Nonnull private final ClassModification classModification;
-   private int firstPosAfterParentDir;
+   @Nonnull private final Map<String, List<ClassFile>> classFilesPerPackage;
+
+   public ClassesNotLoaded(@Nonnull ClassModification classModification)
+   {
+      this.classModification = classModification;
+      classFilesPerPackage = new TreeMap<String, List<ClassFile>>();
+   }
 
-   public ClassesNotLoaded(@Nonnull ClassModification classModification) { this.classModification = classModification; }
+   private static final class ClassFile implements Comparable<ClassFile>
+   {
+      @Nonnull final String className;
+      @Nonnull final ProtectionDomain protectionDomain;
+      @Nullable private final Path path;
+      @Nullable private final byte[] bytecode;
+
+      ClassFile(
+         @Nonnull String className, @Nonnull ProtectionDomain protectionDomain, @Nullable Path path,
+         @Nullable byte[] bytecode)
+      {
+         this.className = className;
+         this.protectionDomain = protectionDomain;
+         this.path = path;
+         this.bytecode = bytecode;
+      }
+
+      @Nonnull
+      byte[] readBytecode() throws IOException
+      {
+         if (bytecode != null) {
+            return bytecode;
+         }
+
+         assert path != null;
+         return Files.readAllBytes(path);
+      }
+
+      @Override
+      public int compareTo(@Nonnull ClassFile other) { return className.compareTo(other.className); }
+   }
 
    public void gatherCoverageData()
    {
       Set<ProtectionDomain> protectionDomainsSoFar =
          new HashSet<ProtectionDomain>(classModification.protectionDomainsWithUniqueLocations);
 
+      // Classes which get loaded from now on are left for the analysis, which would otherwise race with their
+      // modification when loaded concurrently.
+      classModification.suspendModificationOfLoadedClasses(true);
+
+      try {
+         gatherCoverageData(protectionDomainsSoFar);
+      }
+      finally {
+         classModification.suspendModificationOfLoadedClasses(false);
+      }
+   }
+
+   private void gatherCoverageData(@Nonnull Set<ProtectionDomain> protectionDomainsSoFar)
+   {
       for (ProtectionDomain pd : protectionDomainsSoFar) {
          File classPathEntry = new File(pd.getCodeSource().getLocation().getPath());
 
-         if (!classPathEntry.getPath().endsWith(".jar")) {
-            firstPosAfterParentDir = classPathEntry.getPath().length() + 1;
-            loadAdditionalClasses(classPathEntry, pd);
+         try {
+            if (classPathEntry.isDirectory()) {
+               findClassFilesInDirectory(classPathEntry.toPath(), pd);
+            }
+            else if (classPathEntry.getPath().endsWith(".jar")) {
+               findClassFilesInJar(classPathEntry, pd);
+            }
+         }
+         catch (IOException e) {
+            e.printStackTrace();
          }
       }
+
+      if (!classFilesPerPackage.isEmpty()) {
+         analyzeClassFiles();
+      }
    }
 
-   private void loadAdditionalClasses(@Nonnull File classPathEntry, @Nonnull ProtectionDomain protectionDomain)
+   private void findClassFilesInDirectory(@Nonnull final Path classPathEntry, @Nonnull final ProtectionDomain pd)
+      throws IOException
    {
-      File[] filesInDir = classPathEntry.listFiles();
+      Files.walkFileTree(classPathEntry, new SimpleFileVisitor<Path>() {
+         @Override
+         public FileVisitResult visitFile(@Nonnull Path file, @Nonnull BasicFileAttributes attrs)
+         {
+            String relativePath = classPathEntry.relativize(file).toString();
+
+            if (isClassFile(relativePath)) {
+               String className = getClassName(relativePath.replace(File.separatorChar, '/'));
 
-      if (filesInDir != null) {
-         for (File fileInDir : filesInDir) {
-            if (fileInDir.isDirectory()) {
-               loadAdditionalClasses(fileInDir, protectionDomain);
+               if (classModification.isToBeConsideredForCoverageAsNotLoaded(className, pd)) {
+                  addClassFile(new ClassFile(className, pd, file, null));
+               }
             }
-            else {
-               loadAdditionalClass(fileInDir.getPath(), protectionDomain);
+
+            return FileVisitResult.CONTINUE;
+         }
+      });
+   }
+
+   private void findClassFilesInJar(@Nonnull File jarFile, @Nonnull ProtectionDomain pd) throws IOException
+   {
+      ZipFile jar = new ZipFile(jarFile);
+
+      try {
+         for (Enumeration<? extends ZipEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+            ZipEntry entry = entries.nextElement();
+            String entryName = entry.getName();
+
+            if (isClassFile(entryName) && !entryName.startsWith("META-INF/")) {
+               String className = getClassName(entryName);
+
+               // Entries are read right away, so that the jar file can be closed before the analysis starts.
+               if (classModification.isToBeConsideredForCoverageAsNotLoaded(className, pd)) {
+                  byte[] bytecode = readBytecode(jar, entry);
+                  addClassFile(new ClassFile(className, pd, null, bytecode));
+               }
             }
          }
       }
+      finally {
+         jar.close();
+      }
+   }
+
+   // Skips "package-info" and "module-info" classfiles, which have nothing to measure.
+   private static boolean isClassFile(@Nonnull String path)
+   {
+      return path.endsWith(".class") && !path.endsWith("-info.class");
+   }
+
+   @Nonnull
+   private static String getClassName(@Nonnull String classFilePath)
+   {
+      return classFilePath.substring(0, classFilePath.length() - ".class".length()).replace('/', '.');
+   }
+
+   @Nonnull
+   private static byte[] readBytecode(@Nonnull ZipFile jar, @Nonnull ZipEntry entry) throws IOException
+   {
+      InputStream input = jar.getInputStream(entry);
+
+      try {
+         ByteArrayOutputStream bytecode = new ByteArrayOutputStream(Math.max((int) entry.getSize(), 1024));
+         byte[] buffer = new byte[8192];
+         int bytesRead;
+
+         while ((bytesRead = input.read(buffer)) >= 0) {
+            bytecode.write(buffer, 0, bytesRead);
+         }
+
+         return bytecode.toByteArray();
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   private void addClassFile(@Nonnull ClassFile classFile)
+   {
+      String className = classFile.className;
+      int p = className.lastIndexOf('.');
+      String packageName = p < 0 ? "" : className.substring(0, p);
+      List<ClassFile> classFilesInPackage = classFilesPerPackage.get(packageName);
+
+      if (classFilesInPackage == null) {
+         classFilesInPackage = new ArrayList<ClassFile>();
+         classFilesPerPackage.put(packageName, classFilesInPackage);
+      }
+
+      classFilesInPackage.add(classFile);
+   }
+
+   private void analyzeClassFiles()
+   {
+      Collection<List<ClassFile>> packages = classFilesPerPackage.values();
+
+      if (ANALYSIS_THREADS <= 1 || packages.size() <= 1) {
+         for (List<ClassFile> classFilesInPackage : packages) {
+            analyzeClassFiles(classFilesInPackage);
+         }
+      }
+      else {
+         analyzeClassFilesInParallel(packages);
+      }
+
+      // Classes analyzed here are registered as if they had been modified, so that they don't get modified (and their
+      // lines added) a second time in case they get loaded afterwards.
+      for (List<ClassFile> classFilesInPackage : packages) {
+         for (ClassFile classFile : classFilesInPackage) {
+            classModification.registerModifiedClass(classFile.className, classFile.protectionDomain);
+         }
+      }
    }
 
-   private void loadAdditionalClass(@Nonnull String filePath, @Nonnull ProtectionDomain protectionDomain)
+   private void analyzeClassFiles(@Nonnull List<ClassFile> classFilesInPackage)
    {
-      int p = filePath.lastIndexOf(".class");
+      Collections.sort(classFilesInPackage);
 
-      if (p > 0) {
-         String relativePath = filePath.substring(firstPosAfterParentDir, p);
-         String className = relativePath.replace(File.separatorChar, '.');
+      for (ClassFile classFile : classFilesInPackage) {
+         byte[] bytecode;
 
-         if (classModification.isToBeConsideredForCoverageAsNotLoaded(className, protectionDomain)) {
-            loadClass(className, protectionDomain);
+         try {
+            bytecode = classFile.readBytecode();
          }
+         catch (IOException ignore) {
+            continue;
+         }
+
+         classModification.analyzeClassNotLoaded(classFile.className, bytecode);
       }
    }
 
-   private static void loadClass(@Nonnull String className, @Nonnull ProtectionDomain protectionDomain)
+   private void analyzeClassFilesInParallel(@Nonnull Collection<List<ClassFile>> packages)
    {
+      ExecutorService executor = Executors.newFixedThreadPool(Math.min(ANALYSIS_THREADS, packages.size()));
+      List<Future<?>> pendingAnalyses = new ArrayList<Future<?>>(packages.size());
+
       try {
-         Class.forName(className, false, protectionDomain.getClassLoader());
+         for (final List<ClassFile> classFilesInPackage : packages) {
+            pendingAnalyses.add(executor.submit(new Runnable() {
+               @Override
+               public void run() { analyzeClassFiles(classFilesInPackage); }
+            }));
+         }
+
+         for (Future<?> pendingAnalysis : pendingAnalyses) {
+            waitForCompletion(pendingAnalysis);
+         }
+      }
+      finally {
+         executor.shutdownNow();
+      }
+   }
+
+   private static void waitForCompletion(@Nonnull Future<?> pendingAnalysis)
+   {
+      try {
+         pendingAnalysis.get();
+      }
+      catch (InterruptedException ignore) {
+         Thread.currentThread().interrupt();
+      }
+      catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+
+         if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+         if (cause instanceof Error) throw (Error) cause;
+         throw new RuntimeException(cause);
       }
-      catch (ClassNotFoundException ignore) {}
-      catch (NoClassDefFoundError ignored) {}
-      catch (LinkageError e) {}
    }
 }
@@ -6,6 +6,7 @@ package mockit.coverage.modification;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import javax.annotation.*;
 
 import mockit.coverage.data.*;
@@ -15,9 +16,10 @@ import mockit.external.asm.*;
 import static mockit.coverage.Metrics.*;
 import static mockit.external.asm.Opcodes.*;
 
-final class CoverageModifier extends WrappingClassVisitor
+final class CoverageModifier extends WrappingClassVisitor implements ModifiedClass
 {
-   private static final Map<String, CoverageModifier> INNER_CLASS_MODIFIERS = new HashMap<String, CoverageModifier>();
+   private static final Map<String, CoverageModifier> INNER_CLASS_MODIFIERS =
+      new ConcurrentHashMap<String, CoverageModifier>();
    private static final int FIELD_MODIFIERS_TO_IGNORE = Access.FINAL + Access.SYNTHETIC;
    private static final int MAX_CONDITIONS = Integer.getInteger("jmockit-coverage-maxConditions", 10);
    private static final boolean WITH_PATH_OR_DATA_COVERAGE = PathCoverage.active || DataCoverage.active;
@@ -29,6 +31,11 @@ final class CoverageModifier extends WrappingClassVisitor
       return modifier == null ? null : modifier.toByteArray();
    }
 
+   static boolean isModifiedInnerClassAvailable(@Nonnull String innerClassName)
+   {
+      return INNER_CLASS_MODIFIERS.containsKey(innerClassName);
+   }
+
    @Nullable
    static ClassReader createClassReader(@Nonnull Class<?> aClass)
    {
@@ -54,6 +61,7 @@ final class CoverageModifier extends WrappingClassVisitor
    @Nullable private String simpleClassName;
    @Nonnull private String sourceFileName;
    @Nullable private FileCoverageData fileData;
+   @Nullable private List<String> modifiedInnerClasses;
    @Nullable private final BitSet linesReprocessed;
    private boolean cannotModify;
    private final boolean forInnerClass;
@@ -83,6 +91,29 @@ final class CoverageModifier extends WrappingClassVisitor
       this.simpleClassName = simpleClassName;
    }
 
+   @Nonnull @Override public String getSourceFileName() { return sourceFileName; }
+   @Nullable @Override public FileCoverageData getFileData() { return fileData; }
+
+   @Nonnull @Override
+   public Map<String, byte[]> takeModifiedInnerClasses()
+   {
+      if (modifiedInnerClasses == null) {
+         return Collections.emptyMap();
+      }
+
+      Map<String, byte[]> innerClasses = new LinkedHashMap<String, byte[]>();
+
+      for (String innerClassName : modifiedInnerClasses) {
+         byte[] modifiedInnerClass = recoverModifiedByteCodeIfAvailable(innerClassName);
+
+         if (modifiedInnerClass != null) {
+            innerClasses.put(innerClassName, modifiedInnerClass);
+         }
+      }
+
+      return innerClasses;
+   }
+
    @Override
    public void visit(
       int version, int access, @Nonnull String name, @Nullable String signature, String superName,
@@ -179,6 +210,12 @@ final class CoverageModifier extends WrappingClassVisitor
          CoverageModifier innerClassModifier = new CoverageModifier(innerCR, this, innerName);
          innerCR.accept(innerClassModifier);
          INNER_CLASS_MODIFIERS.put(innerClassName, innerClassModifier);
+
+         if (modifiedInnerClasses == null) {
+            modifiedInnerClasses = new ArrayList<String>();
+         }
+
+         modifiedInnerClasses.add(innerClassName);
       }
    }
 
@@ -515,6 +552,7 @@ final class CoverageModifier extends WrappingClassVisitor
       @Nullable private NodeBuilder nodeBuilder;
       @Nullable private Label entryPoint;
       private int jumpCount;
+      private int methodIndex = -1;
 
       MethodOrConstructorModifier(@Nonnull MethodWriter mw)
       {
@@ -549,11 +587,16 @@ final class CoverageModifier extends WrappingClassVisitor
       private void generateCallToRegisterNodeReached(int nodeIndex)
       {
          if (nodeIndex >= 0) {
-            assert nodeBuilder != null;
-            mw.visitLdcInsn(sourceFileName);
-            mw.visitLdcInsn(nodeBuilder.firstLine);
+            assert nodeBuilder != null && fileData != null;
+
+            if (methodIndex < 0) {
+               methodIndex = fileData.pathCoverageInfo.getOrAssignMethodIndex(nodeBuilder.firstLine);
+            }
+
+            mw.visitIntInsn(SIPUSH, fileData.index);
+            generateCodeToPushIndex(methodIndex);
             mw.visitIntInsn(SIPUSH, nodeIndex);
-            mw.visitMethodInsn(INVOKESTATIC, DATA_RECORDING_CLASS, "nodeReached", "(Ljava/lang/String;II)V", false);
+            mw.visitMethodInsn(INVOKESTATIC, DATA_RECORDING_CLASS, "nodeReached", "(III)V", false);
          }
       }
 
@@ -653,23 +696,24 @@ final class CoverageModifier extends WrappingClassVisitor
          boolean isStatic = opcode == PUTSTATIC || opcode == GETSTATIC;
          char fieldType = desc.charAt(0);
          boolean size2 = fieldType == 'J' || fieldType == 'D';
-         String classAndFieldNames = null;
-         boolean fieldHasData = false;
+         int fieldIndex = -1;
 
          if (!owner.startsWith("java/")) {
-            classAndFieldNames = owner.substring(owner.lastIndexOf('/') + 1) + '.' + name;
+            String classAndFieldNames = owner.substring(owner.lastIndexOf('/') + 1) + '.' + name;
             assert fileData != null;
-            fieldHasData = fileData.dataCoverageInfo.isFieldWithCoverageData(classAndFieldNames);
+            fieldIndex = fileData.dataCoverageInfo.getFieldIndex(classAndFieldNames);
+         }
 
-            if (fieldHasData && !isStatic) {
-               generateCodeToSaveInstanceReferenceOnTheStack(getField, size2);
-            }
+         boolean fieldHasData = fieldIndex >= 0;
+
+         if (fieldHasData && !isStatic) {
+            generateCodeToSaveInstanceReferenceOnTheStack(getField, size2);
          }
 
          super.visitFieldInsn(opcode, owner, name, desc);
 
          if (fieldHasData) {
-            generateCallToRegisterFieldCoverage(getField, isStatic, size2, classAndFieldNames);
+            generateCallToRegisterFieldCoverage(getField, isStatic, size2, fieldIndex);
          }
 
          handleRegularInstruction(opcode);
@@ -696,8 +740,20 @@ final class CoverageModifier extends WrappingClassVisitor
          }
       }
 
+      // Method and field indexes grow with the number of methods and fields in a source file, so unlike line numbers
+      // and node indexes they can go beyond what SIPUSH takes as operand.
+      private void generateCodeToPushIndex(int index)
+      {
+         if (index <= Short.MAX_VALUE) {
+            mw.visitIntInsn(SIPUSH, index);
+         }
+         else {
+            mw.visitLdcInsn(index);
+         }
+      }
+
       private void generateCallToRegisterFieldCoverage(
-         boolean getField, boolean isStatic, boolean size2, @Nonnull String classAndFieldNames)
+         boolean getField, boolean isStatic, boolean size2, int fieldIndex)
       {
          if (!isStatic && getField) {
             if (size2) {
@@ -710,13 +766,12 @@ final class CoverageModifier extends WrappingClassVisitor
             }
          }
 
-         mw.visitLdcInsn(sourceFileName);
-         mw.visitLdcInsn(classAndFieldNames);
+         assert fileData != null;
+         mw.visitIntInsn(SIPUSH, fileData.index);
+         generateCodeToPushIndex(fieldIndex);
 
          String methodToCall = getField ? "fieldRead" : "fieldAssigned";
-         String methodDesc =
-            isStatic ?
-               "(Ljava/lang/String;Ljava/lang/String;)V" : "(Ljava/lang/Object;Ljava/lang/String;Ljava/lang/String;)V";
+         String methodDesc = isStatic ? "(II)V" : "(Ljava/lang/Object;II)V";
 
          mw.visitMethodInsn(INVOKESTATIC, DATA_RECORDING_CLASS, methodToCall, methodDesc, false);
       }
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.util.*;
+import javax.annotation.*;
+
+import mockit.external.asm.*;
+import static mockit.external.asm.Opcodes.*;
+
+/**
+ * Rebinds the calls which a class modified for coverage makes to record executions to a different source file index.
+ * <p/>
+ * Each such call passes the index of the source file as its first <tt>int</tt> argument, pushed with a
+ * <tt>SIPUSH</tt> instruction right before the other <tt>int</tt> arguments; those instructions are identified by
+ * their ordinal position among all <tt>SIPUSH</tt>/<tt>BIPUSH</tt> instructions of each method, so that they can be
+ * found again without analyzing the code around them.
+ */
+final class FileIndexBinding
+{
+   private static final String DATA_RECORDING_CLASS = "mockit/coverage/TestRun";
+   private static final int[] NO_PUSHES = {};
+
+   private FileIndexBinding() {}
+
+   /**
+    * Finds the instructions which push the given file index as the first <tt>int</tt> argument of a call to record an
+    * execution, in a class just modified for coverage.
+    *
+    * @return the ordinal positions of those instructions, for each method in the order they appear in the class, or
+    * <tt>null</tt> if some call doesn't have its file index pushed as expected
+    */
+   @Nullable
+   static int[][] findFileIndexPushes(@Nonnull byte[] modifiedClassfile, int fileIndex)
+   {
+      PushFinder finder = new PushFinder(fileIndex);
+      new ClassReader(modifiedClassfile).accept(finder);
+      return finder.consistent ? finder.pushesPerMethod.toArray(new int[finder.pushesPerMethod.size()][]) : null;
+   }
+
+   private static final class PushFinder extends ClassVisitor
+   {
+      private final int fileIndex;
+      @Nonnull final List<int[]> pushesPerMethod = new ArrayList<int[]>();
+      boolean consistent = true;
+
+      PushFinder(int fileIndex) { this.fileIndex = fileIndex; }
+
+      @Override
+      public MethodVisitor visitMethod(
+         int access, @Nonnull String name, @Nonnull String desc, @Nullable String signature,
+         @Nullable String[] exceptions)
+      {
+         return new MethodPushFinder(this);
+      }
+   }
+
+   private static final class MethodPushFinder extends MethodVisitor
+   {
+      @Nonnull private final PushFinder classFinder;
+      @Nonnull private final List<Integer> fileIndexPushes;
+
+      // Operands and ordinals of the int push instructions since the last instruction of any other kind.
+      @Nonnull private final List<Integer> pendingOperands;
+      @Nonnull private final List<Integer> pendingOrdinals;
+      private int pushCount;
+
+      MethodPushFinder(@Nonnull PushFinder classFinder)
+      {
+         this.classFinder = classFinder;
+         fileIndexPushes = new ArrayList<Integer>();
+         pendingOperands = new ArrayList<Integer>(4);
+         pendingOrdinals = new ArrayList<Integer>(4);
+      }
+
+      private void otherInstruction()
+      {
+         pendingOperands.clear();
+         pendingOrdinals.clear();
+      }
+
+      @Override
+      public void visitIntInsn(int opcode, int operand)
+      {
+         if (opcode == NEWARRAY) {
+            otherInstruction();
+         }
+         else {
+            pendingOperands.add(operand);
+            pendingOrdinals.add(opcode == SIPUSH ? pushCount : -1);
+            pushCount++;
+         }
+      }
+
+      @Override
+      public void visitLdcInsn(@Nonnull Object cst)
+      {
+         if (cst instanceof Integer) {
+            pendingOperands.add((Integer) cst);
+            pendingOrdinals.add(-1);
+         }
+         else {
+            otherInstruction();
+         }
+      }
+
+      @Override
+      public void visitMethodInsn(
+         int opcode, @Nonnull String owner, @Nonnull String name, @Nonnull String desc, boolean itf)
+      {
+         if (opcode == INVOKESTATIC && DATA_RECORDING_CLASS.equals(owner)) {
+            int intArgs = countTrailingIntParameters(desc);
+            int firstArg = pendingOperands.size() - intArgs;
+
+            if (
+               intArgs == 0 || firstArg < 0 || pendingOrdinals.get(firstArg) < 0 ||
+               pendingOperands.get(firstArg) != classFinder.fileIndex
+            ) {
+               classFinder.consistent = false;
+            }
+            else {
+               fileIndexPushes.add(pendingOrdinals.get(firstArg));
+            }
+         }
+
+         otherInstruction();
+      }
+
+      private static int countTrailingIntParameters(@Nonnull String desc)
+      {
+         int count = 0;
+
+         for (int i = desc.indexOf(')') - 1; i > 0 && desc.charAt(i) == 'I' && desc.charAt(i - 1) != '['; i--) {
+            count++;
+         }
+
+         return count;
+      }
+
+      @Override public void visitInsn(int opcode) { otherInstruction(); }
+      @Override public void visitVarInsn(int opcode, int var) { otherInstruction(); }
+      @Override public void visitTypeInsn(int opcode, @Nonnull String type) { otherInstruction(); }
+      @Override public void visitJumpInsn(int opcode, @Nonnull Label label) { otherInstruction(); }
+      @Override public void visitLabel(@Nonnull Label label) { otherInstruction(); }
+      @Override public void visitIincInsn(int var, int increment) { otherInstruction(); }
+      @Override public void visitMultiANewArrayInsn(@Nonnull String desc, int dims) { otherInstruction(); }
+
+      @Override
+      public void visitFieldInsn(int opcode, @Nonnull String owner, @Nonnull String name, @Nonnull String desc)
+      {
+         otherInstruction();
+      }
+
+      @Override
+      public void visitTableSwitchInsn(int min, int max, @Nonnull Label dflt, @Nonnull Label... labels)
+      {
+         otherInstruction();
+      }
+
+      @Override
+      public void visitLookupSwitchInsn(@Nonnull Label dflt, @Nonnull int[] keys, @Nonnull Label[] labels)
+      {
+         otherInstruction();
+      }
+
+      @Override
+      public void visitEnd()
+      {
+         int[] pushes = fileIndexPushes.isEmpty() ? NO_PUSHES : new int[fileIndexPushes.size()];
+
+         for (int i = 0; i < pushes.length; i++) {
+            pushes[i] = fileIndexPushes.get(i);
+         }
+
+         classFinder.pushesPerMethod.add(pushes);
+      }
+   }
+
+   /**
+    * Returns a copy of the given modified class where the instructions at the given positions push the given file
+    * index instead.
+    */
+   @Nonnull
+   static byte[] bind(@Nonnull byte[] modifiedClassfile, @Nonnull int[][] fileIndexPushes, int fileIndex)
+   {
+      ClassReader cr = new ClassReader(modifiedClassfile);
+      Binder binder = new Binder(new ClassWriter(cr), fileIndexPushes, fileIndex);
+      cr.accept(binder);
+      return binder.toByteArray();
+   }
+
+   private static final class Binder extends WrappingClassVisitor
+   {
+      @Nonnull private final int[][] fileIndexPushes;
+      private final int fileIndex;
+      private int methodIndex;
+
+      Binder(@Nonnull ClassWriter cw, @Nonnull int[][] fileIndexPushes, int fileIndex)
+      {
+         super(cw);
+         this.fileIndexPushes = fileIndexPushes;
+         this.fileIndex = fileIndex;
+      }
+
+      @Override
+      public MethodVisitor visitMethod(
+         int access, @Nonnull String name, @Nonnull String desc, @Nullable String signature,
+         @Nullable String[] exceptions)
+      {
+         MethodWriter mw = cw.visitMethod(access, name, desc, signature, exceptions);
+         int[] pushes = methodIndex < fileIndexPushes.length ? fileIndexPushes[methodIndex] : NO_PUSHES;
+         methodIndex++;
+
+         // Methods without any calls to rebind are copied as they are.
+         return pushes.length == 0 ? mw : new MethodBinder(mw, pushes, fileIndex);
+      }
+   }
+
+   private static final class MethodBinder extends WrappingMethodVisitor
+   {
+      @Nonnull private final int[] fileIndexPushes;
+      private final int fileIndex;
+      private int pushCount;
+      private int nextPushToBind;
+
+      MethodBinder(@Nonnull MethodWriter mw, @Nonnull int[] fileIndexPushes, int fileIndex)
+      {
+         super(mw);
+         this.fileIndexPushes = fileIndexPushes;
+         this.fileIndex = fileIndex;
+      }
+
+      @Override
+      public void visitIntInsn(int opcode, int operand)
+      {
+         int operandToWrite = operand;
+
+         if (opcode != NEWARRAY) {
+            if (nextPushToBind < fileIndexPushes.length && fileIndexPushes[nextPushToBind] == pushCount) {
+               operandToWrite = fileIndex;
+               nextPushToBind++;
+            }
+
+            pushCount++;
+         }
+
+         mw.visitIntInsn(opcode, operandToWrite);
+      }
+   }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.Map.*;
+import java.util.concurrent.*;
+import javax.annotation.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+
+/**
+ * On-disk cache of classes modified for coverage, shared by all test JVMs which use the same cache directory (as
+ * specified with the "<tt>jmockit-coverage-cacheDir</tt>" system property).
+ * <p/>
+ * Each entry holds the modified bytecode of a top-level class and of the nested classes modified along with it,
+ * followed by the coverage data of its source file as it was right after the modification, including the indexes
+ * assigned to methods and fields, which are embedded in the modified bytecode.
+ * The index of the source file itself is not kept, since it depends on the order in which classes get loaded: instead,
+ * each entry records where the modified bytecode pushes it, so it can be bound to the index assigned when the entry is
+ * restored (see {@link FileIndexBinding}).
+ * Entries are keyed by the original bytecode, the class name, and the settings which affect the modification (JMockit
+ * version and active metrics, among others).
+ * <p/>
+ * An entry can only be used for the first class to be modified in its source file, as the coverage data then doesn't
+ * depend on other classes; it is also ignored if the bytecode of any of its nested classes has changed.
+ * <p/>
+ * The cache is not used when line coverage is inactive, since modified classes still record line executions then, in
+ * line data shared by all source files which only gets built while classes are modified.
+ */
+final class InstrumentedClassCache
+{
+   private static final String FORMAT_VERSION = "3";
+
+   @Nonnull private final File cacheDir;
+   @Nonnull private final byte[] settings;
+   @Nonnull private final Map<String, byte[]> innerClassesFromCache;
+
+   @Nullable
+   static InstrumentedClassCache createIfConfigured()
+   {
+      String cacheDirPath = Configuration.getProperty("cacheDir", "");
+
+      if (cacheDirPath.isEmpty() || !Metrics.LineCoverage.active) {
+         return null;
+      }
+
+      File cacheDir = new File(cacheDirPath);
+
+      if (!cacheDir.isDirectory() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+         // Classes then simply get modified as if no cache was configured.
+         return null;
+      }
+
+      return new InstrumentedClassCache(cacheDir);
+   }
+
+   InstrumentedClassCache(@Nonnull File cacheDir)
+   {
+      this.cacheDir = cacheDir;
+      settings = describeSettings().getBytes(StandardCharsets.UTF_8);
+      innerClassesFromCache = new ConcurrentHashMap<String, byte[]>();
+   }
+
+   @Nonnull
+   private static String describeSettings()
+   {
+      StringBuilder description = new StringBuilder(FORMAT_VERSION);
+      description.append(' ').append(ClassModification.class.getPackage().getImplementationVersion());
+
+      CodeSource codeSource = ClassModification.class.getProtectionDomain().getCodeSource();
+
+      if (codeSource != null && codeSource.getLocation() != null) {
+         File jmockitJar = new File(codeSource.getLocation().getPath());
+         description.append(' ').append(jmockitJar.lastModified()).append(' ').append(jmockitJar.length());
+      }
+
+      for (Metrics metric : Metrics.values()) {
+         if (metric.active) {
+            description.append(' ').append(metric);
+         }
+      }
+
+      description.append(' ').append(System.getProperty("jmockit-coverage-maxConditions"));
+      description.append(' ').append(System.getProperty("jmockit-coverage-maxPrimePaths"));
+      return description.toString();
+   }
+
+   /**
+    * Returns the modified bytecode of a nested class restored from the cache along with its outer class, if any.
+    */
+   @Nullable
+   byte[] recoverModifiedInnerClass(@Nonnull String innerClassName)
+   {
+      return innerClassesFromCache.remove(innerClassName);
+   }
+
+   @Nonnull
+   String getKey(@Nonnull String className, @Nonnull byte[] originalClassfile)
+   {
+      MessageDigest digest = createMessageDigest();
+      digest.update(settings);
+      digest.update(className.getBytes(StandardCharsets.UTF_8));
+      digest.update(originalClassfile);
+      return toHexString(digest.digest());
+   }
+
+   @Nonnull
+   private static MessageDigest createMessageDigest()
+   {
+      try {
+         return MessageDigest.getInstance("SHA-1");
+      }
+      catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   @Nonnull
+   private static String toHexString(@Nonnull byte[] bytes)
+   {
+      StringBuilder hex = new StringBuilder(2 * bytes.length);
+
+      for (byte b : bytes) {
+         hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+
+      return hex.toString();
+   }
+
+   @Nullable
+   private static byte[] digestOfClassfile(@Nonnull ClassLoader loader, @Nonnull String className)
+   {
+      String classFileName = className.replace('.', '/') + ".class";
+      InputStream classFile = loader.getResourceAsStream(classFileName);
+
+      if (classFile == null) {
+         return null;
+      }
+
+      MessageDigest digest = createMessageDigest();
+      byte[] buffer = new byte[8192];
+
+      try {
+         try {
+            for (int bytesRead; (bytesRead = classFile.read(buffer)) >= 0; ) {
+               digest.update(buffer, 0, bytesRead);
+            }
+         }
+         finally {
+            classFile.close();
+         }
+      }
+      catch (IOException ignore) {
+         return null;
+      }
+
+      return digest.digest();
+   }
+
+   @Nonnull
+   private File getEntryFile(@Nonnull String key) { return new File(cacheDir, key + ".jmc"); }
+
+   /**
+    * Restores a modified class from the cache entry with the given key, if it exists and is still valid, also
+    * restoring the coverage data of its source file.
+    *
+    * @param loader the class loader of the class, from which the current bytecode of its nested classes is read
+    *
+    * @return the modified bytecode of the class, or <tt>null</tt> if the class needs to be modified
+    */
+   @Nullable
+   byte[] recoverModifiedClass(@Nonnull String key, @Nonnull ClassLoader loader, @Nonnull String className)
+   {
+      File entryFile = getEntryFile(key);
+
+      if (!entryFile.exists()) {
+         return null;
+      }
+
+      try {
+         ByteBuffer entry = ByteBuffer.wrap(Files.readAllBytes(entryFile.toPath()));
+         return CoverageDataInput.isInBinaryFormat(entry) ?
+            restoreEntry(new CoverageDataInput(entry), loader, className) : null;
+      }
+      catch (IOException ignore) {
+         return null;
+      }
+      catch (BufferUnderflowException ignore) {
+         // An incomplete entry, which will be overwritten.
+         return null;
+      }
+   }
+
+   private static final class UnboundClass
+   {
+      @Nonnull final byte[] modifiedClassfile;
+      @Nonnull final int[][] fileIndexPushes;
+
+      UnboundClass(@Nonnull CoverageDataInput input)
+      {
+         modifiedClassfile = input.readBytes();
+         fileIndexPushes = new int[input.readVarInt()][];
+
+         for (int i = 0; i < fileIndexPushes.length; i++) {
+            fileIndexPushes[i] = input.readIntArray();
+         }
+      }
+
+      @Nonnull
+      byte[] bind(int fileIndex) { return FileIndexBinding.bind(modifiedClassfile, fileIndexPushes, fileIndex); }
+   }
+
+   @Nullable
+   private byte[] restoreEntry(
+      @Nonnull CoverageDataInput input, @Nonnull ClassLoader loader, @Nonnull String className)
+   {
+      String sourceFile = input.readNonNullString();
+
+      if (!className.equals(input.readString())) {
+         return null;
+      }
+
+      String kindOfTopLevelType = input.readString();
+      UnboundClass modifiedClass = new UnboundClass(input);
+      Map<String, UnboundClass> innerClasses = new HashMap<String, UnboundClass>();
+
+      for (int innerClassCount = input.readVarInt(); innerClassCount > 0; innerClassCount--) {
+         String innerClassName = input.readNonNullString();
+         byte[] originalDigest = input.readBytes();
+
+         if (!Arrays.equals(originalDigest, digestOfClassfile(loader, innerClassName))) {
+            return null;
+         }
+
+         innerClasses.put(innerClassName, new UnboundClass(input));
+      }
+
+      // Another thread may have restored or modified a class from the same source file in the meantime.
+      FileCoverageData fileData = CoverageData.instance().addFileIfAbsent(sourceFile, kindOfTopLevelType, input);
+
+      if (fileData == null) {
+         return null;
+      }
+
+      int fileIndex = fileData.index;
+
+      for (Entry<String, UnboundClass> innerClass : innerClasses.entrySet()) {
+         innerClassesFromCache.put(innerClass.getKey(), innerClass.getValue().bind(fileIndex));
+      }
+
+      return modifiedClass.bind(fileIndex);
+   }
+
+   /**
+    * Stores the given modified class in a new cache entry, provided it's the first class to have been modified in its
+    * source file.
+    * In that case, the nested classes modified along with it are also kept, to be recovered when they get loaded.
+    *
+    * @param loader the class loader of the class, from which the original bytecode of its nested classes is read
+    * @param fileIndexBeforeModification the index to be assigned to the next source file before the class was modified
+    */
+   void storeModifiedClass(
+      @Nonnull String key, @Nonnull ClassLoader loader, @Nonnull String className, @Nonnull ModifiedClass modifiedClass,
+      @Nonnull byte[] modifiedClassfile, int fileIndexBeforeModification)
+   {
+      FileCoverageData fileData = modifiedClass.getFileData();
+
+      if (fileData == null || fileData.index != fileIndexBeforeModification) {
+         return;
+      }
+
+      Map<String, byte[]> innerClasses = modifiedClass.takeModifiedInnerClasses();
+      innerClassesFromCache.putAll(innerClasses);
+
+      CoverageDataOutput output = new CoverageDataOutput();
+      output.writeString(modifiedClass.getSourceFileName());
+      output.writeString(className);
+      output.writeString(fileData.kindOfTopLevelType);
+
+      if (!writeUnboundClass(output, modifiedClassfile, fileData.index)) {
+         return;
+      }
+
+      output.writeVarInt(innerClasses.size());
+
+      for (Entry<String, byte[]> innerClass : innerClasses.entrySet()) {
+         String innerClassName = innerClass.getKey();
+         byte[] originalDigest = digestOfClassfile(loader, innerClassName);
+
+         if (originalDigest == null) {
+            return;
+         }
+
+         output.writeString(innerClassName);
+         output.writeBytes(originalDigest);
+
+         if (!writeUnboundClass(output, innerClass.getValue(), fileData.index)) {
+            return;
+         }
+      }
+
+      fileData.writeInstrumentationStateTo(output);
+      writeEntryFile(key, output);
+   }
+
+   private static boolean writeUnboundClass(
+      @Nonnull CoverageDataOutput output, @Nonnull byte[] modifiedClassfile, int fileIndex)
+   {
+      int[][] fileIndexPushes = FileIndexBinding.findFileIndexPushes(modifiedClassfile, fileIndex);
+
+      if (fileIndexPushes == null) {
+         return false;
+      }
+
+      output.writeBytes(FileIndexBinding.bind(modifiedClassfile, fileIndexPushes, 0));
+      output.writeVarInt(fileIndexPushes.length);
+
+      for (int[] pushesInMethod : fileIndexPushes) {
+         output.writeIntArray(pushesInMethod);
+      }
+
+      return true;
+   }
+
+   private void writeEntryFile(@Nonnull String key, @Nonnull CoverageDataOutput output)
+   {
+      // Written to a temporary file first, so that other test JVMs never see an incomplete entry.
+      try {
+         File tempFile = File.createTempFile(key, ".tmp", cacheDir);
+
+         try {
+            FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE);
+
+            try {
+               output.writeTo(channel);
+            }
+            finally {
+               channel.close();
+            }
+
+            Files.move(tempFile.toPath(), getEntryFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+         }
+         finally {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+         }
+      }
+      catch (IOException ignore) {
+         // The class will simply be modified again next time.
+      }
+   }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.util.*;
+import javax.annotation.*;
+
+import mockit.coverage.data.*;
+
+/**
+ * A class visitor which modified a class for coverage, as seen by the {@link InstrumentedClassCache}.
+ */
+interface ModifiedClass
+{
+   @Nonnull String getSourceFileName();
+   @Nullable FileCoverageData getFileData();
+
+   /**
+    * Returns the modified bytecode of the nested classes which were modified along with the class and weren't loaded
+    * yet, keyed by class name; from then on, it's up to the caller to provide it when those classes get loaded.
+    */
+   @Nonnull Map<String, byte[]> takeModifiedInnerClasses();
+}
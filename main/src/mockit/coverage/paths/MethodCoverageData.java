@@ -4,13 +4,18 @@
  */
 package mockit.coverage.paths;
 
+import mockit.coverage.data.CoverageDataInput;
+import mockit.coverage.data.CoverageDataOutput;
 import mockit.coverage.paths.Node.Exit;
 
 import javax.annotation.Nonnull;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 public final class MethodCoverageData implements Serializable
 {
@@ -58,6 +63,57 @@ public final class MethodCoverageData implements Serializable
       }
    }
 
+   @Nonnull
+   static MethodCoverageData readFrom(@Nonnull CoverageDataInput input)
+   {
+      MethodCoverageData methodData = new MethodCoverageData();
+      methodData.firstLine = input.readVarInt();
+      methodData.lastLine = input.readVarInt();
+
+      int methodNodeCount = input.readVarInt();
+      Node[] allNodes = new Node[input.readVarInt()];
+
+      for (int i = 0; i < allNodes.length; i++) {
+         allNodes[i] = Node.readFrom(input);
+      }
+
+      methodData.nodes = new ArrayList<Node>(Arrays.asList(allNodes).subList(0, methodNodeCount));
+      methodData.paths = Path.readFrom(input, allNodes);
+      methodData.buildListOfNonShadowedPaths();
+      return methodData;
+   }
+
+   void writeTo(@Nonnull CoverageDataOutput output)
+   {
+      output.writeVarInt(firstLine);
+      output.writeVarInt(lastLine);
+
+      Map<Node, Integer> nodeIndexes = new IdentityHashMap<Node, Integer>();
+      List<Node> allNodes = new ArrayList<Node>(nodes);
+
+      for (Node node : nodes) {
+         nodeIndexes.put(node, nodeIndexes.size());
+      }
+
+      for (Path path : paths) {
+         for (Node node : path.nodes) {
+            if (!nodeIndexes.containsKey(node)) {
+               nodeIndexes.put(node, allNodes.size());
+               allNodes.add(node);
+            }
+         }
+      }
+
+      output.writeVarInt(nodes.size());
+      output.writeVarInt(allNodes.size());
+
+      for (Node node : allNodes) {
+         node.writeTo(output);
+      }
+
+      Path.writeTo(output, paths, nodeIndexes);
+   }
+
    public int getFirstLineInBody() { return firstLine; }
    public int getLastLineInBody() { return lastLine; }
 
@@ -8,6 +8,8 @@ import java.util.*;
 import java.io.*;
 import javax.annotation.*;
 
+import mockit.coverage.data.*;
+
 @SuppressWarnings("ClassReferencesSubclass")
 public class Node implements Serializable
 {
@@ -33,6 +35,58 @@ public class Node implements Serializable
    @Override
    public final String toString() { return getClass().getSimpleName() + ':' + line + '-' + segment; }
 
+   // Kinds of node, as written to coverage data files.
+   private static final int ENTRY = 0;
+   private static final int EXIT = 1;
+   private static final int BASIC_BLOCK = 2;
+   private static final int SIMPLE_FORK = 3;
+   private static final int MULTI_FORK = 4;
+   private static final int JOIN = 5;
+   private static final int GOTO = 6;
+
+   private int getKind()
+   {
+      if (this instanceof Entry) return ENTRY;
+      if (this instanceof Exit) return EXIT;
+      if (this instanceof BasicBlock) return BASIC_BLOCK;
+      if (this instanceof SimpleFork) return SIMPLE_FORK;
+      if (this instanceof MultiFork) return MULTI_FORK;
+      if (this instanceof Join) return JOIN;
+      return GOTO;
+   }
+
+   /**
+    * Writes the kind, line, and segment of this node; connections to other nodes are only needed while paths are
+    * being built or executed, so they aren't written.
+    */
+   final void writeTo(@Nonnull CoverageDataOutput output)
+   {
+      output.writeVarInt(getKind());
+      output.writeVarInt(line);
+      output.writeVarInt(segment);
+   }
+
+   @Nonnull
+   static Node readFrom(@Nonnull CoverageDataInput input)
+   {
+      int kind = input.readVarInt();
+      int line = input.readVarInt();
+      Node node;
+
+      switch (kind) {
+         case ENTRY: node = new Entry(line); break;
+         case EXIT: node = new Exit(line); break;
+         case BASIC_BLOCK: node = new BasicBlock(line); break;
+         case SIMPLE_FORK: node = new SimpleFork(line); break;
+         case MULTI_FORK: node = new MultiFork(line); break;
+         case JOIN: node = new Join(line); break;
+         default: node = new Goto(line);
+      }
+
+      node.segment = input.readVarInt();
+      return node;
+   }
+
    static final class Entry extends Node
    {
       private static final long serialVersionUID = -3065417917872259568L;
@@ -9,6 +9,8 @@ import java.util.*;
 import java.util.concurrent.atomic.*;
 import javax.annotation.*;
 
+import mockit.coverage.data.*;
+
 public final class Path implements Serializable
 {
    private static final long serialVersionUID = 8895491272907955543L;
@@ -31,8 +33,74 @@ public final class Path implements Serializable
       nodes.addAll(sharedSubPath.nodes);
    }
 
+   private Path(boolean shadowed, int executionCount)
+   {
+      this.shadowed = shadowed;
+      this.executionCount.set(executionCount);
+   }
+
    void addNode(@Nonnull Node node) { nodes.add(node); }
 
+   static void writeTo(
+      @Nonnull CoverageDataOutput output, @Nonnull List<Path> paths, @Nonnull Map<Node, Integer> nodeIndexes)
+   {
+      Map<Path, Integer> pathIndexes = new IdentityHashMap<Path, Integer>();
+
+      for (Path path : paths) {
+         pathIndexes.put(path, pathIndexes.size());
+      }
+
+      output.writeVarInt(paths.size());
+
+      for (Path path : paths) {
+         Integer shadowPathIndex = path.shadowPath == null ? null : pathIndexes.get(path.shadowPath);
+
+         output.writeBoolean(path.shadowed);
+         output.writeVarInt(path.executionCount.get());
+         output.writeVarInt(shadowPathIndex == null ? 0 : shadowPathIndex + 1);
+         output.writeVarInt(path.nodes.size());
+
+         for (Node node : path.nodes) {
+            output.writeVarInt(nodeIndexes.get(node));
+         }
+      }
+   }
+
+   @Nonnull
+   static List<Path> readFrom(@Nonnull CoverageDataInput input, @Nonnull Node[] nodes)
+   {
+      int pathCount = input.readVarInt();
+      List<Path> paths = new ArrayList<Path>(pathCount);
+      int[] shadowPathIndexes = new int[pathCount];
+
+      for (int i = 0; i < pathCount; i++) {
+         Path path = new Path(input.readBoolean(), input.readVarInt());
+         shadowPathIndexes[i] = input.readVarInt() - 1;
+
+         for (int nodeCount = input.readVarInt(); nodeCount > 0; nodeCount--) {
+            path.addNode(nodes[input.readVarInt()]);
+         }
+
+         Node lastNode = path.nodes.get(path.nodes.size() - 1);
+
+         if (lastNode instanceof Node.Exit) {
+            ((Node.Exit) lastNode).paths.add(path);
+         }
+
+         paths.add(path);
+      }
+
+      for (int i = 0; i < pathCount; i++) {
+         int shadowPathIndex = shadowPathIndexes[i];
+
+         if (shadowPathIndex >= 0) {
+            paths.get(i).shadowPath = paths.get(shadowPathIndex);
+         }
+      }
+
+      return paths;
+   }
+
    int countExecutionIfAllNodesWereReached(@Nonnull List<Node> nodesReached)
    {
       boolean allNodesReached = nodes.equals(nodesReached);
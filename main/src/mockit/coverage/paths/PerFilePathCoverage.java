@@ -18,31 +18,129 @@ public final class PerFilePathCoverage implements PerFileCoverage
    @Nonnull
    public final Map<Integer, MethodCoverageData> firstLineToMethodData = new HashMap<Integer, MethodCoverageData>();
 
+   // Used for fast indexed access from instrumented code, assigned while classes are being instrumented:
+   @Nonnull private transient Map<Integer, Integer> firstLineToMethodIndex;
+   @Nonnull private transient MethodCoverageData[] indexedMethodData;
+
    // Computed on demand:
    private transient int totalPaths;
    private transient int coveredPaths;
 
-   public PerFilePathCoverage() { initializeCache(); }
+   public PerFilePathCoverage()
+   {
+      initializeIndex();
+      initializeCache();
+   }
+
+   private void initializeIndex()
+   {
+      firstLineToMethodIndex = new HashMap<Integer, Integer>();
+      indexedMethodData = new MethodCoverageData[0];
+   }
+
    private void initializeCache() { totalPaths = coveredPaths = -1; }
 
    private void readObject(@Nonnull ObjectInputStream in) throws IOException, ClassNotFoundException
    {
+      initializeIndex();
       initializeCache();
       in.defaultReadObject();
    }
 
+   @Nonnull
+   public static PerFilePathCoverage readFrom(@Nonnull CoverageDataInput input)
+   {
+      PerFilePathCoverage pathCoverage = new PerFilePathCoverage();
+
+      for (int methodCount = input.readVarInt(); methodCount > 0; methodCount--) {
+         MethodCoverageData methodData = MethodCoverageData.readFrom(input);
+         pathCoverage.firstLineToMethodData.put(methodData.getFirstLineInBody(), methodData);
+      }
+
+      return pathCoverage;
+   }
+
+   public void writeTo(@Nonnull CoverageDataOutput output)
+   {
+      output.writeVarInt(firstLineToMethodData.size());
+
+      for (MethodCoverageData methodData : firstLineToMethodData.values()) {
+         methodData.writeTo(output);
+      }
+   }
+
+   /**
+    * Returns the index to be used by instrumented code when registering the execution of nodes in the method whose
+    * body starts at the given line; the same index is returned for a method that gets instrumented again.
+    */
+   public int getOrAssignMethodIndex(int firstLineInBody)
+   {
+      Integer methodIndex = firstLineToMethodIndex.get(firstLineInBody);
+
+      if (methodIndex == null) {
+         methodIndex = firstLineToMethodIndex.size();
+         firstLineToMethodIndex.put(firstLineInBody, methodIndex);
+      }
+
+      return methodIndex;
+   }
+
+   /**
+    * Writes the method indexes assigned so far, in the same order as they were assigned.
+    */
+   public void writeMethodIndexesTo(@Nonnull CoverageDataOutput output)
+   {
+      int[] firstLinesByMethodIndex = new int[firstLineToMethodIndex.size()];
+
+      for (Map.Entry<Integer, Integer> firstLineAndIndex : firstLineToMethodIndex.entrySet()) {
+         firstLinesByMethodIndex[firstLineAndIndex.getValue()] = firstLineAndIndex.getKey();
+      }
+
+      output.writeIntArray(firstLinesByMethodIndex);
+   }
+
+   public void readMethodIndexesFrom(@Nonnull CoverageDataInput input)
+   {
+      for (int firstLineInBody : input.readIntArray()) {
+         getOrAssignMethodIndex(firstLineInBody);
+      }
+
+      for (MethodCoverageData methodData : new ArrayList<MethodCoverageData>(firstLineToMethodData.values())) {
+         addMethod(methodData);
+      }
+   }
+
    public void addMethod(@Nonnull MethodCoverageData methodData)
    {
       int firstLineInBody = methodData.getFirstLineInBody();
       firstLineToMethodData.put(firstLineInBody, methodData);
+
+      Integer methodIndex = firstLineToMethodIndex.get(firstLineInBody);
+
+      if (methodIndex != null) {
+         MethodCoverageData[] methods = indexedMethodData;
+
+         if (methodIndex >= methods.length) {
+            MethodCoverageData[] newMethods = new MethodCoverageData[methodIndex + 8];
+            System.arraycopy(methods, 0, newMethods, 0, methods.length);
+            methods = newMethods;
+         }
+
+         methods[methodIndex] = methodData;
+         indexedMethodData = methods;
+      }
    }
 
-   public int registerExecution(int firstLineInMethodBody, int node)
+   public int registerExecution(int methodIndex, int node)
    {
-      MethodCoverageData methodData = firstLineToMethodData.get(firstLineInMethodBody);
+      MethodCoverageData[] methods = indexedMethodData;
 
-      if (methodData != null) {
-         return methodData.markNodeAsReached(node);
+      if (methodIndex < methods.length) {
+         MethodCoverageData methodData = methods[methodIndex];
+
+         if (methodData != null) {
+            return methodData.markNodeAsReached(node);
+         }
       }
 
       return -1;
@@ -4,23 +4,35 @@
  */
 package mockit.coverage.primepaths;
 
+import mockit.coverage.data.CoverageDataInput;
+import mockit.coverage.data.CoverageDataOutput;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 public final class PPMethodCoverageData implements Serializable
 {
    private static final long serialVersionUID = -5073393714435522417L;
+   private static final int[] NO_TRY_BLOCKS = {};
 
    @Nonnull private List<PPNode> nodes;
    private int firstLine;
    private int lastLine;
+   private boolean tooComplex;
+
+   // Triples of node indexes, as given by PPNodeBuilder#getTryBlockNodeIndexes().
+   @Nonnull private int[] tryBlocks;
 
-   // Helper fields used during node building and path execution:
-   @Nonnull private final transient ThreadLocal<List<PPNode>> testPath;
-   @Nonnull private final transient ThreadLocal<Integer> previousNodeIndex;
+   // Helper fields used during path execution:
+   @Nullable private transient volatile PPathMatcher pathMatcher;
+   @Nonnull private final transient ThreadLocal<ExecutionStack> executionStack;
 
    @Nonnull public List<PPath> paths;
    @Nonnull private List<PPath> nonShadowedPaths;
@@ -30,9 +42,8 @@ public final class PPMethodCoverageData implements Serializable
       nodes = Collections.emptyList();
       paths = Collections.emptyList();
       nonShadowedPaths = Collections.emptyList();
-      testPath = new ThreadLocal<List<PPNode>>();
-      previousNodeIndex = new ThreadLocal<Integer>();
-      clearNodes();
+      tryBlocks = NO_TRY_BLOCKS;
+      executionStack = new ThreadLocal<ExecutionStack>();
    }
 
    public void buildPaths(int lastExecutableLine, @Nonnull PPNodeBuilder nodeBuilder)
@@ -41,7 +52,17 @@ public final class PPMethodCoverageData implements Serializable
       lastLine = lastExecutableLine;
 
       nodes = nodeBuilder.nodes;
-      paths = PPathBuilder.buildPaths(nodes);
+      tryBlocks = nodeBuilder.getTryBlockNodeIndexes();
+      List<PPath> primePaths = PPathBuilder.buildPaths(nodes);
+
+      if (primePaths == null) {
+         tooComplex = true;
+         paths = Collections.emptyList();
+      }
+      else {
+         paths = primePaths;
+      }
+
       buildListOfNonShadowedPaths();
    }
 
@@ -56,62 +77,301 @@ public final class PPMethodCoverageData implements Serializable
       }
    }
 
+   @Nonnull
+   static PPMethodCoverageData readFrom(@Nonnull CoverageDataInput input)
+   {
+      PPMethodCoverageData methodData = new PPMethodCoverageData();
+      methodData.firstLine = input.readVarInt();
+      methodData.lastLine = input.readVarInt();
+      methodData.tooComplex = input.readBoolean();
+
+      int methodNodeCount = input.readVarInt();
+      PPNode[] allNodes = new PPNode[input.readVarInt()];
+
+      for (int i = 0; i < allNodes.length; i++) {
+         allNodes[i] = PPNode.readFrom(input);
+      }
+
+      methodData.nodes = new ArrayList<PPNode>(Arrays.asList(allNodes).subList(0, methodNodeCount));
+      methodData.paths = PPath.readFrom(input, allNodes);
+      methodData.tryBlocks = input.readIntArray();
+      methodData.buildListOfNonShadowedPaths();
+      return methodData;
+   }
+
+   void writeTo(@Nonnull CoverageDataOutput output)
+   {
+      output.writeVarInt(firstLine);
+      output.writeVarInt(lastLine);
+      output.writeBoolean(tooComplex);
+
+      Map<PPNode, Integer> nodeIndexes = new IdentityHashMap<PPNode, Integer>();
+      List<PPNode> allNodes = new ArrayList<PPNode>(nodes);
+
+      for (PPNode node : nodes) {
+         nodeIndexes.put(node, nodeIndexes.size());
+      }
+
+      for (PPath path : paths) {
+         for (PPNode node : path.nodes) {
+            if (!nodeIndexes.containsKey(node)) {
+               nodeIndexes.put(node, allNodes.size());
+               allNodes.add(node);
+            }
+         }
+      }
+
+      output.writeVarInt(nodes.size());
+      output.writeVarInt(allNodes.size());
+
+      for (PPNode node : allNodes) {
+         node.writeTo(output);
+      }
+
+      PPath.writeTo(output, paths, nodeIndexes);
+      output.writeIntArray(tryBlocks);
+   }
+
    public int getFirstLineInBody() { return firstLine; }
+
+   /**
+    * Indicates whether the method had too many prime paths (more than the value of the
+    * "<tt>jmockit-coverage-maxPrimePaths</tt>" system property, 1000 by default) for them to be enumerated.
+    * Such methods have no paths to be covered.
+    */
+   public boolean isTooComplex() { return tooComplex; }
+   public static int getMaxPrimePaths() { return PPathBuilder.MAX_PRIME_PATHS; }
    public int getLastLineInBody() { return lastLine; }
 
-   public int markNodeAsReached(int nodeIndex)
+   /**
+    * State of the prime path matching for a single execution (invocation frame) of the method in a thread.
+    * Only the current automaton state and the paths matched so far are kept, rather than the sequence of nodes reached.
+    */
+   private static final class ExecutionState
    {
-      if (nodeIndex == 0) {
-         clearNodes();
+      int lastNodeIndex;
+      int lastSymbol = PPathMatcher.IGNORED;
+      int automatonState;
+      boolean startedAtEntry;
+
+      // The paths matched in the current execution are those whose stamp equals the current execution number.
+      @Nonnull final int[] pathStamps;
+      @Nonnull final int[] matchedPaths;
+      int matchedPathCount;
+      int executionNumber = 1;
+
+      ExecutionState(int pathCount)
+      {
+         pathStamps = new int[pathCount];
+         matchedPaths = new int[pathCount];
       }
 
-      PPNode node = nodes.get(nodeIndex);
-      List<PPNode> testPathNodes = testPath.get();
+      void restart()
+      {
+         lastNodeIndex = 0;
+         lastSymbol = PPathMatcher.IGNORED;
+         automatonState = 0;
+         startedAtEntry = false;
+         matchedPathCount = 0;
+         executionNumber++;
+      }
 
-      if (node.isEntry() || node.getIncomingNodes().size() > 0) {
-         PPNode n = node.isSimplified() ? node.subsumedBy : node;
-         n.setReached(Boolean.TRUE);
-         if (testPathNodes.size() == 0 || testPathNodes.get(testPathNodes.size()-1) != n)
-            testPathNodes.add(n);
-/*
-         if (!(node instanceof PPNode.Fork)) {
-            PPNode next = node.getNextConsecutiveNode();
-            if (next != null) {
-               next.setReached(Boolean.TRUE);
-               if (testPathNodes.size() == 0 || testPathNodes.get(testPathNodes.size()-1) != next)
-                  testPathNodes.add(next);
+      void addMatchedPath(int pathIndex)
+      {
+         if (pathStamps[pathIndex] != executionNumber) {
+            pathStamps[pathIndex] = executionNumber;
+            matchedPaths[matchedPathCount++] = pathIndex;
+         }
+      }
+   }
+
+   /**
+    * The executions of the method which are currently active in a thread, one per invocation frame, so that recursive
+    * or otherwise reentrant calls don't interfere with the trace of the calling execution.
+    * <p/>
+    * Frames popped when their execution ends are kept for reuse by later executions.
+    * An execution which terminates abruptly, because of an exception thrown from a method it called or from a
+    * <tt>throw</tt> inside a try block which doesn't catch it, leaves its frame on the stack; such frames are discarded
+    * when an exception handler is reached in a calling execution of the same method.
+    * Otherwise (when the exception is caught in some other method), the number of frames is still bounded, with the
+    * oldest one being discarded when the bound is exceeded.
+    */
+   private static final class ExecutionStack
+   {
+      private static final int MAX_DEPTH = 256;
+
+      private final int pathCount;
+      @Nonnull private ExecutionState[] frames;
+      private int depth;
+
+      ExecutionStack(int pathCount)
+      {
+         this.pathCount = pathCount;
+         frames = new ExecutionState[4];
+      }
+
+      @Nonnull
+      ExecutionState push()
+      {
+         ExecutionState[] currentFrames = frames;
+
+         if (depth == currentFrames.length) {
+            if (depth == MAX_DEPTH) {
+               ExecutionState oldestFrame = currentFrames[0];
+               System.arraycopy(currentFrames, 1, currentFrames, 0, depth - 1);
+               currentFrames[depth - 1] = oldestFrame;
+               depth--;
             }
+            else {
+               frames = currentFrames = Arrays.copyOf(currentFrames, Math.min(2 * depth, MAX_DEPTH));
+            }
+         }
+
+         ExecutionState frame = currentFrames[depth];
+
+         if (frame == null) {
+            frame = new ExecutionState(pathCount);
+            currentFrames[depth] = frame;
          }
-*/
+
+         depth++;
+         frame.restart();
+         return frame;
       }
 
-      int previousExecutionCount = -1;
-      if (node.isExit()) {
-         PPNode start = testPathNodes.get(0);
-         if (start.isEntry() && start.getPrimePaths() != null) {
+      @Nullable ExecutionState top() { return depth == 0 ? null : frames[depth - 1]; }
+      void pop() { depth--; }
+   }
+
+   /**
+    * Finds the execution in which an exception handler was reached, discarding the frames of any executions above it,
+    * which were terminated by the exception.
+    * This is the most recent execution whose last reached node is inside a try block having the given handler, since
+    * the exception could only propagate out of the more recent ones if they were outside such a try block.
+    */
+   @Nullable
+   private static ExecutionState unwindToExecutionCatchingException(
+      @Nonnull PPathMatcher matcher, @Nonnull ExecutionStack stack, int handlerNodeIndex)
+   {
+      for (int frameIndex = stack.depth - 1; frameIndex >= 0; frameIndex--) {
+         ExecutionState frame = stack.frames[frameIndex];
 
-            for (PPath path : start.getPrimePaths()) {
-               int previousExecutionCountPath = path.countExecutionIfAllNodesWereReached(testPathNodes);
+         if (matcher.isInsideTryBlock(frame.lastNodeIndex, handlerNodeIndex)) {
+            stack.depth = frameIndex + 1;
+            return frame;
+         }
+      }
+
+      return stack.top();
+   }
 
-               if (previousExecutionCountPath == 0) {
-                  previousExecutionCount = 0;
-               }
+   // The automaton matches all paths of the method; these are the same paths which PPathBuilder assigns as the prime
+   // paths of the entry node, the only ones that were searched for when an execution starting at the entry exited.
+   @Nullable
+   private PPathMatcher getPathMatcher()
+   {
+      PPathMatcher matcher = pathMatcher;
+
+      if (matcher == null && !paths.isEmpty()) {
+         synchronized (this) {
+            matcher = pathMatcher;
+
+            if (matcher == null) {
+               matcher = new PPathMatcher(nodes, paths, tryBlocks);
+               pathMatcher = matcher;
             }
          }
-         return previousExecutionCount;
       }
 
-      return -1;
+      return matcher;
    }
 
-   private void clearNodes()
+   void writePathMatcherTo(@Nonnull CoverageDataOutput output)
    {
-      for (PPNode node : nodes) {
-         node.setReached(null);
+      PPathMatcher matcher = getPathMatcher();
+      output.writeBoolean(matcher != null);
+
+      if (matcher != null) {
+         matcher.writeTo(output);
+      }
+   }
+
+   void readPathMatcherFrom(@Nonnull CoverageDataInput input)
+   {
+      if (input.readBoolean()) {
+         pathMatcher = PPathMatcher.readFrom(input);
+      }
+   }
+
+   public int markNodeAsReached(int nodeIndex)
+   {
+      PPathMatcher matcher = getPathMatcher();
+
+      if (matcher == null) {
+         return -1;
+      }
+
+      ExecutionStack stack = executionStack.get();
+
+      if (stack == null) {
+         stack = new ExecutionStack(paths.size());
+         executionStack.set(stack);
+      }
+
+      ExecutionState state;
+
+      if (nodeIndex == 0) {
+         state = stack.push();
+      }
+      else if (matcher.isExceptionHandler(nodeIndex)) {
+         state = unwindToExecutionCatchingException(matcher, stack, nodeIndex);
+      }
+      else {
+         state = stack.top();
+      }
+
+      if (state == null) {
+         return -1;
+      }
+
+      state.lastNodeIndex = nodeIndex;
+      int symbol = matcher.nodeSymbols[nodeIndex];
+
+      if (symbol != PPathMatcher.IGNORED && symbol != state.lastSymbol) {
+         if (state.lastSymbol == PPathMatcher.IGNORED) {
+            state.startedAtEntry = symbol == matcher.nodeSymbols[0];
+         }
+
+         state.lastSymbol = symbol;
+         state.automatonState = matcher.nextState(state.automatonState, symbol);
+
+         for (int pathIndex : matcher.getMatchedPaths(state.automatonState)) {
+            state.addMatchedPath(pathIndex);
+         }
+      }
+
+      if (!matcher.endsExecution(nodeIndex)) {
+         return -1;
+      }
+
+      int previousExecutionCount = state.startedAtEntry ? countExecutionsOfMatchedPaths(state) : -1;
+      stack.pop();
+      return previousExecutionCount;
+   }
+
+   private int countExecutionsOfMatchedPaths(@Nonnull ExecutionState state)
+   {
+      int previousExecutionCount = -1;
+
+      for (int i = 0; i < state.matchedPathCount; i++) {
+         PPath path = paths.get(state.matchedPaths[i]);
+
+         if (path.countExecution() == 0) {
+            previousExecutionCount = 0;
+         }
       }
 
-      testPath.set(new ArrayList<PPNode>());
-      previousNodeIndex.set(0);
+      return previousExecutionCount;
    }
 
    @Nonnull public List<PPath> getPaths() { return nonShadowedPaths; }
@@ -153,7 +413,7 @@ public final class PPMethodCoverageData implements Serializable
 
    public void reset()
    {
-      clearNodes();
+      executionStack.remove();
 
       for (PPath path : paths) {
          path.reset();
@@ -4,6 +4,9 @@
  */
 package mockit.coverage.primepaths;
 
+import mockit.coverage.data.CoverageDataInput;
+import mockit.coverage.data.CoverageDataOutput;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.Serializable;
@@ -50,6 +53,8 @@ public class PPNode implements Serializable
 
    public boolean isGoto() { return false; }
 
+   public boolean isReturn() { return false; }
+
    public boolean isExit() {
       return nextConsecutiveNode == null && jumpNodes == null;
    }
@@ -76,7 +81,6 @@ public class PPNode implements Serializable
 
    private static final long serialVersionUID = 7521062699264845946L;
 
-   @Nonnull private final transient ThreadLocal<Boolean> reached = new ThreadLocal<Boolean>();
    public final int line;
    protected int segment;
    protected List<LineSegment> extraLineSegments = new ArrayList<LineSegment>();
@@ -182,9 +186,6 @@ public class PPNode implements Serializable
 
    public List<LineSegment> getExtraLineSegments() { return this.extraLineSegments; }
 
-   final void setReached(@Nullable Boolean reached) { this.reached.set(reached); }
-   final boolean wasReached() { return reached.get() != null; }
-
    @Override
    public final String toString() {
       String baseName = getClass().getName();
@@ -198,6 +199,69 @@ public class PPNode implements Serializable
       return MessageFormat.format("{0} -> {1}:{2}-{3}", index, baseName, line, segment);
    }
 
+   // Kinds of node, as written to coverage data files.
+   private static final int ENTRY = 0;
+   private static final int RETURN_EXIT = 1;
+   private static final int THROW_EXIT = 2;
+   private static final int FORK = 3;
+   private static final int JOIN = 4;
+   private static final int BASIC_BLOCK = 5;
+   private static final int GOTO = 6;
+
+   private int getKind() {
+      if (this instanceof Entry) return ENTRY;
+      if (this instanceof Exit) return isReturn() ? RETURN_EXIT : THROW_EXIT;
+      if (this instanceof Fork) return FORK;
+      if (this instanceof Join) return JOIN;
+      if (this instanceof BasicBlock) return BASIC_BLOCK;
+      return GOTO;
+   }
+
+   /**
+    * Writes the kind, index, and line segments of this node; connections to other nodes are only needed while paths
+    * are being built or executed, so they aren't written.
+    */
+   final void writeTo(@Nonnull CoverageDataOutput output) {
+      output.writeVarInt(getKind());
+      output.writeVarInt(index);
+      output.writeVarInt(line);
+      output.writeVarInt(segment);
+      output.writeVarInt(extraLineSegments.size());
+
+      for (LineSegment lineSegment : extraLineSegments) {
+         output.writeVarInt(lineSegment.line);
+         output.writeVarInt(lineSegment.segment);
+      }
+   }
+
+   @Nonnull
+   static PPNode readFrom(@Nonnull CoverageDataInput input) {
+      int kind = input.readVarInt();
+      int index = input.readVarInt();
+      int line = input.readVarInt();
+      PPNode node;
+
+      switch (kind) {
+         case ENTRY: node = new Entry(line); break;
+         case RETURN_EXIT: node = new Exit(line, false); break;
+         case THROW_EXIT: node = new Exit(line, true); break;
+         case FORK: node = new Fork(line); break;
+         case JOIN: node = new Join(line); break;
+         case BASIC_BLOCK: node = new BasicBlock(line); break;
+         default: node = new Goto(line);
+      }
+
+      node.index = index;
+      node.segment = input.readVarInt();
+
+      for (int segmentCount = input.readVarInt(); segmentCount > 0; segmentCount--) {
+         int segmentLine = input.readVarInt();
+         node.extraLineSegments.add(new LineSegment(segmentLine, input.readVarInt()));
+      }
+
+      return node;
+   }
+
    public void addIncomingNode(PPNode node) {
       incomingNodes.add(node);
    }
@@ -243,12 +307,20 @@ public class PPNode implements Serializable
    }
 
    public static class Exit extends PPNode {
+      private final boolean throwing;
+
       public Exit(int line) {
+         this(line, true);
+      }
+
+      public Exit(int line, boolean throwing) {
          super(line);
+         this.throwing = throwing;
          setSubsumable(false);
       }
 
       public boolean isExit() {  return true; }
+      public boolean isReturn() {  return !throwing; }
       public boolean isRegular() {  return true; }
    }
 
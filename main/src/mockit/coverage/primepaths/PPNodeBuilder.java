@@ -21,6 +21,7 @@ public final class PPNodeBuilder
    @Nonnull private final Map<Label, List<PPNode>> jumpTargetToNodes = new LinkedHashMap<Label, List<PPNode>>();
    @Nonnull private final Map<Label, List<PPNode>> gotoTargetToSuccessors = new LinkedHashMap<Label, List<PPNode>>();
    @Nonnull private final Map<Label, PPNode> labelToNode = new LinkedHashMap<Label, PPNode>();
+   @Nonnull private final List<Label[]> tryBlocks = new ArrayList<Label[]>();
    private boolean insideTryCatch = false;
 
    private int potentiallyTrivialJump;
@@ -57,9 +58,9 @@ public final class PPNodeBuilder
       addNewNode(entryNode);
    }
 
-   public int handleExit(int exitLine)
+   public int handleExit(int exitLine, boolean throwing)
    {
-      PPNode newNode = new PPNode.Exit(exitLine);
+      PPNode newNode = new PPNode.Exit(exitLine, throwing);
       connectNode(newNode);
 
       currentNode = newNode;
@@ -166,6 +167,8 @@ public final class PPNodeBuilder
    }
 
    public int handleTryCatch(int line, Label start, Label end, Label handler, String type) {
+      tryBlocks.add(new Label[] {start, end, handler});
+
       if (type != null) {
          insideTryCatch = true;
          try {
@@ -181,6 +184,40 @@ public final class PPNodeBuilder
       return -1;
    }
 
+   /**
+    * Returns the try blocks of the method as triples of node indexes: the first node inside the block, the first node
+    * after it, and the first node of its exception handler.
+    * Since nodes are created in the order of their instructions, a node is inside a try block if its index is in the
+    * range given by the first two.
+    * Blocks with labels for which no node was created are left out.
+    */
+   @Nonnull
+   int[] getTryBlockNodeIndexes()
+   {
+      Map<PPNode, Integer> nodeIndexes = new IdentityHashMap<PPNode, Integer>();
+
+      for (int i = 0, n = nodes.size(); i < n; i++) {
+         nodeIndexes.put(nodes.get(i), i);
+      }
+
+      int[] tryBlockNodeIndexes = new int[3 * tryBlocks.size()];
+      int i = 0;
+
+      for (Label[] tryBlock : tryBlocks) {
+         Integer start = nodeIndexes.get(labelToNode.get(tryBlock[0]));
+         Integer end = nodeIndexes.get(labelToNode.get(tryBlock[1]));
+         Integer handler = nodeIndexes.get(labelToNode.get(tryBlock[2]));
+
+         if (start != null && end != null && handler != null) {
+            tryBlockNodeIndexes[i++] = start;
+            tryBlockNodeIndexes[i++] = end;
+            tryBlockNodeIndexes[i++] = handler;
+         }
+      }
+
+      return Arrays.copyOf(tryBlockNodeIndexes, i);
+   }
+
    private boolean isNewLineTarget(@Nonnull Label basicBlock)
    {
       return !jumpTargetToNodes.containsKey(basicBlock) && !gotoTargetToSuccessors.containsKey(basicBlock);
@@ -4,10 +4,16 @@
  */
 package mockit.coverage.primepaths;
 
+import mockit.coverage.data.CoverageDataInput;
+import mockit.coverage.data.CoverageDataOutput;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -33,49 +39,70 @@ public final class PPath implements Serializable
       nodes.addAll(sharedSubPath.nodes);
    }
 
+   private PPath(boolean shadowed, int executionCount)
+   {
+      this.shadowed = shadowed;
+      this.executionCount.set(executionCount);
+   }
+
    void addNode(@Nonnull PPNode node) { nodes.add(node); }
 
-   int countExecutionIfAllNodesWereReached(@Nonnull List<PPNode> nodesReached)
+   static void writeTo(
+      @Nonnull CoverageDataOutput output, @Nonnull List<PPath> paths, @Nonnull Map<PPNode, Integer> nodeIndexes)
    {
-      PPNode startPath = this.nodes.get(0);
-      int posReached = nodesReached.indexOf(startPath);
-      if (posReached < 0) return -1;
-
-      boolean allNodesReached;
-
-      int posPath = 0;
-      while (true) {
-         if (nodesReached.get(posReached) != this.nodes.get(posPath)) {
-            while (nodesReached.get(posReached) != startPath) {
-               posReached++;
-               if (posReached >= nodesReached.size()) break;
-            }
-            if (posReached >= nodesReached.size()) {
-               allNodesReached = false;
-               break;
-            }
-            posPath = 0;
-         }
-         posPath++;
-         if (posPath == this.nodes.size()) {
-            allNodesReached = true;
-            break;
+      Map<PPath, Integer> pathIndexes = new IdentityHashMap<PPath, Integer>();
+
+      for (PPath path : paths) {
+         pathIndexes.put(path, pathIndexes.size());
+      }
+
+      output.writeVarInt(paths.size());
+
+      for (PPath path : paths) {
+         Integer shadowPathIndex = path.shadowPath == null ? null : pathIndexes.get(path.shadowPath);
+
+         output.writeBoolean(path.shadowed);
+         output.writeVarInt(path.executionCount.get());
+         output.writeVarInt(shadowPathIndex == null ? 0 : shadowPathIndex + 1);
+         output.writeVarInt(path.nodes.size());
+
+         for (PPNode node : path.nodes) {
+            output.writeVarInt(nodeIndexes.get(node));
          }
-         posReached++;
-         if (posReached == nodesReached.size()) {
-            allNodesReached = false;
-            break;
+      }
+   }
+
+   @Nonnull
+   static List<PPath> readFrom(@Nonnull CoverageDataInput input, @Nonnull PPNode[] nodes)
+   {
+      int pathCount = input.readVarInt();
+      List<PPath> paths = new ArrayList<PPath>(pathCount);
+      int[] shadowPathIndexes = new int[pathCount];
+
+      for (int i = 0; i < pathCount; i++) {
+         PPath path = new PPath(input.readBoolean(), input.readVarInt());
+         shadowPathIndexes[i] = input.readVarInt() - 1;
+
+         for (int nodeCount = input.readVarInt(); nodeCount > 0; nodeCount--) {
+            path.addNode(nodes[input.readVarInt()]);
          }
+
+         paths.add(path);
       }
 
+      for (int i = 0; i < pathCount; i++) {
+         int shadowPathIndex = shadowPathIndexes[i];
 
-      if (allNodesReached) {
-         return executionCount.getAndIncrement();
+         if (shadowPathIndex >= 0) {
+            paths.get(i).shadowPath = paths.get(shadowPathIndex);
+         }
       }
 
-      return -1;
+      return paths;
    }
 
+   int countExecution() { return executionCount.getAndIncrement(); }
+
    public boolean isShadowed() { return shadowed; }
    @Nonnull public List<PPNode> getNodes() { return nodes; }
 
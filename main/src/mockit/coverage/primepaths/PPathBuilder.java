@@ -5,16 +5,30 @@
 package mockit.coverage.primepaths;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 
 final class PPathBuilder {
+  static final int MAX_PRIME_PATHS = Integer.getInteger("jmockit-coverage-maxPrimePaths", 1000);
+
+  // Bounds the work spent enumerating simple paths, which can be much more numerous than the resulting prime paths.
+  private static final long MAX_SIMPLE_PATHS = 20L * MAX_PRIME_PATHS;
+
   private PPathBuilder() {
   }
 
-  @Nonnull
+  /**
+   * Builds the prime paths for the given method nodes.
+   *
+   * @return the prime paths found, or <tt>null</tt> if the method has more than {@link #MAX_PRIME_PATHS} of them
+   */
+  @Nullable
   static List<PPath> buildPaths(@Nonnull List<PPNode> origNodes) {
     if (origNodes.size() <= 1) return Collections.emptyList();
 
@@ -28,6 +42,8 @@ final class PPathBuilder {
 
     List<PPath> paths = getPrimePaths(nodes);
 
+    if (paths == null) return null;
+
     if (paths.size() == 1) return new ArrayList<PPath>();
 
     PPNode entry = nodes.get(0);
@@ -87,46 +103,155 @@ final class PPathBuilder {
     return nodes;
   }
 
-  private static List<PPath> getPrimePaths(List<PPNode> nodes) {
-    List<PPath> simplePaths = new ArrayList<PPath>();
-    for (PPNode node : nodes) {
-      simplePaths.add(new PPath(node));
+  /**
+   * Enumerates prime paths depth-first over a compact encoding of the graph, where each node is an <tt>int</tt> and
+   * the nodes in the current path are tracked in a single bit set.
+   * The resulting paths are ordered by length, and then by the order of nodes and successors; this is the same order
+   * a breadth-first extension of simple paths would produce.
+   */
+  @Nullable
+  private static List<PPath> getPrimePaths(@Nonnull List<PPNode> nodes) {
+    CompactGraph graph = new CompactGraph(nodes);
+    int nodeCount = graph.nodes.size();
+    List<List<PPath>> primePathsByLength = new ArrayList<List<PPath>>();
+
+    int[] path = new int[nodeCount + 1];
+    int[] nextSuccessor = new int[nodeCount + 1];
+    boolean[] extended = new boolean[nodeCount + 1];
+    BitSet nodesInPath = new BitSet(nodeCount);
+    long simplePathCount = 0;
+    int primePathCount = 0;
+
+    for (int start = 0, n = nodes.size(); start < n; start++) {
+      int depth = 0;
+      path[0] = start;
+      nextSuccessor[0] = 0;
+      extended[0] = false;
+      nodesInPath.set(start);
+
+      while (depth >= 0) {
+        int node = path[depth];
+        boolean cycle = depth > 0 && node == start;
+        int[] successors = graph.successors[node];
+
+        if (!cycle && nextSuccessor[depth] < successors.length) {
+          int successor = successors[nextSuccessor[depth]++];
+
+          if (!nodesInPath.get(successor) || successor == start) {
+            if (++simplePathCount > MAX_SIMPLE_PATHS) return null;
+
+            extended[depth] = true;
+            depth++;
+            path[depth] = successor;
+            nextSuccessor[depth] = 0;
+            extended[depth] = false;
+
+            if (successor != start) nodesInPath.set(successor);
+          }
+
+          continue;
+        }
+
+        if (!extended[depth] && graph.isPrime(path, depth + 1, nodesInPath)) {
+          if (++primePathCount > MAX_PRIME_PATHS) return null;
+
+          while (primePathsByLength.size() <= depth) primePathsByLength.add(new ArrayList<PPath>());
+          primePathsByLength.get(depth).add(graph.createPath(path, depth + 1));
+        }
+
+        if (!cycle) nodesInPath.clear(node);
+        depth--;
+      }
     }
 
-    List<PPath> primePaths = new ArrayList<PPath>();
-    do {
-      simplePaths = getPrimePathsFromSimplePaths(simplePaths, primePaths);
-    } while (simplePaths.size() > 0);
+    List<PPath> primePaths = new ArrayList<PPath>(primePathCount);
+
+    for (List<PPath> primePathsOfSameLength : primePathsByLength) {
+      primePaths.addAll(primePathsOfSameLength);
+    }
 
     return primePaths;
   }
 
-  private static List<PPath> getPrimePathsFromSimplePaths(List<PPath> simplePaths, List<PPath> primePaths) {
-    List<PPath> newSimplePaths = new ArrayList<PPath>();
-    for (PPath spath : simplePaths) {
-      PPNode lastNode = spath.getLastNode();
-      List<PPNode> nextNodes = new ArrayList<PPNode>();
-      if (lastNode.nextConsecutiveNode != null)
-        nextNodes.add(lastNode.nextConsecutiveNode);
-      if (lastNode.jumpNodes != null)
-        nextNodes.addAll(lastNode.jumpNodes);
-      checkNewSimplePaths(primePaths, newSimplePaths, spath, nextNodes);
+  private static final class CompactGraph {
+    @Nonnull final List<PPNode> nodes;
+    @Nonnull final int[][] successors;
+    @Nonnull final int[][] incomingNodes;
+
+    CompactGraph(@Nonnull List<PPNode> simplifiedNodes) {
+      nodes = new ArrayList<PPNode>(simplifiedNodes);
+      Map<PPNode, Integer> nodeIndexes = new IdentityHashMap<PPNode, Integer>();
+
+      for (int i = 0, n = nodes.size(); i < n; i++) {
+        PPNode node = nodes.get(i);
+        if (!nodeIndexes.containsKey(node)) nodeIndexes.put(node, i);
+      }
+
+      List<int[]> successorList = new ArrayList<int[]>();
+
+      // Successors not in the simplified graph still take part in paths, so they get indexes as they are found.
+      for (int i = 0; i < nodes.size(); i++) {
+        PPNode node = nodes.get(i);
+        List<PPNode> nextNodes = new ArrayList<PPNode>();
+
+        if (node.nextConsecutiveNode != null) nextNodes.add(node.nextConsecutiveNode);
+        if (node.jumpNodes != null) nextNodes.addAll(node.jumpNodes);
+
+        int[] nodeSuccessors = new int[nextNodes.size()];
+
+        for (int j = 0; j < nodeSuccessors.length; j++) {
+          PPNode nextNode = nextNodes.get(j);
+          Integer nextIndex = nodeIndexes.get(nextNode);
+
+          if (nextIndex == null) {
+            nextIndex = nodes.size();
+            nodes.add(nextNode);
+            nodeIndexes.put(nextNode, nextIndex);
+          }
+
+          nodeSuccessors[j] = nextIndex;
+        }
+
+        successorList.add(nodeSuccessors);
+      }
+
+      successors = successorList.toArray(new int[successorList.size()][]);
+      incomingNodes = new int[nodes.size()][];
+
+      for (int i = 0; i < incomingNodes.length; i++) {
+        List<PPNode> incoming = nodes.get(i).getIncomingNodes();
+        int[] incomingIndexes = new int[incoming.size()];
+
+        for (int j = 0; j < incomingIndexes.length; j++) {
+          Integer incomingIndex = nodeIndexes.get(incoming.get(j));
+          incomingIndexes[j] = incomingIndex == null ? -1 : incomingIndex;
+        }
+
+        incomingNodes[i] = incomingIndexes;
+      }
     }
-    return newSimplePaths;
-  }
 
-  private static void checkNewSimplePaths(List<PPath> primePaths, List<PPath> newSimplePaths, PPath spath, List<PPNode> nextNodes) {
-    boolean potentialPrime = true;
-    for (PPNode node : nextNodes) {
-      PPath path = new PPath(spath, false);
-      path.addNode(node);
-      if (path.isSimple()) {
-        newSimplePaths.add(path);
-        potentialPrime = false;
+    boolean isPrime(@Nonnull int[] path, int length, @Nonnull BitSet nodesInPath) {
+      int first = path[0];
+
+      if (length > 1 && first == path[length - 1]) return true;
+
+      for (int incomingNode : incomingNodes[first]) {
+        if (incomingNode < 0 || !nodesInPath.get(incomingNode)) return false;
       }
+
+      return true;
     }
-    if (potentialPrime && spath.isPrime())
-      primePaths.add(spath);
 
+    @Nonnull
+    PPath createPath(@Nonnull int[] path, int length) {
+      PPath newPath = new PPath(nodes.get(path[0]));
+
+      for (int i = 1; i < length; i++) {
+        newPath.addNode(nodes.get(path[i]));
+      }
+
+      return newPath;
+    }
   }
 }
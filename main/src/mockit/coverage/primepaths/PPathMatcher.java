@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.primepaths;
+
+import java.util.*;
+import javax.annotation.*;
+
+import mockit.coverage.data.*;
+
+/**
+ * Multi-pattern matcher (Aho-Corasick automaton) over the prime paths of a method.
+ * <p/>
+ * Each node reached during an execution of the method advances the automaton by one step, recording which prime paths
+ * occurred as contiguous sequences of the nodes reached so far; this replaces the accumulation of the whole sequence
+ * of reached nodes followed by a separate search for each path when the method exits.
+ */
+final class PPathMatcher
+{
+   // Symbol for an original node which is not added to the sequence of reached nodes.
+   static final int IGNORED = -1;
+
+   private static final int[] NO_INTS = new int[0];
+
+   // Symbol assigned to each original node, indexed by node index; symbols >= alphabetSize belong to nodes which are
+   // not part of any prime path.
+   @Nonnull final int[] nodeSymbols;
+   private final int alphabetSize;
+
+   // Triples of node indexes (first node inside, first node after, and handler) for each try block of the method.
+   @Nonnull private final int[] tryBlocks;
+
+   // Whether each original node, indexed by node index, is known to end an execution of the method.
+   @Nonnull private final boolean[] executionEnds;
+
+   // The automaton: trie children (as parallel arrays of symbols and target states), failure links, and the indexes of
+   // the paths which end at each state (including those reachable through failure links).
+   @Nonnull private final int[][] childSymbols;
+   @Nonnull private final int[][] childStates;
+   @Nonnull private final int[] failureStates;
+   @Nonnull private final int[][] matchedPaths;
+
+   PPathMatcher(@Nonnull List<PPNode> nodes, @Nonnull List<PPath> primePaths, @Nonnull int[] tryBlocks)
+   {
+      Map<PPNode, Integer> symbols = new IdentityHashMap<PPNode, Integer>();
+
+      for (PPath path : primePaths) {
+         for (PPNode node : path.getNodes()) {
+            if (!symbols.containsKey(node)) {
+               symbols.put(node, symbols.size());
+            }
+         }
+      }
+
+      alphabetSize = symbols.size();
+      nodeSymbols = assignSymbolsToOriginalNodes(nodes, symbols);
+      this.tryBlocks = tryBlocks;
+      executionEnds = new boolean[nodes.size()];
+
+      for (int nodeIndex = 0; nodeIndex < executionEnds.length; nodeIndex++) {
+         PPNode node = nodes.get(nodeIndex);
+         executionEnds[nodeIndex] =
+            node.isReturn() || node instanceof PPNode.Exit && !isInsideTryBlock(nodeIndex, -1);
+      }
+
+      List<int[]> children = new ArrayList<int[]>();
+      List<List<Integer>> outputs = new ArrayList<List<Integer>>();
+      children.add(NO_INTS);
+      outputs.add(new ArrayList<Integer>(0));
+
+      List<Map<Integer, Integer>> trie = new ArrayList<Map<Integer, Integer>>();
+      trie.add(new LinkedHashMap<Integer, Integer>());
+
+      for (int pathIndex = 0, n = primePaths.size(); pathIndex < n; pathIndex++) {
+         int state = 0;
+
+         for (PPNode node : primePaths.get(pathIndex).getNodes()) {
+            int symbol = symbols.get(node);
+            Integer nextState = trie.get(state).get(symbol);
+
+            if (nextState == null) {
+               nextState = trie.size();
+               trie.get(state).put(symbol, nextState);
+               trie.add(new LinkedHashMap<Integer, Integer>());
+               outputs.add(new ArrayList<Integer>(0));
+            }
+
+            state = nextState;
+         }
+
+         outputs.get(state).add(pathIndex);
+      }
+
+      int stateCount = trie.size();
+      childSymbols = new int[stateCount][];
+      childStates = new int[stateCount][];
+
+      for (int state = 0; state < stateCount; state++) {
+         Map<Integer, Integer> stateChildren = trie.get(state);
+         int[] stateSymbols = new int[stateChildren.size()];
+         int[] targetStates = new int[stateSymbols.length];
+         int i = 0;
+
+         for (Map.Entry<Integer, Integer> symbolAndState : stateChildren.entrySet()) {
+            stateSymbols[i] = symbolAndState.getKey();
+            targetStates[i] = symbolAndState.getValue();
+            i++;
+         }
+
+         childSymbols[state] = stateSymbols;
+         childStates[state] = targetStates;
+      }
+
+      failureStates = new int[stateCount];
+      matchedPaths = new int[stateCount][];
+      computeFailureLinksAndOutputs(outputs);
+   }
+
+   private PPathMatcher(
+      @Nonnull int[] nodeSymbols, int alphabetSize, @Nonnull int[] tryBlocks, @Nonnull boolean[] executionEnds,
+      @Nonnull int[][] childSymbols, @Nonnull int[][] childStates, @Nonnull int[] failureStates,
+      @Nonnull int[][] matchedPaths)
+   {
+      this.nodeSymbols = nodeSymbols;
+      this.alphabetSize = alphabetSize;
+      this.tryBlocks = tryBlocks;
+      this.executionEnds = executionEnds;
+      this.childSymbols = childSymbols;
+      this.childStates = childStates;
+      this.failureStates = failureStates;
+      this.matchedPaths = matchedPaths;
+   }
+
+   @Nonnull
+   static PPathMatcher readFrom(@Nonnull CoverageDataInput input)
+   {
+      int[] nodeSymbols = input.readIntArray();
+      int alphabetSize = input.readVarInt();
+      int[] tryBlocks = input.readIntArray();
+      boolean[] executionEnds = new boolean[nodeSymbols.length];
+
+      for (int nodeIndex = 0; nodeIndex < executionEnds.length; nodeIndex++) {
+         executionEnds[nodeIndex] = input.readBoolean();
+      }
+
+      int[] failureStates = input.readIntArray();
+      int stateCount = failureStates.length;
+      int[][] childSymbols = new int[stateCount][];
+      int[][] childStates = new int[stateCount][];
+      int[][] matchedPaths = new int[stateCount][];
+
+      for (int state = 0; state < stateCount; state++) {
+         childSymbols[state] = input.readIntArray();
+         childStates[state] = input.readIntArray();
+         matchedPaths[state] = input.readIntArray();
+      }
+
+      return new PPathMatcher(
+         nodeSymbols, alphabetSize, tryBlocks, executionEnds, childSymbols, childStates, failureStates, matchedPaths);
+   }
+
+   void writeTo(@Nonnull CoverageDataOutput output)
+   {
+      output.writeIntArray(nodeSymbols);
+      output.writeVarInt(alphabetSize);
+      output.writeIntArray(tryBlocks);
+
+      for (boolean executionEnd : executionEnds) {
+         output.writeBoolean(executionEnd);
+      }
+
+      output.writeIntArray(failureStates);
+
+      for (int state = 0; state < failureStates.length; state++) {
+         output.writeIntArray(childSymbols[state]);
+         output.writeIntArray(childStates[state]);
+         output.writeIntArray(matchedPaths[state]);
+      }
+   }
+
+   @Nonnull
+   private int[] assignSymbolsToOriginalNodes(@Nonnull List<PPNode> nodes, @Nonnull Map<PPNode, Integer> symbols)
+   {
+      int[] symbolsByNodeIndex = new int[nodes.size()];
+      Map<PPNode, Integer> otherSymbols = new IdentityHashMap<PPNode, Integer>();
+
+      for (int nodeIndex = 0, n = nodes.size(); nodeIndex < n; nodeIndex++) {
+         PPNode node = nodes.get(nodeIndex);
+
+         if (!node.isEntry() && node.getIncomingNodes().isEmpty()) {
+            symbolsByNodeIndex[nodeIndex] = IGNORED;
+            continue;
+         }
+
+         PPNode reachedNode = node.isSimplified() ? node.subsumedBy : node;
+         Integer symbol = symbols.get(reachedNode);
+
+         if (symbol == null) {
+            symbol = otherSymbols.get(reachedNode);
+
+            if (symbol == null) {
+               symbol = alphabetSize + otherSymbols.size();
+               otherSymbols.put(reachedNode, symbol);
+            }
+         }
+
+         symbolsByNodeIndex[nodeIndex] = symbol;
+      }
+
+      return symbolsByNodeIndex;
+   }
+
+   private void computeFailureLinksAndOutputs(@Nonnull List<List<Integer>> outputs)
+   {
+      matchedPaths[0] = toArray(outputs.get(0));
+
+      Deque<Integer> statesToVisit = new ArrayDeque<Integer>();
+
+      for (int child : childStates[0]) {
+         failureStates[child] = 0;
+         matchedPaths[child] = toArray(outputs.get(child));
+         statesToVisit.add(child);
+      }
+
+      while (!statesToVisit.isEmpty()) {
+         int state = statesToVisit.remove();
+         int[] stateSymbols = childSymbols[state];
+         int[] targetStates = childStates[state];
+
+         for (int i = 0; i < stateSymbols.length; i++) {
+            int symbol = stateSymbols[i];
+            int child = targetStates[i];
+            int failureState = nextState(failureStates[state], symbol);
+
+            failureStates[child] = failureState;
+
+            List<Integer> childOutputs = outputs.get(child);
+
+            for (int pathIndex : matchedPaths[failureState]) {
+               childOutputs.add(pathIndex);
+            }
+
+            matchedPaths[child] = toArray(childOutputs);
+            statesToVisit.add(child);
+         }
+      }
+   }
+
+   @Nonnull
+   private static int[] toArray(@Nonnull List<Integer> values)
+   {
+      if (values.isEmpty()) {
+         return NO_INTS;
+      }
+
+      int[] array = new int[values.size()];
+
+      for (int i = 0; i < array.length; i++) {
+         array[i] = values.get(i);
+      }
+
+      return array;
+   }
+
+   private int findChild(int state, int symbol)
+   {
+      int[] stateSymbols = childSymbols[state];
+
+      for (int i = 0; i < stateSymbols.length; i++) {
+         if (stateSymbols[i] == symbol) {
+            return childStates[state][i];
+         }
+      }
+
+      return -1;
+   }
+
+   /**
+    * Returns the state reached from the given one after consuming the given symbol.
+    */
+   int nextState(int state, int symbol)
+   {
+      if (symbol >= alphabetSize) {
+         return 0;
+      }
+
+      while (true) {
+         int child = findChild(state, symbol);
+
+         if (child >= 0) {
+            return child;
+         }
+
+         if (state == 0) {
+            return 0;
+         }
+
+         state = failureStates[state];
+      }
+   }
+
+   /**
+    * Checks whether reaching the given node ends an execution of the method: either a return, or a <tt>throw</tt>
+    * outside any try block, which is known to propagate out of the method.
+    * A <tt>throw</tt> inside a try block may be caught in the same execution, which then continues; nodes without
+    * successors which aren't exits (such as those for some switch instructions) don't end it either.
+    */
+   boolean endsExecution(int nodeIndex) { return executionEnds[nodeIndex]; }
+
+   boolean isExceptionHandler(int nodeIndex)
+   {
+      for (int i = 2; i < tryBlocks.length; i += 3) {
+         if (tryBlocks[i] == nodeIndex) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   // Checks whether a node is inside a try block having the given handler, or any handler if the latter is negative.
+   boolean isInsideTryBlock(int nodeIndex, int handlerNodeIndex)
+   {
+      for (int i = 0; i < tryBlocks.length; i += 3) {
+         if (
+            nodeIndex >= tryBlocks[i] && nodeIndex < tryBlocks[i + 1] &&
+            (handlerNodeIndex < 0 || tryBlocks[i + 2] == handlerNodeIndex)
+         ) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   /**
+    * Returns the indexes of all prime paths which end at the given state.
+    */
+   @Nonnull int[] getMatchedPaths(int state) { return matchedPaths[state]; }
+}
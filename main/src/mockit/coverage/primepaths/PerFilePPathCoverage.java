@@ -5,6 +5,8 @@
 package mockit.coverage.primepaths;
 
 import mockit.coverage.CoveragePercentage;
+import mockit.coverage.data.CoverageDataInput;
+import mockit.coverage.data.CoverageDataOutput;
 import mockit.coverage.data.PerFileCoverage;
 
 import javax.annotation.Nonnull;
@@ -20,31 +22,139 @@ public final class PerFilePPathCoverage implements PerFileCoverage
    @Nonnull
    public final Map<Integer, PPMethodCoverageData> firstLineToMethodData = new HashMap<Integer, PPMethodCoverageData>();
 
+   // Used for fast indexed access from instrumented code, assigned while classes are being instrumented:
+   @Nonnull private transient Map<Integer, Integer> firstLineToMethodIndex;
+   @Nonnull private transient PPMethodCoverageData[] indexedMethodData;
+
    // Computed on demand:
    private transient int totalPaths;
    private transient int coveredPaths;
 
-   public PerFilePPathCoverage() { initializeCache(); }
+   public PerFilePPathCoverage()
+   {
+      initializeIndex();
+      initializeCache();
+   }
+
+   private void initializeIndex()
+   {
+      firstLineToMethodIndex = new HashMap<Integer, Integer>();
+      indexedMethodData = new PPMethodCoverageData[0];
+   }
+
    private void initializeCache() { totalPaths = coveredPaths = -1; }
 
    private void readObject(@Nonnull ObjectInputStream in) throws IOException, ClassNotFoundException
    {
+      initializeIndex();
       initializeCache();
       in.defaultReadObject();
    }
 
+   @Nonnull
+   public static PerFilePPathCoverage readFrom(@Nonnull CoverageDataInput input)
+   {
+      PerFilePPathCoverage pathCoverage = new PerFilePPathCoverage();
+
+      for (int methodCount = input.readVarInt(); methodCount > 0; methodCount--) {
+         PPMethodCoverageData methodData = PPMethodCoverageData.readFrom(input);
+         pathCoverage.firstLineToMethodData.put(methodData.getFirstLineInBody(), methodData);
+      }
+
+      return pathCoverage;
+   }
+
+   public void writeTo(@Nonnull CoverageDataOutput output)
+   {
+      output.writeVarInt(firstLineToMethodData.size());
+
+      for (PPMethodCoverageData methodData : firstLineToMethodData.values()) {
+         methodData.writeTo(output);
+      }
+   }
+
+   /**
+    * Returns the index to be used by instrumented code when registering the execution of nodes in the method whose
+    * body starts at the given line; the same index is returned for a method that gets instrumented again.
+    */
+   public int getOrAssignMethodIndex(int firstLineInBody)
+   {
+      Integer methodIndex = firstLineToMethodIndex.get(firstLineInBody);
+
+      if (methodIndex == null) {
+         methodIndex = firstLineToMethodIndex.size();
+         firstLineToMethodIndex.put(firstLineInBody, methodIndex);
+      }
+
+      return methodIndex;
+   }
+
+   /**
+    * Writes the method indexes assigned so far, in the same order as they were assigned, followed by the path
+    * matcher of each method, so that the matchers don't have to be built from the graph of nodes when the indexes are
+    * read back.
+    */
+   public void writeMethodIndexesTo(@Nonnull CoverageDataOutput output)
+   {
+      int[] firstLinesByMethodIndex = new int[firstLineToMethodIndex.size()];
+
+      for (Map.Entry<Integer, Integer> firstLineAndIndex : firstLineToMethodIndex.entrySet()) {
+         firstLinesByMethodIndex[firstLineAndIndex.getValue()] = firstLineAndIndex.getKey();
+      }
+
+      output.writeIntArray(firstLinesByMethodIndex);
+      output.writeVarInt(firstLineToMethodData.size());
+
+      for (Map.Entry<Integer, PPMethodCoverageData> firstLineAndData : firstLineToMethodData.entrySet()) {
+         output.writeVarInt(firstLineAndData.getKey());
+         firstLineAndData.getValue().writePathMatcherTo(output);
+      }
+   }
+
+   public void readMethodIndexesFrom(@Nonnull CoverageDataInput input)
+   {
+      for (int firstLineInBody : input.readIntArray()) {
+         getOrAssignMethodIndex(firstLineInBody);
+      }
+
+      for (int methodCount = input.readVarInt(); methodCount > 0; methodCount--) {
+         PPMethodCoverageData methodData = firstLineToMethodData.get(input.readVarInt());
+         methodData.readPathMatcherFrom(input);
+         addMethod(methodData);
+      }
+   }
+
    public void addMethod(@Nonnull PPMethodCoverageData methodData)
    {
       int firstLineInBody = methodData.getFirstLineInBody();
       firstLineToMethodData.put(firstLineInBody, methodData);
+
+      Integer methodIndex = firstLineToMethodIndex.get(firstLineInBody);
+
+      if (methodIndex != null) {
+         PPMethodCoverageData[] methods = indexedMethodData;
+
+         if (methodIndex >= methods.length) {
+            PPMethodCoverageData[] newMethods = new PPMethodCoverageData[methodIndex + 8];
+            System.arraycopy(methods, 0, newMethods, 0, methods.length);
+            methods = newMethods;
+         }
+
+         methods[methodIndex] = methodData;
+         indexedMethodData = methods;
+      }
    }
 
-   public int registerExecution(int firstLineInMethodBody, int node)
+   public int registerExecution(int methodIndex, int node)
    {
-      PPMethodCoverageData methodData = firstLineToMethodData.get(firstLineInMethodBody);
+      PPMethodCoverageData[] methods = indexedMethodData;
+
+      if (methodIndex < methods.length) {
+         PPMethodCoverageData methodData = methods[methodIndex];
 
-      if (methodData != null) {
-         return methodData.markNodeAsReached(node);
+         if (methodData != null) {
+            return methodData.markNodeAsReached(node);
+         }
       }
 
       return -1;
@@ -7,6 +7,7 @@ package mockit.coverage.reporting;
 import java.io.*;
 import java.util.*;
 import java.util.Map.*;
+import java.util.concurrent.*;
 import javax.annotation.*;
 
 import mockit.coverage.*;
@@ -16,6 +17,9 @@ import mockit.coverage.reporting.sourceFiles.*;
 
 class CoverageReport
 {
+   private static final int REPORT_THREADS = Integer.parseInt(
+      Configuration.getProperty("reportThreads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
    @Nonnull private final String outputDir;
    private boolean outputDirCreated;
    @Nullable private final List<File> sourceDirs;
@@ -23,6 +27,7 @@ class CoverageReport
    @Nonnull private final Map<String, List<String>> packageToFiles;
    private final boolean withCallPoints;
    @Nullable private final Collection<String> sourceFilesNotFound;
+   @Nullable private ReportManifest manifest;
 
    protected CoverageReport(
       @Nonnull String outputDir, boolean outputDirCreated, @Nullable String[] srcDirs,
@@ -53,8 +58,16 @@ class CoverageReport
          System.out.println("JMockit: Coverage source dirs: " + sourceDirs);
       }
 
+      if (withSourceFilePages) {
+         manifest = new ReportManifest(outputDir, withCallPoints);
+      }
+
       generateFileCoverageReportsWhileBuildingPackageLists();
 
+      if (manifest != null) {
+         manifest.write(fileToFileData.keySet());
+      }
+
       new IndexPage(outputFile, sourceDirs, sourceFilesNotFound, packageToFiles, fileToFileData).generate();
       new StaticFiles(outputDir).copyToOutputDir(withSourceFilePages);
 
@@ -86,33 +99,113 @@ class CoverageReport
    {
       Set<Entry<String, FileCoverageData>> files = fileToFileData.entrySet();
 
-      for (Entry<String, FileCoverageData> fileAndFileData : files) {
-         generateFileCoverageReport(fileAndFileData.getKey(), fileAndFileData.getValue());
+      if (sourceDirs == null || REPORT_THREADS <= 1 || files.size() <= 1) {
+         for (Entry<String, FileCoverageData> fileAndFileData : files) {
+            generateFileCoverageReport(fileAndFileData.getKey(), fileAndFileData.getValue());
+         }
+      }
+      else {
+         generateFileCoverageReportsInParallel(files);
       }
    }
 
    private void generateFileCoverageReport(@Nonnull String sourceFile, @Nonnull FileCoverageData fileData)
       throws IOException
    {
-      if (sourceDirs == null) {
-         addFileToPackageFileList(sourceFile);
+      InputFile inputFile = findInputFileWhileBuildingPackageLists(sourceFile);
+
+      if (inputFile != null) {
+         generateFileCoverageReportIfOutdated(sourceFile, inputFile, fileData);
       }
-      else {
-         InputFile inputFile = InputFile.createIfFileExists(sourceDirs, sourceFile);
+   }
+
+   private void generateFileCoverageReportIfOutdated(
+      @Nonnull String sourceFile, @Nonnull InputFile inputFile, @Nonnull FileCoverageData fileData)
+      throws IOException
+   {
+      if (manifest == null || manifest.isPageOutdated(sourceFile, inputFile, fileData)) {
+         new FileCoverageReport(outputDir, inputFile, fileData, withCallPoints).generate();
+      }
+   }
+
+   /**
+    * Source files are still located, and package lists built, in the order of the coverage data, by the calling
+    * thread; only the parsing of each source file and the writing of its page are done by the worker threads.
+    * This keeps the output the same as when generated sequentially, since the choice of source dir for a given file
+    * depends on the files located before it.
+    */
+   private void generateFileCoverageReportsInParallel(@Nonnull Set<Entry<String, FileCoverageData>> files)
+      throws IOException
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(Math.min(REPORT_THREADS, files.size()));
+      List<Future<?>> pendingReports = new ArrayList<Future<?>>(files.size());
+
+      try {
+         for (Entry<String, FileCoverageData> fileAndFileData : files) {
+            final String sourceFile = fileAndFileData.getKey();
+            final InputFile inputFile = findInputFileWhileBuildingPackageLists(sourceFile);
+
+            if (inputFile != null) {
+               final FileCoverageData fileData = fileAndFileData.getValue();
+
+               pendingReports.add(executor.submit(new Callable<Void>() {
+                  @Override
+                  public Void call() throws IOException
+                  {
+                     generateFileCoverageReportIfOutdated(sourceFile, inputFile, fileData);
+                     return null;
+                  }
+               }));
+            }
+         }
 
-         if (inputFile != null) {
-            new FileCoverageReport(outputDir, inputFile, fileData, withCallPoints).generate();
+         for (Future<?> pendingReport : pendingReports) {
+            waitForCompletion(pendingReport);
          }
-         else {
+      }
+      finally {
+         executor.shutdownNow();
+      }
+   }
+
+   private static void waitForCompletion(@Nonnull Future<?> pendingReport) throws IOException
+   {
+      try {
+         pendingReport.get();
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Report generation interrupted");
+      }
+      catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+
+         if (cause instanceof IOException) throw (IOException) cause;
+         if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+         if (cause instanceof Error) throw (Error) cause;
+         throw new RuntimeException(cause);
+      }
+   }
+
+   @Nullable
+   private InputFile findInputFileWhileBuildingPackageLists(@Nonnull String sourceFile)
+   {
+      InputFile inputFile = null;
+
+      if (sourceDirs != null) {
+         inputFile = InputFile.createIfFileExists(sourceDirs, sourceFile);
+
+         if (inputFile == null) {
             deleteOutdatedHTMLFileIfExists(sourceFile);
 
             if (sourceFilesNotFound != null) {
                sourceFilesNotFound.add(sourceFile);
             }
          }
-
-         addFileToPackageFileList(sourceFile);
       }
+
+      addFileToPackageFileList(sourceFile);
+      return inputFile;
    }
 
    private void addFileToPackageFileList(@Nonnull String file)
@@ -43,7 +43,9 @@ public final class ListOfCallPoints
          StackTraceElement ste = nextCP.getStackTraceElement();
 
          if (nextCP.isSameTestMethod(currentCP)) {
-            content.append(", ").append(ste.getLineNumber());
+            if (ste.getLineNumber() >= 0) {
+               content.append(", ").append(ste.getLineNumber());
+            }
          }
          else {
             content.append("</li>").append(EOL);
@@ -61,8 +63,12 @@ public final class ListOfCallPoints
    {
       content.append("          <li>");
       content.append(current.getClassName()).append('#');
-      content.append(LESS_THAN_CHAR.matcher(current.getMethodName()).replaceFirst("&lt;")).append(": ");
-      content.append(current.getLineNumber());
+      content.append(LESS_THAN_CHAR.matcher(current.getMethodName()).replaceFirst("&lt;"));
+
+      // Call points recorded per test method have no line number.
+      if (current.getLineNumber() >= 0) {
+         content.append(": ").append(current.getLineNumber());
+      }
    }
 
    private void appendRepetitionCountIfNeeded(@Nonnull CallPoint callPoint)
@@ -70,6 +76,10 @@ public final class ListOfCallPoints
       int repetitionCount = callPoint.getRepetitionCount();
 
       if (repetitionCount > 0) {
+         if (callPoint.getStackTraceElement().getLineNumber() < 0) {
+            content.append(' ');
+         }
+
          content.append('x').append(1 + repetitionCount);
       }
    }
@@ -38,7 +38,7 @@ public final class OutputFile extends PrintWriter
       File parentDir = outputFile.getParentFile();
 
       if (!parentDir.exists()) {
-         boolean outputDirCreated = parentDir.mkdirs();
+         boolean outputDirCreated = parentDir.mkdirs() || parentDir.isDirectory();
          assert outputDirCreated : "Failed to create output dir: " + outputDir;
       }
 
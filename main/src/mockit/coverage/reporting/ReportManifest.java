@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.reporting;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.annotation.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+import mockit.coverage.reporting.sourceFiles.*;
+
+/**
+ * Digests of the source files and of their coverage data, as of the last time the report pages for them were written
+ * into the output directory.
+ * <p/>
+ * The digests are kept in a manifest file, which also records the report settings used.
+ * When a source file and its coverage data are the same as in the previous report, and the page written for it is
+ * still present, the page is not generated again.
+ * The manifest is deleted as soon as it's read, and written again only after all pages were successfully generated,
+ * so that an incomplete report will be fully regenerated the next time.
+ */
+final class ReportManifest
+{
+   private static final String FILE_NAME = "report-manifest.txt";
+   private static final String FORMAT_VERSION = "1";
+
+   @Nonnull private final String outputDir;
+   @Nonnull private final File manifestFile;
+   @Nonnull private final String settings;
+   @Nonnull private final Map<String, String> previousDigests;
+   @Nonnull private final Map<String, String> currentDigests;
+
+   ReportManifest(@Nonnull String outputDir, boolean withCallPoints) throws IOException
+   {
+      this.outputDir = outputDir;
+      manifestFile = new File(outputDir, FILE_NAME);
+      settings = describeSettings(withCallPoints);
+      previousDigests = new HashMap<String, String>();
+      currentDigests = new ConcurrentHashMap<String, String>();
+
+      if (manifestFile.exists()) {
+         readPreviousDigests();
+         //noinspection ResultOfMethodCallIgnored
+         manifestFile.delete();
+      }
+   }
+
+   @Nonnull
+   private static String describeSettings(boolean withCallPoints)
+   {
+      StringBuilder description = new StringBuilder(FORMAT_VERSION);
+      description.append(' ').append(CoverageReport.class.getPackage().getImplementationVersion());
+
+      for (Metrics metric : Metrics.values()) {
+         if (metric.active) {
+            description.append(' ').append(metric);
+         }
+      }
+
+      if (withCallPoints) {
+         description.append(" CallPoints");
+      }
+
+      return description.toString();
+   }
+
+   private void readPreviousDigests() throws IOException
+   {
+      BufferedReader input = new BufferedReader(new InputStreamReader(new FileInputStream(manifestFile), "UTF-8"));
+
+      try {
+         if (!settings.equals(input.readLine())) {
+            return;
+         }
+
+         String line;
+
+         while ((line = input.readLine()) != null) {
+            int p = line.lastIndexOf(' ');
+
+            if (p > 0) {
+               previousDigests.put(line.substring(0, p), line.substring(p + 1));
+            }
+         }
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   /**
+    * Computes the digest for a source file and its coverage data, and compares it to the one from the previous report.
+    * May be called concurrently for different source files.
+    *
+    * @return whether the page for the source file needs to be generated
+    */
+   boolean isPageOutdated(@Nonnull String sourceFile, @Nonnull InputFile inputFile, @Nonnull FileCoverageData fileData)
+      throws IOException
+   {
+      MessageDigest digest = createMessageDigest();
+      inputFile.updateDigest(digest);
+      fileData.updateDigest(digest);
+
+      String currentDigest = toHexString(digest.digest());
+      currentDigests.put(sourceFile, currentDigest);
+
+      return
+         !currentDigest.equals(previousDigests.get(sourceFile)) ||
+         !OutputFile.getOutputFile(outputDir, sourceFile).exists();
+   }
+
+   @Nonnull
+   private static MessageDigest createMessageDigest()
+   {
+      try {
+         return MessageDigest.getInstance("SHA-1");
+      }
+      catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   @Nonnull
+   private static String toHexString(@Nonnull byte[] bytes)
+   {
+      StringBuilder hex = new StringBuilder(2 * bytes.length);
+
+      for (byte b : bytes) {
+         hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+
+      return hex.toString();
+   }
+
+   /**
+    * Writes the digests computed for the current report, in the given order of source files.
+    */
+   void write(@Nonnull Collection<String> sourceFiles) throws IOException
+   {
+      Writer output = new OutputStreamWriter(new FileOutputStream(manifestFile), "UTF-8");
+
+      try {
+         output.write(settings);
+         output.write('\n');
+
+         for (String sourceFile : sourceFiles) {
+            String digest = currentDigests.get(sourceFile);
+
+            if (digest != null) {
+               output.write(sourceFile);
+               output.write(' ');
+               output.write(digest);
+               output.write('\n');
+            }
+         }
+      }
+      finally {
+         output.close();
+      }
+   }
+}
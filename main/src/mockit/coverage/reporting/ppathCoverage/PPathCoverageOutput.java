@@ -47,6 +47,11 @@ public final class PPathCoverageOutput
 
    private void writePathCoverageInformationForMethod(@Nonnull PPMethodCoverageData methodData)
    {
+      if (methodData.isTooComplex()) {
+         writeNoteForTooComplexMethod();
+         return;
+      }
+
       List<PPath> paths = methodData.getPaths();
 
       if (paths.size() > 1) {
@@ -76,6 +81,17 @@ public final class PPathCoverageOutput
       output.println("</span>");
    }
 
+   private void writeNoteForTooComplexMethod()
+   {
+      output.println("    <tr>");
+      output.println("      <td></td><td class='count'></td>");
+      output.println("      <td class='paths'>");
+      output.write("        <span style='cursor:default'>Path coverage: too complex (more than ");
+      output.print(PPMethodCoverageData.getMaxPrimePaths());
+      output.println(" prime paths)</span>");
+      writeFooterForAllPaths();
+   }
+
    private void writeFooterForAllPaths()
    {
       output.println("      </td>");
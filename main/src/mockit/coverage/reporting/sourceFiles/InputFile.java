@@ -5,6 +5,9 @@
 package mockit.coverage.reporting.sourceFiles;
 
 import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.security.*;
 import java.util.*;
 import javax.annotation.*;
 
@@ -12,11 +15,10 @@ public final class InputFile
 {
    @Nonnull final String filePath;
    @Nonnull private final File sourceFile;
-   @Nonnull private final BufferedReader input;
+   @Nullable private BufferedReader input;
 
    @Nullable
    public static InputFile createIfFileExists(@Nonnull List<File> sourceDirs, @Nonnull String filePath)
-      throws FileNotFoundException
    {
       File sourceFile = findSourceFile(sourceDirs, filePath);
       return sourceFile == null ? null : new InputFile(filePath, sourceFile);
@@ -99,11 +101,10 @@ public final class InputFile
       }
    }
 
-   private InputFile(@Nonnull String filePath, @Nonnull File sourceFile) throws FileNotFoundException
+   private InputFile(@Nonnull String filePath, @Nonnull File sourceFile)
    {
       this.filePath = filePath;
       this.sourceFile = sourceFile;
-      input = new BufferedReader(new FileReader(sourceFile));
    }
 
    @Nonnull String getSourceFileName() { return sourceFile.getName(); }
@@ -115,7 +116,30 @@ public final class InputFile
       return path.startsWith("..") ? path.substring(3) : path;
    }
 
-   @Nullable String nextLine() throws IOException { return input.readLine(); }
+   /**
+    * Updates the given digest with the path and contents of the source file, which together with the coverage data
+    * for the file determine the contents of its report page.
+    */
+   public void updateDigest(@Nonnull MessageDigest digest) throws IOException
+   {
+      digest.update(getSourceFilePath().getBytes(StandardCharsets.UTF_8));
+      digest.update(Files.readAllBytes(sourceFile.toPath()));
+   }
+
+   @Nullable
+   String nextLine() throws IOException
+   {
+      if (input == null) {
+         input = new BufferedReader(new FileReader(sourceFile));
+      }
 
-   void close() throws IOException { input.close(); }
+      return input.readLine();
+   }
+
+   void close() throws IOException
+   {
+      if (input != null) {
+         input.close();
+      }
+   }
 }
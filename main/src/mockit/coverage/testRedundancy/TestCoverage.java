@@ -14,24 +14,49 @@ public final class TestCoverage
    @Nonnull public static final TestCoverage INSTANCE = new TestCoverage();
 
    @Nonnull private final Map<Method, Integer> testsToItemsCovered = new LinkedHashMap<Method, Integer>();
-   @Nullable private Method currentTestMethod;
+   @Nullable private volatile Method currentTestMethod;
+   @Nonnull private final ThreadLocal<StackTraceElement> currentTestMethodElement =
+      new ThreadLocal<StackTraceElement>();
 
    private TestCoverage() {}
 
    public void setCurrentTestMethod(@Nullable Method testMethod)
    {
-      if (testMethod != null) {
-         testsToItemsCovered.put(testMethod, 0);
+      // The same test may be reported by both a test runner listener and the runner integration.
+      if (testMethod != null && !testMethod.equals(currentTestMethod)) {
+         synchronized (testsToItemsCovered) {
+            testsToItemsCovered.put(testMethod, 0);
+         }
       }
 
       currentTestMethod = testMethod;
+
+      if (testMethod == null) {
+         currentTestMethodElement.remove();
+      }
+      else {
+         currentTestMethodElement.set(
+            new StackTraceElement(testMethod.getDeclaringClass().getName(), testMethod.getName(), null, -1));
+      }
    }
 
+   /**
+    * Returns the test method currently running in the current thread as a stack trace element with no file name or line
+    * number, for use as a call point, or <tt>null</tt> if no test is running in this thread.
+    */
+   @Nullable
+   public StackTraceElement getCurrentTestMethodElement() { return currentTestMethodElement.get(); }
+
    public void recordNewItemCoveredByTestIfApplicable(int previousExecutionCount)
    {
-      if (previousExecutionCount == 0 && currentTestMethod != null) {
-         Integer itemsCoveredByTest = testsToItemsCovered.get(currentTestMethod);
-         testsToItemsCovered.put(currentTestMethod, itemsCoveredByTest == null ? 1 : itemsCoveredByTest + 1);
+      Method testMethod = currentTestMethod;
+
+      if (previousExecutionCount == 0 && testMethod != null) {
+         // Probes may be recorded without a global lock, so concurrent updates are possible here.
+         synchronized (testsToItemsCovered) {
+            Integer itemsCoveredByTest = testsToItemsCovered.get(testMethod);
+            testsToItemsCovered.put(testMethod, itemsCoveredByTest == null ? 1 : itemsCoveredByTest + 1);
+         }
       }
    }
 
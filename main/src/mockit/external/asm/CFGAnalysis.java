@@ -1,5 +1,6 @@
 package mockit.external.asm;
 
+import java.util.*;
 import javax.annotation.*;
 
 import static mockit.external.asm.Opcodes.*;
@@ -474,6 +475,132 @@ final class CFGAnalysis
       return changed;
    }
 
+   /**
+    * Computes the maximum stack size from the frames of the original method, if they are still valid for the modified
+    * code. That is the case when every basic block which needs a frame (because it's the target of a jump, an
+    * exception handler, or follows an unconditional transfer of control) starts at an instruction having an original
+    * frame, and the stack size at the start of each such block is the one in its frame; in other words, when the
+    * modifications didn't add branches, nor change the stack where the original code branches.
+    * <p/>
+    * Exception handlers must have been {@linkplain Label#markAsTarget() marked as targets} before.
+    *
+    * @param frames the frames of the original method, or <tt>null</tt> if it had none
+    * @return the maximum stack size, or <tt>-1</tt> if frames need to be computed from scratch
+    */
+   int computeMaxStackSizeFromOriginalFrames(@Nullable OriginalFrames frames) {
+      Map<Label, Integer> stackSizesForBlocksWithFrames =
+         frames == null ? Collections.<Label, Integer>emptyMap() : getStackSizesForBlocksWithFrames(frames);
+
+      if (stackSizesForBlocksWithFrames == null) {
+         return -1;
+      }
+
+      int max = 0;
+      int fallThroughStackSize = 0;
+
+      for (Label block = labels; block != null; block = block.successor) {
+         Integer stackSizeFromFrame = stackSizesForBlocksWithFrames.get(block);
+         int inputStackSize;
+
+         if (stackSizeFromFrame != null) {
+            inputStackSize = stackSizeFromFrame;
+
+            if (fallThroughStackSize >= 0 && fallThroughStackSize != inputStackSize) {
+               return -1;
+            }
+         }
+         else if (block.isTarget()) {
+            return -1;
+         }
+         else if (fallThroughStackSize >= 0) {
+            inputStackSize = fallThroughStackSize;
+         }
+         else if (isEmpty(block)) {
+            continue;
+         }
+         else {
+            return -1;
+         }
+
+         int blockMax = inputStackSize + block.outputStackMax;
+
+         if (blockMax > max) {
+            max = blockMax;
+         }
+
+         int outputStackSize = inputStackSize + block.frame.getOutputStackSizeRelativeToInput();
+
+         if (inputStackSize + block.inputStackTop < 0) {
+            return -1;
+         }
+
+         fallThroughStackSize = getStackSizeForNextBlock(stackSizesForBlocksWithFrames, block, outputStackSize);
+
+         if (fallThroughStackSize == -2) {
+            return -1;
+         }
+      }
+
+      return max;
+   }
+
+   @Nullable
+   private Map<Label, Integer> getStackSizesForBlocksWithFrames(@Nonnull OriginalFrames frames) {
+      if (!frames.areAllInstructionsWrittenInOriginalOrder(code)) {
+         return null;
+      }
+
+      Label[] labelsWithFrames = frames.labels;
+      Map<Label, Integer> stackSizes = new IdentityHashMap<Label, Integer>(labelsWithFrames.length);
+
+      for (int i = 0; i < labelsWithFrames.length; i++) {
+         Label label = labelsWithFrames[i];
+
+         if (label.frame == null || label.position >= code.length) {
+            return null;
+         }
+
+         stackSizes.put(label.getFirst(), frames.getStackSize(i));
+      }
+
+      return stackSizes;
+   }
+
+   private boolean isEmpty(@Nonnull Label block) {
+      Label nextBlock = block.successor;
+      int end = nextBlock == null ? code.length : nextBlock.position;
+      return end <= block.position;
+   }
+
+   /**
+    * Checks the output stack size of the given block against the input stack size of its successors which have a
+    * frame.
+    *
+    * @return the input stack size of the next block if the given one falls through to it, <tt>-1</tt> if it doesn't,
+    * or <tt>-2</tt> if the stack size doesn't match the frame of a successor
+    */
+   private static int getStackSizeForNextBlock(
+      @Nonnull Map<Label, Integer> stackSizesForBlocksWithFrames, @Nonnull Label block, int outputStackSize
+   ) {
+      Label nextBlock = block.successor;
+      int fallThroughStackSize = -1;
+
+      for (Edge edge = block.successors; edge != null; edge = edge.next) {
+         Label successor = edge.successor.getFirst();
+         Integer successorStackSize = stackSizesForBlocksWithFrames.get(successor);
+
+         if (successorStackSize != null && successorStackSize != outputStackSize) {
+            return -2;
+         }
+
+         if (successor == nextBlock) {
+            fallThroughStackSize = outputStackSize;
+         }
+      }
+
+      return fallThroughStackSize;
+   }
+
    /**
     * First step: finds the subroutines. This step determines, for each basic block, to which subroutine(s) it
     * belongs. Second step: finds the successors of RET blocks.
@@ -49,6 +49,15 @@ final class ExceptionHandling
       }
    }
 
+   void markHandlersAsTargets() {
+      ExceptionHandler exceptionHandler = firstExceptionHandler;
+
+      while (exceptionHandler != null) {
+         exceptionHandler.handler.getFirst().markAsTarget();
+         exceptionHandler = exceptionHandler.next;
+      }
+   }
+
    void completeControlFlowGraphWithExceptionHandlerBlocksFromComputedFrames() {
       ExceptionHandler exceptionHandler = firstExceptionHandler;
 
@@ -370,7 +370,7 @@ public final class Frame
     *             descriptor (in this case this method pushes its return type onto the output frame stack).
     */
    private void push(@Nonnull String desc) {
-      int type = getTypeEncoding(desc);
+      int type = getTypeEncoding(cp, desc);
 
       if (type != 0) {
          push(type);
@@ -387,7 +387,7 @@ public final class Frame
     * @param typeDesc a type descriptor.
     * @return the int encoding of the given type.
     */
-   private int getTypeEncoding(@Nonnull String typeDesc) {
+   static int getTypeEncoding(@Nonnull ConstantPoolGeneration cp, @Nonnull String typeDesc) {
       int index = typeDesc.charAt(0) == '(' ? typeDesc.indexOf(')') + 1 : 0;
 
       switch (typeDesc.charAt(index)) {
@@ -396,25 +396,31 @@ public final class Frame
          case 'F': return FLOAT;
          case 'J': return LONG;
          case 'D': return DOUBLE;
-         case 'L': return getObjectTypeEncoding(typeDesc, index);
+         case 'L': return getObjectTypeEncoding(cp, typeDesc, index);
       // case '[':
-         default: return getArrayTypeEncoding(typeDesc, index);
+         default: return getArrayTypeEncoding(cp, typeDesc, index);
       }
    }
 
-   private int getObjectTypeEncoding(@Nonnull String typeDesc, @Nonnegative int index) {
+   private static int getObjectTypeEncoding(
+      @Nonnull ConstantPoolGeneration cp, @Nonnull String typeDesc, @Nonnegative int index
+   ) {
       // Stores the internal name, not the descriptor!
       String t = typeDesc.substring(index + 1, typeDesc.length() - 1);
       return OBJECT | cp.addType(t);
    }
 
-   private int getArrayTypeEncoding(@Nonnull String typeDesc, @Nonnegative int index) {
+   private static int getArrayTypeEncoding(
+      @Nonnull ConstantPoolGeneration cp, @Nonnull String typeDesc, @Nonnegative int index
+   ) {
       int dims = getNumberOfDimensions(typeDesc, index);
-      int data = getArrayElementTypeEncoding(typeDesc, index + dims);
+      int data = getArrayElementTypeEncoding(cp, typeDesc, index + dims);
       return dims << 28 | data;
    }
 
-   private int getArrayElementTypeEncoding(@Nonnull String typeDesc, @Nonnegative int index) {
+   private static int getArrayElementTypeEncoding(
+      @Nonnull ConstantPoolGeneration cp, @Nonnull String typeDesc, @Nonnegative int index
+   ) {
       switch (typeDesc.charAt(index)) {
          case 'Z': return BOOLEAN;
          case 'C': return CHAR;
@@ -424,7 +430,7 @@ public final class Frame
          case 'F': return FLOAT;
          case 'J': return LONG;
          case 'D': return DOUBLE;
-         case 'L': default: return getObjectTypeEncoding(typeDesc, index);
+         case 'L': default: return getObjectTypeEncoding(cp, typeDesc, index);
       }
    }
 
@@ -557,6 +563,14 @@ public final class Frame
       return t;
    }
 
+   /**
+    * Returns the size of the output stack of the basic block relatively to the size of its input stack, which is
+    * negative if the block pops more values than it pushes.
+    */
+   int getOutputStackSizeRelativeToInput() {
+      return owner.inputStackTop + outputStackTop;
+   }
+
    /**
     * Initializes the input frame of the first basic block from the method descriptor.
     *
@@ -575,7 +589,7 @@ public final class Frame
       }
 
       for (JavaType arg : args) {
-         int t = getTypeEncoding(arg.getDescriptor());
+         int t = getTypeEncoding(cp, arg.getDescriptor());
          inputLocals[i++] = t;
 
          if (t == LONG || t == DOUBLE) {
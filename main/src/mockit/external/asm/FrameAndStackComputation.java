@@ -3,6 +3,7 @@ package mockit.external.asm;
 import javax.annotation.*;
 
 import mockit.external.asm.Frame.*;
+import mockit.external.asm.OriginalFrames.*;
 
 final class FrameAndStackComputation
 {
@@ -117,6 +118,8 @@ final class FrameAndStackComputation
       this.maxStack = maxStack;
    }
 
+   @Nonnegative int getMaxLocals() { return maxLocals; }
+
    void updateMaxLocals(int n) {
       if (n > maxLocals) {
          maxLocals = n;
@@ -391,6 +394,39 @@ final class FrameAndStackComputation
       endFrame();
    }
 
+   /**
+    * Visits a frame read from the original method, which applies to the instruction at the given offset of the modified
+    * method.
+    */
+   void visitOriginalFrame(@Nonnegative int offset, @Nonnull Object[] locals, @Nonnull Object[] stack) {
+      startFrame(offset, locals.length, stack.length);
+      putOriginalTypes(locals);
+      putOriginalTypes(stack);
+      endFrame();
+   }
+
+   private void putOriginalTypes(@Nonnull Object[] types) {
+      for (Object type : types) {
+         int typeEncoding;
+
+         if (type instanceof Integer) {
+            typeEncoding = TypeMask.BASE | (Integer) type;
+         }
+         else if (type instanceof String) {
+            String internalName = (String) type;
+            String typeDesc = internalName.charAt(0) == '[' ? internalName : 'L' + internalName + ';';
+            typeEncoding = Frame.getTypeEncoding(cp, typeDesc);
+         }
+         else {
+            Uninitialized uninitializedType = (Uninitialized) type;
+            int newOffset = uninitializedType.newInstruction.position;
+            typeEncoding = TypeMask.UNINITIALIZED | cp.addUninitializedType(uninitializedType.type, newOffset);
+         }
+
+         writeFrameDefinition(typeEncoding);
+      }
+   }
+
    // Computes the number of locals (ignores TOP types that are just after a LONG or a DOUBLE, and all trailing TOP
    // types).
    @Nonnegative
@@ -181,6 +181,12 @@ public final class Label
     */
    Frame frame;
 
+   /**
+    * The stack map frames of the original method, if this label was read from it and designates an instruction having
+    * a frame.
+    */
+   @Nullable OriginalFrames originalFrames;
+
    /**
     * The successor of this label, in the order they are visited. This linked list does not include labels used for
     * debug info only. If {@link ClassWriter#computeFrames} option is used then, in addition, it does not contain
@@ -214,6 +220,7 @@ public final class Label
    boolean isVisited()      { return (status & Status.VISITED) != 0; }
 
    void markAsDebug()              { status |= Status.DEBUG; }
+   void markAsNotDebug()           { status &= ~Status.DEBUG; }
    void markAsResolved()           { status |= Status.RESOLVED; }
    void markAsPushed()             { status |= Status.PUSHED; }
    void markAsTarget()             { status |= Status.TARGET; }
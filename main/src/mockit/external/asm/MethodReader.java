@@ -1,7 +1,10 @@
 package mockit.external.asm;
 
+import java.util.*;
 import javax.annotation.*;
 
+import mockit.external.asm.FrameAndStackComputation.*;
+import mockit.external.asm.OriginalFrames.*;
 import static mockit.external.asm.MethodReader.InstructionType.*;
 import static mockit.external.asm.Opcodes.*;
 
@@ -55,6 +58,8 @@ final class MethodReader extends AnnotatedReader
       INSTRUCTION_TYPE = types;
    }
 
+   private static final Object[] NO_TYPES = {};
+
    @Nonnull private final ClassVisitor cv;
 
    /**
@@ -65,6 +70,14 @@ final class MethodReader extends AnnotatedReader
    private final boolean readCode;
    private final boolean readDebugInfo;
 
+   /**
+    * Whether the stack map frames of methods are read, so they can be written again for modified methods; only done
+    * for classes whose methods must have frames (Java 7+).
+    */
+   private final boolean readFrames;
+
+   @Nonnull private final String classDesc;
+
    @Nullable private String[] throwsClauseTypes;
    @Nonnegative private int throwsClauseLastCodeIndex;
 
@@ -105,6 +118,8 @@ final class MethodReader extends AnnotatedReader
       bootstrapMethods = cr.bootstrapMethods;
       readCode = cr.readCode;
       readDebugInfo = cr.readDebugInfo;
+      readFrames = cr.getVersion() >= ClassVersion.V1_7;
+      classDesc = cr.getClassName();
    }
 
    void readMethods(@Nonnegative int codeIndex) {
@@ -338,6 +353,7 @@ final class MethodReader extends AnnotatedReader
       // Reads the code attributes.
       int varTable = 0;
       int varTypeTable = 0;
+      int stackMap = 0;
 
       for (int attributeCount = readUnsignedShort(codeIndex); attributeCount > 0; attributeCount--) {
          String attrName = readUTF8(codeIndex + 2);
@@ -351,10 +367,17 @@ final class MethodReader extends AnnotatedReader
          else if ("LineNumberTable".equals(attrName)) {
             readLineNumberTable(codeIndex);
          }
+         else if ("StackMapTable".equals(attrName) && readFrames) {
+            stackMap = codeIndex + 8;
+         }
 
          codeIndex += 6 + readInt(codeIndex + 4);
       }
 
+      if (stackMap != 0) {
+         readStackMapTable(stackMap, codeStart);
+      }
+
       readBytecodeInstructionsInCodeBlock(codeStart, codeEnd);
       readEndLabel(codeLength);
       readLocalVariableTables(varTable, varTypeTable);
@@ -506,6 +529,145 @@ final class MethodReader extends AnnotatedReader
       }
    }
 
+   /**
+    * Reads the frames in the StackMapTable attribute of the method, expanding them from their compressed form, and
+    * attaches them to the labels of the instructions they apply to.
+    * Frames of an unknown type cause all frames to be ignored, so they get computed by the writer.
+    *
+    * @param stackMap start offset of the attribute's content in {@link #code}.
+    * @param codeStart start offset of the method's bytecode in {@link #code}.
+    */
+   private void readStackMapTable(@Nonnegative int stackMap, @Nonnegative int codeStart) {
+      int frameCount = readUnsignedShort(stackMap);
+      int maxLocals = readUnsignedShort(bodyStartCodeIndex + 2);
+      OriginalFrames frames = new OriginalFrames(desc, (access & Access.STATIC) != 0, maxLocals, frameCount);
+      Object[] locals = getImplicitFrameLocals();
+      int codeIndex = stackMap + 2;
+      int offset = -1;
+
+      for (int frameIndex = 0; frameIndex < frameCount; frameIndex++) {
+         int frameType = readByte(codeIndex++);
+         int offsetDelta;
+         Object[] stack = NO_TYPES;
+
+         if (frameType < LocalsAndStackItemsDiff.SAME_LOCALS_1_STACK_ITEM_FRAME) {
+            offsetDelta = frameType;
+         }
+         else if (frameType < 128) {
+            offsetDelta = frameType - LocalsAndStackItemsDiff.SAME_LOCALS_1_STACK_ITEM_FRAME;
+            stack = new Object[1];
+            codeIndex = readFrameItemType(codeIndex, codeStart, stack, 0);
+         }
+         else if (frameType < LocalsAndStackItemsDiff.SAME_LOCALS_1_STACK_ITEM_FRAME_EXTENDED) {
+            return;
+         }
+         else {
+            offsetDelta = readUnsignedShort(codeIndex);
+            codeIndex += 2;
+
+            if (frameType == LocalsAndStackItemsDiff.SAME_LOCALS_1_STACK_ITEM_FRAME_EXTENDED) {
+               stack = new Object[1];
+               codeIndex = readFrameItemType(codeIndex, codeStart, stack, 0);
+            }
+            else if (frameType < LocalsAndStackItemsDiff.SAME_FRAME_EXTENDED) {
+               int choppedLocals = LocalsAndStackItemsDiff.SAME_FRAME_EXTENDED - frameType;
+
+               if (choppedLocals > locals.length) {
+                  return;
+               }
+
+               locals = Arrays.copyOf(locals, locals.length - choppedLocals);
+            }
+            else if (frameType < LocalsAndStackItemsDiff.FULL_FRAME) {
+               int localCount = locals.length;
+               locals = Arrays.copyOf(locals, localCount + frameType - LocalsAndStackItemsDiff.SAME_FRAME_EXTENDED);
+               codeIndex = readFrameItemTypes(codeIndex, codeStart, locals, localCount);
+            }
+            else { // FULL_FRAME
+               locals = new Object[readUnsignedShort(codeIndex)];
+               codeIndex = readFrameItemTypes(codeIndex + 2, codeStart, locals, 0);
+               stack = new Object[readUnsignedShort(codeIndex)];
+               codeIndex = readFrameItemTypes(codeIndex + 2, codeStart, stack, 0);
+            }
+         }
+
+         offset += offsetDelta + 1;
+
+         Label label = readLabel(offset);
+         label.markAsNotDebug();
+         frames.setFrame(frameIndex, label, locals, stack);
+      }
+
+      frames.attachToLabels();
+   }
+
+   /**
+    * Returns the types of the local variables in the first frame of the method, which is implicit.
+    */
+   @Nonnull
+   private Object[] getImplicitFrameLocals() {
+      JavaType[] parameterTypes = JavaType.getArgumentTypes(desc);
+      Object[] locals = new Object[parameterTypes.length + 1];
+      int i = 0;
+
+      if ((access & Access.STATIC) == 0) {
+         locals[i++] = "<init>".equals(name) ? ItemType.UNINITIALIZED_THIS : classDesc;
+      }
+
+      for (JavaType parameterType : parameterTypes) {
+         locals[i++] = getFrameItemType(parameterType.getDescriptor());
+      }
+
+      return i == locals.length ? locals : Arrays.copyOf(locals, i);
+   }
+
+   @Nonnull
+   private static Object getFrameItemType(@Nonnull String typeDesc) {
+      switch (typeDesc.charAt(0)) {
+         case 'Z': case 'C': case 'B': case 'S': case 'I': return ItemType.INTEGER;
+         case 'F': return ItemType.FLOAT;
+         case 'J': return ItemType.LONG;
+         case 'D': return ItemType.DOUBLE;
+         case 'L': return typeDesc.substring(1, typeDesc.length() - 1);
+         default: return typeDesc;
+      }
+   }
+
+   @Nonnegative
+   private int readFrameItemTypes(
+      @Nonnegative int codeIndex, @Nonnegative int codeStart, @Nonnull Object[] types, @Nonnegative int firstIndex
+   ) {
+      for (int i = firstIndex; i < types.length; i++) {
+         codeIndex = readFrameItemType(codeIndex, codeStart, types, i);
+      }
+
+      return codeIndex;
+   }
+
+   @Nonnegative
+   private int readFrameItemType(
+      @Nonnegative int codeIndex, @Nonnegative int codeStart, @Nonnull Object[] types, @Nonnegative int index
+   ) {
+      int itemType = readByte(codeIndex++);
+
+      if (itemType == ItemType.OBJECT) {
+         types[index] = readClass(codeIndex);
+         return codeIndex + 2;
+      }
+
+      if (itemType == ItemType.UNINITIALIZED) {
+         int newOffset = readUnsignedShort(codeIndex);
+         Label newInstruction = readDebugLabel(newOffset);
+         String newType = readClass(codeStart + newOffset + 1);
+         //noinspection ConstantConditions
+         types[index] = new Uninitialized(newInstruction, newType);
+         return codeIndex + 2;
+      }
+
+      types[index] = itemType;
+      return codeIndex;
+   }
+
    @SuppressWarnings({"OverlyComplexMethod", "OverlyLongMethod"})
    private void readBytecodeInstructionsInCodeBlock(@Nonnegative int codeStart, @Nonnegative int codeEnd) {
       int codeIndex = codeStart;
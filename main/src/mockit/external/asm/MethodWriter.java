@@ -107,6 +107,17 @@ public final class MethodWriter extends MethodVisitor
 
    private final boolean computeFrames;
 
+   /**
+    * The frames of the original method, if read along with its bytecode; when still valid for the modified code, they
+    * are written instead of computing frames from scratch.
+    */
+   @Nullable private OriginalFrames originalFrames;
+
+   /**
+    * Whether labels having frames from different original methods were visited.
+    */
+   private boolean originalFramesFromOtherMethods;
+
    /**
     * Constructs a new MethodWriter.
     *
@@ -319,6 +330,17 @@ public final class MethodWriter extends MethodVisitor
    @Override
    public void visitLabel(@Nonnull Label label) {
       cfgAnalysis.updateCurrentBlockForLabelBeforeNextInstruction(label);
+
+      OriginalFrames framesForLabel = label.originalFrames;
+
+      if (framesForLabel != null) {
+         if (originalFrames == null) {
+            originalFrames = framesForLabel;
+         }
+         else if (framesForLabel != originalFrames) {
+            originalFramesFromOtherMethods = true;
+         }
+      }
    }
 
    @Override
@@ -422,9 +444,12 @@ public final class MethodWriter extends MethodVisitor
 
    @Override
    public void visitMaxStack(@Nonnegative int maxStack) {
-      int computedMaxStack;
+      int computedMaxStack = computeFrames ? computeMaxStackSizeFromOriginalFrames() : -1;
 
-      if (computeFrames) {
+      if (computedMaxStack >= 0) {
+         visitOriginalFrames();
+      }
+      else if (computeFrames) {
          exceptionHandling.completeControlFlowGraphWithExceptionHandlerBlocksFromComputedFrames();
 
          Frame firstFrame = cfgAnalysis.getFirstFrame();
@@ -447,6 +472,44 @@ public final class MethodWriter extends MethodVisitor
       frameAndStack.setMaxStack(computedMaxStack);
    }
 
+   /**
+    * Computes the maximum stack size without computing frames, if the frames of the original method (or no frames at
+    * all, when neither the original nor the modified method have branches) are valid for the modified method.
+    *
+    * @return the maximum stack size, or <tt>-1</tt> if frames must be computed from scratch
+    * @see CFGAnalysis#computeMaxStackSizeFromOriginalFrames(OriginalFrames)
+    */
+   private int computeMaxStackSizeFromOriginalFrames() {
+      OriginalFrames frames = originalFrames;
+
+      if (
+         frames != null && (
+            originalFramesFromOtherMethods || !descriptor.equals(frames.methodDesc) ||
+            ((access & Access.STATIC) != 0) != frames.staticMethod || frameAndStack.getMaxLocals() > frames.maxLocals
+         )
+      ) {
+         return -1;
+      }
+
+      exceptionHandling.markHandlersAsTargets();
+      return cfgAnalysis.computeMaxStackSizeFromOriginalFrames(frames);
+   }
+
+   private void visitOriginalFrames() {
+      Frame firstFrame = cfgAnalysis.getFirstFrame();
+      frameAndStack.createAndVisitFirstFrame(firstFrame);
+
+      OriginalFrames frames = originalFrames;
+
+      if (frames != null) {
+         Label[] labels = frames.labels;
+
+         for (int i = 0; i < labels.length; i++) {
+            frameAndStack.visitOriginalFrame(labels[i].position, frames.locals[i], frames.stacks[i]);
+         }
+      }
+   }
+
    @Nonnegative
    private int visitAllFramesToBeStoredInStackMap(@Nonnegative int max) {
       Label label = cfgAnalysis.getLabelForFirstBasicBlock();
@@ -0,0 +1,170 @@
+package mockit.external.asm;
+
+import javax.annotation.*;
+
+/**
+ * The stack map frames of a method, as read from the StackMapTable attribute of its original bytecode.
+ * <p/>
+ * Each frame is attached to the {@link Label} of the instruction it applies to, so that a {@link MethodWriter} can
+ * write it again at the new position of that instruction in the modified method, instead of computing all frames from
+ * scratch.
+ * This is only possible when the modifications leave the control flow and the local variables of the method unchanged,
+ * as when instructions which leave the operand stack as it was are inserted; otherwise, all frames are recomputed.
+ */
+final class OriginalFrames
+{
+   /**
+    * Constants for the verification types of locals and stack items in a frame, other than reference types (which are
+    * represented by their internal names) and uninitialized types (represented as {@link Uninitialized} objects).
+    */
+   interface ItemType
+   {
+      int TOP = 0;
+      int INTEGER = 1;
+      int FLOAT = 2;
+      int DOUBLE = 3;
+      int LONG = 4;
+      int NULL = 5;
+      int UNINITIALIZED_THIS = 6;
+      int OBJECT = 7;
+      int UNINITIALIZED = 8;
+   }
+
+   /**
+    * The type of an object created by a <tt>NEW</tt> instruction on which no constructor was invoked yet.
+    */
+   static final class Uninitialized
+   {
+      /**
+       * The label of the <tt>NEW</tt> instruction, whose position identifies the type in a frame.
+       */
+      @Nonnull final Label newInstruction;
+
+      /**
+       * The internal name of the class instantiated by the <tt>NEW</tt> instruction.
+       */
+      @Nonnull final String type;
+
+      Uninitialized(@Nonnull Label newInstruction, @Nonnull String type) {
+         this.newInstruction = newInstruction;
+         this.type = type;
+      }
+   }
+
+   @Nonnull final String methodDesc;
+   final boolean staticMethod;
+
+   /**
+    * The maximum number of local variables in the original method.
+    */
+   @Nonnegative final int maxLocals;
+
+   /**
+    * The labels of the instructions having a frame, in bytecode order.
+    */
+   @Nonnull final Label[] labels;
+
+   /**
+    * The local variable types of each frame, one element for each local variable (including those of type long or
+    * double).
+    */
+   @Nonnull final Object[][] locals;
+
+   /**
+    * The operand stack types of each frame, one element for each stack item (including those of type long or double).
+    */
+   @Nonnull final Object[][] stacks;
+
+   OriginalFrames(
+      @Nonnull String methodDesc, boolean staticMethod, @Nonnegative int maxLocals, @Nonnegative int frameCount
+   ) {
+      this.methodDesc = methodDesc;
+      this.staticMethod = staticMethod;
+      this.maxLocals = maxLocals;
+      labels = new Label[frameCount];
+      locals = new Object[frameCount][];
+      stacks = new Object[frameCount][];
+   }
+
+   void setFrame(@Nonnegative int index, @Nonnull Label label, @Nonnull Object[] frameLocals, @Nonnull Object[] stack) {
+      labels[index] = label;
+      locals[index] = frameLocals;
+      stacks[index] = stack;
+   }
+
+   /**
+    * Attaches these frames to the labels of the instructions they apply to.
+    */
+   void attachToLabels() {
+      for (Label label : labels) {
+         label.originalFrames = this;
+      }
+   }
+
+   /**
+    * Returns the size of the operand stack in the given frame, where long and double values take two slots.
+    */
+   @Nonnegative
+   int getStackSize(@Nonnegative int index) {
+      Object[] stack = stacks[index];
+      int size = stack.length;
+
+      for (Object type : stack) {
+         if (type instanceof Integer && isLongOrDouble((Integer) type)) {
+            size++;
+         }
+      }
+
+      return size;
+   }
+
+   private static boolean isLongOrDouble(int itemType) {
+      return itemType == ItemType.LONG || itemType == ItemType.DOUBLE;
+   }
+
+   /**
+    * Indicates whether all frames can be written for the method being written, i.e., whether all instructions having a
+    * frame were written in the same order as in the original method, and each instruction which creates an
+    * uninitialized object in a frame still is at the position of its label.
+    * The latter isn't the case when code was inserted between the label and the <tt>NEW</tt> instruction, as for a line
+    * starting with it.
+    *
+    * @param code the bytecode of the method being written
+    */
+   boolean areAllInstructionsWrittenInOriginalOrder(@Nonnull ByteVector code) {
+      int previousPosition = -1;
+
+      for (int i = 0; i < labels.length; i++) {
+         Label label = labels[i];
+
+         if (
+            !label.isResolved() || label.position <= previousPosition ||
+            !areUninitializedTypesAtNewInstructions(code, locals[i]) ||
+            !areUninitializedTypesAtNewInstructions(code, stacks[i])
+         ) {
+            return false;
+         }
+
+         previousPosition = label.position;
+      }
+
+      return true;
+   }
+
+   private static boolean areUninitializedTypesAtNewInstructions(@Nonnull ByteVector code, @Nonnull Object[] types) {
+      for (Object type : types) {
+         if (type instanceof Uninitialized) {
+            Label newInstruction = ((Uninitialized) type).newInstruction;
+
+            if (
+               !newInstruction.isResolved() || newInstruction.position >= code.length ||
+               code.data[newInstruction.position] != (byte) Opcodes.NEW
+            ) {
+               return false;
+            }
+         }
+      }
+
+      return true;
+   }
+}
@@ -10,6 +10,7 @@ import javax.annotation.*;
 import org.junit.*;
 import org.junit.runners.model.*;
 
+import mockit.coverage.testRedundancy.*;
 import mockit.integration.internal.*;
 import mockit.internal.expectations.*;
 import mockit.internal.faking.*;
@@ -153,6 +154,10 @@ final class JUnit4TestRunnerDecorator extends TestRunnerDecorator
       Throwable testFailure = null;
       boolean testFailureExpected = false;
 
+      if (TestRun.areTestMethodsReportedToCoverage()) {
+         TestCoverage.INSTANCE.setCurrentTestMethod(testMethod);
+      }
+
       try {
          createInstancesForTestedFieldsFromBaseClasses(testInstance);
          Object[] annotatedParameters = createInstancesForAnnotatedParameters(testInstance, testMethod, parameters);
@@ -169,6 +174,10 @@ final class JUnit4TestRunnerDecorator extends TestRunnerDecorator
          testFailureExpected = expectedType.isAssignableFrom(thrownByTest.getClass());
       }
       finally {
+         if (TestRun.areTestMethodsReportedToCoverage()) {
+            TestCoverage.INSTANCE.setCurrentTestMethod(null);
+         }
+
          concludeTestMethodExecution(savePoint, testFailure, testFailureExpected);
       }
    }
@@ -11,6 +11,7 @@ import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.*;
 
 import mockit.*;
+import mockit.coverage.testRedundancy.*;
 import mockit.integration.internal.*;
 import mockit.internal.expectations.*;
 import mockit.internal.state.*;
@@ -93,6 +94,10 @@ final class JMockitExtension extends TestRunnerDecorator implements
          return;
       }
 
+      if (TestRun.areTestMethodsReportedToCoverage()) {
+         TestCoverage.INSTANCE.setCurrentTestMethod(testMethod);
+      }
+
       TestRun.enterNoMockingZone();
 
       try {
@@ -142,6 +147,10 @@ final class JMockitExtension extends TestRunnerDecorator implements
    @Override
    public void afterTestExecution(@Nonnull ExtensionContext context)
    {
+      if (TestRun.areTestMethodsReportedToCoverage()) {
+         TestCoverage.INSTANCE.setCurrentTestMethod(null);
+      }
+
       if (savePointForTestMethod != null) {
          TestRun.enterNoMockingZone();
 
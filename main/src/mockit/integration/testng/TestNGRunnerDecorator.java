@@ -149,7 +149,7 @@ public final class TestNGRunnerDecorator extends TestRunnerDecorator
 
       Method method = testNGMethod.getConstructorOrMethod().getMethod();
 
-      if (Metrics.DataCoverage.active) {
+      if (Metrics.DataCoverage.active || TestRun.areTestMethodsReportedToCoverage()) {
          TestCoverage.INSTANCE.setCurrentTestMethod(method);
       }
 
@@ -243,7 +243,7 @@ public final class TestNGRunnerDecorator extends TestRunnerDecorator
          return;
       }
 
-      if (Metrics.DataCoverage.active) {
+      if (Metrics.DataCoverage.active || TestRun.areTestMethodsReportedToCoverage()) {
          TestCoverage.INSTANCE.setCurrentTestMethod(null);
       }
 
@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import javax.annotation.*;
+
+import mockit.internal.util.*;
+
+/**
+ * On-disk store of classes modified or generated for mocking, shared by all test JVMs which use the same store
+ * directory (as specified with the "<tt>jmockit-classCacheDir</tt>" system property), such as the forked JVMs of a
+ * test run, or those of consecutive test runs.
+ * <p/>
+ * Entries are keyed by the original bytecode of the class to be modified and of its super-types, along with a
+ * description of the options used for the modification and the settings which affect it (JMockit version and JVM,
+ * among others).
+ * Therefore, modified bytecode can only be stored when it doesn't depend on the state of the JVM which produced it.
+ * <p/>
+ * Stack map frames in modified classes are also computed from the super-classes of other classes referenced by their
+ * methods, which can't be known before the modification; instead, the super-classes consulted are stored with each
+ * entry, and the entry is only restored if they are still the same.
+ */
+public final class ModifiedClassfileStore
+{
+   private static final String FORMAT_VERSION = "3";
+   @Nullable private static final ModifiedClassfileStore INSTANCE = createIfConfigured();
+
+   /**
+    * A class restored from the store.
+    */
+   public static final class StoredClassfile
+   {
+      /**
+       * The modified bytecode, or <tt>null</tt> if the class was left unmodified.
+       */
+      @Nullable public final byte[] modifiedClassfile;
+
+      /**
+       * Internal names of other types to be modified along with the stored class, such as the element subclasses of
+       * an <tt>enum</tt>.
+       */
+      @Nullable public final List<String> relatedTypes;
+
+      StoredClassfile(@Nullable byte[] modifiedClassfile, @Nullable List<String> relatedTypes)
+      {
+         this.modifiedClassfile = modifiedClassfile;
+         this.relatedTypes = relatedTypes;
+      }
+   }
+
+   @Nonnull private final File storeDir;
+   @Nonnull private final byte[] settings;
+
+   @Nullable
+   private static ModifiedClassfileStore createIfConfigured()
+   {
+      String storeDirPath = System.getProperty("jmockit-classCacheDir");
+
+      if (storeDirPath == null || storeDirPath.isEmpty()) {
+         return null;
+      }
+
+      File storeDir = new File(storeDirPath);
+
+      if (!storeDir.isDirectory() && !storeDir.mkdirs() && !storeDir.isDirectory()) {
+         // Classes then simply get modified in every test JVM, as when no store is configured.
+         return null;
+      }
+
+      return new ModifiedClassfileStore(storeDir);
+   }
+
+   ModifiedClassfileStore(@Nonnull File storeDir)
+   {
+      this.storeDir = storeDir;
+      settings = describeSettings().getBytes(StandardCharsets.UTF_8);
+   }
+
+   @Nonnull
+   private static String describeSettings()
+   {
+      StringBuilder description = new StringBuilder(FORMAT_VERSION);
+      description.append(' ').append(ModifiedClassfileStore.class.getPackage().getImplementationVersion());
+
+      CodeSource codeSource = ModifiedClassfileStore.class.getProtectionDomain().getCodeSource();
+
+      if (codeSource != null && codeSource.getLocation() != null) {
+         File jmockitJar = new File(codeSource.getLocation().getPath());
+
+         if (jmockitJar.isFile()) {
+            description.append(' ').append(digestOfFile(jmockitJar));
+         }
+      }
+
+      description.append(' ').append(System.getProperty("java.vm.name"));
+      description.append(' ').append(System.getProperty("java.version"));
+      return description.toString();
+   }
+
+   /**
+    * Computes a digest of the contents of the JMockit jar, so that entries aren't reused after the jar gets rebuilt
+    * without a change in version.
+    */
+   @Nonnull
+   private static String digestOfFile(@Nonnull File file)
+   {
+      MessageDigest digest = createMessageDigest();
+      byte[] buffer = new byte[8192];
+
+      try {
+         InputStream input = new FileInputStream(file);
+
+         try {
+            for (int bytesRead; (bytesRead = input.read(buffer)) >= 0; ) {
+               digest.update(buffer, 0, bytesRead);
+            }
+         }
+         finally {
+            input.close();
+         }
+      }
+      catch (IOException ignore) {
+         return file.lastModified() + " " + file.length();
+      }
+
+      return toHexString(digest.digest());
+   }
+
+   /**
+    * Returns the key of the entry for a class modified with the given options from the given original classfile, or
+    * <tt>null</tt> if the store is not in use.
+    * The bytecode of the super-types of the class is also part of the key, as it is read during the modification.
+    *
+    * @param modificationOptions description of everything other than the original classfiles which affects the
+    *                            modified bytecode
+    * @param modifiedClass the class to be modified, or the source class of a generated class
+    * @param originalClassfile the bytecode of the class to be modified
+    */
+   @Nullable
+   public static String getKey(
+      @Nonnull String modificationOptions, @Nonnull Class<?> modifiedClass, @Nonnull byte[] originalClassfile)
+   {
+      ModifiedClassfileStore store = INSTANCE;
+      return store == null ? null : store.computeKey(modificationOptions, modifiedClass, originalClassfile);
+   }
+
+   @Nonnull
+   String computeKey(
+      @Nonnull String modificationOptions, @Nonnull Class<?> modifiedClass, @Nonnull byte[] originalClassfile)
+   {
+      StringBuilder options = new StringBuilder(modificationOptions);
+      List<byte[]> originalClassfiles = new ArrayList<byte[]>();
+      originalClassfiles.add(originalClassfile);
+      addSuperTypes(modifiedClass, options, originalClassfiles, new HashSet<Class<?>>());
+
+      MessageDigest digest = createMessageDigest();
+      digest.update(settings);
+      digest.update(options.toString().getBytes(StandardCharsets.UTF_8));
+
+      for (byte[] classfile : originalClassfiles) {
+         digest.update(ByteBuffer.allocate(4).putInt(0, classfile.length));
+         digest.update(classfile);
+      }
+
+      return toHexString(digest.digest());
+   }
+
+   /**
+    * Adds the bytecode of the super-types of the given class; for JRE types their names are added instead, since their
+    * bytecode only varies with the JVM.
+    */
+   private static void addSuperTypes(
+      @Nonnull Class<?> aClass, @Nonnull StringBuilder options, @Nonnull List<byte[]> originalClassfiles,
+      @Nonnull Set<Class<?>> typesAdded)
+   {
+      List<Class<?>> superTypes = new ArrayList<Class<?>>(Arrays.asList(aClass.getInterfaces()));
+      Class<?> superClass = aClass.getSuperclass();
+
+      if (superClass != null && superClass != Object.class) {
+         superTypes.add(superClass);
+      }
+
+      for (Class<?> superType : superTypes) {
+         if (typesAdded.add(superType)) {
+            if (superType.getClassLoader() == null) {
+               options.append(' ').append(superType.getName());
+            }
+            else {
+               originalClassfiles.add(ClassFile.createReaderOrGetFromCache(superType).getBytecode());
+            }
+
+            addSuperTypes(superType, options, originalClassfiles, typesAdded);
+         }
+      }
+   }
+
+   @Nonnull
+   private static MessageDigest createMessageDigest()
+   {
+      try {
+         return MessageDigest.getInstance("SHA-1");
+      }
+      catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   @Nonnull
+   private static String toHexString(@Nonnull byte[] bytes)
+   {
+      StringBuilder hex = new StringBuilder(2 * bytes.length);
+
+      for (byte b : bytes) {
+         hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+
+      return hex.toString();
+   }
+
+   @Nonnull
+   private File getEntryFile(@Nonnull String key) { return new File(storeDir, key + ".jmk"); }
+
+   /**
+    * Starts recording the super-classes consulted while modifying a class to be stored, unless already recording for
+    * the modification of another class.
+    *
+    * @return whether recording was started, to be passed to {@link #endModification}
+    */
+   public static boolean startModification() { return INSTANCE != null && ClassLoad.startRecordingSuperClasses(); }
+
+   /**
+    * Returns the super-classes consulted since the modification started, by class name, to be passed to
+    * {@link #store}; recording stops if it was started for this modification.
+    *
+    * @param modificationStarted the value returned by {@link #startModification()} before modifying the class
+    */
+   @Nonnull
+   public static Map<String, String> endModification(boolean modificationStarted)
+   {
+      return INSTANCE == null ? Collections.<String, String>emptyMap() :
+         ClassLoad.getRecordedSuperClasses(modificationStarted);
+   }
+
+   /**
+    * Restores the class stored with the given key, if any.
+    *
+    * @param key a key previously obtained from {@link #getKey}
+    */
+   @Nullable
+   public static StoredClassfile load(@Nonnull String key)
+   {
+      ModifiedClassfileStore store = INSTANCE;
+      return store == null ? null : store.readEntry(key);
+   }
+
+   @Nullable
+   StoredClassfile readEntry(@Nonnull String key)
+   {
+      File entryFile = getEntryFile(key);
+
+      if (!entryFile.exists()) {
+         return null;
+      }
+
+      try {
+         DataInputStream input = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(entryFile.toPath())));
+         byte[] modifiedClassfile = null;
+         int length = input.readInt();
+
+         if (length >= 0) {
+            modifiedClassfile = new byte[length];
+            input.readFully(modifiedClassfile);
+         }
+
+         List<String> relatedTypes = null;
+         int relatedTypeCount = input.readInt();
+
+         if (relatedTypeCount > 0) {
+            relatedTypes = new ArrayList<String>(relatedTypeCount);
+
+            for (int i = 0; i < relatedTypeCount; i++) {
+               relatedTypes.add(input.readUTF());
+            }
+         }
+
+         int superClassCount = input.readInt();
+
+         for (int i = 0; i < superClassCount; i++) {
+            String classDesc = input.readUTF();
+            String superClassDesc = input.readUTF();
+
+            if (!hasSuperClass(classDesc, superClassDesc)) {
+               return null;
+            }
+         }
+
+         return new StoredClassfile(modifiedClassfile, relatedTypes);
+      }
+      catch (IOException ignore) {
+         // An incomplete or unreadable entry, which will be overwritten.
+         return null;
+      }
+   }
+
+   /**
+    * Indicates whether the given class, as loaded in the current JVM, still has the given super-class; a class which
+    * can't be loaded doesn't.
+    */
+   private static boolean hasSuperClass(@Nonnull String classDesc, @Nonnull String superClassDesc)
+   {
+      try {
+         return superClassDesc.equals(ClassLoad.getSuperClass(classDesc));
+      }
+      catch (IllegalArgumentException ignore) { return false; }
+      catch (LinkageError ignore) { return false; }
+   }
+
+   /**
+    * Stores a modified class with the given key, replacing any previous entry, together with the super-classes
+    * consulted during its modification.
+    *
+    * @param key a key previously obtained from {@link #getKey}
+    * @param modifiedClassfile the modified bytecode, or <tt>null</tt> if the class was left unmodified
+    * @param relatedTypes internal names of other types to be modified along with the class, if any
+    * @param superClasses the super-classes consulted during the modification, as returned by {@link #endModification}
+    */
+   public static void store(
+      @Nonnull String key, @Nullable byte[] modifiedClassfile, @Nullable List<String> relatedTypes,
+      @Nonnull Map<String, String> superClasses)
+   {
+      ModifiedClassfileStore store = INSTANCE;
+
+      if (store != null) {
+         store.writeEntry(key, modifiedClassfile, relatedTypes, superClasses);
+      }
+   }
+
+   void writeEntry(
+      @Nonnull String key, @Nullable byte[] modifiedClassfile, @Nullable List<String> relatedTypes,
+      @Nonnull Map<String, String> superClasses)
+   {
+      // Written to a temporary file first, so that other test JVMs never see an incomplete entry.
+      try {
+         File tempFile = File.createTempFile(key, ".tmp", storeDir);
+
+         try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+            try {
+               writeEntry(output, modifiedClassfile, relatedTypes, superClasses);
+            }
+            finally {
+               output.close();
+            }
+
+            Files.move(tempFile.toPath(), getEntryFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+         }
+         finally {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+         }
+      }
+      catch (IOException ignore) {
+         // The class will simply be modified again next time.
+      }
+   }
+
+   private static void writeEntry(
+      @Nonnull DataOutputStream output, @Nullable byte[] modifiedClassfile, @Nullable List<String> relatedTypes,
+      @Nonnull Map<String, String> superClasses)
+      throws IOException
+   {
+      if (modifiedClassfile == null) {
+         output.writeInt(-1);
+      }
+      else {
+         output.writeInt(modifiedClassfile.length);
+         output.write(modifiedClassfile);
+      }
+
+      if (relatedTypes == null) {
+         output.writeInt(0);
+      }
+      else {
+         output.writeInt(relatedTypes.size());
+
+         for (String relatedType : relatedTypes) {
+            output.writeUTF(relatedType);
+         }
+      }
+
+      output.writeInt(superClasses.size());
+
+      for (Map.Entry<String, String> classAndSuperClass : superClasses.entrySet()) {
+         output.writeUTF(classAndSuperClass.getKey());
+         output.writeUTF(classAndSuperClass.getValue());
+      }
+   }
+}
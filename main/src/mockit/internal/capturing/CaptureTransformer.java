@@ -9,22 +9,19 @@ import java.security.*;
 import java.util.*;
 import javax.annotation.*;
 
-import static java.lang.Boolean.*;
-
 import mockit.external.asm.*;
 import mockit.internal.*;
 import mockit.internal.startup.*;
 import mockit.internal.state.*;
 import mockit.internal.util.*;
-import static mockit.external.asm.ClassReader.*;
 
 public final class CaptureTransformer<M> implements ClassFileTransformer
 {
    @Nonnull private final CapturedType capturedType;
    @Nonnull private final String capturedTypeDesc;
+   @Nonnull private final byte[] capturedTypeName;
    @Nonnull private final CaptureOfImplementations<M> captureOfImplementations;
    @Nonnull private final Map<ClassIdentification, byte[]> transformedClasses;
-   @Nonnull private final Map<String, Boolean> superTypesSearched;
    @Nullable private final M typeMetadata;
    private boolean inactive;
 
@@ -34,10 +31,10 @@ public final class CaptureTransformer<M> implements ClassFileTransformer
    {
       this.capturedType = capturedType;
       capturedTypeDesc = JavaType.getInternalName(capturedType.baseType);
+      capturedTypeName = SuperTypePrefilter.toBytes(capturedTypeDesc);
       this.captureOfImplementations = captureOfImplementations;
       transformedClasses = registerTransformedClasses ?
          new HashMap<ClassIdentification, byte[]>(2) : Collections.<ClassIdentification, byte[]>emptyMap();
-      superTypesSearched = new HashMap<String, Boolean>();
       this.typeMetadata = typeMetadata;
    }
 
@@ -64,22 +61,17 @@ public final class CaptureTransformer<M> implements ClassFileTransformer
    {
       if (
          classBeingRedefined != null || inactive ||
+         !SuperTypePrefilter.mayBeSubtype(classfileBuffer, capturedTypeName) ||
          capturedType.isNotToBeCaptured(loader, protectionDomain, classDesc)
       ) {
          return null;
       }
 
       ClassReader cr = new ClassReader(classfileBuffer);
-      SuperTypeCollector superTypeCollector = new SuperTypeCollector(loader);
 
-      try {
-         cr.accept(superTypeCollector, SKIP_CODE + SKIP_DEBUG);
-      }
-      catch (VisitInterruptedException ignore) {
-         if (superTypeCollector.classExtendsCapturedType) {
-            String className = classDesc.replace('/', '.');
-            return modifyAndRegisterClass(loader, className, cr);
-         }
+      if (SuperTypeClosures.isSubtype(loader, cr.getSuperName(), cr.getInterfaces(), capturedTypeDesc)) {
+         String className = classDesc.replace('/', '.');
+         return modifyAndRegisterClass(loader, className, cr);
       }
 
       return null;
@@ -106,89 +98,6 @@ public final class CaptureTransformer<M> implements ClassFileTransformer
       return modifier.toByteArray();
    }
 
-   private final class SuperTypeCollector extends ClassVisitor
-   {
-      @Nullable private final ClassLoader loader;
-      boolean classExtendsCapturedType;
-
-      private SuperTypeCollector(@Nullable ClassLoader loader) { this.loader = loader; }
-
-      @Override
-      public void visit(
-         int version, int access, @Nonnull String name, @Nullable String signature, @Nullable String superName,
-         @Nullable String[] interfaces)
-      {
-         classExtendsCapturedType = false;
-
-         if (capturedTypeDesc.equals(superName)) {
-            classExtendsCapturedType = true;
-            throw VisitInterruptedException.INSTANCE;
-         }
-
-         if (interfaces != null && interfaces.length > 0) {
-            interruptVisitIfClassImplementsAnInterface(interfaces);
-         }
-
-         if (superName != null) {
-            searchSuperTypes(superName, interfaces);
-         }
-
-         throw VisitInterruptedException.INSTANCE;
-      }
-
-      private void interruptVisitIfClassImplementsAnInterface(@Nonnull String[] interfaces)
-      {
-         for (String implementedInterface : interfaces) {
-            if (capturedTypeDesc.equals(implementedInterface)) {
-               classExtendsCapturedType = true;
-               throw VisitInterruptedException.INSTANCE;
-            }
-         }
-      }
-
-      private void searchSuperTypes(@Nonnull String superName, @Nullable String[] interfaces)
-      {
-         if (!"java/lang/Object".equals(superName) && !superName.startsWith("mockit/")) {
-            searchSuperType(superName);
-         }
-
-         if (interfaces != null && interfaces.length > 0) {
-            for (String itf : interfaces) {
-               if (!itf.startsWith("java/") && !itf.startsWith("javax/")) {
-                  searchSuperType(itf);
-               }
-            }
-         }
-      }
-
-      private void searchSuperType(@Nonnull String superName)
-      {
-         Boolean extendsCapturedType = superTypesSearched.get(superName);
-
-         if (extendsCapturedType == FALSE) {
-            return;
-         }
-
-         if (extendsCapturedType == TRUE) {
-            classExtendsCapturedType = true;
-            throw VisitInterruptedException.INSTANCE;
-         }
-
-         ClassReader cr = ClassFile.createClassFileReader(loader, superName);
-
-         try {
-            cr.accept(this, SKIP_CODE + SKIP_DEBUG);
-         }
-         catch (VisitInterruptedException e) {
-            superTypesSearched.put(superName, classExtendsCapturedType);
-
-            if (classExtendsCapturedType) {
-               throw e;
-            }
-         }
-      }
-   }
-
    @Nullable
    public <C extends CaptureOfImplementations<?>> C getCaptureOfImplementationsIfApplicable(@Nonnull Class<?> aType)
    {
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.capturing;
+
+import java.util.*;
+import java.util.concurrent.*;
+import javax.annotation.*;
+
+import mockit.external.asm.*;
+import mockit.internal.*;
+
+/**
+ * Caches the super-types of the types examined when searching for implementations of captured types, for use by all
+ * {@link CaptureTransformer} instances.
+ * <p/>
+ * The super-types of a type include its direct super-types, plus the super-types of those which are searched: a
+ * super-class other than <tt>Object</tt> or a JMockit class, or an interface outside the <tt>java</tt> and
+ * <tt>javax</tt> packages.
+ * Since this set does not depend on the captured type, it only needs to be computed once for each type, no matter how
+ * many types get captured.
+ * It's cached separately for each class loader, since types of the same name can be defined by different loaders (as in
+ * containers with isolated class loaders); loaders are weakly referenced, so that they can still be garbage collected.
+ */
+final class SuperTypeClosures
+{
+   @Nonnull private static final Map<ClassLoader, ConcurrentMap<String, Set<String>>> superTypesPerLoaderAndType =
+      new WeakHashMap<ClassLoader, ConcurrentMap<String, Set<String>>>();
+
+   private SuperTypeClosures() {}
+
+   /**
+    * Returns whether a class with the given direct super-types extends or implements the captured type.
+    */
+   static boolean isSubtype(
+      @Nullable ClassLoader loader, @Nullable String superName, @Nonnull String[] interfaces,
+      @Nonnull String capturedTypeDesc)
+   {
+      if (capturedTypeDesc.equals(superName)) {
+         return true;
+      }
+
+      for (String implementedInterface : interfaces) {
+         if (capturedTypeDesc.equals(implementedInterface)) {
+            return true;
+         }
+      }
+
+      ConcurrentMap<String, Set<String>> superTypesPerType = getSuperTypesPerType(loader);
+
+      if (superName != null && isSearchedSuperClass(superName)) {
+         if (getSuperTypes(superTypesPerType, loader, superName).contains(capturedTypeDesc)) {
+            return true;
+         }
+      }
+
+      for (String implementedInterface : interfaces) {
+         if (isSearchedInterface(implementedInterface)) {
+            if (getSuperTypes(superTypesPerType, loader, implementedInterface).contains(capturedTypeDesc)) {
+               return true;
+            }
+         }
+      }
+
+      return false;
+   }
+
+   private static boolean isSearchedSuperClass(@Nonnull String superName)
+   {
+      return !"java/lang/Object".equals(superName) && !superName.startsWith("mockit/");
+   }
+
+   private static boolean isSearchedInterface(@Nonnull String interfaceName)
+   {
+      return !interfaceName.startsWith("java/") && !interfaceName.startsWith("javax/");
+   }
+
+   @Nonnull
+   private static ConcurrentMap<String, Set<String>> getSuperTypesPerType(@Nullable ClassLoader loader)
+   {
+      synchronized (superTypesPerLoaderAndType) {
+         ConcurrentMap<String, Set<String>> superTypesPerType = superTypesPerLoaderAndType.get(loader);
+
+         if (superTypesPerType == null) {
+            superTypesPerType = new ConcurrentHashMap<String, Set<String>>();
+            superTypesPerLoaderAndType.put(loader, superTypesPerType);
+         }
+
+         return superTypesPerType;
+      }
+   }
+
+   @Nonnull
+   private static Set<String> getSuperTypes(
+      @Nonnull ConcurrentMap<String, Set<String>> superTypesPerType, @Nullable ClassLoader loader,
+      @Nonnull String typeDesc)
+   {
+      Set<String> superTypes = superTypesPerType.get(typeDesc);
+
+      if (superTypes == null) {
+         superTypes = collectSuperTypes(superTypesPerType, loader, typeDesc);
+         Set<String> previousSuperTypes = superTypesPerType.putIfAbsent(typeDesc, superTypes);
+
+         if (previousSuperTypes != null) {
+            superTypes = previousSuperTypes;
+         }
+      }
+
+      return superTypes;
+   }
+
+   @Nonnull
+   private static Set<String> collectSuperTypes(
+      @Nonnull ConcurrentMap<String, Set<String>> superTypesPerType, @Nullable ClassLoader loader,
+      @Nonnull String typeDesc)
+   {
+      ClassReader cr = ClassFile.createClassFileReader(loader, typeDesc);
+      String superName = cr.getSuperName();
+      String[] interfaces = cr.getInterfaces();
+
+      if (superName == null && interfaces.length == 0) {
+         return Collections.emptySet();
+      }
+
+      Set<String> superTypes = new HashSet<String>();
+
+      if (superName != null) {
+         superTypes.add(superName);
+
+         if (isSearchedSuperClass(superName)) {
+            superTypes.addAll(getSuperTypes(superTypesPerType, loader, superName));
+         }
+      }
+
+      for (String implementedInterface : interfaces) {
+         superTypes.add(implementedInterface);
+
+         if (isSearchedInterface(implementedInterface)) {
+            superTypes.addAll(getSuperTypes(superTypesPerType, loader, implementedInterface));
+         }
+      }
+
+      return superTypes;
+   }
+}
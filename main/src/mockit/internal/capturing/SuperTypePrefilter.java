@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.capturing;
+
+import java.nio.charset.*;
+import javax.annotation.*;
+
+/**
+ * Decides from the raw bytes of a classfile, without parsing it into objects, whether the class could be an
+ * implementation of a captured type.
+ * <p/>
+ * Only the direct super-types of the class are considered, as named in its constant pool.
+ * A class can be rejected when none of them is the captured type itself and none is a type whose own super-types get
+ * searched by {@link SuperTypeClosures}; this covers most classes, which only extend <tt>Object</tt> and/or implement
+ * standard interfaces.
+ */
+final class SuperTypePrefilter
+{
+   // Tags of constant pool entries, as defined in the JVM specification.
+   private static final int UTF8 = 1;
+   private static final int INT = 3;
+   private static final int FLOAT = 4;
+   private static final int LONG = 5;
+   private static final int DOUBLE = 6;
+   private static final int CLASS = 7;
+   private static final int STR = 8;
+   private static final int FIELD = 9;
+   private static final int METH = 10;
+   private static final int IMETH = 11;
+   private static final int NAME_TYPE = 12;
+   private static final int HANDLE = 15;
+   private static final int MTYPE = 16;
+   private static final int CONDY = 17;
+   private static final int INDY = 18;
+   private static final int MODULE = 19;
+   private static final int PACKAGE = 20;
+
+   private static final byte[] OBJECT = toBytes("java/lang/Object");
+   private static final byte[] MOCKIT_PACKAGE = toBytes("mockit/");
+   private static final byte[] JAVA_PACKAGE = toBytes("java/");
+   private static final byte[] JAVAX_PACKAGE = toBytes("javax/");
+
+   /**
+    * Positions of the constant pool entries of the classfile being examined, reused by each thread so that rejecting a
+    * class allocates nothing.
+    */
+   private static final ThreadLocal<int[]> ENTRY_POSITIONS = new ThreadLocal<int[]>() {
+      @Override
+      protected int[] initialValue() { return new int[512]; }
+   };
+
+   private SuperTypePrefilter() {}
+
+   @Nonnull
+   static byte[] toBytes(@Nonnull String internalName) { return internalName.getBytes(Charset.forName("UTF-8")); }
+
+   /**
+    * Returns <tt>false</tt> if the class in the given classfile is certainly not a subtype of the captured type;
+    * otherwise, returns <tt>true</tt>, including when the classfile has constant pool entries of unknown kinds.
+    */
+   static boolean mayBeSubtype(@Nonnull byte[] classfile, @Nonnull byte[] capturedType)
+   {
+      int entryCount = readUnsignedShort(classfile, 8);
+      int[] entries = getEntryPositions(entryCount);
+      int header = findConstantPoolEntries(classfile, entries, entryCount);
+
+      if (header < 0) {
+         return true;
+      }
+
+      int superClassName = findClassName(classfile, entries, entryCount, readUnsignedShort(classfile, header + 4));
+
+      if (
+         superClassName != 0 && (
+            superClassName < 0 || equals(classfile, superClassName, capturedType) ||
+            !equals(classfile, superClassName, OBJECT) && !startsWith(classfile, superClassName, MOCKIT_PACKAGE)
+         )
+      ) {
+         return true;
+      }
+
+      int interfaceCount = readUnsignedShort(classfile, header + 6);
+
+      for (int i = 0; i < interfaceCount; i++) {
+         int interfaceIndex = readUnsignedShort(classfile, header + 8 + 2 * i);
+         int interfaceName = findClassName(classfile, entries, entryCount, interfaceIndex);
+
+         if (
+            interfaceName <= 0 || equals(classfile, interfaceName, capturedType) ||
+            !startsWith(classfile, interfaceName, JAVA_PACKAGE) && !startsWith(classfile, interfaceName, JAVAX_PACKAGE)
+         ) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   @Nonnull
+   private static int[] getEntryPositions(@Nonnegative int entryCount)
+   {
+      int[] entries = ENTRY_POSITIONS.get();
+
+      if (entries.length < entryCount) {
+         entries = new int[Math.max(entryCount, 2 * entries.length)];
+         ENTRY_POSITIONS.set(entries);
+      }
+
+      return entries;
+   }
+
+   /**
+    * Stores the positions in the classfile of the constant pool entries into the given array, indexed as in the
+    * constant pool; the position of the unusable entry at index <tt>0</tt>, and of the one following each long or
+    * double entry, is <tt>0</tt>.
+    *
+    * @return the position of the class header after the constant pool, or <tt>-1</tt> if an entry of unknown kind is
+    * found
+    */
+   private static int findConstantPoolEntries(
+      @Nonnull byte[] classfile, @Nonnull int[] entries, @Nonnegative int entryCount)
+   {
+      int position = 10;
+
+      if (entryCount > 0) {
+         entries[0] = 0;
+      }
+
+      for (int i = 1; i < entryCount; i++) {
+         int entrySize = getConstantPoolEntrySize(classfile, position);
+
+         if (entrySize < 0) {
+            return -1;
+         }
+
+         entries[i] = position;
+         int tag = classfile[position];
+
+         if ((tag == LONG || tag == DOUBLE) && i + 1 < entryCount) {
+            entries[++i] = 0;
+         }
+
+         position += entrySize;
+      }
+
+      return position;
+   }
+
+   private static int getConstantPoolEntrySize(@Nonnull byte[] classfile, @Nonnegative int position)
+   {
+      switch (classfile[position]) {
+         case UTF8: return 3 + readUnsignedShort(classfile, position + 1);
+         case CLASS: case STR: case MTYPE: case MODULE: case PACKAGE: return 3;
+         case HANDLE: return 4;
+         case INT: case FLOAT: case FIELD: case METH: case IMETH: case NAME_TYPE: case CONDY: case INDY: return 5;
+         case LONG: case DOUBLE: return 9;
+         default: return -1;
+      }
+   }
+
+   /**
+    * Returns the position of the UTF8 entry holding the name of the given class entry, <tt>0</tt> if there is no such
+    * class (as for the super-class of <tt>Object</tt>), or <tt>-1</tt> if the entry could not be found.
+    */
+   private static int findClassName(
+      @Nonnull byte[] classfile, @Nonnull int[] entries, @Nonnegative int entryCount, @Nonnegative int classEntryIndex)
+   {
+      if (classEntryIndex == 0) {
+         return 0;
+      }
+
+      int classEntry = getEntry(entries, entryCount, classEntryIndex);
+
+      if (classEntry <= 0 || classfile[classEntry] != CLASS) {
+         return -1;
+      }
+
+      int nameEntry = getEntry(entries, entryCount, readUnsignedShort(classfile, classEntry + 1));
+      return nameEntry <= 0 || classfile[nameEntry] != UTF8 ? -1 : nameEntry;
+   }
+
+   private static int getEntry(@Nonnull int[] entries, @Nonnegative int entryCount, @Nonnegative int entryIndex)
+   {
+      return entryIndex < entryCount ? entries[entryIndex] : -1;
+   }
+
+   private static boolean equals(@Nonnull byte[] classfile, @Nonnegative int utf8Entry, @Nonnull byte[] name)
+   {
+      return readUnsignedShort(classfile, utf8Entry + 1) == name.length && startsWith(classfile, utf8Entry, name);
+   }
+
+   private static boolean startsWith(@Nonnull byte[] classfile, @Nonnegative int utf8Entry, @Nonnull byte[] prefix)
+   {
+      int length = readUnsignedShort(classfile, utf8Entry + 1);
+
+      if (length < prefix.length) {
+         return false;
+      }
+
+      for (int i = 0, start = utf8Entry + 3; i < prefix.length; i++) {
+         if (classfile[start + i] != prefix[i]) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   private static int readUnsignedShort(@Nonnull byte[] classfile, @Nonnegative int position)
+   {
+      return (classfile[position] & 0xFF) << 8 | classfile[position + 1] & 0xFF;
+   }
+}
@@ -5,10 +5,12 @@
 package mockit.internal.classGeneration;
 
 import java.lang.reflect.Type;
+import java.util.*;
 import javax.annotation.*;
 
 import mockit.external.asm.*;
 import mockit.internal.*;
+import mockit.internal.ModifiedClassfileStore.*;
 import mockit.internal.util.*;
 
 /**
@@ -37,21 +39,72 @@ public abstract class ImplementationClass<T>
    public final Class<T> generateClass()
    {
       ClassReader classReader = ClassFile.createReaderOrGetFromCache(sourceClass);
+      String storeKey = getKeyForStoredClass(classReader);
+      byte[] modifiedClassfile = null;
 
-      ClassVisitor modifier = createMethodBodyGenerator(classReader);
-      classReader.accept(modifier);
+      if (storeKey != null) {
+         StoredClassfile storedClass = ModifiedClassfileStore.load(storeKey);
 
-      return defineNewClass(modifier);
+         if (storedClass != null) {
+            modifiedClassfile = storedClass.modifiedClassfile;
+         }
+      }
+
+      if (modifiedClassfile != null) {
+         return defineNewClass(modifiedClassfile);
+      }
+
+      boolean modificationStarted = storeKey != null && ModifiedClassfileStore.startModification();
+      Map<String, String> superClassesConsulted;
+
+      try {
+         ClassVisitor modifier = createMethodBodyGenerator(classReader);
+         classReader.accept(modifier);
+         modifiedClassfile = modifier.toByteArray();
+      }
+      finally {
+         superClassesConsulted = ModifiedClassfileStore.endModification(modificationStarted);
+      }
+
+      Class<T> generatedClass = defineNewClass(modifiedClassfile);
+
+      if (storeKey != null) {
+         ModifiedClassfileStore.store(storeKey, modifiedClassfile, null, superClassesConsulted);
+      }
+
+      return generatedClass;
    }
 
    @Nonnull
    protected abstract ClassVisitor createMethodBodyGenerator(@Nonnull ClassReader typeReader);
 
+   /**
+    * Describes everything other than the bytecode of the source class and of its super-types which affects the
+    * generated class, allowing it to be reused from the {@linkplain ModifiedClassfileStore persistent store} of
+    * modified classes.
+    *
+    * @return the description, or <tt>null</tt> (the default) if the generated class can't be reused in other JVMs
+    */
+   @Nullable
+   protected String describeGenerationOptions() { return null; }
+
+   @Nullable
+   private String getKeyForStoredClass(@Nonnull ClassReader classReader)
+   {
+      String generationOptions = describeGenerationOptions();
+
+      if (generationOptions == null) {
+         return null;
+      }
+
+      String options = generatedClassName + ' ' + generationOptions;
+      return ModifiedClassfileStore.getKey(options, sourceClass, classReader.getBytecode());
+   }
+
    @Nonnull
-   private Class<T> defineNewClass(@Nonnull ClassVisitor modifier)
+   private Class<T> defineNewClass(@Nonnull final byte[] modifiedClassfile)
    {
       final ClassLoader parentLoader = ClassLoad.getClassLoaderWithAccess(sourceClass);
-      final byte[] modifiedClassfile = modifier.toByteArray();
 
       try {
          @SuppressWarnings("unchecked")
@@ -52,6 +52,25 @@ final class Expectation
       return results.produceResult(invokedObject, invocationArgs);
    }
 
+   /**
+    * Indicates whether a matching invocation can be replayed without holding the record/replay lock, which requires
+    * that no upper limit on invocations needs to be enforced and that results are produced without side effects,
+    * such as a fixed return value or the default value for a primitive or <tt>void</tt> return type.
+    */
+   boolean canBeReplayedConcurrently()
+   {
+      if (recordPhase == null || constraints.hasUpperLimit()) {
+         return false;
+      }
+
+      if (results == null) {
+         String returnTypeDesc = DefaultValues.getReturnTypeDesc(invocation.getMethodNameAndDescription());
+         return returnTypeDesc.length() == 1;
+      }
+
+      return results.hasOnlyFixedReturnValueLeft();
+   }
+
    @Nonnull
    Class<?> getReturnType()
    {
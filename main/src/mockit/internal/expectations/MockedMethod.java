@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.expectations;
+
+import java.lang.ref.*;
+import java.util.concurrent.*;
+import javax.annotation.*;
+
+import mockit.internal.expectations.state.*;
+import mockit.internal.state.*;
+import mockit.internal.util.*;
+
+/**
+ * A method or constructor modified for mocking, identified by a key which gets embedded in the modified bytecode and
+ * passed to {@link RecordAndReplayExecution#recordOrReplay(Object, String, Object[])}, so that its description doesn't
+ * need to be passed and resolved again on every call.
+ * <p/>
+ * The key fully describes the method, so that modified bytecode remains valid in other JVM instances, as when restored
+ * from the {@linkplain mockit.internal.ModifiedClassfileStore persistent store} of modified classes.
+ * Information which only depends on the method, such as whether its return type can have a non-null default value, is
+ * determined on first use and then cached.
+ * The mocked class, which is needed for static methods, is also cached, but only while all classes registering the
+ * method belong to the same class loader, since same-named classes from different class loaders share the same key.
+ */
+public final class MockedMethod
+{
+   @Nonnull private static final ConcurrentMap<String, MockedMethod> METHODS =
+      new ConcurrentHashMap<String, MockedMethod>();
+   @Nonnull private static final Reference<ClassLoader> BOOTSTRAP_LOADER = new WeakReference<ClassLoader>(null);
+
+   final int access;
+   @Nonnull final String classDesc;
+   @Nonnull final String nameAndDesc;
+   @Nullable final String genericSignature;
+   @Nonnull final ExecutionMode executionMode;
+   final boolean constructor;
+   @Nonnull private final String returnTypeDesc;
+   @Nullable private Reference<ClassLoader> declaringClassLoader;
+   private boolean declaredInMultipleClassLoaders;
+   @Nullable private volatile Reference<Class<?>> mockedClass;
+   private int referenceReturnTypeDefault;
+
+   MockedMethod(
+      int access, @Nonnull String classDesc, @Nonnull String nameAndDesc, @Nullable String genericSignature,
+      @Nonnull ExecutionMode executionMode)
+   {
+      this.access = access;
+      this.classDesc = classDesc;
+      this.nameAndDesc = nameAndDesc;
+      this.genericSignature = genericSignature;
+      this.executionMode = executionMode;
+      constructor = nameAndDesc.startsWith("<init>");
+      returnTypeDesc = DefaultValues.getReturnTypeDesc(nameAndDesc);
+   }
+
+   /**
+    * Returns the key of the given mocked method, registering it if not yet registered, so that classes modified again
+    * for the same method and execution mode share the same key.
+    */
+   @Nonnull
+   public static String register(
+      int access, @Nonnull String classDesc, @Nonnull String nameAndDesc, @Nullable String genericSignature,
+      @Nonnull ExecutionMode executionMode)
+   {
+      String methodKey = createKey(access, classDesc, nameAndDesc, genericSignature, executionMode);
+
+      if (!METHODS.containsKey(methodKey)) {
+         MockedMethod method = new MockedMethod(access, classDesc, nameAndDesc, genericSignature, executionMode);
+         METHODS.putIfAbsent(methodKey, method);
+      }
+
+      return methodKey;
+   }
+
+   /**
+    * Same as {@link #register(int, String, String, String, ExecutionMode)}, for a method of an existing class, whose
+    * class loader is recorded so that the class can later be obtained from it.
+    */
+   @Nonnull
+   public static String register(
+      @Nullable ClassLoader classLoader, int access, @Nonnull String classDesc, @Nonnull String nameAndDesc,
+      @Nullable String genericSignature, @Nonnull ExecutionMode executionMode)
+   {
+      String methodKey = register(access, classDesc, nameAndDesc, genericSignature, executionMode);
+      get(methodKey).addDeclaringClassLoader(classLoader);
+      return methodKey;
+   }
+
+   @Nonnull
+   private static String createKey(
+      int access, @Nonnull String classDesc, @Nonnull String nameAndDesc, @Nullable String genericSignature,
+      @Nonnull ExecutionMode executionMode)
+   {
+      StringBuilder key = new StringBuilder(classDesc.length() + nameAndDesc.length() + 16);
+      key.append(classDesc).append(' ').append(nameAndDesc).append(' ').append(access);
+      key.append(' ').append(executionMode.ordinal());
+
+      if (genericSignature != null) {
+         key.append(' ').append(genericSignature);
+      }
+
+      return key.toString().intern();
+   }
+
+   /**
+    * Returns the mocked method with the given key, creating it from the key itself when the method was not registered
+    * in the current JVM, which happens for modified bytecode restored from a previous test run.
+    *
+    * @throws IllegalArgumentException if the key is not in the format of the keys returned by {@link #register}
+    */
+   @Nonnull
+   static MockedMethod get(@Nonnull String key)
+   {
+      MockedMethod method = METHODS.get(key);
+
+      if (method == null) {
+         method = parseKey(key);
+
+         MockedMethod previousMethod = METHODS.putIfAbsent(key, method);
+
+         if (previousMethod != null) {
+            method = previousMethod;
+         }
+      }
+
+      return method;
+   }
+
+   @Nonnull
+   private static MockedMethod parseKey(@Nonnull String key)
+   {
+      String[] parts = key.split(" ", 5);
+
+      if (parts.length >= 4) {
+         try {
+            int access = Integer.parseInt(parts[2]);
+            int executionMode = Integer.parseInt(parts[3]);
+
+            if (executionMode >= 0 && executionMode < ExecutionMode.values().length) {
+               String genericSignature = parts.length == 5 ? parts[4] : null;
+               return new MockedMethod(
+                  access, parts[0], parts[1], genericSignature, ExecutionMode.values()[executionMode]);
+            }
+         }
+         catch (NumberFormatException ignore) {}
+      }
+
+      throw new IllegalArgumentException("Invalid mocked method key: " + key);
+   }
+
+   private synchronized void addDeclaringClassLoader(@Nullable ClassLoader classLoader)
+   {
+      if (declaredInMultipleClassLoaders) {
+         return;
+      }
+
+      Reference<ClassLoader> loaderRef = declaringClassLoader;
+
+      if (loaderRef == null) {
+         declaringClassLoader = classLoader == null ? BOOTSTRAP_LOADER : new WeakReference<ClassLoader>(classLoader);
+      }
+      else if (loaderRef.get() != classLoader || classLoader == null && loaderRef != BOOTSTRAP_LOADER) {
+         declaredInMultipleClassLoaders = true;
+         declaringClassLoader = null;
+         mockedClass = null;
+      }
+   }
+
+   boolean isConstructorCall(@Nullable Object mock) { return mock != null && constructor; }
+
+   boolean isStillMocked(@Nullable Object mock)
+   {
+      MockFixture mockFixture = TestRun.mockFixture();
+
+      if (mock != null) {
+         return mockFixture.isStillMocked(mock, classDesc);
+      }
+
+      Reference<Class<?>> classRef = mockedClass;
+      Class<?> targetClass = classRef == null ? null : classRef.get();
+
+      if (targetClass == null) {
+         targetClass = getMockedClass();
+      }
+
+      return mockFixture.isStillMocked(targetClass);
+   }
+
+   /**
+    * Obtains the mocked class from the class loader of the registering class, caching it, if that class loader is
+    * known and unique; otherwise, the mocked class is loaded by name on every call.
+    */
+   @Nonnull
+   private synchronized Class<?> getMockedClass()
+   {
+      Reference<ClassLoader> loaderRef = declaringClassLoader;
+      ClassLoader loader = loaderRef == null ? null : loaderRef.get();
+
+      if (loader == null && loaderRef != BOOTSTRAP_LOADER) {
+         return ClassLoad.loadByInternalName(classDesc);
+      }
+
+      Class<?> targetClass = ClassLoad.loadFromLoader(loader, classDesc.replace('/', '.'));
+      mockedClass = new WeakReference<Class<?>>(targetClass);
+      return targetClass;
+   }
+
+   /**
+    * Indicates whether an invocation which is not recorded or replayed can return something other than <tt>null</tt>
+    * or the default value of a primitive type, such as an empty collection or a cascaded instance.
+    * It can't when the return type is neither generic nor one with a default value or supported for cascading.
+    */
+   boolean mayReturnReferenceTypeDefault()
+   {
+      int mayReturnDefault = referenceReturnTypeDefault;
+
+      if (mayReturnDefault == 0) {
+         boolean referenceTypeWithPossibleDefault =
+            returnTypeDesc.charAt(0) == 'L' && (
+               genericSignature != null || DefaultValues.computeForType(returnTypeDesc) != null ||
+               MockedTypeCascade.isCascadingSupportedForReturnType(returnTypeDesc)
+            );
+         mayReturnDefault = referenceTypeWithPossibleDefault ? 1 : -1;
+         referenceReturnTypeDefault = mayReturnDefault;
+      }
+
+      return mayReturnDefault > 0;
+   }
+}
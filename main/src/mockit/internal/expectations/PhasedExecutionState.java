@@ -10,16 +10,35 @@ import javax.annotation.*;
 
 import static mockit.internal.util.Utilities.containsReference;
 
+import mockit.internal.expectations.argumentMatching.*;
 import mockit.internal.expectations.invocation.*;
 import mockit.internal.state.*;
 import mockit.internal.util.*;
 
 final class PhasedExecutionState
 {
+   /**
+    * Whether invocations matching recorded expectations can be replayed without holding the record/replay lock, as
+    * enabled with the "jmockit-concurrentReplay" system property.
+    */
+   static final boolean CONCURRENT_REPLAY = Boolean.parseBoolean(System.getProperty("jmockit-concurrentReplay"));
+
    @Nonnull final List<Expectation> expectations;
    @Nonnull final List<VerifiedExpectation> verifiedExpectations;
    @Nonnull final Map<Object, Object> instanceMap;
    @Nonnull final Map<Object, Object> replacementMap;
+
+   // Expectations which can match invocations to a given method, keyed by method name and parameter types, each list
+   // being in the same relative order as the full list; expectations recorded on generic methods can also match methods
+   // with other parameter types, so they are in every list.
+   @Nonnull private final Map<String, List<Expectation>> expectationsByMethod;
+   @Nonnull private final List<Expectation> expectationsOnGenericMethods;
+
+   // Immutable copy of the index restricted to recorded expectations, and of the instance and replacement maps, taken
+   // when recording ends, for invocations replayed without holding the record/replay lock; discarded when recorded
+   // expectations are added or removed, and updated when an instance or replacement is registered during replay.
+   private boolean concurrentReplay;
+   @Nullable private volatile RecordedExpectations recordedExpectations;
    @Nullable private List<?> dynamicMockInstancesToMatch;
    @Nullable private List<Class<?>> mockedTypesToMatchOnInstances;
 
@@ -27,8 +46,11 @@ final class PhasedExecutionState
    {
       expectations = new ArrayList<Expectation>();
       verifiedExpectations = new ArrayList<VerifiedExpectation>();
-      instanceMap = new IdentityHashMap<Object, Object>();
-      replacementMap = new IdentityHashMap<Object, Object>();
+      instanceMap = Collections.synchronizedMap(new IdentityHashMap<Object, Object>());
+      replacementMap = Collections.synchronizedMap(new IdentityHashMap<Object, Object>());
+      expectationsByMethod = new HashMap<String, List<Expectation>>();
+      expectationsOnGenericMethods = new ArrayList<Expectation>();
+      concurrentReplay = CONCURRENT_REPLAY;
    }
 
    void setDynamicMockInstancesToMatch(@Nonnull List<?> dynamicMockInstancesToMatch)
@@ -68,6 +90,70 @@ final class PhasedExecutionState
       forceMatchingOnMockInstanceIfRequired(invocation);
       removeMatchingExpectationsCreatedBefore(invocation);
       expectations.add(expectation);
+      addExpectationToIndex(expectation);
+
+      if (expectation.recordPhase != null) {
+         recordedExpectations = null;
+      }
+   }
+
+   private void addExpectationToIndex(@Nonnull Expectation expectation)
+   {
+      ExpectedInvocation invocation = expectation.invocation;
+
+      if (invocation.isForGenericMethod()) {
+         expectationsOnGenericMethods.add(expectation);
+
+         for (List<Expectation> expectationsForMethod : expectationsByMethod.values()) {
+            expectationsForMethod.add(expectation);
+         }
+      }
+      else {
+         String methodKey = getMethodKey(invocation.getMethodNameAndDescription());
+         List<Expectation> expectationsForMethod = expectationsByMethod.get(methodKey);
+
+         if (expectationsForMethod == null) {
+            expectationsForMethod = new ArrayList<Expectation>(expectationsOnGenericMethods);
+            expectationsByMethod.put(methodKey, expectationsForMethod);
+         }
+
+         expectationsForMethod.add(expectation);
+      }
+   }
+
+   private void removeExpectationFromIndex(@Nonnull Expectation expectation)
+   {
+      ExpectedInvocation invocation = expectation.invocation;
+
+      if (invocation.isForGenericMethod()) {
+         expectationsOnGenericMethods.remove(expectation);
+
+         for (List<Expectation> expectationsForMethod : expectationsByMethod.values()) {
+            expectationsForMethod.remove(expectation);
+         }
+      }
+      else {
+         String methodKey = getMethodKey(invocation.getMethodNameAndDescription());
+         expectationsByMethod.get(methodKey).remove(expectation);
+      }
+   }
+
+   @Nonnull
+   private static String getMethodKey(@Nonnull String methodNameAndDesc)
+   {
+      return methodNameAndDesc.substring(0, methodNameAndDesc.indexOf(')') + 1);
+   }
+
+   /**
+    * Returns the expectations which can match an invocation to the given method, in the order they were added.
+    * Only the method name and parameter types are considered, since an expectation for a method with a different
+    * return type, or recorded on a captured instance of another class, can still match.
+    */
+   @Nonnull
+   private List<Expectation> getExpectationsPossiblyMatching(@Nonnull String mockNameAndDesc)
+   {
+      List<Expectation> expectationsForMethod = expectationsByMethod.get(getMethodKey(mockNameAndDesc));
+      return expectationsForMethod == null ? expectationsOnGenericMethods : expectationsForMethod;
    }
 
    private void forceMatchingOnMockInstanceIfRequired(@Nonnull ExpectedInvocation invocation)
@@ -107,6 +193,11 @@ final class PhasedExecutionState
 
       if (previousExpectation != null) {
          expectations.remove(previousExpectation);
+         removeExpectationFromIndex(previousExpectation);
+
+         if (previousExpectation.recordPhase != null) {
+            recordedExpectations = null;
+         }
          invocation.copyDefaultReturnValue(previousExpectation.invocation);
       }
    }
@@ -114,7 +205,9 @@ final class PhasedExecutionState
    @Nullable
    private Expectation findPreviousExpectation(@Nonnull ExpectedInvocation newInvocation)
    {
-      int n = expectations.size();
+      String mockNameAndDesc = newInvocation.getMethodNameAndDescription();
+      List<Expectation> candidates = getExpectationsPossiblyMatching(mockNameAndDesc);
+      int n = candidates.size();
 
       if (n == 0) {
          return null;
@@ -123,14 +216,15 @@ final class PhasedExecutionState
       Object mock = newInvocation.instance;
       @Nonnull Boolean matchInstance = newInvocation.matchInstance;
       String mockClassDesc = newInvocation.getClassDesc();
-      String mockNameAndDesc = newInvocation.getMethodNameAndDescription();
       boolean isConstructor = newInvocation.isConstructor();
 
       for (int i = 0; i < n; i++) {
-         Expectation previous = expectations.get(i);
+         Expectation previous = candidates.get(i);
 
          if (
-            isMatchingInvocation(mock, matchInstance, mockClassDesc, mockNameAndDesc, isConstructor, previous) &&
+            isMatchingInvocation(
+               mock, matchInstance, mockClassDesc, mockNameAndDesc, isConstructor, previous, instanceMap, replacementMap
+            ) &&
             isWithMatchingArguments(newInvocation, previous.invocation)
          ) {
             return previous;
@@ -142,14 +236,18 @@ final class PhasedExecutionState
 
    private boolean isMatchingInvocation(
       @Nullable Object mock, @Nullable Boolean matchInstance, @Nonnull String mockClassDesc,
-      @Nonnull String mockNameAndDesc, boolean constructorInvocation, @Nonnull Expectation expectation)
+      @Nonnull String mockNameAndDesc, boolean constructorInvocation, @Nonnull Expectation expectation,
+      @Nonnull Map<Object, Object> instances, @Nonnull Map<Object, Object> replacements)
    {
       ExpectedInvocation invocation = expectation.invocation;
 
       return
          invocation.isMatch(mock, mockClassDesc, mockNameAndDesc) &&
          isSameMockedClass(mock, invocation.instance) &&
-         (constructorInvocation || mock == null || isMatchingInstance(mock, matchInstance, expectation));
+         (
+            constructorInvocation || mock == null ||
+            isMatchingInstance(mock, matchInstance, expectation, instances, replacements)
+         );
    }
 
    private boolean isSameMockedClass(@Nullable Object mock1, @Nullable Object mock2)
@@ -189,18 +287,21 @@ final class PhasedExecutionState
       @Nullable Object mock, @Nonnull String mockClassDesc, @Nonnull String mockNameAndDesc, @Nonnull Object[] args)
    {
       boolean isConstructor = mockNameAndDesc.charAt(0) == '<';
+      List<Expectation> candidates = getExpectationsPossiblyMatching(mockNameAndDesc);
       Expectation replayExpectationFound = null;
 
       // Note: new expectations might get added to the list, so a regular loop would cause a CME:
-      for (int i = 0, n = expectations.size(); i < n; i++) {
-         Expectation expectation = expectations.get(i);
+      for (int i = 0, n = candidates.size(); i < n; i++) {
+         Expectation expectation = candidates.get(i);
 
          if (replayExpectationFound != null && expectation.recordPhase == null) {
             continue;
          }
 
          if (
-            isMatchingInvocation(mock, null, mockClassDesc, mockNameAndDesc, isConstructor, expectation) &&
+            isMatchingInvocation(
+               mock, null, mockClassDesc, mockNameAndDesc, isConstructor, expectation, instanceMap, replacementMap
+            ) &&
             expectation.invocation.arguments.isMatch(args, instanceMap)
          ) {
             if (expectation.recordPhase == null) {
@@ -219,23 +320,171 @@ final class PhasedExecutionState
       return replayExpectationFound;
    }
 
+   void takeSnapshotOfRecordedExpectationsIfEnabled()
+   {
+      if (!concurrentReplay) {
+         return;
+      }
+
+      Map<String, Expectation[]> byMethod = new HashMap<String, Expectation[]>(expectationsByMethod.size());
+
+      for (Entry<String, List<Expectation>> methodAndExpectations : expectationsByMethod.entrySet()) {
+         byMethod.put(methodAndExpectations.getKey(), selectRecordedExpectations(methodAndExpectations.getValue()));
+      }
+
+      recordedExpectations = new RecordedExpectations(
+         byMethod, selectRecordedExpectations(expectationsOnGenericMethods), copy(instanceMap), copy(replacementMap));
+   }
+
+   void updateSnapshotOfInstanceMaps()
+   {
+      RecordedExpectations recorded = recordedExpectations;
+
+      if (recorded != null) {
+         recordedExpectations = new RecordedExpectations(
+            recorded.byMethod, recorded.onGenericMethods, copy(instanceMap), copy(replacementMap));
+      }
+   }
+
+   @Nonnull
+   private static Map<Object, Object> copy(@Nonnull Map<Object, Object> synchronizedMap)
+   {
+      //noinspection SynchronizationOnLocalVariableOrMethodParameter
+      synchronized (synchronizedMap) {
+         return new IdentityHashMap<Object, Object>(synchronizedMap);
+      }
+   }
+
+   @Nonnull
+   private static Expectation[] selectRecordedExpectations(@Nonnull List<Expectation> expectationsForMethod)
+   {
+      List<Expectation> recorded = new ArrayList<Expectation>(expectationsForMethod.size());
+
+      for (Expectation expectation : expectationsForMethod) {
+         if (expectation.recordPhase != null) {
+            recorded.add(expectation);
+         }
+      }
+
+      return recorded.toArray(new Expectation[recorded.size()]);
+   }
+
+   /**
+    * Finds the recorded expectation which matches an invocation to a method other than a constructor, provided it
+    * can be replayed without holding the record/replay lock.
+    * Since a matching recorded expectation always takes precedence over expectations created during replay, the
+    * result is the same as from {@link #findExpectation}.
+    *
+    * @return the matching expectation, or <tt>null</tt> if none was found, or if the invocation needs to be handled
+    * while holding the lock
+    */
+   @Nullable
+   Expectation findExpectationToReplayConcurrently(
+      @Nullable Object mock, @Nonnull String mockClassDesc, @Nonnull String mockNameAndDesc, @Nonnull Object[] args)
+   {
+      RecordedExpectations recorded = recordedExpectations;
+
+      if (recorded == null) {
+         return null;
+      }
+
+      Expectation[] candidates = recorded.byMethod.get(getMethodKey(mockNameAndDesc));
+
+      if (candidates == null) {
+         candidates = recorded.onGenericMethods;
+      }
+
+      Map<Object, Object> instances = recorded.instanceMap;
+      Map<Object, Object> replacements = recorded.replacementMap;
+
+      for (Expectation expectation : candidates) {
+         if (
+            isMatchingInvocation(
+               mock, null, mockClassDesc, mockNameAndDesc, false, expectation, instances, replacements)
+         ) {
+            InvocationArguments arguments = expectation.invocation.arguments;
+
+            if (!hasOnlyBuiltInMatchers(arguments)) {
+               return null;
+            }
+
+            if (arguments.isMatch(args, instances)) {
+               return expectation.canBeReplayedConcurrently() ? expectation : null;
+            }
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Checks that the given arguments can be matched without running any code from the test, such as a Hamcrest matcher
+    * or a <tt>Delegate</tt> method, nor capturing values, nor consulting the instance map shared with other phases.
+    * Other matchers could call mocked methods or depend on the record/replay lock being held.
+    */
+   private static boolean hasOnlyBuiltInMatchers(@Nonnull InvocationArguments arguments)
+   {
+      List<ArgumentMatcher<?>> matchers = arguments.getMatchers();
+
+      if (matchers != null) {
+         for (ArgumentMatcher<?> matcher : matchers) {
+            if (matcher != null && !isBuiltInMatcher(matcher)) {
+               return false;
+            }
+         }
+      }
+
+      return true;
+   }
+
+   private static boolean isBuiltInMatcher(@Nonnull ArgumentMatcher<?> matcher)
+   {
+      return
+         matcher instanceof EqualityMatcher && !(matcher instanceof LenientEqualityMatcher) ||
+         matcher instanceof AlwaysTrueMatcher || matcher instanceof ClassMatcher ||
+         matcher instanceof NullityMatcher || matcher instanceof NonNullityMatcher ||
+         matcher instanceof NumericEqualityMatcher || matcher instanceof SamenessMatcher ||
+         matcher instanceof PatternMatcher || matcher instanceof StringContainmentMatcher ||
+         matcher instanceof StringPrefixMatcher || matcher instanceof StringSuffixMatcher;
+   }
+
+   private static final class RecordedExpectations
+   {
+      @Nonnull final Map<String, Expectation[]> byMethod;
+      @Nonnull final Expectation[] onGenericMethods;
+      @Nonnull final Map<Object, Object> instanceMap;
+      @Nonnull final Map<Object, Object> replacementMap;
+
+      RecordedExpectations(
+         @Nonnull Map<String, Expectation[]> byMethod, @Nonnull Expectation[] onGenericMethods,
+         @Nonnull Map<Object, Object> instanceMap, @Nonnull Map<Object, Object> replacementMap)
+      {
+         this.byMethod = byMethod;
+         this.onGenericMethods = onGenericMethods;
+         this.instanceMap = instanceMap;
+         this.replacementMap = replacementMap;
+      }
+   }
+
    private void registerReplacementInstanceIfApplicable(@Nullable Object mock, @Nonnull ExpectedInvocation invocation)
    {
       Object replacementInstance = invocation.replacementInstance;
 
       if (replacementInstance != null && replacementInstance != invocation.instance) {
          replacementMap.put(mock, replacementInstance);
+         updateSnapshotOfInstanceMaps();
       }
    }
 
    private boolean isMatchingInstance(
-      @Nonnull Object invokedInstance, @Nullable Boolean matchInstance, @Nonnull Expectation expectation)
+      @Nonnull Object invokedInstance, @Nullable Boolean matchInstance, @Nonnull Expectation expectation,
+      @Nonnull Map<Object, Object> instances, @Nonnull Map<Object, Object> replacements)
    {
       ExpectedInvocation invocation = expectation.invocation;
       Object invocationInstance = invocation.instance;
       assert invocationInstance != null;
 
-      if (isEquivalentInstance(invocationInstance, invokedInstance)) {
+      if (isEquivalentInstance(invocationInstance, invokedInstance, instances, replacements)) {
          return true;
       }
 
@@ -243,23 +492,30 @@ final class PhasedExecutionState
       if (
          TestRun.getExecutingTest().isInjectableMock(invokedInstance) ||
          isDynamicMockInstanceOrClass(invokedInstance, invocationInstance) ||
-         areNonEquivalentInstances(invocationInstance, invokedInstance)
+         areNonEquivalentInstances(invocationInstance, invokedInstance, instances, replacements)
       ) {
          return false;
       }
 
       return
          (matchInstance == null || !matchInstance) && !invocation.matchInstance && expectation.recordPhase != null &&
-         !replacementMap.containsValue(invocationInstance);
+         !replacements.containsValue(invocationInstance);
    }
 
    boolean isEquivalentInstance(@Nonnull Object invocationInstance, @Nonnull Object invokedInstance)
+   {
+      return isEquivalentInstance(invocationInstance, invokedInstance, instanceMap, replacementMap);
+   }
+
+   private static boolean isEquivalentInstance(
+      @Nonnull Object invocationInstance, @Nonnull Object invokedInstance,
+      @Nonnull Map<Object, Object> instances, @Nonnull Map<Object, Object> replacements)
    {
       return
          invocationInstance == invokedInstance ||
-         invocationInstance == replacementMap.get(invokedInstance) ||
-         invocationInstance == instanceMap.get(invokedInstance) ||
-         invokedInstance == instanceMap.get(invocationInstance) ||
+         invocationInstance == replacements.get(invokedInstance) ||
+         invocationInstance == instances.get(invokedInstance) ||
+         invokedInstance == instances.get(invocationInstance) ||
          TestRun.getExecutingTest().isInvokedInstanceEquivalentToCapturedInstance(invocationInstance, invokedInstance);
    }
 
@@ -282,18 +538,21 @@ final class PhasedExecutionState
       return false;
    }
 
-   private boolean areNonEquivalentInstances(@Nonnull Object invocationInstance, @Nonnull Object invokedInstance)
+   private static boolean areNonEquivalentInstances(
+      @Nonnull Object invocationInstance, @Nonnull Object invokedInstance,
+      @Nonnull Map<Object, Object> instances, @Nonnull Map<Object, Object> replacements)
    {
-      boolean recordedInstanceMatchingAnyInstance = !isMatchingInstance(invocationInstance);
-      boolean invokedInstanceMatchingSpecificInstance = isMatchingInstance(invokedInstance);
+      boolean recordedInstanceMatchingAnyInstance = !isMatchingInstance(invocationInstance, instances, replacements);
+      boolean invokedInstanceMatchingSpecificInstance = isMatchingInstance(invokedInstance, instances, replacements);
       return recordedInstanceMatchingAnyInstance && invokedInstanceMatchingSpecificInstance;
    }
 
-   private boolean isMatchingInstance(@Nonnull Object instance)
+   private static boolean isMatchingInstance(
+      @Nonnull Object instance, @Nonnull Map<Object, Object> instances, @Nonnull Map<Object, Object> replacements)
    {
       return
-         instanceMap.containsKey(instance)    || instanceMap.containsValue(instance) ||
-         replacementMap.containsKey(instance) || replacementMap.containsValue(instance);
+         instances.containsKey(instance)    || instances.containsValue(instance) ||
+         replacements.containsKey(instance) || replacements.containsValue(instance);
    }
 
    boolean areInDifferentEquivalenceSets(@Nonnull Object mock1, @Nonnull Object mock2)
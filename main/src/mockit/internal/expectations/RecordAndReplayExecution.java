@@ -16,6 +16,7 @@ import mockit.internal.expectations.invocation.*;
 import mockit.internal.expectations.mocking.*;
 import mockit.internal.expectations.state.*;
 import mockit.internal.reflection.*;
+import mockit.internal.startup.*;
 import mockit.internal.state.*;
 import mockit.internal.util.*;
 import static mockit.internal.util.GeneratedClasses.*;
@@ -30,8 +31,8 @@ public final class RecordAndReplayExecution
    @Nonnull final PhasedExecutionState executionState;
    @Nonnull private final FailureState failureState;
    @Nullable private RecordPhase recordPhase;
-   @Nullable private ReplayPhase replayPhase;
-   @Nullable private BaseVerificationPhase verificationPhase;
+   @Nullable private volatile ReplayPhase replayPhase;
+   @Nullable private volatile BaseVerificationPhase verificationPhase;
 
    public RecordAndReplayExecution()
    {
@@ -120,14 +121,25 @@ public final class RecordAndReplayExecution
    void setErrorThrown(@Nullable Error error) { failureState.setErrorThrown(error); }
 
    /**
-    * Only to be called from generated bytecode or from the Mocking Bridge.
+    * Only to be called from generated bytecode, directly or through the Mocking Bridge, with the key of a
+    * {@linkplain MockedMethod#register registered} mocked method.
     */
+   @Nullable
+   public static Object recordOrReplay(@Nullable Object mock, @Nonnull String mockedMethodKey, @Nullable Object[] args)
+      throws Throwable
+   {
+      return recordOrReplay(mock, MockedMethod.get(mockedMethodKey), args);
+   }
+
    @Nullable @SuppressWarnings("OverlyComplexMethod")
-   public static Object recordOrReplay(
-      @Nullable Object mock, int mockAccess, @Nonnull String classDesc, @Nonnull String mockDesc,
-      @Nullable String genericSignature, int executionModeOrdinal, @Nullable Object[] args)
+   private static Object recordOrReplay(@Nullable Object mock, @Nonnull MockedMethod method, @Nullable Object[] args)
       throws Throwable
    {
+      int mockAccess = method.access;
+      String classDesc = method.classDesc;
+      String mockDesc = method.nameAndDesc;
+      String genericSignature = method.genericSignature;
+
       if (calledFromSpecialThread()) {
          return proceedIntoRealImplementationOrGetDefaultReturnType(mock, mockAccess, mockDesc, genericSignature);
       }
@@ -137,24 +149,31 @@ public final class RecordAndReplayExecution
          args = NO_ARGS;
       }
 
-      ExecutionMode executionMode = ExecutionMode.values()[executionModeOrdinal];
+      ExecutionMode executionMode = method.executionMode;
+      boolean stillMocked = method.isStillMocked(mock);
+
+      if (!stillMocked && Startup.restoreDeferredDefinitionsIfAnyFor(classDesc)) {
+         // The class was mocked by a previous test, and kept redefined in case the next test mocked it again; now that
+         // it's restored, this call proceeds into the real implementation copied in the version being executed.
+         return Void.class;
+      }
 
       if (
          RECORD_OR_REPLAY_LOCK.isHeldByCurrentThread() ||
          TEST_ONLY_PHASE_LOCK.isLocked() && !TEST_ONLY_PHASE_LOCK.isHeldByCurrentThread() ||
-         !TestRun.mockFixture().isStillMocked(mock, classDesc)
+         !stillMocked
       ) {
          // This occurs if called from a custom argument matching method, in a call to an overridden Object method
          // (equals, hashCode, toString), from a different thread during recording/verification, or during replay but
          // between tests.
-         return defaultReturnValue(mock, classDesc, mockDesc, genericSignature, executionMode, args);
+         return defaultReturnValue(mock, method, args);
       }
 
       ExecutingTest executingTest = TestRun.getExecutingTest();
 
       if (executingTest.isShouldIgnoreMockingCallbacks()) {
          // This occurs when called from a reentrant delegate method, or during static initialization of a mocked class.
-         return defaultReturnValue(executingTest, mock, classDesc, mockDesc, genericSignature, executionMode, args);
+         return defaultReturnValue(executingTest, mock, method, args);
       }
 
       if (
@@ -164,10 +183,29 @@ public final class RecordAndReplayExecution
          return Void.class;
       }
 
+      boolean isConstructor = method.isConstructorCall(mock);
+      boolean withRealImpl = executionMode.isWithRealImplementation(mock);
+
+      if (!isConstructor && !withRealImpl) {
+         RecordAndReplayExecution current = executingTest.getCurrentRecordAndReplay();
+
+         if (current != null) {
+            ReplayPhase replay = current.getReplayPhaseForConcurrentInvocation();
+
+            if (replay != null) {
+               Expectation expectation =
+                  current.executionState.findExpectationToReplayConcurrently(mock, classDesc, mockDesc, args);
+
+               if (expectation != null && replay.addConcurrentInvocation(expectation, mock, args)) {
+                  return expectation.produceResult(mock, args);
+               }
+            }
+         }
+      }
+
       RECORD_OR_REPLAY_LOCK.lock();
 
       try {
-         boolean isConstructor = mock != null && mockDesc.startsWith("<init>");
          RecordAndReplayExecution instance = executingTest.getOrCreateRecordAndReplay();
 
          if (isConstructor && handleCallToConstructor(instance, mock, classDesc)) {
@@ -181,7 +219,6 @@ public final class RecordAndReplayExecution
          Phase currentPhase = instance.getCurrentPhase();
          instance.failureState.clearErrorThrown();
 
-         boolean withRealImpl = executionMode.isWithRealImplementation(mock);
          Object result =
             currentPhase.handleInvocation(mock, mockAccess, classDesc, mockDesc, genericSignature, withRealImpl, args);
 
@@ -207,8 +244,7 @@ public final class RecordAndReplayExecution
             isAbstract(mockAccess) && isGeneratedSubclass(mockedClassName)
          ) {
             if (genericSignature != null) {
-               GenericTypeReflection typeReflection = new GenericTypeReflection(mockedClass, null);
-               String typeDesc = typeReflection.resolveReturnType(genericSignature);
+               String typeDesc = CachedGenericTypeReflection.forClass(mockedClass).resolveReturnType(genericSignature);
                return DefaultValues.computeForType(typeDesc);
             }
 
@@ -221,13 +257,16 @@ public final class RecordAndReplayExecution
 
    @Nonnull
    private static Object defaultReturnValue(
-      @Nullable Object mock, @Nonnull String classDesc, @Nonnull String nameAndDesc,
-      @Nullable String genericSignature, @Nonnull ExecutionMode executionMode, @Nonnull Object[] args)
+      @Nullable Object mock, @Nonnull MockedMethod method, @Nonnull Object[] args)
    {
+      ExecutionMode executionMode = method.executionMode;
+
       if (executionMode.isToExecuteRealImplementation(mock)) {
          return Void.class;
       }
 
+      String nameAndDesc = method.nameAndDesc;
+
       if (mock != null) {
          Object rv = ObjectMethods.evaluateOverride(mock, nameAndDesc, args);
 
@@ -236,10 +275,9 @@ public final class RecordAndReplayExecution
          }
       }
 
-      String returnTypeDesc = DefaultValues.getReturnTypeDesc(nameAndDesc);
-
-      if (returnTypeDesc.charAt(0) == 'L') {
-         ExpectedInvocation invocation = new ExpectedInvocation(mock, classDesc, nameAndDesc, genericSignature, args);
+      if (method.mayReturnReferenceTypeDefault()) {
+         ExpectedInvocation invocation =
+            new ExpectedInvocation(mock, method.classDesc, nameAndDesc, method.genericSignature, args);
          Object cascadedInstance = invocation.getDefaultValueForReturnType();
 
          if (cascadedInstance != null) {
@@ -252,22 +290,21 @@ public final class RecordAndReplayExecution
 
    @Nullable
    private static Object defaultReturnValue(
-      @Nonnull ExecutingTest executingTest, @Nullable Object mock,
-      @Nonnull String classDesc, @Nonnull String nameAndDesc, @Nullable String genericSignature,
-      @Nonnull ExecutionMode executionMode, @Nonnull Object[] args) throws Throwable
+      @Nonnull ExecutingTest executingTest, @Nullable Object mock, @Nonnull MockedMethod method,
+      @Nonnull Object[] args) throws Throwable
    {
       RecordAndReplayExecution execution = executingTest.getCurrentRecordAndReplay();
 
       if (execution != null) {
          Expectation recordedExpectation =
-            execution.executionState.findExpectation(mock, classDesc, nameAndDesc, args);
+            execution.executionState.findExpectation(mock, method.classDesc, method.nameAndDesc, args);
 
          if (recordedExpectation != null) {
             return recordedExpectation.produceResult(mock, args);
          }
       }
 
-      return defaultReturnValue(mock, classDesc, nameAndDesc, genericSignature, executionMode, args);
+      return defaultReturnValue(mock, method, args);
    }
 
    private static boolean handleCallToConstructor(
@@ -334,13 +371,35 @@ public final class RecordAndReplayExecution
       return replay;
    }
 
+   /**
+    * Returns the current replay phase if invocations can be replayed in it without holding the record/replay lock,
+    * that is, when there is no recording or verification going on.
+    */
+   @Nullable
+   private ReplayPhase getReplayPhaseForConcurrentInvocation()
+   {
+      ReplayPhase replay = replayPhase;
+      return replay != null && verificationPhase == null ? replay : null;
+   }
+
    @Nonnull
    public BaseVerificationPhase startVerifications(boolean inOrder)
    {
-      assert replayPhase != null;
-      List<Expectation> expectations = replayPhase.invocations;
-      List<Object> invocationInstances = replayPhase.invocationInstances;
-      List<Object[]> invocationArguments = replayPhase.invocationArguments;
+      ReplayPhase replay = replayPhase;
+      assert replay != null;
+
+      RECORD_OR_REPLAY_LOCK.lock();
+
+      try {
+         replay.stopConcurrentReplay();
+      }
+      finally {
+         RECORD_OR_REPLAY_LOCK.unlock();
+      }
+
+      List<Expectation> expectations = replay.invocations;
+      List<Object> invocationInstances = replay.invocationInstances;
+      List<Object[]> invocationArguments = replay.invocationArguments;
 
       verificationPhase =
          inOrder ?
@@ -391,6 +450,16 @@ public final class RecordAndReplayExecution
       return replayPhase;
    }
 
+   private void resumeConcurrentReplay()
+   {
+      ReplayPhase replay = replayPhase;
+      assert replay != null;
+
+      // Verification may have registered equivalent or replacement instances.
+      executionState.updateSnapshotOfInstanceMaps();
+      replay.resumeConcurrentReplay();
+   }
+
    @Nullable
    public TestOnlyPhase getCurrentTestOnlyPhase()
    {
@@ -411,6 +480,7 @@ public final class RecordAndReplayExecution
       else {
          Error error = verificationPhase.endVerification();
          verificationPhase = null;
+         resumeConcurrentReplay();
 
          if (error != null) {
             throw error;
@@ -5,6 +5,8 @@
 package mockit.internal.expectations;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
 import javax.annotation.*;
 
 import mockit.internal.expectations.invocation.*;
@@ -15,12 +17,78 @@ final class ReplayPhase extends Phase
    @Nonnull final List<Object> invocationInstances;
    @Nonnull final List<Object[]> invocationArguments;
 
+   // Invocations replayed but not yet moved to the lists above; appended to without holding the record/replay lock,
+   // but while holding the read lock, so that the queue can be closed and drained when verification starts.
+   @Nonnull private final Queue<ReplayedInvocation> pendingInvocations;
+   @Nonnull private final ReadWriteLock pendingInvocationsLock;
+   private boolean pendingInvocationsClosed;
+
    ReplayPhase(@Nonnull RecordAndReplayExecution recordAndReplay)
    {
       super(recordAndReplay);
       invocations = new ArrayList<Expectation>();
       invocationInstances = new ArrayList<Object>();
       invocationArguments = new ArrayList<Object[]>();
+      pendingInvocations = new ConcurrentLinkedQueue<ReplayedInvocation>();
+      pendingInvocationsLock = new ReentrantReadWriteLock();
+      recordAndReplay.executionState.takeSnapshotOfRecordedExpectationsIfEnabled();
+   }
+
+   private static final class ReplayedInvocation
+   {
+      @Nonnull final Expectation expectation;
+      @Nullable final Object instance;
+      @Nonnull final Object[] arguments;
+
+      ReplayedInvocation(@Nonnull Expectation expectation, @Nullable Object instance, @Nonnull Object[] arguments)
+      {
+         this.expectation = expectation;
+         this.instance = instance;
+         this.arguments = arguments;
+      }
+   }
+
+   /**
+    * Stops accepting invocations replayed without holding the record/replay lock, and moves the invocations replayed so
+    * far to the lists of invocations, instances, and arguments, which can then be read in replay order.
+    * Invocations which arrive while stopped are handled by the caller in the usual way, while holding the lock.
+    */
+   void stopConcurrentReplay()
+   {
+      Lock lock = pendingInvocationsLock.writeLock();
+      lock.lock();
+
+      try {
+         pendingInvocationsClosed = true;
+         collectReplayedInvocations();
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   void resumeConcurrentReplay()
+   {
+      Lock lock = pendingInvocationsLock.writeLock();
+      lock.lock();
+
+      try {
+         pendingInvocationsClosed = false;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   private void collectReplayedInvocations()
+   {
+      ReplayedInvocation replayed;
+
+      while ((replayed = pendingInvocations.poll()) != null) {
+         invocations.add(replayed.expectation);
+         invocationInstances.add(replayed.instance);
+         invocationArguments.add(replayed.arguments);
+      }
    }
 
    @Override
@@ -44,10 +112,7 @@ final class ReplayPhase extends Phase
          registerNewInstanceAsEquivalentToOneFromRecordedConstructorInvocation(mock, expectation.invocation);
       }
 
-      invocations.add(expectation);
-      invocationInstances.add(mock);
-      invocationArguments.add(args);
-
+      pendingInvocations.add(new ReplayedInvocation(expectation, mock, args));
       expectation.constraints.incrementInvocationCount();
 
       if (withRealImpl && replacementInstance != null) {
@@ -57,6 +122,32 @@ final class ReplayPhase extends Phase
       return produceResult(expectation, mock, withRealImpl, args);
    }
 
+   /**
+    * Registers an invocation which matched the given recorded expectation, without holding the record/replay lock.
+    *
+    * @return <tt>false</tt> if concurrent replay is {@linkplain #stopConcurrentReplay stopped}, in which case nothing
+    * was registered
+    * @see PhasedExecutionState#findExpectationToReplayConcurrently
+    */
+   boolean addConcurrentInvocation(@Nonnull Expectation expectation, @Nullable Object mock, @Nonnull Object[] args)
+   {
+      Lock lock = pendingInvocationsLock.readLock();
+      lock.lock();
+
+      try {
+         if (pendingInvocationsClosed) {
+            return false;
+         }
+
+         pendingInvocations.add(new ReplayedInvocation(expectation, mock, args));
+         expectation.constraints.incrementInvocationCount();
+         return true;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
    @Nonnull
    private Expectation createExpectation(
       @Nullable Object mock, int mockAccess, @Nonnull String mockClassDesc, @Nonnull String mockNameAndDesc,
@@ -76,6 +167,7 @@ final class ReplayPhase extends Phase
          Map<Object, Object> instanceMap = getInstanceMap();
          Object recordedInstance = invocation.getRecordedInstance();
          instanceMap.put(mock, recordedInstance);
+         recordAndReplay.executionState.updateSnapshotOfInstanceMaps();
       }
    }
 
@@ -133,6 +225,7 @@ final class ReplayPhase extends Phase
    @Nullable
    Error endExecution()
    {
+      stopConcurrentReplay();
       Error missingInvocation = getErrorForFirstExpectationThatIsMissing();
       return missingInvocation;
    }
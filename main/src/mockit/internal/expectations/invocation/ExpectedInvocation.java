@@ -73,6 +73,7 @@ public final class ExpectedInvocation
    @Nonnull public String getMethodNameAndDescription() { return arguments.methodNameAndDesc; }
    @Nonnull public Object[] getArgumentValues() { return arguments.getValues(); }
    public boolean isConstructor() { return arguments.isForConstructor(); }
+   public boolean isForGenericMethod() { return arguments.genericSignature != null; }
 
    @Nullable
    public Object getRecordedInstance() { return replacementInstance != null ? replacementInstance : instance; }
@@ -83,11 +84,9 @@ public final class ExpectedInvocation
       String signature = arguments.genericSignature;
 
       if (signature != null) {
-         // TODO: cache it for use in return type conversion, cascading, etc.
          String classDesc = getClassDesc();
          Class<?> mockedClass = instance != null ? instance.getClass() : ClassLoad.loadByInternalName(classDesc);
-         GenericTypeReflection reflection = new GenericTypeReflection(mockedClass, null);
-         signature = reflection.resolveSignature(classDesc, signature);
+         signature = CachedGenericTypeReflection.forClass(mockedClass).resolveSignature(classDesc, signature);
 
          char firstTypeChar = signature.charAt(signature.indexOf(')') + 1);
 
@@ -117,8 +116,8 @@ public final class ExpectedInvocation
             Class<?> mockedClass = mock.getClass();
 
             if (mockedClass != instance.getClass()) {
-               GenericTypeReflection typeReflection = new GenericTypeReflection(mockedClass, null);
-               GenericSignature parsedSignature = typeReflection.parseSignature(genericSignature);
+               GenericSignature parsedSignature =
+                  CachedGenericTypeReflection.forClass(mockedClass).parseSignature(genericSignature);
                return parsedSignature.satisfiesSignature(invokedMethod);
             }
          }
@@ -5,13 +5,17 @@
 package mockit.internal.expectations.invocation;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 import javax.annotation.*;
 
 public final class InvocationConstraints
 {
+   private static final AtomicIntegerFieldUpdater<InvocationConstraints> INVOCATION_COUNT =
+      AtomicIntegerFieldUpdater.newUpdater(InvocationConstraints.class, "invocationCount");
+
    public int minInvocations;
    private int maxInvocations;
-   public int invocationCount;
+   public volatile int invocationCount;
 
    public InvocationConstraints(boolean nonStrictInvocation)
    {
@@ -33,7 +37,13 @@ public final class InvocationConstraints
 
    void setUnlimitedMaxInvocations() { maxInvocations = -1; }
 
-   public void incrementInvocationCount() { invocationCount++; }
+   public boolean hasUpperLimit() { return maxInvocations >= 0; }
+
+   /**
+    * Increments the invocation count atomically, since replayed invocations may be counted without holding the
+    * record/replay lock.
+    */
+   public void incrementInvocationCount() { INVOCATION_COUNT.incrementAndGet(this); }
 
    public boolean isInvocationCountLessThanMinimumExpected() { return invocationCount < minInvocations; }
 
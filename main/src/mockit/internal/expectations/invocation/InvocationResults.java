@@ -15,7 +15,7 @@ public final class InvocationResults
 {
    @Nonnull private final ExpectedInvocation invocation;
    @Nonnull private final InvocationConstraints constraints;
-   @Nullable private InvocationResult currentResult;
+   @Nullable private volatile InvocationResult currentResult;
    private InvocationResult lastResult;
    private int resultCount;
 
@@ -118,6 +118,16 @@ public final class InvocationResults
       }
    }
 
+   /**
+    * Indicates whether all remaining invocations will produce the same fixed return value, so that results can be
+    * produced concurrently.
+    */
+   public boolean hasOnlyFixedReturnValueLeft()
+   {
+      InvocationResult result = currentResult;
+      return result instanceof ReturnValueResult && result.next == null;
+   }
+
    @Nullable
    public Object produceResult(@Nullable Object invokedObject, @Nonnull Object[] invocationArgs) throws Throwable
    {
@@ -13,6 +13,7 @@ import static java.lang.reflect.Modifier.*;
 
 import mockit.external.asm.*;
 import mockit.internal.*;
+import mockit.internal.ModifiedClassfileStore.*;
 import mockit.internal.classGeneration.*;
 import mockit.internal.expectations.mocking.InstanceFactory.*;
 import mockit.internal.reflection.*;
@@ -172,6 +173,9 @@ class BaseTypeRedefinition
          {
             return new InterfaceImplementationGenerator(typeReader, interfaceToMock, generatedClassName);
          }
+
+         @Nonnull @Override
+         protected String describeGenerationOptions() { return "mock " + interfaceToMock; }
       };
 
       targetClass = implementationGenerator.generateClass();
@@ -225,12 +229,57 @@ class BaseTypeRedefinition
    private void redefineClass(
       @Nonnull Class<?> realClass, @Nonnull ClassReader classReader, @Nonnull MockedClassModifier modifier)
    {
-      classReader.accept(modifier);
+      String storeKey = null;
+
+      if (realClass.getClassLoader() != null) {
+         storeKey = ModifiedClassfileStore.getKey(
+            modifier.describeModificationOptions(), realClass, classReader.getBytecode());
+
+         if (storeKey != null && redefineClassFromStore(realClass, modifier, storeKey)) {
+            return;
+         }
+      }
+
+      boolean modificationStarted = storeKey != null && ModifiedClassfileStore.startModification();
+      byte[] modifiedClass = null;
+      Map<String, String> superClassesConsulted;
 
-      if (modifier.wasModified()) {
-         byte[] modifiedClass = modifier.toByteArray();
+      try {
+         classReader.accept(modifier);
+
+         if (modifier.wasModified()) {
+            modifiedClass = modifier.toByteArray();
+         }
+      }
+      finally {
+         superClassesConsulted = ModifiedClassfileStore.endModification(modificationStarted);
+      }
+
+      if (modifiedClass != null) {
          applyClassRedefinition(realClass, modifiedClass);
       }
+
+      if (storeKey != null) {
+         ModifiedClassfileStore.store(storeKey, modifiedClass, modifier.enumSubclasses, superClassesConsulted);
+      }
+   }
+
+   private boolean redefineClassFromStore(
+      @Nonnull Class<?> realClass, @Nonnull MockedClassModifier modifier, @Nonnull String storeKey)
+   {
+      StoredClassfile storedClass = ModifiedClassfileStore.load(storeKey);
+
+      if (storedClass == null) {
+         return false;
+      }
+
+      modifier.enumSubclasses = storedClass.relatedTypes;
+
+      if (storedClass.modifiedClassfile != null) {
+         applyClassRedefinition(realClass, storedClass.modifiedClassfile);
+      }
+
+      return true;
    }
 
    void applyClassRedefinition(@Nonnull Class<?> realClass, @Nonnull byte[] modifiedClass)
@@ -326,6 +375,9 @@ class BaseTypeRedefinition
          {
             return new SubclassGenerationModifier(targetClass, typeToMock, typeReader, subclassName, false);
          }
+
+         @Nonnull @Override
+         protected String describeGenerationOptions() { return "mock " + typeToMock; }
       }.generateClass();
 
       return subclass;
@@ -29,17 +29,14 @@ public final class MockedBridge extends ClassLoadingBridge
          return Void.class;
       }
 
-      String mockName = (String) args[2];
-      String mockDesc = (String) args[3];
-      String mockNameAndDesc = mockName + mockDesc;
-      Integer executionMode = (Integer) args[5];
-      Object[] mockArgs = extractArguments(6, args);
+      Integer executionMode = (Integer) args[4];
 
       boolean regularExecutionWithRecordReplayLock =
          executionMode == ExecutionMode.Regular.ordinal() && RECORD_OR_REPLAY_LOCK.isHeldByCurrentThread();
       Object rv;
 
       if (regularExecutionWithRecordReplayLock && mocked != null) {
+         String mockNameAndDesc = (String) args[2] + args[3];
          rv = ObjectMethods.evaluateOverride(mocked, mockNameAndDesc, args);
 
          if (rv != null) {
@@ -58,10 +55,10 @@ public final class MockedBridge extends ClassLoadingBridge
       TestRun.enterNoMockingZone();
 
       try {
-         int mockAccess = (Integer) args[0];
-         String genericSignature = (String) args[4];
-         rv = recordOrReplay(
-            mocked, mockAccess, mockedClassDesc, mockNameAndDesc, genericSignature, executionMode, mockArgs);
+         // The key is a constant of the modified class, so the mocked method is found without creating anything.
+         String mockedMethodKey = (String) args[0];
+         Object[] mockArgs = extractArguments(5, args);
+         rv = recordOrReplay(mocked, mockedMethodKey, mockArgs);
       }
       finally {
          TestRun.exitNoMockingZone();
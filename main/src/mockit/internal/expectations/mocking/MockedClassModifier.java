@@ -25,6 +25,7 @@ final class MockedClassModifier extends BaseClassModifier
    private static final int PUBLIC_OR_PROTECTED = Access.PUBLIC + Access.PROTECTED;
 
    @Nullable private final MockedType mockedType;
+   @Nullable private final ClassLoader classLoader;
    private final boolean classFromNonBootstrapClassLoader;
    private String className;
    @Nullable private String baseClassNameForCapturedInstanceMethods;
@@ -39,6 +40,7 @@ final class MockedClassModifier extends BaseClassModifier
    {
       super(classReader);
       mockedType = typeMetadata;
+      this.classLoader = classLoader;
       classFromNonBootstrapClassLoader = classLoader != null;
       setUseClassLoadingBridge(classLoader);
       executionMode = ExecutionMode.Regular;
@@ -64,6 +66,21 @@ final class MockedClassModifier extends BaseClassModifier
       executionMode = ExecutionMode.Partial;
    }
 
+   /**
+    * Describes the options which affect the modified bytecode, other than the original bytecode itself.
+    * Calls through the class loading bridge read it from a field added to a JRE class chosen at startup, whose name is
+    * therefore also included.
+    */
+   @Nonnull
+   String describeModificationOptions()
+   {
+      return
+         executionMode + " " + ignoreConstructors + ' ' + baseClassNameForCapturedInstanceMethods + ' ' +
+         useClassLoadingBridge + ' ' + (useClassLoadingBridge ? ClassLoadingBridge.hostJREClassName : null) + ' ' +
+         classFromNonBootstrapClassLoader + ' ' +
+         (mockedType != null && mockedType.isClassInitializationToBeStubbedOut());
+   }
+
    @Override
    public void visit(
       int version, int access, @Nonnull String name, @Nullable String signature, @Nullable String superName,
@@ -172,7 +189,9 @@ final class MockedClassModifier extends BaseClassModifier
             signature, internalClassName, visitingConstructor, actualExecutionMode);
       }
 
-      generateDirectCallToHandler(mw, internalClassName, access, name, desc, signature, actualExecutionMode);
+      String mockedMethodKey =
+         MockedMethod.register(classLoader, access, internalClassName, name + desc, signature, actualExecutionMode);
+      generateDirectCallToHandler(mw, mockedMethodKey, access, desc);
       generateDecisionBetweenReturningOrContinuingToRealImplementation();
 
       // Constructors of non-JRE classes can't be modified (unless running with "-noverify") in a way that
@@ -261,14 +280,16 @@ final class MockedClassModifier extends BaseClassModifier
 
       // Create array for call arguments (third "invoke" argument):
       JavaType[] argTypes = JavaType.getArgumentTypes(methodDesc);
-      generateCodeToCreateArrayOfObject(mw, 6 + argTypes.length);
+      generateCodeToCreateArrayOfObject(mw, 5 + argTypes.length);
+
+      String mockedMethodKey = MockedMethod.register(
+         classLoader, methodAccess, internalClassName, methodName + methodDesc, genericSignature, actualExecutionMode);
 
       int i = 0;
-      generateCodeToFillArrayElement(i++, methodAccess);
+      generateCodeToFillArrayElement(i++, mockedMethodKey);
       generateCodeToFillArrayElement(i++, internalClassName);
       generateCodeToFillArrayElement(i++, methodName);
       generateCodeToFillArrayElement(i++, methodDesc);
-      generateCodeToFillArrayElement(i++, genericSignature);
       generateCodeToFillArrayElement(i++, actualExecutionMode.ordinal());
 
       generateCodeToFillArrayWithParameterValues(mw, argTypes, i, isStatic ? 0 : 1);
@@ -19,32 +19,25 @@ final class MockedTypeModifier
       @Nonnull MethodWriter mw, @Nonnull String className, int access, @Nonnull String name, @Nonnull String desc,
       @Nullable String genericSignature)
    {
-      generateDirectCallToHandler(mw, className, access, name, desc, genericSignature, ExecutionMode.Regular);
+      String mockedMethodKey =
+         MockedMethod.register(access, className, name + desc, genericSignature, ExecutionMode.Regular);
+      generateDirectCallToHandler(mw, mockedMethodKey, access, desc);
    }
 
+   /**
+    * Generates a call to {@link RecordAndReplayExecution#recordOrReplay(Object, String, Object[])} for the
+    * {@linkplain MockedMethod#register registered} mocked method with the given key.
+    */
    static void generateDirectCallToHandler(
-      @Nonnull MethodWriter mw, @Nonnull String className, int access, @Nonnull String name, @Nonnull String desc,
-      @Nullable String genericSignature, @Nonnull ExecutionMode executionMode)
+      @Nonnull MethodWriter mw, @Nonnull String mockedMethodKey, int access, @Nonnull String desc)
    {
       // First argument: the mock instance, if any.
       boolean isStatic = generateCodeToPassThisOrNullIfStaticMethod(mw, access);
 
-      // Second argument: method access flags.
-      mw.visitLdcInsn(access);
-
-      // Third argument: class name.
-      mw.visitLdcInsn(className);
-
-      // Fourth argument: method signature.
-      mw.visitLdcInsn(name + desc);
+      // Second argument: the key of the mocked method, from which its class, name, descriptor, etc. are obtained.
+      mw.visitLdcInsn(mockedMethodKey);
 
-      // Fifth argument: generic signature, or null if none.
-      generateInstructionToLoadNullableString(mw, genericSignature);
-
-      // Sixth argument: indicate regular or special modes of execution.
-      mw.visitLdcInsn(executionMode.ordinal());
-
-      // Seventh argument: array with invocation arguments.
+      // Third argument: array with invocation arguments.
       JavaType[] argTypes = JavaType.getArgumentTypes(desc);
       int argCount = argTypes.length;
 
@@ -58,17 +51,6 @@ final class MockedTypeModifier
 
       mw.visitMethodInsn(
          INVOKESTATIC, "mockit/internal/expectations/RecordAndReplayExecution", "recordOrReplay",
-         "(Ljava/lang/Object;ILjava/lang/String;Ljava/lang/String;Ljava/lang/String;I[Ljava/lang/Object;)" +
-         "Ljava/lang/Object;", false);
-   }
-
-   private static void generateInstructionToLoadNullableString(@Nonnull MethodWriter mw, @Nullable String text)
-   {
-      if (text == null) {
-         mw.visitInsn(ACONST_NULL);
-      }
-      else {
-         mw.visitLdcInsn(text);
-      }
+         "(Ljava/lang/Object;Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/Object;", false);
    }
 }
@@ -15,7 +15,7 @@ import static mockit.internal.util.Utilities.*;
 
 public final class ExecutingTest
 {
-   @Nullable private RecordAndReplayExecution currentRecordAndReplay;
+   @Nullable private volatile RecordAndReplayExecution currentRecordAndReplay;
    @Nullable private RecordAndReplayExecution recordAndReplayForLastTestMethod;
 
    @Nonnull private final ThreadLocal<Boolean> shouldIgnoreMockingCallbacks;
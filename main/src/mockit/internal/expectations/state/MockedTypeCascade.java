@@ -155,6 +155,15 @@ public final class MockedTypeCascade
          !"java/time/Duration".equals(typeName);
    }
 
+   /**
+    * Indicates whether a cascaded instance can be returned from a method with the given non-generic reference return
+    * type.
+    */
+   public static boolean isCascadingSupportedForReturnType(@Nonnull String returnTypeDesc)
+   {
+      return getReturnTypeIfCascadingSupportedForIt(returnTypeDesc) != null;
+   }
+
    @Nullable
    private static String getReturnTypeIfCascadingSupportedForIt(@Nonnull String typeDesc)
    {
@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.injection;
+
+import java.lang.annotation.*;
+import java.lang.reflect.*;
+import java.util.*;
+import javax.annotation.*;
+import javax.persistence.*;
+import javax.servlet.*;
+import static java.lang.reflect.Modifier.*;
+
+import mockit.external.asm.*;
+import static mockit.internal.injection.InjectionPoint.*;
+
+/**
+ * The reflection metadata of a class which is used when injecting into instances of the class, or when creating them:
+ * its fields eligible for injection, its constructors, the qualifiers of both, and its lifecycle methods.
+ * <p/>
+ * Since the same metadata is otherwise obtained again for every test, it gets computed once for each class, on first
+ * use of each part, and is then shared by all tests.
+ * Instances are kept per {@link Class} object through a {@link ClassValue}, so classes of the same name from different
+ * class loaders get separate instances, which don't prevent their class loaders from being collected.
+ * Returned arrays and lists are shared, so they must not be modified.
+ */
+public final class InjectionMetadata
+{
+   private static final ClassValue<InjectionMetadata> CACHE = new ClassValue<InjectionMetadata>() {
+      @Override
+      protected InjectionMetadata computeValue(Class<?> ownerClass) { return new InjectionMetadata(ownerClass); }
+   };
+
+   private static final int CONSTRUCTOR_ACCESS = PUBLIC + PROTECTED + PRIVATE;
+
+   @Nonnull private final Class<?> ownerClass;
+   @Nullable private volatile Fields fields;
+   @Nullable private volatile Constructors constructors;
+   @Nullable private volatile Lifecycle lifecycle;
+   @Nullable private volatile Lifecycle servletLifecycle;
+
+   private InjectionMetadata(@Nonnull Class<?> ownerClass) { this.ownerClass = ownerClass; }
+
+   @Nonnull
+   public static InjectionMetadata forClass(@Nonnull Class<?> ownerClass) { return CACHE.get(ownerClass); }
+
+   // Fields //////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+   private static final class Fields
+   {
+      @Nonnull final Field[] declaredFields;
+      @Nonnull final InjectionPoint[] injectionPoints;
+      @Nonnull final List<Field> injectableFields;
+      @Nonnull final Map<Field, KindOfInjectionPoint> kindsOfInjectionPoint;
+      @Nonnull final Map<Field, String> qualifiedNames;
+
+      Fields(@Nonnull Class<?> ownerClass)
+      {
+         declaredFields = ownerClass.getDeclaredFields();
+         injectionPoints = new InjectionPoint[declaredFields.length];
+         injectableFields = new ArrayList<Field>();
+         kindsOfInjectionPoint = new HashMap<Field, KindOfInjectionPoint>();
+         qualifiedNames = new HashMap<Field, String>();
+
+         for (int i = 0; i < declaredFields.length; i++) {
+            Field field = declaredFields[i];
+            String qualifiedName = InjectionPoint.getQualifiedName(field.getDeclaredAnnotations());
+            boolean qualified = qualifiedName != null;
+            String fieldName = qualified ? qualifiedName : field.getName();
+            injectionPoints[i] = new InjectionPoint(field.getGenericType(), fieldName, qualified);
+
+            if (!isFinal(field.getModifiers())) {
+               KindOfInjectionPoint kind = kindOfInjectionPoint(field);
+
+               if (isEligibleForInjection(field, kind)) {
+                  injectableFields.add(field);
+                  kindsOfInjectionPoint.put(field, kind);
+                  qualifiedNames.put(field, qualifiedName);
+               }
+            }
+         }
+      }
+
+      private static boolean isEligibleForInjection(@Nonnull Field field, @Nonnull KindOfInjectionPoint kind)
+      {
+         if (kind != KindOfInjectionPoint.NotAnnotated) {
+            return true;
+         }
+
+         //noinspection SimplifiableIfStatement
+         if (PERSISTENCE_UNIT_CLASS != null && field.getType().isAnnotationPresent(Entity.class)) {
+            return false;
+         }
+
+         int modifiers = field.getModifiers();
+         return !isStatic(modifiers) && !isVolatile(modifiers);
+      }
+   }
+
+   @Nonnull
+   private Fields getFields()
+   {
+      Fields fields = this.fields;
+
+      if (fields == null) {
+         fields = new Fields(ownerClass);
+         this.fields = fields;
+      }
+
+      return fields;
+   }
+
+   /**
+    * Returns all fields declared in the class, in the order given by {@link Class#getDeclaredFields()}.
+    */
+   @Nonnull
+   public Field[] getDeclaredFields() { return getFields().declaredFields; }
+
+   /**
+    * Returns the injection points of all fields declared in the class, in the same order as
+    * {@link #getDeclaredFields()}, each one named after the qualifier of the field if it has one.
+    */
+   @Nonnull
+   public InjectionPoint[] getInjectionPointsOfDeclaredFields() { return getFields().injectionPoints; }
+
+   /**
+    * Returns the fields declared in the class which are eligible for injection: those annotated as injection points,
+    * plus the non-annotated instance fields that aren't final, volatile, or of a JPA entity type.
+    */
+   @Nonnull
+   public List<Field> getInjectableFields() { return getFields().injectableFields; }
+
+   /**
+    * Returns the kind of injection point of a field obtained from {@link #getInjectableFields()}.
+    *
+    * @throws IllegalArgumentException if the field is not one of the injectable fields of the class
+    */
+   @Nonnull
+   public KindOfInjectionPoint getKindOfInjectionPoint(@Nonnull Field injectableField)
+   {
+      KindOfInjectionPoint kind = getFields().kindsOfInjectionPoint.get(injectableField);
+
+      if (kind == null) {
+         throw new IllegalArgumentException("Not an injectable field: " + injectableField);
+      }
+
+      return kind;
+   }
+
+   /**
+    * Returns the qualified name of a field obtained from {@link #getInjectableFields()}, if it has a qualifier.
+    */
+   @Nullable
+   public String getQualifiedName(@Nonnull Field injectableField)
+   {
+      return getFields().qualifiedNames.get(injectableField);
+   }
+
+   // Constructors ////////////////////////////////////////////////////////////////////////////////////////////////////
+
+   /**
+    * A constructor of the class, together with the parameter metadata used when searching for a constructor to
+    * instantiate the class with.
+    */
+   public static final class ConstructorMetadata
+   {
+      @Nonnull public final Constructor<?> constructor;
+      @Nonnull public final Type[] parameterTypes;
+      @Nonnull public final Annotation[][] parameterAnnotations;
+      @Nonnull public final String[] qualifiedNames;
+      @Nonnull public final String descriptor;
+      public final int access;
+
+      ConstructorMetadata(@Nonnull Constructor<?> constructor)
+      {
+         this.constructor = constructor;
+         parameterTypes = constructor.getGenericParameterTypes();
+         parameterAnnotations = constructor.getParameterAnnotations();
+         qualifiedNames = new String[parameterAnnotations.length];
+
+         for (int i = 0; i < parameterAnnotations.length; i++) {
+            qualifiedNames[i] = InjectionPoint.getQualifiedName(parameterAnnotations[i]);
+         }
+
+         descriptor = "<init>" + JavaType.getConstructorDescriptor(constructor);
+         access = CONSTRUCTOR_ACCESS & constructor.getModifiers();
+      }
+   }
+
+   private static final class Constructors
+   {
+      @Nullable final ConstructorMetadata annotatedConstructor;
+      @Nonnull final List<ConstructorMetadata> constructorsWithMostAccessibleFirst;
+
+      Constructors(@Nonnull Class<?> ownerClass)
+      {
+         Constructor<?>[] declaredConstructors = ownerClass.getDeclaredConstructors();
+         List<ConstructorMetadata> constructors = new ArrayList<ConstructorMetadata>(declaredConstructors.length);
+         ConstructorMetadata annotated = null;
+
+         for (Constructor<?> constructor : declaredConstructors) {
+            ConstructorMetadata metadata = new ConstructorMetadata(constructor);
+            constructors.add(metadata);
+
+            if (annotated == null && kindOfInjectionPoint(constructor) != KindOfInjectionPoint.NotAnnotated) {
+               annotated = metadata;
+            }
+         }
+
+         if (constructors.size() > 1) {
+            Collections.sort(constructors, ACCESSIBILITY_COMPARATOR);
+         }
+
+         annotatedConstructor = annotated;
+         constructorsWithMostAccessibleFirst = constructors;
+      }
+   }
+
+   private static final Comparator<ConstructorMetadata> ACCESSIBILITY_COMPARATOR =
+      new Comparator<ConstructorMetadata>() {
+         @Override
+         public int compare(ConstructorMetadata c1, ConstructorMetadata c2) { return compareAccessibility(c1, c2); }
+      };
+
+   /**
+    * Compares two constructors by accessibility, with the most accessible one coming first: public, then protected,
+    * then package-private, then private.
+    */
+   public static int compareAccessibility(@Nonnull ConstructorMetadata c1, @Nonnull ConstructorMetadata c2)
+   {
+      int m1 = c1.access;
+      int m2 = c2.access;
+      if (m1 == m2) return 0;
+      if (m1 == PUBLIC) return -1;
+      if (m2 == PUBLIC) return 1;
+      if (m1 == PROTECTED) return -1;
+      if (m2 == PROTECTED) return 1;
+      if (m2 == PRIVATE) return -1;
+      return 1;
+   }
+
+   @Nonnull
+   private Constructors getConstructors()
+   {
+      Constructors constructors = this.constructors;
+
+      if (constructors == null) {
+         constructors = new Constructors(ownerClass);
+         this.constructors = constructors;
+      }
+
+      return constructors;
+   }
+
+   /**
+    * Returns the first declared constructor which is annotated as an injection point, if any.
+    */
+   @Nullable
+   public ConstructorMetadata getAnnotatedConstructor() { return getConstructors().annotatedConstructor; }
+
+   /**
+    * Returns all constructors declared in the class, sorted as given by {@link #compareAccessibility}.
+    */
+   @Nonnull
+   public List<ConstructorMetadata> getConstructorsWithMostAccessibleFirst()
+   {
+      return getConstructors().constructorsWithMostAccessibleFirst;
+   }
+
+   // Lifecycle methods ///////////////////////////////////////////////////////////////////////////////////////////////
+
+   private static final class Lifecycle
+   {
+      @Nullable Method initializationMethod;
+      @Nullable Method terminationMethod;
+
+      Lifecycle(@Nonnull Class<?> ownerClass, boolean isServlet)
+      {
+         for (Method method : ownerClass.getDeclaredMethods()) {
+            if (method.isSynthetic()) {
+               continue;
+            }
+
+            if (initializationMethod == null && isInitializationMethod(method, isServlet)) {
+               initializationMethod = method;
+            }
+            else if (terminationMethod == null && isTerminationMethod(method, isServlet)) {
+               terminationMethod = method;
+            }
+
+            if (initializationMethod != null && terminationMethod != null) {
+               break;
+            }
+         }
+      }
+
+      private static boolean isInitializationMethod(@Nonnull Method method, boolean isServlet)
+      {
+         if (hasLifecycleAnnotation(method, true)) {
+            return true;
+         }
+
+         if (isServlet && "init".equals(method.getName())) {
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            return parameterTypes.length == 1 && parameterTypes[0] == ServletConfig.class;
+         }
+
+         return false;
+      }
+
+      private static boolean hasLifecycleAnnotation(@Nonnull Method method, boolean postConstruct)
+      {
+         try {
+            Class<? extends Annotation> lifecycleAnnotation = postConstruct ? PostConstruct.class : PreDestroy.class;
+
+            if (method.isAnnotationPresent(lifecycleAnnotation)) {
+               return true;
+            }
+         }
+         catch (NoClassDefFoundError ignore) { /* can occur on JDK 9 */ }
+
+         return false;
+      }
+
+      private static boolean isTerminationMethod(@Nonnull Method method, boolean isServlet)
+      {
+         return
+            hasLifecycleAnnotation(method, false) ||
+            isServlet && "destroy".equals(method.getName()) && method.getParameterTypes().length == 0;
+      }
+   }
+
+   @Nonnull
+   private Lifecycle getLifecycle(boolean isServlet)
+   {
+      Lifecycle lifecycle = isServlet ? servletLifecycle : this.lifecycle;
+
+      if (lifecycle == null) {
+         lifecycle = new Lifecycle(ownerClass, isServlet);
+
+         if (isServlet) {
+            servletLifecycle = lifecycle;
+         }
+         else {
+            this.lifecycle = lifecycle;
+         }
+      }
+
+      return lifecycle;
+   }
+
+   /**
+    * Returns the method declared in the class which is to be executed after an instance gets initialized, if any: one
+    * annotated with <tt>@PostConstruct</tt>, or the <tt>init(ServletConfig)</tt> method of a servlet.
+    *
+    * @param isServlet whether the class of the tested object (this class or a subclass of it) is a servlet
+    */
+   @Nullable
+   public Method getInitializationMethod(boolean isServlet) { return getLifecycle(isServlet).initializationMethod; }
+
+   /**
+    * Returns the method declared in the class which is to be executed when an instance is no longer used, if any:
+    * one annotated with <tt>@PreDestroy</tt>, or the <tt>destroy()</tt> method of a servlet.
+    *
+    * @param isServlet whether the class of the tested object (this class or a subclass of it) is a servlet
+    */
+   @Nullable
+   public Method getTerminationMethod(boolean isServlet) { return getLifecycle(isServlet).terminationMethod; }
+}
@@ -25,6 +25,11 @@ public final class InjectionState
 {
    @Nonnull private static final Map<InjectionPoint, Object> globalDependencies =
       new ConcurrentHashMap<InjectionPoint, Object>(2);
+   @Nonnull private static final Map<InjectionPoint, Object> globalTestedObjects =
+      new ConcurrentHashMap<InjectionPoint, Object>(2);
+   @Nonnull private static final ConcurrentMap<InjectionPoint, Object> globalTestedObjectLocks =
+      new ConcurrentHashMap<InjectionPoint, Object>(2);
+   private static boolean shutdownHookForGlobalTestedObjectsRegistered;
 
    @Nonnull private final Map<InjectionPoint, Object> testedObjects;
    @Nonnull private final Map<InjectionPoint, Object> instantiatedDependencies;
@@ -46,6 +51,21 @@ public final class InjectionState
       interfaceResolution = new InterfaceResolution();
    }
 
+   /**
+    * Creates a copy of the given state, for a tested object to be created concurrently with others.
+    * The copy gets its own tested objects and consumed injection providers, sharing everything else.
+    */
+   InjectionState(@Nonnull InjectionState state)
+   {
+      testedObjects = new LinkedHashMap<InjectionPoint, Object>(state.testedObjects);
+      instantiatedDependencies = new LinkedHashMap<InjectionPoint, Object>(state.instantiatedDependencies);
+      injectables = state.injectables;
+      consumedInjectionProviders = new ArrayList<InjectionProvider>();
+      lifecycleMethods = state.lifecycleMethods;
+      interfaceResolution = state.interfaceResolution;
+      currentTestClassInstance = state.currentTestClassInstance;
+   }
+
    boolean setInjectables(@Nonnull List<MockedType> injectables)
    {
       if (injectables.isEmpty()) {
@@ -365,15 +385,13 @@ public final class InjectionState
    private static Object getValueFromFieldOfEquivalentTypeAndName(
       @Nonnull InjectionPoint injectionPoint, @Nonnull Object testedObject)
    {
-      for (Field internalField : testedObject.getClass().getDeclaredFields()) {
-         Type fieldType = internalField.getGenericType();
-         String qualifiedName = getQualifiedName(internalField.getDeclaredAnnotations());
-         boolean qualified = qualifiedName != null;
-         String fieldName = qualified ? qualifiedName : internalField.getName();
-         InjectionPoint internalInjectionPoint = new InjectionPoint(fieldType, fieldName, qualified);
+      InjectionMetadata metadata = InjectionMetadata.forClass(testedObject.getClass());
+      Field[] internalFields = metadata.getDeclaredFields();
+      InjectionPoint[] internalInjectionPoints = metadata.getInjectionPointsOfDeclaredFields();
 
-         if (internalInjectionPoint.equals(injectionPoint)) {
-            Object fieldValue = FieldReflection.getFieldValue(internalField, testedObject);
+      for (int i = 0; i < internalFields.length; i++) {
+         if (internalInjectionPoints[i].equals(injectionPoint)) {
+            Object fieldValue = FieldReflection.getFieldValue(internalFields[i], testedObject);
             return fieldValue;
          }
       }
@@ -468,6 +486,78 @@ public final class InjectionState
       globalDependencies.put(dependencyKey, dependency);
    }
 
+   /**
+    * Returns the lock to be held while creating, reusing, or discarding the global tested object of the given key, so
+    * that it's created only once even when tests run concurrently.
+    */
+   @Nonnull
+   static Object getGlobalTestedObjectLock(@Nonnull InjectionPoint key)
+   {
+      Object lock = globalTestedObjectLocks.get(key);
+
+      if (lock == null) {
+         Object newLock = new Object();
+         lock = globalTestedObjectLocks.putIfAbsent(key, newLock);
+
+         if (lock == null) {
+            lock = newLock;
+         }
+      }
+
+      return lock;
+   }
+
+   @Nullable
+   static Object getGlobalTestedObject(@Nonnull InjectionPoint key) { return globalTestedObjects.get(key); }
+
+   static void saveGlobalTestedObject(@Nonnull InjectionPoint key, @Nonnull Object testedObject)
+   {
+      globalTestedObjects.put(key, testedObject);
+      registerShutdownHookForGlobalTestedObjectsIfNeeded();
+   }
+
+   private static synchronized void registerShutdownHookForGlobalTestedObjectsIfNeeded()
+   {
+      if (!shutdownHookForGlobalTestedObjectsRegistered) {
+         shutdownHookForGlobalTestedObjectsRegistered = true;
+
+         Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() { discardGlobalTestedObjects(); }
+         });
+      }
+   }
+
+   static void discardGlobalTestedObject(@Nonnull InjectionPoint key)
+   {
+      synchronized (getGlobalTestedObjectLock(key)) {
+         Object testedObject = globalTestedObjects.remove(key);
+
+         if (testedObject != null) {
+            LifecycleMethods.executeTerminationMethodsOfGlobalObjectGraph(testedObject);
+         }
+      }
+   }
+
+   /**
+    * Discards the global tested objects still in use at the end of the test run, executing the termination methods of
+    * all objects created along with them.
+    */
+   private static void discardGlobalTestedObjects()
+   {
+      discardGlobalTestedObjects(new ArrayList<InjectionPoint>(globalTestedObjects.keySet()));
+   }
+
+   /**
+    * Discards the global tested objects of the given keys, as done at the end of the test run for all of them.
+    */
+   static void discardGlobalTestedObjects(@Nonnull Collection<InjectionPoint> keys)
+   {
+      for (InjectionPoint key : keys) {
+         discardGlobalTestedObject(key);
+      }
+   }
+
    void clearTestedObjectsAndInstantiatedDependencies()
    {
       testedObjects.clear();
@@ -4,12 +4,11 @@
  */
 package mockit.internal.injection;
 
-import java.lang.annotation.*;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.AbstractMap.*;
 import java.util.Map.*;
 import javax.annotation.*;
-import javax.servlet.*;
 
 import mockit.internal.reflection.*;
 import mockit.internal.state.*;
@@ -18,10 +17,14 @@ import static mockit.internal.util.Utilities.*;
 
 public final class LifecycleMethods
 {
+   @Nonnull private static final Map<Object, List<Entry<Method, Object>>> terminationMethodsOfGlobalObjectGraphs =
+      new IdentityHashMap<Object, List<Entry<Method, Object>>>();
+
    @Nonnull private final List<Class<?>> classesSearched;
    @Nonnull private final Map<Class<?>, Method> initializationMethods;
    @Nonnull private final Map<Class<?>, Method> terminationMethods;
    @Nonnull private final Map<Class<?>, Object> objectsWithTerminationMethodsToExecute;
+   @Nullable private List<Entry<Method, Object>> globalObjectsWithTerminationMethods;
    @Nullable Object servletConfig;
 
    LifecycleMethods()
@@ -52,65 +55,17 @@ public final class LifecycleMethods
 
    private void findLifecycleMethodsInSingleClass(boolean isServlet, @Nonnull Class<?> classWithLifecycleMethods)
    {
-      Method initializationMethod = null;
-      Method terminationMethod = null;
-      int methodsFoundInSameClass = 0;
-
-      for (Method method : classWithLifecycleMethods.getDeclaredMethods()) {
-         if (method.isSynthetic()) {
-            continue;
-         }
-
-         if (initializationMethod == null && isInitializationMethod(method, isServlet)) {
-            initializationMethods.put(classWithLifecycleMethods, method);
-            initializationMethod = method;
-            methodsFoundInSameClass++;
-         }
-         else if (terminationMethod == null && isTerminationMethod(method, isServlet)) {
-            terminationMethods.put(classWithLifecycleMethods, method);
-            terminationMethod = method;
-            methodsFoundInSameClass++;
-         }
-
-         if (methodsFoundInSameClass == 2) {
-            break;
-         }
-      }
-   }
-
-   private static boolean isInitializationMethod(@Nonnull Method method, boolean isServlet)
-   {
-      if (hasLifecycleAnnotation(method, true)) {
-         return true;
-      }
+      InjectionMetadata metadata = InjectionMetadata.forClass(classWithLifecycleMethods);
+      Method initializationMethod = metadata.getInitializationMethod(isServlet);
+      Method terminationMethod = metadata.getTerminationMethod(isServlet);
 
-      if (isServlet && "init".equals(method.getName())) {
-         Class<?>[] parameterTypes = method.getParameterTypes();
-         return parameterTypes.length == 1 && parameterTypes[0] == ServletConfig.class;
+      if (initializationMethod != null) {
+         initializationMethods.put(classWithLifecycleMethods, initializationMethod);
       }
 
-      return false;
-   }
-
-   private static boolean hasLifecycleAnnotation(@Nonnull Method method, boolean postConstruct)
-   {
-      try {
-         Class<? extends Annotation> lifecycleAnnotation = postConstruct ? PostConstruct.class : PreDestroy.class;
-
-         if (method.isAnnotationPresent(lifecycleAnnotation)) {
-            return true;
-         }
+      if (terminationMethod != null) {
+         terminationMethods.put(classWithLifecycleMethods, terminationMethod);
       }
-      catch (NoClassDefFoundError ignore) { /* can occur on JDK 9 */ }
-
-      return false;
-   }
-
-   private static boolean isTerminationMethod(@Nonnull Method method, boolean isServlet)
-   {
-      return
-         hasLifecycleAnnotation(method, false) ||
-         isServlet && "destroy".equals(method.getName()) && method.getParameterTypes().length == 0;
    }
 
    public void executeInitializationMethodsIfAny(@Nonnull Class<?> testedClass, @Nonnull Object testedObject)
@@ -130,7 +85,12 @@ public final class LifecycleMethods
       Method preDestroyMethod = terminationMethods.get(testedClass);
 
       if (preDestroyMethod != null) {
-         objectsWithTerminationMethodsToExecute.put(testedClass, testedObject);
+         if (globalObjectsWithTerminationMethods != null) {
+            globalObjectsWithTerminationMethods.add(new SimpleEntry<Method, Object>(preDestroyMethod, testedObject));
+         }
+         else {
+            objectsWithTerminationMethodsToExecute.put(testedClass, testedObject);
+         }
       }
    }
 
@@ -152,6 +112,44 @@ public final class LifecycleMethods
       }
    }
 
+   /**
+    * Starts the creation of a global tested object, during which the objects initialized (the tested object and any
+    * dependencies created for it) have their termination methods deferred until the global object is discarded.
+    */
+   void beginGlobalObjectGraph() { globalObjectsWithTerminationMethods = new ArrayList<Entry<Method, Object>>(); }
+
+   void endGlobalObjectGraph(@Nullable Object globalObject)
+   {
+      List<Entry<Method, Object>> objectsWithTerminationMethods = globalObjectsWithTerminationMethods;
+      globalObjectsWithTerminationMethods = null;
+
+      if (globalObject != null && objectsWithTerminationMethods != null && !objectsWithTerminationMethods.isEmpty()) {
+         synchronized (terminationMethodsOfGlobalObjectGraphs) {
+            terminationMethodsOfGlobalObjectGraphs.put(globalObject, objectsWithTerminationMethods);
+         }
+      }
+   }
+
+   /**
+    * Executes the deferred termination methods of the objects created along with a discarded global tested object, in
+    * the reverse order of their initialization.
+    */
+   static void executeTerminationMethodsOfGlobalObjectGraph(@Nonnull Object globalObject)
+   {
+      List<Entry<Method, Object>> objectsWithTerminationMethods;
+
+      synchronized (terminationMethodsOfGlobalObjectGraphs) {
+         objectsWithTerminationMethods = terminationMethodsOfGlobalObjectGraphs.remove(globalObject);
+      }
+
+      if (objectsWithTerminationMethods != null) {
+         for (int i = objectsWithTerminationMethods.size() - 1; i >= 0; i--) {
+            Entry<Method, Object> terminationMethodAndObject = objectsWithTerminationMethods.get(i);
+            executeTerminationMethod(terminationMethodAndObject.getValue(), terminationMethodAndObject.getKey());
+         }
+      }
+   }
+
    void executeTerminationMethodsIfAny()
    {
       try {
@@ -167,6 +165,11 @@ public final class LifecycleMethods
    private void executeTerminationMethod(@Nonnull Class<?> testedClass, @Nonnull Object testedObject)
    {
       Method terminationMethod = terminationMethods.get(testedClass);
+      executeTerminationMethod(testedObject, terminationMethod);
+   }
+
+   private static void executeTerminationMethod(@Nonnull Object testedObject, @Nonnull Method terminationMethod)
+   {
       TestRun.exitNoMockingZone();
 
       try {
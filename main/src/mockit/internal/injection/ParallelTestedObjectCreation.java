@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.injection;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.annotation.*;
+
+import mockit.internal.injection.InjectionMetadata.*;
+import mockit.internal.reflection.*;
+import mockit.internal.state.*;
+
+/**
+ * Creates the tested objects of a test class or test method which don't depend on each other concurrently, on a
+ * fork/join pool, when enabled through the "<tt>jmockit-parallelTestedCreation</tt>" system property.
+ * The pool has as many worker threads as there are available processors, unless a different number is specified
+ * through the "<tt>jmockit-parallelTestedCreationThreads</tt>" system property; being daemon threads, they don't
+ * prevent the JVM from exiting, so the pool is never shut down.
+ * <p/>
+ * Tested objects are examined in declaration order, accumulating those which can be created concurrently into a batch.
+ * A tested object is added to the current batch only if none of its injection points (constructor parameters and
+ * injectable fields) is of a type related to a tested object already in the batch, and if none of those has a field
+ * of a type related to its own, as such a field could provide its value; otherwise, the current batch is created
+ * first, and a new one is started.
+ * Tested objects which can't be created concurrently (those provided by the test, global ones, or ones which are
+ * fully initialized, since these share the dependencies created for them) are created sequentially, after the current
+ * batch.
+ * <p/>
+ * After a batch is created, its objects are assigned and registered in declaration order, with their initialization
+ * methods executed on the thread running the test; therefore, each tested object sees the same tested objects as
+ * when created sequentially, and <tt>@Tested(availableDuringSetup = true)</tt> keeps its semantics.
+ * Constructors, however, are executed on fork/join worker threads, so they don't see the thread-local state of the
+ * thread running the test, nor its test context; tested classes whose constructors depend on those should not be
+ * created concurrently.
+ */
+final class ParallelTestedObjectCreation
+{
+   /**
+    * Whether tested objects get created concurrently, which is opt-in since their constructors then run on fork/join
+    * worker threads, without the thread-local values (such as a security context, transaction, or locale) set on the
+    * thread running the test, and outside of the test context.
+    */
+   static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("jmockit-parallelTestedCreation"));
+
+   @Nullable private static ForkJoinPool pool;
+
+   @Nonnull private final InjectionState injectionState;
+   @Nonnull private final Object testClassInstance;
+   @Nonnull private final List<TestedObject> batch;
+
+   ParallelTestedObjectCreation(@Nonnull InjectionState injectionState, @Nonnull Object testClassInstance)
+   {
+      this.injectionState = injectionState;
+      this.testClassInstance = testClassInstance;
+      batch = new ArrayList<TestedObject>();
+   }
+
+   @Nonnull
+   private static synchronized ForkJoinPool getPool()
+   {
+      if (pool == null) {
+         int defaultThreads = Runtime.getRuntime().availableProcessors();
+         int threads = Integer.getInteger("jmockit-parallelTestedCreationThreads", defaultThreads);
+         pool = new ForkJoinPool(Math.max(1, threads));
+      }
+
+      return pool;
+   }
+
+   void instantiate(@Nonnull List<? extends TestedObject> testedObjects)
+   {
+      for (TestedObject testedObject : testedObjects) {
+         if (!batch.isEmpty() && dependsOnBatch(testedObject)) {
+            createBatch();
+         }
+
+         if (testedObject.prepareForConcurrentCreation(testClassInstance)) {
+            batch.add(testedObject);
+         }
+         else {
+            createBatch();
+            instantiateSequentially(testedObject);
+         }
+      }
+
+      createBatch();
+   }
+
+   private void instantiateSequentially(@Nonnull TestedObject testedObject)
+   {
+      try {
+         testedObject.instantiateWithInjectableValues(testClassInstance);
+      }
+      finally {
+         injectionState.resetConsumedInjectionProviders();
+      }
+   }
+
+   // Dependencies between tested objects /////////////////////////////////////////////////////////////////////////////
+
+   private boolean dependsOnBatch(@Nonnull TestedObject testedObject)
+   {
+      if (testedObject.isFullyInitialized()) {
+         return true;
+      }
+
+      TestedClass testedClass = testedObject.getTestedClass();
+      Set<Class<?>> typesOfInjectionPoints = getTypesOfInjectionPoints(testedClass.targetClass);
+
+      for (TestedObject objectInBatch : batch) {
+         TestedClass classInBatch = objectInBatch.getTestedClass();
+
+         if (
+            isRelatedToAny(classInBatch.declaredClass, typesOfInjectionPoints) ||
+            isRelatedToAny(classInBatch.targetClass, typesOfInjectionPoints) ||
+            hasFieldOfRelatedType(classInBatch.targetClass, testedClass.declaredClass)
+         ) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   @Nonnull
+   private static Set<Class<?>> getTypesOfInjectionPoints(@Nonnull Class<?> targetClass)
+   {
+      Set<Class<?>> types = new HashSet<Class<?>>();
+
+      List<ConstructorMetadata> constructors =
+         InjectionMetadata.forClass(targetClass).getConstructorsWithMostAccessibleFirst();
+
+      for (ConstructorMetadata constructor : constructors) {
+         for (Type parameterType : constructor.parameterTypes) {
+            addClassesFromType(types, parameterType);
+         }
+      }
+
+      for (Class<?> aClass = targetClass; aClass != null && aClass.getClassLoader() != null; ) {
+         for (Field field : InjectionMetadata.forClass(aClass).getInjectableFields()) {
+            addClassesFromType(types, field.getGenericType());
+         }
+
+         aClass = aClass.getSuperclass();
+      }
+
+      return types;
+   }
+
+   private static void addClassesFromType(@Nonnull Set<Class<?>> classes, @Nonnull Type type)
+   {
+      if (type instanceof Class<?>) {
+         Class<?> aClass = (Class<?>) type;
+
+         while (aClass.isArray()) {
+            aClass = aClass.getComponentType();
+         }
+
+         classes.add(aClass);
+      }
+      else if (type instanceof ParameterizedType) {
+         ParameterizedType parameterizedType = (ParameterizedType) type;
+         addClassesFromType(classes, parameterizedType.getRawType());
+
+         for (Type typeArgument : parameterizedType.getActualTypeArguments()) {
+            addClassesFromType(classes, typeArgument);
+         }
+      }
+      else if (type instanceof GenericArrayType) {
+         addClassesFromType(classes, ((GenericArrayType) type).getGenericComponentType());
+      }
+      else if (type instanceof WildcardType) {
+         for (Type bound : ((WildcardType) type).getUpperBounds()) {
+            addClassesFromType(classes, bound);
+         }
+      }
+      else if (type instanceof TypeVariable<?>) {
+         for (Type bound : ((TypeVariable<?>) type).getBounds()) {
+            addClassesFromType(classes, bound);
+         }
+      }
+   }
+
+   private static boolean isRelatedToAny(@Nonnull Class<?> aClass, @Nonnull Set<Class<?>> otherClasses)
+   {
+      for (Class<?> otherClass : otherClasses) {
+         if (areRelated(aClass, otherClass)) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   private static boolean areRelated(@Nonnull Class<?> aClass, @Nonnull Class<?> otherClass)
+   {
+      return aClass.isAssignableFrom(otherClass) || otherClass.isAssignableFrom(aClass);
+   }
+
+   private static boolean hasFieldOfRelatedType(@Nonnull Class<?> classWithFields, @Nonnull Class<?> aClass)
+   {
+      for (Field field : InjectionMetadata.forClass(classWithFields).getDeclaredFields()) {
+         if (areRelated(field.getType(), aClass)) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   // Creation of batches /////////////////////////////////////////////////////////////////////////////////////////////
+
+   private void createBatch()
+   {
+      if (batch.size() == 1) {
+         instantiateSequentially(batch.get(0));
+      }
+      else if (!batch.isEmpty()) {
+         createBatchInParallel();
+      }
+
+      batch.clear();
+   }
+
+   private void createBatchInParallel()
+   {
+      List<Callable<Object>> creations = new ArrayList<Callable<Object>>(batch.size());
+
+      for (final TestedObject testedObject : batch) {
+         final InjectionState copyOfInjectionState = new InjectionState(injectionState);
+
+         creations.add(new Callable<Object>() {
+            @Override
+            public Object call()
+            {
+               TestRun.enterNoMockingZone();
+
+               try {
+                  return testedObject.createConcurrently(copyOfInjectionState);
+               }
+               finally {
+                  TestRun.exitNoMockingZone();
+               }
+            }
+         });
+      }
+
+      List<Future<Object>> createdObjects = getPool().invokeAll(creations);
+
+      for (int i = 0, n = batch.size(); i < n; i++) {
+         Object createdObject = getCreatedObject(createdObjects.get(i));
+         batch.get(i).publishCreatedObject(testClassInstance, createdObject);
+      }
+   }
+
+   @Nonnull
+   private static Object getCreatedObject(@Nonnull Future<Object> creation)
+   {
+      try {
+         return creation.get();
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException(e);
+      }
+      catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+
+         if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+         if (cause instanceof Error) throw (Error) cause;
+         ThrowOfCheckedException.doThrow((Exception) cause);
+         throw new IllegalStateException(cause);
+      }
+   }
+}
@@ -23,14 +23,22 @@ public final class TestedClassInstantiations
    @Nonnull private final List<TestedField> testedFields;
    @Nonnull private final List<MockedType> injectableFields;
    @Nonnull final InjectionState injectionState;
+   private boolean parallelCreation;
 
    public TestedClassInstantiations()
    {
       testedFields = new LinkedList<TestedField>();
       injectableFields = new ArrayList<MockedType>();
       injectionState = new InjectionState();
+      parallelCreation = ParallelTestedObjectCreation.ENABLED;
    }
 
+   /**
+    * Overrides the "<tt>jmockit-parallelTestedCreation</tt>" system property for the tested fields of this test class,
+    * so that tests can exercise either mode in the same JVM.
+    */
+   void setParallelCreation(boolean parallelCreation) { this.parallelCreation = parallelCreation; }
+
    public boolean findTestedAndInjectableMembers(@Nonnull Class<?> testClass)
    {
       findAllTestedAndInjectableMembersInTestClassHierarchy(testClass);
@@ -140,9 +148,22 @@ public final class TestedClassInstantiations
    {
       injectionState.buildListsOfInjectables(testClassInstance, injectableFields);
 
-      for (TestedField testedField : testedFields) {
-         if (!beforeSetup || testedField.isAvailableDuringSetup()) {
-            instantiateTestedObject(testClassInstance, testedField);
+      if (parallelCreation && testedFields.size() > 1) {
+         List<TestedField> fieldsToInstantiate = new ArrayList<TestedField>(testedFields.size());
+
+         for (TestedField testedField : testedFields) {
+            if (!beforeSetup || testedField.isAvailableDuringSetup()) {
+               fieldsToInstantiate.add(testedField);
+            }
+         }
+
+         new ParallelTestedObjectCreation(injectionState, testClassInstance).instantiate(fieldsToInstantiate);
+      }
+      else {
+         for (TestedField testedField : testedFields) {
+            if (!beforeSetup || testedField.isAvailableDuringSetup()) {
+               instantiateTestedObject(testClassInstance, testedField);
+            }
          }
       }
    }
@@ -159,11 +180,23 @@ public final class TestedClassInstantiations
 
    public void clearTestedObjects()
    {
+      discardGlobalTestedObjectsIfCleared();
       injectionState.lifecycleMethods.executeTerminationMethodsIfAny();
       injectionState.clearTestedObjectsAndInstantiatedDependencies();
       resetTestedFields(false);
    }
 
+   private void discardGlobalTestedObjectsIfCleared()
+   {
+      Object testClassInstance = injectionState.getCurrentTestClassInstance();
+
+      if (testClassInstance != null) {
+         for (TestedObject testedField : testedFields) {
+            testedField.discardGlobalInstanceIfCleared(testClassInstance);
+         }
+      }
+   }
+
    private void resetTestedFields(boolean duringTearDown)
    {
       Object testClassInstance = injectionState.getCurrentTestClassInstance();
@@ -25,6 +25,9 @@ final class TestedField extends TestedObject
 
    boolean isFromBaseClass(@Nonnull Class<?> testClass) { return testedField.getDeclaringClass() != testClass; }
 
+   @Override
+   boolean isGlobal() { return metadata.global(); }
+
    @Override
    boolean alreadyInstantiated(@Nonnull Object testClassInstance)
    {
@@ -54,6 +57,9 @@ final class TestedField extends TestedObject
       return testedObject;
    }
 
+   @Nullable @Override
+   Object getInstance(@Nonnull Object testClassInstance) { return getFieldValue(testedField, testClassInstance); }
+
    @Override
    void setInstance(@Nonnull Object testClassInstance, @Nullable Object testedInstance)
    {
@@ -12,6 +12,7 @@ import javax.annotation.*;
 import mockit.*;
 import mockit.internal.injection.field.*;
 import mockit.internal.injection.full.*;
+import mockit.internal.util.*;
 import static mockit.internal.util.AutoBoxing.*;
 import static mockit.internal.util.DefaultValues.*;
 
@@ -25,6 +26,7 @@ abstract class TestedObject
    @Nullable private final TestedObjectCreation testedObjectCreation;
    @Nullable private List<Field> targetFields;
    boolean createAutomatically;
+   private boolean globalInstanceAssigned;
 
    @Nullable
    static Tested getTestedAnnotationIfPresent(@Nonnull Annotation annotation)
@@ -57,6 +59,9 @@ abstract class TestedObject
    }
 
    boolean isAvailableDuringSetup() { return metadata.availableDuringSetup(); }
+   boolean isGlobal() { return false; }
+   boolean isFullyInitialized() { return fullInjection != null; }
+   @Nonnull TestedClass getTestedClass() { return testedClass; }
 
    void instantiateWithInjectableValues(@Nonnull Object testClassInstance)
    {
@@ -77,6 +82,11 @@ abstract class TestedObject
             return;
          }
 
+         if (isGlobal()) {
+            assignGlobalInstance(testClassInstance);
+            return;
+         }
+
          testedObject = createAndRegisterNewObject(testClassInstance);
       }
       else if (testedObject != null) {
@@ -117,8 +127,68 @@ abstract class TestedObject
       return false;
    }
 
+   @Nullable Object getInstance(@Nonnull Object testClassInstance) { return null; }
    void setInstance(@Nonnull Object testClassInstance, @Nullable Object testedInstance) {}
 
+   /**
+    * Assigns the global instance of the tested class, creating it along with its dependencies if not created before.
+    * Since a global instance is only initialized on creation, its initialization methods get executed only once, while
+    * its termination methods are deferred until it gets discarded, or until the JVM shuts down.
+    */
+   private void assignGlobalInstance(@Nonnull Object testClassInstance)
+   {
+      InjectionPoint injectionPoint = new InjectionPoint(testedClass.declaredType, testedName);
+      Object testedObject;
+
+      synchronized (InjectionState.getGlobalTestedObjectLock(injectionPoint)) {
+         testedObject = InjectionState.getGlobalTestedObject(injectionPoint);
+
+         if (testedObject != null) {
+            setInstance(testClassInstance, testedObject);
+            registerTestedObject(testedObject);
+         }
+         else {
+            injectionState.lifecycleMethods.beginGlobalObjectGraph();
+
+            try {
+               testedObject = createAndRegisterNewObject(testClassInstance);
+
+               if (testedObject != null) {
+                  Class<?> testedObjectClass = testedClass.targetClass;
+
+                  if (testedObjectClass.getClassLoader() != null) {
+                     performFieldInjection(testedObjectClass, testedObject);
+                     executeInitializationMethodsIfAny(testedObjectClass, testedObject);
+                  }
+
+                  InjectionState.saveGlobalTestedObject(injectionPoint, testedObject);
+               }
+            }
+            finally {
+               injectionState.lifecycleMethods.endGlobalObjectGraph(testedObject);
+            }
+         }
+      }
+
+      globalInstanceAssigned = testedObject != null;
+   }
+
+   /**
+    * Discards the global instance assigned for the current test, if the test cleared it by assigning <tt>null</tt>,
+    * executing the termination methods of all objects created along with it.
+    */
+   void discardGlobalInstanceIfCleared(@Nonnull Object testClassInstance)
+   {
+      if (globalInstanceAssigned) {
+         globalInstanceAssigned = false;
+
+         if (getInstance(testClassInstance) == null) {
+            InjectionPoint injectionPoint = new InjectionPoint(testedClass.declaredType, testedName);
+            InjectionState.discardGlobalTestedObject(injectionPoint);
+         }
+      }
+   }
+
    @Nullable
    private Object createAndRegisterNewObject(@Nonnull Object testClassInstance)
    {
@@ -140,6 +210,12 @@ abstract class TestedObject
    }
 
    private void performFieldInjection(@Nonnull Class<?> targetClass, @Nonnull Object testedObject)
+   {
+      performFieldInjection(injectionState, targetClass, testedObject);
+   }
+
+   private void performFieldInjection(
+      @Nonnull InjectionState injectionState, @Nonnull Class<?> targetClass, @Nonnull Object testedObject)
    {
       FieldInjection fieldInjection = new FieldInjection(injectionState, fullInjection);
 
@@ -157,6 +233,63 @@ abstract class TestedObject
       }
    }
 
+   // Methods used when tested objects are created concurrently ////////////////////////////////////////////////////////
+
+   /**
+    * Indicates whether this tested object is to be newly created, without full injection, in which case it can be
+    * created concurrently with others; if so, it gets prepared for that, by reading in advance what would otherwise be
+    * shared state modified during its creation.
+    */
+   boolean prepareForConcurrentCreation(@Nonnull Object testClassInstance)
+   {
+      if (
+         testedObjectCreation == null || fullInjection != null || isGlobal() ||
+         alreadyInstantiated(testClassInstance) ||
+         getExistingTestedInstanceIfApplicable(testClassInstance) != null || !createAutomatically ||
+         isNonInstantiableType(testedClass.targetClass, null) ||
+         injectionState.getTestedInstance(testedClass.declaredType, testedName) != null
+      ) {
+         return false;
+      }
+
+      new ParameterNameExtractor().extractNames(testedClass.getDeclaredClass());
+      return true;
+   }
+
+   /**
+    * Creates this tested object and performs field injection on it, from a thread other than the one running the
+    * test, and through a copy of the injection state, where it gets registered.
+    * The new object is only assigned and registered in the actual state later, by {@link #publishCreatedObject}.
+    */
+   @Nonnull
+   Object createConcurrently(@Nonnull InjectionState copyOfInjectionState)
+   {
+      assert testedObjectCreation != null;
+      Object testedObject = testedObjectCreation.create(copyOfInjectionState);
+      InjectionPoint injectionPoint = new InjectionPoint(testedClass.declaredType, testedName);
+      copyOfInjectionState.saveTestedObject(injectionPoint, testedObject);
+
+      Class<?> testedObjectClass = testedClass.targetClass;
+
+      if (testedObjectClass.getClassLoader() != null) {
+         performFieldInjection(copyOfInjectionState, testedObjectClass, testedObject);
+      }
+
+      return testedObject;
+   }
+
+   void publishCreatedObject(@Nonnull Object testClassInstance, @Nonnull Object testedObject)
+   {
+      setInstance(testClassInstance, testedObject);
+      registerTestedObject(testedObject);
+
+      Class<?> testedObjectClass = testedClass.targetClass;
+
+      if (testedObjectClass.getClassLoader() != null) {
+         executeInitializationMethodsIfAny(testedObjectClass, testedObject);
+      }
+   }
+
    void clearIfAutomaticCreation(@Nonnull Object testClassInstance, boolean duringTearDown)
    {
       if (createAutomatically && (duringTearDown || !isAvailableDuringSetup())) {
@@ -58,7 +58,10 @@ public final class TestedObjectCreation
    }
 
    @Nonnull
-   public Object create()
+   public Object create() { return create(injectionState); }
+
+   @Nonnull
+   Object create(@Nonnull InjectionState injectionState)
    {
       ConstructorSearch constructorSearch = new ConstructorSearch(injectionState, testedClass, fullInjection != null);
       Constructor<?> constructor = constructorSearch.findConstructorToUse();
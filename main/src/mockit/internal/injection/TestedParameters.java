@@ -5,6 +5,7 @@
 package mockit.internal.injection;
 
 import java.lang.annotation.*;
+import java.util.*;
 import javax.annotation.*;
 
 import mockit.*;
@@ -30,10 +31,21 @@ public final class TestedParameters
    {
       injectionState.buildListsOfInjectables(testClassInstance, paramTypeRedefs);
 
+      List<TestedParameter> testedParameters = new ArrayList<TestedParameter>();
+
       for (int n = testMethod.getParameterCount(), i = 0; i < n; i++) {
          TestedParameter testedParameter = createTestedParameterIfApplicable(i);
 
          if (testedParameter != null) {
+            testedParameters.add(testedParameter);
+         }
+      }
+
+      if (ParallelTestedObjectCreation.ENABLED && testedParameters.size() > 1) {
+         new ParallelTestedObjectCreation(injectionState, testClassInstance).instantiate(testedParameters);
+      }
+      else {
+         for (TestedParameter testedParameter : testedParameters) {
             instantiateTestedObject(testClassInstance, testedParameter);
          }
       }
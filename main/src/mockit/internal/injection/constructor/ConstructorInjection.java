@@ -84,7 +84,7 @@ public final class ConstructorInjection extends Injector
 
       Type parameterType = constructorParameter.getDeclaredType();
       injectionState.setTypeOfInjectionPoint(parameterType);
-      String qualifiedName = getQualifiedName(constructorParameter.getAnnotations());
+      String qualifiedName = constructorParameter.qualifiedName;
 
       Class<?> parameterClass = constructorParameter.getClassOfDeclaredType();
       TestedClass nextTestedClass = new TestedClass(parameterType, parameterClass);
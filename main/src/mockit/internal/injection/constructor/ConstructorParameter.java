@@ -15,14 +15,17 @@ final class ConstructorParameter extends InjectionProvider
 {
    @Nonnull private final Class<?> classOfDeclaredType;
    @Nonnull private final Annotation[] annotations;
+   @Nullable final String qualifiedName;
    @Nullable private final Object value;
 
    ConstructorParameter(
-      @Nonnull Type declaredType, @Nonnull Annotation[] annotations, @Nonnull String name, @Nullable Object value)
+      @Nonnull Type declaredType, @Nonnull Annotation[] annotations, @Nonnull String name,
+      @Nullable String qualifiedName, @Nullable Object value)
    {
       super(declaredType, name);
       classOfDeclaredType = getClassType(declaredType);
       this.annotations = annotations;
+      this.qualifiedName = qualifiedName;
       this.value = value;
    }
 
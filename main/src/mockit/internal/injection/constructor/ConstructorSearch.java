@@ -8,24 +8,22 @@ import java.lang.annotation.*;
 import java.lang.reflect.*;
 import java.util.*;
 import javax.annotation.*;
-import static java.lang.reflect.Modifier.*;
 
-import mockit.external.asm.*;
 import mockit.internal.injection.*;
+import mockit.internal.injection.InjectionMetadata.*;
 import mockit.internal.state.*;
 import mockit.internal.util.*;
+import static mockit.internal.injection.InjectionMetadata.compareAccessibility;
 import static mockit.internal.injection.InjectionPoint.*;
 
 public final class ConstructorSearch
 {
-   private static final int CONSTRUCTOR_ACCESS = PUBLIC + PROTECTED + PRIVATE;
-
    @Nonnull private final InjectionState injectionState;
    @Nonnull private final TestedClass testedClass;
    @Nonnull private final String testedClassDesc;
    @Nonnull public List<InjectionProvider> parameterProviders;
    private final boolean withFullInjection;
-   @Nullable private Constructor<?> constructor;
+   @Nullable private ConstructorMetadata constructor;
    @Nullable private StringBuilder searchResults;
 
    public ConstructorSearch(
@@ -43,42 +41,39 @@ public final class ConstructorSearch
    public Constructor<?> findConstructorToUse()
    {
       constructor = null;
-      Class<?> declaredClass = testedClass.targetClass;
-      Constructor<?>[] constructors = declaredClass.getDeclaredConstructors();
+      InjectionMetadata metadata = InjectionMetadata.forClass(testedClass.targetClass);
 
-      if (!findSingleAnnotatedConstructor(constructors)) {
-         findSatisfiedConstructorWithMostParameters(constructors);
+      if (!findSingleAnnotatedConstructor(metadata)) {
+         findSatisfiedConstructorWithMostParameters(metadata.getConstructorsWithMostAccessibleFirst());
       }
 
-      return constructor;
+      return constructor == null ? null : constructor.constructor;
    }
 
-   private boolean findSingleAnnotatedConstructor(@Nonnull Constructor<?>[] constructors)
+   private boolean findSingleAnnotatedConstructor(@Nonnull InjectionMetadata metadata)
    {
-      for (Constructor<?> c : constructors) {
-         if (kindOfInjectionPoint(c) != KindOfInjectionPoint.NotAnnotated) {
-            List<InjectionProvider> providersFound = findParameterProvidersForConstructor(c);
+      ConstructorMetadata annotatedConstructor = metadata.getAnnotatedConstructor();
 
-            if (providersFound != null) {
-               parameterProviders = providersFound;
-               constructor = c;
-            }
+      if (annotatedConstructor == null) {
+         return false;
+      }
 
-            return true;
-         }
+      List<InjectionProvider> providersFound = findParameterProvidersForConstructor(annotatedConstructor);
+
+      if (providersFound != null) {
+         parameterProviders = providersFound;
+         constructor = annotatedConstructor;
       }
 
-      return false;
+      return true;
    }
 
-   private void findSatisfiedConstructorWithMostParameters(@Nonnull Constructor<?>[] constructors)
+   private void findSatisfiedConstructorWithMostParameters(@Nonnull List<ConstructorMetadata> constructors)
    {
-      sortConstructorsWithMostAccessibleFirst(constructors);
-
-      Constructor<?> unresolvedConstructor = null;
+      ConstructorMetadata unresolvedConstructor = null;
       List<InjectionProvider> incompleteProviders = null;
 
-      for (Constructor<?> candidateConstructor : constructors) {
+      for (ConstructorMetadata candidateConstructor : constructors) {
          List<InjectionProvider> providersFound = findParameterProvidersForConstructor(candidateConstructor);
 
          if (providersFound != null) {
@@ -104,31 +99,6 @@ public final class ConstructorSearch
       selectConstructorWithUnresolvedParameterIfMoreAccessible(unresolvedConstructor, incompleteProviders);
    }
 
-   private static void sortConstructorsWithMostAccessibleFirst(@Nonnull Constructor<?>[] constructors)
-   {
-      if (constructors.length > 1) {
-         Arrays.sort(constructors, CONSTRUCTOR_COMPARATOR);
-      }
-   }
-
-   private static final Comparator<Constructor<?>> CONSTRUCTOR_COMPARATOR = new Comparator<Constructor<?>>() {
-      @Override
-      public int compare(Constructor<?> c1, Constructor<?> c2) { return compareAccessibility(c1, c2); }
-   };
-
-   private static int compareAccessibility(@Nonnull Constructor<?> c1, @Nonnull Constructor<?> c2)
-   {
-      int m1 = getModifiers(c1);
-      int m2 = getModifiers(c2);
-      if (m1 == m2) return 0;
-      if (m1 == PUBLIC) return -1;
-      if (m2 == PUBLIC) return 1;
-      if (m1 == PROTECTED) return -1;
-      if (m2 == PROTECTED) return 1;
-      if (m2 == PRIVATE) return -1;
-      return 1;
-   }
-
    private static boolean containsUnresolvedProvider(@Nonnull List<InjectionProvider> providersFound)
    {
       for (InjectionProvider provider : providersFound) {
@@ -141,40 +111,35 @@ public final class ConstructorSearch
    }
 
    private boolean isLargerConstructor(
-      @Nonnull Constructor<?> candidateConstructor, @Nonnull List<InjectionProvider> providersFound,
-      @Nonnull Constructor<?> previousSatisfiableConstructor, @Nonnull List<InjectionProvider> previousProviders)
+      @Nonnull ConstructorMetadata candidateConstructor, @Nonnull List<InjectionProvider> providersFound,
+      @Nonnull ConstructorMetadata previousSatisfiableConstructor, @Nonnull List<InjectionProvider> previousProviders)
    {
       return
-         getModifiers(candidateConstructor) == getModifiers(previousSatisfiableConstructor) &&
+         candidateConstructor.access == previousSatisfiableConstructor.access &&
          providersFound.size() >= previousProviders.size();
    }
 
-   private static int getModifiers(@Nonnull Constructor<?> c) { return CONSTRUCTOR_ACCESS & c.getModifiers(); }
-
    @Nullable
-   private List<InjectionProvider> findParameterProvidersForConstructor(@Nonnull Constructor<?> candidate)
+   private List<InjectionProvider> findParameterProvidersForConstructor(@Nonnull ConstructorMetadata candidate)
    {
-      Type[] parameterTypes = candidate.getGenericParameterTypes();
-      Annotation[][] parameterAnnotations = candidate.getParameterAnnotations();
+      Type[] parameterTypes = candidate.parameterTypes;
       int n = parameterTypes.length;
       List<InjectionProvider> providersFound = new ArrayList<InjectionProvider>(n);
-      boolean varArgs = candidate.isVarArgs();
+      boolean varArgs = candidate.constructor.isVarArgs();
 
       if (varArgs) {
          n--;
       }
 
-      printCandidateConstructorNameIfRequested(candidate);
-
-      String constructorDesc = "<init>" + JavaType.getConstructorDescriptor(candidate);
+      printCandidateConstructorNameIfRequested(candidate.constructor);
 
       for (int i = 0; i < n; i++) {
          Type parameterType = parameterTypes[i];
          injectionState.setTypeOfInjectionPoint(parameterType);
 
-         String parameterName = ParameterNames.getName(testedClassDesc, constructorDesc, i);
-         Annotation[] appliedAnnotations = parameterAnnotations[i];
-         InjectionProvider provider = findOrCreateInjectionProvider(parameterType, parameterName, appliedAnnotations);
+         String parameterName = ParameterNames.getName(testedClassDesc, candidate.descriptor, i);
+         InjectionProvider provider = findOrCreateInjectionProvider(
+            parameterType, parameterName, candidate.parameterAnnotations[i], candidate.qualifiedNames[i]);
 
          if (provider == null || providersFound.contains(provider)) {
             printParameterOfCandidateConstructorIfRequested(parameterName, provider);
@@ -198,10 +163,9 @@ public final class ConstructorSearch
 
    @Nullable
    private InjectionProvider findOrCreateInjectionProvider(
-      @Nonnull Type parameterType, @Nullable String parameterName, @Nonnull Annotation[] parameterAnnotations)
+      @Nonnull Type parameterType, @Nullable String parameterName, @Nonnull Annotation[] parameterAnnotations,
+      @Nullable String qualifiedName)
    {
-      String qualifiedName = getQualifiedName(parameterAnnotations);
-
       if (parameterName == null && qualifiedName == null) {
          return null;
       }
@@ -221,7 +185,8 @@ public final class ConstructorSearch
          return null;
       }
 
-      return new ConstructorParameter(parameterType, parameterAnnotations, targetName, valueForParameter);
+      return new ConstructorParameter(
+         parameterType, parameterAnnotations, targetName, qualifiedName, valueForParameter);
    }
 
    @Nullable
@@ -233,7 +198,7 @@ public final class ConstructorSearch
    }
 
    private void selectConstructorWithUnresolvedParameterIfMoreAccessible(
-      @Nullable Constructor<?> unresolvedConstructor, List<InjectionProvider> incompleteProviders)
+      @Nullable ConstructorMetadata unresolvedConstructor, List<InjectionProvider> incompleteProviders)
    {
       if (
          unresolvedConstructor != null &&
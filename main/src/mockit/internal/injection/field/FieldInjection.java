@@ -8,8 +8,6 @@ import java.lang.reflect.*;
 import java.util.*;
 import java.util.regex.*;
 import javax.annotation.*;
-import javax.persistence.*;
-import static java.lang.reflect.Modifier.*;
 import static java.util.regex.Pattern.*;
 
 import mockit.internal.injection.*;
@@ -44,35 +42,9 @@ public final class FieldInjection extends Injector
       return targetFields;
    }
 
-   private void addEligibleFields(@Nonnull List<Field> targetFields, @Nonnull Class<?> classWithFields)
+   private static void addEligibleFields(@Nonnull List<Field> targetFields, @Nonnull Class<?> classWithFields)
    {
-      Field[] fields = classWithFields.getDeclaredFields();
-
-      for (Field field : fields) {
-         if (isEligibleForInjection(field)) {
-            targetFields.add(field);
-         }
-      }
-   }
-
-   private boolean isEligibleForInjection(@Nonnull Field field)
-   {
-      int modifiers = field.getModifiers();
-
-      if (isFinal(modifiers)) {
-         return false;
-      }
-
-      if (kindOfInjectionPoint(field) != KindOfInjectionPoint.NotAnnotated) {
-         return true;
-      }
-
-      //noinspection SimplifiableIfStatement
-      if (PERSISTENCE_UNIT_CLASS != null && field.getType().isAnnotationPresent(Entity.class)) {
-         return false;
-      }
-
-      return !isStatic(modifiers) && !isVolatile(modifiers);
+      targetFields.addAll(InjectionMetadata.forClass(classWithFields).getInjectableFields());
    }
 
    public void injectIntoEligibleFields(
@@ -92,7 +64,7 @@ public final class FieldInjection extends Injector
 
    private boolean targetFieldWasNotAssignedByConstructor(@Nonnull Object testedObject, @Nonnull Field targetField)
    {
-      if (kindOfInjectionPoint(targetField) != KindOfInjectionPoint.NotAnnotated) {
+      if (getKindOfInjectionPoint(targetField) != KindOfInjectionPoint.NotAnnotated) {
          return true;
       }
 
@@ -113,11 +85,18 @@ public final class FieldInjection extends Injector
       return fieldValue.equals(defaultValue);
    }
 
+   @Nonnull
+   private static KindOfInjectionPoint getKindOfInjectionPoint(@Nonnull Field targetField)
+   {
+      return InjectionMetadata.forClass(targetField.getDeclaringClass()).getKindOfInjectionPoint(targetField);
+   }
+
    @Nullable
    private Object getValueForFieldIfAvailable(
       @Nonnull List<Field> targetFields, @Nonnull TestedClass testedClass, @Nonnull Field targetField)
    {
-      @Nullable String qualifiedFieldName = getQualifiedName(targetField.getDeclaredAnnotations());
+      InjectionMetadata metadata = InjectionMetadata.forClass(targetField.getDeclaringClass());
+      @Nullable String qualifiedFieldName = metadata.getQualifiedName(targetField);
       InjectionProvider injectable =
          findAvailableInjectableIfAny(targetFields, qualifiedFieldName, testedClass, targetField);
 
@@ -145,7 +124,7 @@ public final class FieldInjection extends Injector
          }
       }
 
-      KindOfInjectionPoint kindOfInjectionPoint = kindOfInjectionPoint(targetField);
+      KindOfInjectionPoint kindOfInjectionPoint = getKindOfInjectionPoint(targetField);
 
       if (kindOfInjectionPoint == KindOfInjectionPoint.WithValue) {
          return getValueFromAnnotation(targetField);
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.reflection;
+
+import java.util.concurrent.*;
+import javax.annotation.*;
+
+import mockit.internal.reflection.GenericTypeReflection.*;
+
+/**
+ * Generic type reflection on a class, along with the generic method signatures parsed or resolved through it, cached
+ * so that repeated invocations to generic methods of a mocked class don't reflect on the class again.
+ * <p/>
+ * Instances are kept per {@link Class} object through a {@link ClassValue}, so classes of the same name from different
+ * class loaders get separate instances, which don't prevent their class loaders from being collected.
+ * All methods are safe to be called concurrently.
+ */
+public final class CachedGenericTypeReflection
+{
+   private static final ClassValue<CachedGenericTypeReflection> CACHE = new ClassValue<CachedGenericTypeReflection>() {
+      @Override
+      protected CachedGenericTypeReflection computeValue(Class<?> ownerClass)
+      {
+         return new CachedGenericTypeReflection(ownerClass);
+      }
+   };
+
+   @Nonnull private final Class<?> ownerClass;
+   @Nonnull private final GenericTypeReflection reflection;
+   @Nonnull private final ConcurrentMap<String, GenericSignature> parsedSignatures;
+   @Nonnull private final ConcurrentMap<String, String> resolvedReturnTypes;
+   @Nonnull private final ConcurrentMap<String, String> resolvedSignatures;
+
+   private CachedGenericTypeReflection(@Nonnull Class<?> ownerClass)
+   {
+      this.ownerClass = ownerClass;
+      reflection = new GenericTypeReflection(ownerClass, null);
+      parsedSignatures = new ConcurrentHashMap<String, GenericSignature>(4);
+      resolvedReturnTypes = new ConcurrentHashMap<String, String>(4);
+      resolvedSignatures = new ConcurrentHashMap<String, String>(4);
+   }
+
+   @Nonnull
+   public static CachedGenericTypeReflection forClass(@Nonnull Class<?> ownerClass) { return CACHE.get(ownerClass); }
+
+   @Nonnull
+   public GenericSignature parseSignature(@Nonnull String genericSignature)
+   {
+      GenericSignature parsedSignature = parsedSignatures.get(genericSignature);
+
+      if (parsedSignature == null) {
+         parsedSignature = reflection.parseSignature(genericSignature);
+         parsedSignatures.putIfAbsent(genericSignature, parsedSignature);
+      }
+
+      return parsedSignature;
+   }
+
+   @Nonnull
+   public String resolveReturnType(@Nonnull String genericSignature)
+   {
+      String returnTypeDesc = resolvedReturnTypes.get(genericSignature);
+
+      if (returnTypeDesc == null) {
+         returnTypeDesc = reflection.resolveReturnType(genericSignature);
+         resolvedReturnTypes.putIfAbsent(genericSignature, returnTypeDesc);
+      }
+
+      return returnTypeDesc;
+   }
+
+   /**
+    * Resolves the given generic signature as declared in the given owner type.
+    * Since resolving a signature adds the type parameters of the method to the type mappings of the reflection object
+    * used, a new one is created for each signature not resolved before, instead of sharing the cached one.
+    */
+   @Nonnull
+   public String resolveSignature(@Nonnull String ownerTypeDesc, @Nonnull String genericSignature)
+   {
+      String key = ownerTypeDesc + ' ' + genericSignature;
+      String resolvedSignature = resolvedSignatures.get(key);
+
+      if (resolvedSignature == null) {
+         GenericTypeReflection newReflection = new GenericTypeReflection(ownerClass, null);
+         resolvedSignature = newReflection.resolveSignature(ownerTypeDesc, genericSignature);
+         resolvedSignatures.putIfAbsent(key, resolvedSignature);
+      }
+
+      return resolvedSignature;
+   }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.startup;
+
+import java.lang.instrument.*;
+import java.lang.ref.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.annotation.*;
+
+/**
+ * Index of loaded classes by name, so that finding a loaded class doesn't require a search through all classes loaded
+ * by the JVM.
+ * <p/>
+ * The index is built from the classes loaded when it's first used, and then kept informed of the names of classes
+ * loaded afterwards, together with their class loaders, as seen by the {@link mockit.internal.state.CachedClassfiles}
+ * transformer.
+ * Looking up a name which is not of a loaded class is then immediate, while the first lookup of a class loaded since
+ * the index was built obtains it from its class loader, since the {@link Class} object doesn't yet exist when the class
+ * is seen by the transformer; if the class is not found, its name is dropped so that later lookups are immediate.
+ * Classes are weakly referenced, so they can still be unloaded; entries of unloaded classes are purged whenever classes
+ * are added to the index.
+ */
+public final class LoadedClassIndex
+{
+   private static final class ClassReference extends WeakReference<Class<?>>
+   {
+      @Nonnull final String className;
+
+      ClassReference(@Nonnull Class<?> loadedClass, @Nonnull ReferenceQueue<Class<?>> queue)
+      {
+         super(loadedClass, queue);
+         className = loadedClass.getName();
+      }
+   }
+
+   @Nonnull private static final ConcurrentMap<String, ClassReference> LOADED_CLASSES =
+      new ConcurrentHashMap<String, ClassReference>(1024);
+   @Nonnull private static final ReferenceQueue<Class<?>> UNLOADED_CLASSES = new ReferenceQueue<Class<?>>();
+
+   /**
+    * The names of classes loaded since the index was built, with their class loaders; the bootstrap class loader is
+    * represented by {@link #BOOTSTRAP_LOADER}.
+    */
+   @Nonnull private static final ConcurrentMap<String, Reference<ClassLoader>> CLASSES_LOADED_SINCE_INDEXED =
+      new ConcurrentHashMap<String, Reference<ClassLoader>>(256);
+   @Nonnull private static final Reference<ClassLoader> BOOTSTRAP_LOADER = new WeakReference<ClassLoader>(null);
+
+   private static volatile boolean receivingLoadedClasses;
+   private static volatile boolean indexed;
+
+   private LoadedClassIndex() {}
+
+   static void startReceivingLoadedClasses() { receivingLoadedClasses = true; }
+
+   /**
+    * Called by a class file transformer when a new class is being loaded, before the corresponding {@link Class}
+    * object exists.
+    */
+   public static void addClassBeingLoaded(@Nullable ClassLoader loader, @Nonnull String classDesc)
+   {
+      Reference<ClassLoader> loaderRef = loader == null ? BOOTSTRAP_LOADER : new WeakReference<ClassLoader>(loader);
+      CLASSES_LOADED_SINCE_INDEXED.put(classDesc.replace('/', '.'), loaderRef);
+   }
+
+   @Nullable
+   static Class<?> findLoadedClass(@Nonnull Instrumentation inst, @Nonnull String className)
+   {
+      if (!receivingLoadedClasses) {
+         return searchAllLoadedClasses(inst, className);
+      }
+
+      if (!indexed) {
+         indexAllLoadedClasses(inst);
+      }
+
+      Reference<ClassLoader> loaderRef = CLASSES_LOADED_SINCE_INDEXED.get(className);
+
+      if (loaderRef != null) {
+         return findClassLoadedSinceIndexed(className, loaderRef);
+      }
+
+      ClassReference classRef = LOADED_CLASSES.get(className);
+      return classRef == null ? null : classRef.get();
+   }
+
+   @Nullable
+   private static Class<?> searchAllLoadedClasses(@Nonnull Instrumentation inst, @Nonnull String className)
+   {
+      for (Class<?> aClass : inst.getAllLoadedClasses()) {
+         if (aClass.getName().equals(className)) {
+            return aClass;
+         }
+      }
+
+      return null;
+   }
+
+   private static synchronized void indexAllLoadedClasses(@Nonnull Instrumentation inst)
+   {
+      if (indexed) {
+         return;
+      }
+
+      purgeUnloadedClasses();
+
+      for (Class<?> aClass : inst.getAllLoadedClasses()) {
+         addToIndex(aClass);
+      }
+
+      // Classes which were still being loaded when the snapshot above was taken are obtained from their loaders later.
+      CLASSES_LOADED_SINCE_INDEXED.keySet().removeAll(LOADED_CLASSES.keySet());
+      indexed = true;
+   }
+
+   private static void addToIndex(@Nonnull Class<?> loadedClass)
+   {
+      String className = loadedClass.getName();
+      ClassReference classRef = LOADED_CLASSES.get(className);
+
+      if (classRef == null || classRef.get() == null) {
+         LOADED_CLASSES.put(className, new ClassReference(loadedClass, UNLOADED_CLASSES));
+      }
+   }
+
+   private static void purgeUnloadedClasses()
+   {
+      Reference<? extends Class<?>> unloaded;
+
+      while ((unloaded = UNLOADED_CLASSES.poll()) != null) {
+         ClassReference classRef = (ClassReference) unloaded;
+         LOADED_CLASSES.remove(classRef.className, classRef);
+      }
+   }
+
+   /**
+    * Obtains a class seen by the transformer from its class loader, without initializing it; since the loader already
+    * loaded the class, no new class gets loaded, except when the class failed to load, in which case its name is
+    * dropped so it doesn't cause the class loader to be asked again on every lookup.
+    */
+   @Nullable
+   private static Class<?> findClassLoadedSinceIndexed(
+      @Nonnull String className, @Nonnull Reference<ClassLoader> loaderRef)
+   {
+      ClassLoader loader = loaderRef.get();
+      Class<?> loadedClass = null;
+
+      if (loader != null || loaderRef == BOOTSTRAP_LOADER) {
+         try {
+            loadedClass = Class.forName(className, false, loader);
+         }
+         catch (ClassNotFoundException ignore) {}
+         catch (ClassCircularityError ignore) {
+            // The class is still being loaded by the current thread, so it will be looked up again.
+            return null;
+         }
+         catch (LinkageError ignore) {}
+      }
+
+      if (loadedClass != null) {
+         purgeUnloadedClasses();
+         addToIndex(loadedClass);
+      }
+
+      CLASSES_LOADED_SINCE_INDEXED.remove(className, loaderRef);
+      return loadedClass;
+   }
+}
@@ -6,6 +6,8 @@ package mockit.internal.startup;
 
 import java.io.*;
 import java.lang.instrument.*;
+import java.security.*;
+import java.util.*;
 import javax.annotation.*;
 
 import mockit.coverage.*;
@@ -32,6 +34,22 @@ public final class Startup
    public static boolean initializing;
    @Nullable private static Instrumentation inst;
 
+   /**
+    * A digest of the bytecode each class was last redefined with, so that redefining it again with identical bytecode
+    * can be skipped.
+    * Classes redefined or retransformed by other means must be {@linkplain #forgetRedefinition forgotten}.
+    */
+   @Nonnull private static final Map<Class<?>, byte[]> LAST_REDEFINITIONS = new WeakHashMap<Class<?>, byte[]>();
+
+   /**
+    * Classes whose restoration to their original bytecode was {@linkplain #deferRestoration deferred}, so that it can
+    * be skipped in case the next test redefines them again with the same bytecode, or else get done in the same batch
+    * as the next redefinitions.
+    * Guarded by {@link #LAST_REDEFINITIONS}.
+    */
+   @Nonnull private static final Map<Class<?>, byte[]> DEFERRED_RESTORATIONS = new LinkedHashMap<Class<?>, byte[]>();
+   private static volatile boolean restorationsDeferred;
+
    private Startup() {}
 
    /**
@@ -55,6 +73,8 @@ public final class Startup
 
    private static void initialize(@Nonnull Instrumentation inst)
    {
+      // Loaded before the transformer which feeds it is added, since otherwise it would be fed with itself.
+      LoadedClassIndex.startReceivingLoadedClasses();
       inst.addTransformer(CachedClassfiles.INSTANCE, true);
       applyStartupFakes(inst);
       inst.addTransformer(new ExpectationsTransformer());
@@ -150,6 +170,9 @@ public final class Startup
    @SuppressWarnings("ConstantConditions")
    public static void retransformClass(@Nonnull Class<?> aClass)
    {
+      // Retransformation starts from the bytecode of the last redefinition, so a deferred restoration must come first.
+      restoreDeferredDefinitions();
+      forgetRedefinition(aClass);
       try { inst.retransformClasses(aClass); } catch (UnmodifiableClassException ignore) {}
    }
 
@@ -164,11 +187,37 @@ public final class Startup
       redefineMethods(new ClassDefinition(classToRedefine, modifiedClassfile));
    }
 
+   /**
+    * Redefines the given classes in a single batch, together with any classes whose restoration was deferred, except
+    * for those whose last redefinition was made with identical bytecode, as happens when consecutive tests mock the
+    * same types.
+    */
    public static void redefineMethods(@Nonnull ClassDefinition... classDefs)
    {
+      if (restorationsDeferred) {
+         //noinspection AssignmentToMethodParameter
+         classDefs = addDeferredRestorations(classDefs);
+      }
+
+      if (classDefs.length == 0) {
+         return;
+      }
+
+      byte[][] digests = digestsOf(classDefs);
+      ClassDefinition[] changedClassDefs = removeUnchangedDefinitions(classDefs, digests);
+
+      if (changedClassDefs.length == 0) {
+         return;
+      }
+
+      for (ClassDefinition classDef : changedClassDefs) {
+         CachedClassfiles.pinClassfile(classDef.getDefinitionClass());
+      }
+
       try {
          //noinspection ConstantConditions
-         inst.redefineClasses(classDefs);
+         inst.redefineClasses(changedClassDefs);
+         recordRedefinitions(classDefs, digests);
       }
       catch (ClassNotFoundException e) {
          // should never happen
@@ -178,9 +227,11 @@ public final class Startup
          throw new RuntimeException(e);
       }
       catch (InternalError ignore) {
+         forgetRedefinitions(changedClassDefs);
+
          // If a class to be redefined hasn't been loaded yet, the JVM may get a NoClassDefFoundError during
          // redefinition. Unfortunately, it then throws a plain InternalError instead.
-         for (ClassDefinition classDef : classDefs) {
+         for (ClassDefinition classDef : changedClassDefs) {
             detectMissingDependenciesIfAny(classDef.getDefinitionClass());
          }
 
@@ -189,6 +240,158 @@ public final class Startup
       }
    }
 
+   /**
+    * Defers the restoration of a class to its original bytecode, until the next batch of redefinitions, or until the
+    * class gets used while no longer mocked.
+    * This allows a class mocked in consecutive tests to remain redefined in between, when the redefinitions are
+    * identical.
+    */
+   public static void deferRestoration(@Nonnull Class<?> aClass, @Nonnull byte[] originalClassfile)
+   {
+      synchronized (LAST_REDEFINITIONS) {
+         DEFERRED_RESTORATIONS.put(aClass, originalClassfile);
+         restorationsDeferred = true;
+      }
+   }
+
+   /**
+    * Performs any deferred restorations, in a single batch, if one of them is for the given class.
+    *
+    * @return whether the class had its restoration deferred
+    */
+   public static boolean restoreDeferredDefinitionsIfAnyFor(@Nonnull String classDesc)
+   {
+      if (restorationsDeferred) {
+         String className = classDesc.replace('/', '.');
+         boolean deferred = false;
+
+         synchronized (LAST_REDEFINITIONS) {
+            for (Class<?> aClass : DEFERRED_RESTORATIONS.keySet()) {
+               if (aClass.getName().equals(className)) {
+                  deferred = true;
+                  break;
+               }
+            }
+         }
+
+         if (deferred) {
+            restoreDeferredDefinitions();
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   public static void restoreDeferredDefinitions()
+   {
+      if (restorationsDeferred) {
+         redefineMethods();
+      }
+   }
+
+   @Nonnull
+   private static ClassDefinition[] addDeferredRestorations(@Nonnull ClassDefinition[] classDefs)
+   {
+      synchronized (LAST_REDEFINITIONS) {
+         for (ClassDefinition classDef : classDefs) {
+            DEFERRED_RESTORATIONS.remove(classDef.getDefinitionClass());
+         }
+
+         if (DEFERRED_RESTORATIONS.isEmpty()) {
+            restorationsDeferred = false;
+            return classDefs;
+         }
+
+         List<ClassDefinition> allClassDefs = new ArrayList<ClassDefinition>(Arrays.asList(classDefs));
+
+         for (Map.Entry<Class<?>, byte[]> classAndOriginalBytecode : DEFERRED_RESTORATIONS.entrySet()) {
+            Class<?> classToRestore = classAndOriginalBytecode.getKey();
+            allClassDefs.add(new ClassDefinition(classToRestore, classAndOriginalBytecode.getValue()));
+         }
+
+         DEFERRED_RESTORATIONS.clear();
+         restorationsDeferred = false;
+         return allClassDefs.toArray(new ClassDefinition[allClassDefs.size()]);
+      }
+   }
+
+   @Nonnull
+   private static byte[][] digestsOf(@Nonnull ClassDefinition[] classDefs)
+   {
+      MessageDigest digest;
+
+      try {
+         digest = MessageDigest.getInstance("SHA-1");
+      }
+      catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      }
+
+      byte[][] digests = new byte[classDefs.length][];
+
+      for (int i = 0; i < classDefs.length; i++) {
+         digests[i] = digest.digest(classDefs[i].getDefinitionClassFile());
+      }
+
+      return digests;
+   }
+
+   @Nonnull
+   private static ClassDefinition[] removeUnchangedDefinitions(
+      @Nonnull ClassDefinition[] classDefs, @Nonnull byte[][] digests)
+   {
+      List<ClassDefinition> changedClassDefs = null;
+
+      synchronized (LAST_REDEFINITIONS) {
+         for (int i = 0; i < classDefs.length; i++) {
+            ClassDefinition classDef = classDefs[i];
+            byte[] lastDigest = LAST_REDEFINITIONS.get(classDef.getDefinitionClass());
+            boolean unchanged = Arrays.equals(lastDigest, digests[i]);
+
+            if (unchanged && changedClassDefs == null) {
+               changedClassDefs = new ArrayList<ClassDefinition>(Arrays.asList(classDefs).subList(0, i));
+            }
+            else if (!unchanged && changedClassDefs != null) {
+               changedClassDefs.add(classDef);
+            }
+         }
+      }
+
+      return changedClassDefs == null ? classDefs : changedClassDefs.toArray(new ClassDefinition[0]);
+   }
+
+   private static void recordRedefinitions(@Nonnull ClassDefinition[] classDefs, @Nonnull byte[][] digests)
+   {
+      synchronized (LAST_REDEFINITIONS) {
+         for (int i = 0; i < classDefs.length; i++) {
+            LAST_REDEFINITIONS.put(classDefs[i].getDefinitionClass(), digests[i]);
+         }
+      }
+   }
+
+   /**
+    * Discards the bytecode recorded for the last redefinition of the given class, along with any deferred restoration,
+    * which must be called whenever the class gets redefined or retransformed without going through
+    * {@link #redefineMethods(ClassDefinition...)}.
+    */
+   public static void forgetRedefinition(@Nonnull Class<?> aClass)
+   {
+      synchronized (LAST_REDEFINITIONS) {
+         LAST_REDEFINITIONS.remove(aClass);
+         DEFERRED_RESTORATIONS.remove(aClass);
+      }
+   }
+
+   private static void forgetRedefinitions(@Nonnull ClassDefinition[] classDefs)
+   {
+      synchronized (LAST_REDEFINITIONS) {
+         for (ClassDefinition classDef : classDefs) {
+            LAST_REDEFINITIONS.remove(classDef.getDefinitionClass());
+         }
+      }
+   }
+
    private static void detectMissingDependenciesIfAny(@Nonnull Class<?> mockedClass)
    {
       try {
@@ -206,14 +409,7 @@ public final class Startup
    public static Class<?> getClassIfLoaded(@Nonnull String classDescOrName)
    {
       String className = classDescOrName.replace('/', '.');
-      @SuppressWarnings("ConstantConditions") Class<?>[] loadedClasses = inst.getAllLoadedClasses();
-
-      for (Class<?> aClass : loadedClasses) {
-         if (aClass.getName().equals(className)) {
-            return aClass;
-         }
-      }
-
-      return null;
+      //noinspection ConstantConditions
+      return LoadedClassIndex.findLoadedClass(inst, className);
    }
 }
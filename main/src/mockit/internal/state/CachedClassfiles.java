@@ -5,8 +5,12 @@
 package mockit.internal.state;
 
 import java.lang.instrument.*;
+import java.lang.ref.*;
 import java.security.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.zip.*;
 import javax.annotation.*;
 
 import mockit.internal.startup.*;
@@ -23,17 +27,147 @@ import mockit.internal.startup.*;
  * <p/>
  * This bytecode cache allows classes to be mocked and un-mocked correctly, even in the presence of other
  * bytecode modification agents such as the AspectJ load-time weaver.
+ * <p/>
+ * The total size of cached classfiles is limited to the number of megabytes given by the
+ * "<tt>jmockit-classfileCacheMaxMB</tt>" system property (256 by default, or no limit if 0).
+ * When the limit is exceeded, the least recently used classfiles are first compressed (if the
+ * "<tt>jmockit-classfileCacheCompression</tt>" system property is <tt>true</tt>), and then evicted, to be obtained
+ * again through retransformation of their classes when needed.
+ * Classfiles of classes which have been redefined are never evicted, since retransforming a class gives the bytecode of
+ * its last redefinition instead.
  */
 public final class CachedClassfiles implements ClassFileTransformer
 {
    @Nonnull public static final CachedClassfiles INSTANCE = new CachedClassfiles();
 
-   @Nonnull private final Map<ClassLoader, Map<String, byte[]>> classLoadersAndClassfiles;
+   private static final class CachedClassfile
+   {
+      final int length;
+      @Nullable volatile byte[] classfile;
+      @Nullable volatile byte[] compressedClassfile;
+      volatile long lastAccess;
+      volatile boolean pinned;
+
+      CachedClassfile(@Nonnull byte[] classfile)
+      {
+         length = classfile.length;
+         this.classfile = classfile;
+      }
+
+      int getSize()
+      {
+         byte[] compressed = compressedClassfile;
+         return compressed != null ? compressed.length : classfile != null ? length : 0;
+      }
+
+      /**
+       * Returns the classfile, or <tt>null</tt> if it was evicted, in which case this object is only kept to mark the
+       * class as one that had its classfile cached.
+       */
+      @Nullable
+      byte[] getClassfile()
+      {
+         byte[] uncompressed = classfile;
+
+         if (uncompressed == null) {
+            byte[] compressed = compressedClassfile;
+            uncompressed = compressed == null ? null : decompress(compressed, length);
+         }
+
+         return uncompressed;
+      }
+
+      boolean evict()
+      {
+         if (pinned || classfile == null && compressedClassfile == null) {
+            return false;
+         }
+
+         classfile = null;
+         compressedClassfile = null;
+         return true;
+      }
+   }
+
+   /**
+    * Weakly references a class loader, so that its cached classfiles don't prevent it from being garbage collected.
+    */
+   private static final class ClassLoaderKey extends WeakReference<ClassLoader>
+   {
+      private final int hashCode;
+
+      ClassLoaderKey(@Nonnull ClassLoader loader, @Nonnull ReferenceQueue<ClassLoader> queue)
+      {
+         super(loader, queue);
+         hashCode = System.identityHashCode(loader);
+      }
+
+      @Override public int hashCode() { return hashCode; }
+
+      @Override
+      public boolean equals(Object other)
+      {
+         if (this == other) return true;
+
+         ClassLoader loader = get();
+         return
+            loader != null && (
+               other instanceof ClassLoaderKey && ((ClassLoaderKey) other).get() == loader ||
+               other instanceof ClassLoaderLookup && ((ClassLoaderLookup) other).loader == loader
+            );
+      }
+   }
+
+   /**
+    * Finds the entry of a class loader without creating a weak reference to it, since most lookups are for a loader
+    * which already has cached classfiles.
+    */
+   private static final class ClassLoaderLookup
+   {
+      @Nonnull final ClassLoader loader;
+
+      ClassLoaderLookup(@Nonnull ClassLoader loader) { this.loader = loader; }
+
+      @Override public int hashCode() { return System.identityHashCode(loader); }
+
+      @Override
+      public boolean equals(Object other)
+      {
+         return other instanceof ClassLoaderKey && ((ClassLoaderKey) other).get() == loader;
+      }
+   }
+
+   @Nonnull private final ConcurrentMap<Object, Map<String, CachedClassfile>> classLoadersAndClassfiles;
+   @Nonnull private final Map<String, CachedClassfile> bootstrapClassfiles;
+   @Nonnull private final ReferenceQueue<ClassLoader> collectedClassLoaders;
    @Nullable private Class<?> classBeingCached;
+   private final long maxCachedBytes;
+   private final boolean compressColdClassfiles;
+   @Nonnull private final AtomicLong accessClock;
+   @Nonnull final AtomicLong cachedBytes;
+   @Nonnull final AtomicLong hits;
+   @Nonnull final AtomicLong misses;
+   @Nonnull final AtomicLong evictions;
 
    private CachedClassfiles()
    {
-      classLoadersAndClassfiles = new WeakHashMap<ClassLoader, Map<String, byte[]>>(2);
+      this(
+         1024L * 1024L * Long.parseLong(System.getProperty("jmockit-classfileCacheMaxMB", "256")),
+         Boolean.parseBoolean(System.getProperty("jmockit-classfileCacheCompression")));
+   }
+
+   CachedClassfiles(long maxCachedBytes, boolean compressColdClassfiles)
+   {
+      classLoadersAndClassfiles = new ConcurrentHashMap<Object, Map<String, CachedClassfile>>(4);
+      bootstrapClassfiles = new ConcurrentHashMap<String, CachedClassfile>(100);
+      collectedClassLoaders = new ReferenceQueue<ClassLoader>();
+      this.maxCachedBytes = maxCachedBytes;
+      this.compressColdClassfiles = compressColdClassfiles;
+      accessClock = new AtomicLong();
+      cachedBytes = new AtomicLong();
+      hits = new AtomicLong();
+      misses = new AtomicLong();
+      evictions = new AtomicLong();
    }
 
    @Nullable @Override
@@ -42,8 +176,11 @@ public final class CachedClassfiles implements ClassFileTransformer
       @Nullable ProtectionDomain protectionDomain, @Nonnull byte[] classfileBuffer)
    {
       if (classDesc != null) { // can be null for Java 8 lambdas
-         if (classBeingRedefinedOrRetransformed != null && classBeingRedefinedOrRetransformed == classBeingCached) {
-            addClassfile(loader, classDesc, classfileBuffer);
+         if (classBeingRedefinedOrRetransformed == null) {
+            LoadedClassIndex.addClassBeingLoaded(loader, classDesc);
+         }
+         else if (classBeingRedefinedOrRetransformed == classBeingCached) {
+            addClassfile(loader, classDesc, classfileBuffer, false);
             classBeingCached = null;
          }
       }
@@ -51,27 +188,98 @@ public final class CachedClassfiles implements ClassFileTransformer
       return null;
    }
 
-   private void addClassfile(@Nullable ClassLoader loader, @Nonnull String classDesc, @Nonnull byte[] classfile)
+   void addClassfile(@Nullable ClassLoader loader, @Nonnull String classDesc, @Nonnull byte[] classfile, boolean pinned)
    {
-      Map<String, byte[]> classfiles = getClassfiles(loader);
-      classfiles.put(classDesc, classfile);
+      Map<String, CachedClassfile> classfiles = getClassfiles(loader);
+      CachedClassfile cached = new CachedClassfile(classfile);
+      cached.pinned = pinned;
+      cached.lastAccess = accessClock.incrementAndGet();
+
+      CachedClassfile previous = classfiles.put(classDesc, cached);
+      long sizeChange = classfile.length - (previous == null ? 0 : previous.getSize());
+
+      if (cachedBytes.addAndGet(sizeChange) > maxCachedBytes && maxCachedBytes > 0) {
+         reduceCachedBytes();
+      }
    }
 
    @Nonnull
-   private Map<String, byte[]> getClassfiles(@Nullable ClassLoader loader)
+   private Map<String, CachedClassfile> getClassfiles(@Nullable ClassLoader loader)
    {
-      Map<String, byte[]> classfiles = classLoadersAndClassfiles.get(loader);
+      if (loader == null) {
+         return bootstrapClassfiles;
+      }
+
+      Map<String, CachedClassfile> classfiles = classLoadersAndClassfiles.get(new ClassLoaderLookup(loader));
 
       if (classfiles == null) {
-         classfiles = new HashMap<String, byte[]>(100);
-         classLoadersAndClassfiles.put(loader, classfiles);
+         discardClassfilesOfCollectedClassLoaders();
+
+         Map<String, CachedClassfile> newClassfiles = new ConcurrentHashMap<String, CachedClassfile>(100);
+         ClassLoaderKey key = new ClassLoaderKey(loader, collectedClassLoaders);
+         classfiles = classLoadersAndClassfiles.putIfAbsent(key, newClassfiles);
+
+         if (classfiles == null) {
+            classfiles = newClassfiles;
+         }
       }
 
       return classfiles;
    }
 
+   private void discardClassfilesOfCollectedClassLoaders()
+   {
+      for (Reference<?> key; (key = collectedClassLoaders.poll()) != null; ) {
+         Map<String, CachedClassfile> classfiles = classLoadersAndClassfiles.remove(key);
+
+         if (classfiles != null) {
+            for (CachedClassfile cached : classfiles.values()) {
+               cachedBytes.addAndGet(-cached.getSize());
+            }
+         }
+      }
+   }
+
+   @Nonnull
+   private List<Map<String, CachedClassfile>> getClassfilesOfAllClassLoaders()
+   {
+      List<Map<String, CachedClassfile>> allClassfiles = new ArrayList<Map<String, CachedClassfile>>();
+      allClassfiles.add(bootstrapClassfiles);
+      allClassfiles.addAll(classLoadersAndClassfiles.values());
+      return allClassfiles;
+   }
+
    @Nullable
-   private byte[] findClassfile(@Nonnull Class<?> aClass)
+   private byte[] readClassfile(@Nullable CachedClassfile cached)
+   {
+      byte[] classfile = cached == null ? null : cached.getClassfile();
+
+      if (classfile == null) {
+         misses.incrementAndGet();
+         return null;
+      }
+
+      hits.incrementAndGet();
+      cached.lastAccess = accessClock.incrementAndGet();
+      return classfile;
+   }
+
+   /**
+    * Obtains the classfile of a loaded class through its retransformation, which gives the bytecode as last loaded or
+    * redefined.
+    */
+   @Nullable
+   private synchronized byte[] captureClassfile(@Nonnull Class<?> aClass)
+   {
+      classBeingCached = aClass;
+      Startup.retransformClass(aClass);
+
+      CachedClassfile cached = findClassfile(aClass);
+      return cached == null ? null : cached.getClassfile();
+   }
+
+   @Nullable
+   private CachedClassfile findClassfile(@Nonnull Class<?> aClass)
    {
       String className = aClass.getName();
 
@@ -79,67 +287,248 @@ public final class CachedClassfiles implements ClassFileTransformer
       int p = className.indexOf('/');
       if (p > 0) className = className.substring(0, p);
 
-      Map<String, byte[]> classfiles = getClassfiles(aClass.getClassLoader());
+      Map<String, CachedClassfile> classfiles = getClassfiles(aClass.getClassLoader());
       return classfiles.get(className.replace('.', '/'));
    }
 
    @Nullable
-   public static synchronized byte[] getClassfile(@Nonnull String classDesc)
-   {
-      return INSTANCE.findClassfile(classDesc);
-   }
+   public static byte[] getClassfile(@Nonnull String classDesc) { return INSTANCE.getClassfileOf(classDesc); }
 
    @Nullable
-   private byte[] findClassfile(@Nonnull String classDesc)
+   byte[] getClassfileOf(@Nonnull String classDesc)
    {
-      byte[] classfile = null;
+      byte[] classfile = readClassfile(findClassfile(classDesc));
 
-      for (Map<String, byte[]> classfiles : classLoadersAndClassfiles.values()) {
-         classfile = classfiles.get(classDesc);
+      if (classfile == null) {
+         Class<?> desiredClass = Startup.getClassIfLoaded(classDesc);
 
-         if (classfile != null) {
-            return classfile;
+         if (desiredClass != null) {
+            classfile = captureClassfile(desiredClass);
          }
       }
 
-      Class<?> desiredClass = Startup.getClassIfLoaded(classDesc);
+      return classfile;
+   }
+
+   @Nullable
+   private CachedClassfile findClassfile(@Nonnull String classDesc)
+   {
+      for (Map<String, CachedClassfile> classfiles : getClassfilesOfAllClassLoaders()) {
+         CachedClassfile cached = classfiles.get(classDesc);
 
-      if (desiredClass != null) {
-         classBeingCached = desiredClass;
-         Startup.retransformClass(desiredClass);
-         ClassLoader classLoader = desiredClass.getClassLoader();
-         classfile = INSTANCE.findClassfile(classLoader, classDesc);
+         if (cached != null) {
+            return cached;
+         }
       }
 
-      return classfile;
+      return null;
    }
 
    @Nullable
-   private synchronized byte[] findClassfile(@Nullable ClassLoader loader, @Nonnull String classDesc)
+   public static byte[] getClassfile(@Nonnull Class<?> aClass) { return INSTANCE.getClassfileOf(aClass); }
+
+   @Nullable
+   byte[] getClassfileOf(@Nonnull Class<?> aClass)
    {
-      Map<String, byte[]> classfiles = getClassfiles(loader);
-      return classfiles.get(classDesc);
+      byte[] classfile = readClassfile(findClassfile(aClass));
+      return classfile != null ? classfile : captureClassfile(aClass);
    }
 
+   /**
+    * Returns the cached classfile of a class in the given loader, if any.
+    * If it was evicted, it's captured again from the loaded class rather than read from the ".class" file, which
+    * doesn't have the modifications made by other agents.
+    *
+    * @return <tt>null</tt> if the classfile was never cached
+    */
    @Nullable
-   public static synchronized byte[] getClassfile(@Nonnull Class<?> aClass)
+   public static byte[] getClassfile(@Nullable ClassLoader loader, @Nonnull String internalClassName)
    {
-      byte[] cached = INSTANCE.findClassfile(aClass);
-      if (cached != null) return cached;
-
-      INSTANCE.classBeingCached = aClass;
-      Startup.retransformClass(aClass);
-      return INSTANCE.findClassfile(aClass);
+      return INSTANCE.getClassfileOf(loader, internalClassName);
    }
 
    @Nullable
-   public static byte[] getClassfile(@Nullable ClassLoader loader, @Nonnull String internalClassName)
+   byte[] getClassfileOf(@Nullable ClassLoader loader, @Nonnull String classDesc)
    {
-      return INSTANCE.findClassfile(loader, internalClassName);
+      CachedClassfile cached = getClassfiles(loader).get(classDesc);
+
+      if (cached == null) {
+         return null;
+      }
+
+      byte[] classfile = readClassfile(cached);
+
+      if (classfile == null) {
+         Class<?> evictedClass = Startup.getClassIfLoaded(classDesc);
+
+         if (evictedClass != null && evictedClass.getClassLoader() == loader) {
+            classfile = captureClassfile(evictedClass);
+         }
+      }
+
+      return classfile;
    }
 
    public static void addClassfile(@Nonnull Class<?> aClass, @Nonnull byte[] classfile)
    {
-      INSTANCE.addClassfile(aClass.getClassLoader(), aClass.getName().replace('.', '/'), classfile);
+      INSTANCE.addClassfile(aClass.getClassLoader(), aClass.getName().replace('.', '/'), classfile, true);
+   }
+
+   /**
+    * Prevents the cached classfile of the given class, if any, from being evicted, as required before the class gets
+    * redefined.
+    * If already evicted, it gets captured again first, as it couldn't be after the redefinition.
+    */
+   public static void pinClassfile(@Nonnull Class<?> aClass)
+   {
+      CachedClassfile cached = INSTANCE.findClassfile(aClass);
+
+      if (cached != null && cached.getSize() == 0) {
+         INSTANCE.captureClassfile(aClass);
+         cached = INSTANCE.findClassfile(aClass);
+      }
+
+      if (cached != null) {
+         cached.pinned = true;
+      }
    }
+
+   // Size reduction of the cache /////////////////////////////////////////////////////////////////////////////////////
+
+   private synchronized void reduceCachedBytes()
+   {
+      long targetSize = maxCachedBytes - maxCachedBytes / 10;
+
+      if (cachedBytes.get() <= targetSize) {
+         return;
+      }
+
+      List<CachedClassfile> leastRecentlyUsedFirst = getAllClassfilesInOrderOfLastAccess();
+
+      if (compressColdClassfiles) {
+         compressClassfiles(leastRecentlyUsedFirst, targetSize);
+      }
+
+      evictClassfiles(leastRecentlyUsedFirst, targetSize);
+   }
+
+   @Nonnull
+   private List<CachedClassfile> getAllClassfilesInOrderOfLastAccess()
+   {
+      List<CachedClassfile> allClassfiles = new ArrayList<CachedClassfile>();
+
+      for (Map<String, CachedClassfile> classfiles : getClassfilesOfAllClassLoaders()) {
+         allClassfiles.addAll(classfiles.values());
+      }
+
+      Collections.sort(allClassfiles, new Comparator<CachedClassfile>() {
+         @Override
+         public int compare(CachedClassfile c1, CachedClassfile c2)
+         {
+            long t1 = c1.lastAccess;
+            long t2 = c2.lastAccess;
+            return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+         }
+      });
+
+      return allClassfiles;
+   }
+
+   private void compressClassfiles(@Nonnull List<CachedClassfile> leastRecentlyUsedFirst, long targetSize)
+   {
+      for (CachedClassfile cached : leastRecentlyUsedFirst) {
+         if (cachedBytes.get() <= targetSize) {
+            break;
+         }
+
+         byte[] uncompressed = cached.classfile;
+
+         if (uncompressed != null) {
+            byte[] compressed = compress(uncompressed);
+
+            if (compressed.length < uncompressed.length) {
+               cached.compressedClassfile = compressed;
+               cached.classfile = null;
+               cachedBytes.addAndGet(compressed.length - uncompressed.length);
+            }
+         }
+      }
+   }
+
+   private void evictClassfiles(@Nonnull List<CachedClassfile> leastRecentlyUsedFirst, long targetSize)
+   {
+      for (CachedClassfile cached : leastRecentlyUsedFirst) {
+         if (cachedBytes.get() <= targetSize) {
+            break;
+         }
+
+         int size = cached.getSize();
+
+         if (cached.evict()) {
+            cachedBytes.addAndGet(-size);
+            evictions.incrementAndGet();
+         }
+      }
+   }
+
+   @Nonnull
+   private static byte[] compress(@Nonnull byte[] classfile)
+   {
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      deflater.setInput(classfile);
+      deflater.finish();
+
+      byte[] buffer = new byte[classfile.length];
+      int compressedLength = 0;
+
+      while (!deflater.finished() && compressedLength < buffer.length) {
+         compressedLength += deflater.deflate(buffer, compressedLength, buffer.length - compressedLength);
+      }
+
+      boolean notSmaller = !deflater.finished();
+      deflater.end();
+      return notSmaller ? classfile : Arrays.copyOf(buffer, compressedLength);
+   }
+
+   @Nonnull
+   private static byte[] decompress(@Nonnull byte[] compressedClassfile, int length)
+   {
+      Inflater inflater = new Inflater();
+      inflater.setInput(compressedClassfile);
+
+      byte[] classfile = new byte[length];
+
+      try {
+         int decompressedLength = 0;
+
+         while (decompressedLength < length) {
+            int n = inflater.inflate(classfile, decompressedLength, length - decompressedLength);
+
+            if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+               throw new IllegalStateException("Corrupted cached classfile");
+            }
+
+            decompressedLength += n;
+         }
+      }
+      catch (DataFormatException e) {
+         throw new IllegalStateException(e);
+      }
+      finally {
+         inflater.end();
+      }
+
+      return classfile;
+   }
+
+   // Metrics /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+   public static long getHitCount() { return INSTANCE.hits.get(); }
+   public static long getMissCount() { return INSTANCE.misses.get(); }
+   public static long getEvictionCount() { return INSTANCE.evictions.get(); }
+
+   /**
+    * Returns the total size of the classfiles currently in the cache, as stored (that is, after compression).
+    */
+   public static long getCachedBytes() { return INSTANCE.cachedBytes.get(); }
 }
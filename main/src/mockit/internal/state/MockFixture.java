@@ -31,7 +31,7 @@ public final class MockFixture
     *
     * @see #addTransformedClass(ClassIdentification, byte[])
     * @see #getTransformedClasses()
-    * @see #restoreTransformedClasses(Set)
+    * @see #restoreTransformedAndRedefinedClasses(Set, Map)
     */
    @Nonnull private final Map<ClassIdentification, byte[]> transformedClasses;
 
@@ -48,7 +48,7 @@ public final class MockFixture
     * @see #getRedefinedClasses()
     * @see #getRedefinedClassfile(Class)
     * @see #containsRedefinedClass(Class)
-    * @see #restoreRedefinedClasses(Map)
+    * @see #restoreTransformedAndRedefinedClasses(Set, Map)
     */
    @Nonnull private final Map<Class<?>, byte[]> redefinedClasses;
 
@@ -189,17 +189,20 @@ public final class MockFixture
 
    public boolean isStillMocked(@Nullable Object instance, @Nonnull String classDesc)
    {
-      Class<?> targetClass;
-
       if (instance == null) {
-         targetClass = ClassLoad.loadByInternalName(classDesc);
-         return isClassAssignableTo(mockedClasses, targetClass);
+         Class<?> targetClass = ClassLoad.loadByInternalName(classDesc);
+         return isStillMocked(targetClass);
       }
 
-      targetClass = instance.getClass();
+      Class<?> targetClass = instance.getClass();
       return mockedTypesAndInstances.containsKey(targetClass) || isInstanceOfMockedClass(instance);
    }
 
+   public boolean isStillMocked(@Nonnull Class<?> classWithStaticMethod)
+   {
+      return isClassAssignableTo(mockedClasses, classWithStaticMethod);
+   }
+
    public boolean isInstanceOfMockedClass(@Nonnull Object mockedInstance)
    {
       Class<?> mockedClass = mockedInstance.getClass();
@@ -265,7 +268,30 @@ public final class MockFixture
 
    // Methods used by test save-points ////////////////////////////////////////////////////////////////////////////////
 
-   void restoreTransformedClasses(@Nonnull Set<ClassIdentification> previousTransformedClasses)
+   /**
+    * Restores the classes transformed or redefined since the given previous state, in a single batch of class
+    * redefinitions.
+    */
+   void restoreTransformedAndRedefinedClasses(
+      @Nonnull Set<ClassIdentification> previousTransformedClasses, @Nonnull Map<?, byte[]> previousDefinitions)
+   {
+      Map<Class<?>, byte[]> definitionsToRestore = new LinkedHashMap<Class<?>, byte[]>();
+      List<Class<?>> classesRestoredToOriginal = new ArrayList<Class<?>>();
+
+      addTransformedClassesToRestore(previousTransformedClasses, definitionsToRestore);
+      addRedefinedClassesToRestore(previousDefinitions, definitionsToRestore, classesRestoredToOriginal);
+
+      if (!definitionsToRestore.isEmpty()) {
+         redefineClassesToRestore(definitionsToRestore);
+      }
+
+      for (Class<?> restoredClass : classesRestoredToOriginal) {
+         discardStateForRestoredClass(restoredClass);
+      }
+   }
+
+   private void addTransformedClassesToRestore(
+      @Nonnull Set<ClassIdentification> previousTransformedClasses, @Nonnull Map<Class<?>, byte[]> definitionsToRestore)
    {
       if (!transformedClasses.isEmpty()) {
          Set<ClassIdentification> classesToRestore;
@@ -279,7 +305,12 @@ public final class MockFixture
          }
 
          if (!classesToRestore.isEmpty()) {
-            restoreAndRemoveTransformedClasses(classesToRestore);
+            for (ClassIdentification transformedClassId : classesToRestore) {
+               byte[] definitionToRestore = transformedClasses.get(transformedClassId);
+               definitionsToRestore.put(transformedClassId.getLoadedClass(), definitionToRestore);
+            }
+
+            transformedClasses.keySet().removeAll(classesToRestore);
          }
       }
    }
@@ -300,17 +331,9 @@ public final class MockFixture
          new HashMap<Class<?>, byte[]>(redefinedClasses);
    }
 
-   private void restoreAndRemoveTransformedClasses(@Nonnull Set<ClassIdentification> classesToRestore)
-   {
-      for (ClassIdentification transformedClassId : classesToRestore) {
-         byte[] definitionToRestore = transformedClasses.get(transformedClassId);
-         Startup.redefineMethods(transformedClassId, definitionToRestore);
-      }
-
-      transformedClasses.keySet().removeAll(classesToRestore);
-   }
-
-   void restoreRedefinedClasses(@Nonnull Map<?, byte[]> previousDefinitions)
+   private void addRedefinedClassesToRestore(
+      @Nonnull Map<?, byte[]> previousDefinitions, @Nonnull Map<Class<?>, byte[]> definitionsToRestore,
+      @Nonnull List<Class<?>> classesRestoredToOriginal)
    {
       if (redefinedClasses.isEmpty()) {
          return;
@@ -325,29 +348,65 @@ public final class MockFixture
          byte[] previousDefinition = previousDefinitions.get(redefinedClass);
 
          if (previousDefinition == null) {
-            restoreDefinition(redefinedClass);
+            if (!isGeneratedImplementationClass(redefinedClass)) {
+               byte[] originalDefinition = ClassFile.createReaderOrGetFromCache(redefinedClass).getBytecode();
+
+               if (isRestorationDeferrable(redefinedClass)) {
+                  Startup.deferRestoration(redefinedClass, originalDefinition);
+               }
+               else {
+                  definitionsToRestore.put(redefinedClass, originalDefinition);
+               }
+            }
+
+            classesRestoredToOriginal.add(redefinedClass);
             itr.remove();
          }
          else if (currentDefinition != previousDefinition) {
-            Startup.redefineMethods(redefinedClass, previousDefinition);
+            definitionsToRestore.put(redefinedClass, previousDefinition);
             entry.setValue(previousDefinition);
          }
       }
    }
 
-   private void restoreDefinition(@Nonnull Class<?> redefinedClass)
+   /**
+    * Indicates whether a class mocked through the Mocking API can be left redefined after being restored, until the
+    * next redefinitions or its next use.
+    * This requires the mocked bytecode to behave as the original one when the class is no longer mocked, which isn't
+    * the case for faked classes, for classes with native methods (which need to be registered again), or for classes
+    * with a super-class other than <tt>Object</tt> (since mocked constructors call the super-constructor with default
+    * arguments); JRE classes are always restored right away, since they are used by the testing framework itself.
+    */
+   private boolean isRestorationDeferrable(@Nonnull Class<?> redefinedClass)
+   {
+      Class<?> superclass = redefinedClass.getSuperclass();
+
+      return
+         redefinedClass.getClassLoader() != null && (superclass == null || superclass == Object.class) &&
+         !realClassesToFakeClasses.containsKey(redefinedClass) &&
+         !redefinedClassesWithNativeMethods.contains(redefinedClass.getName());
+   }
+
+   private static void redefineClassesToRestore(@Nonnull Map<Class<?>, byte[]> definitionsToRestore)
    {
-      if (!isGeneratedImplementationClass(redefinedClass)) {
-         byte[] previousDefinition = ClassFile.createReaderOrGetFromCache(redefinedClass).getBytecode();
-         Startup.redefineMethods(redefinedClass, previousDefinition);
+      ClassDefinition[] classDefs = new ClassDefinition[definitionsToRestore.size()];
+      int i = 0;
+
+      for (Entry<Class<?>, byte[]> classAndBytecode : definitionsToRestore.entrySet()) {
+         classDefs[i++] = new ClassDefinition(classAndBytecode.getKey(), classAndBytecode.getValue());
       }
 
-      if (redefinedClassesWithNativeMethods.contains(redefinedClass.getName())) {
-         reregisterNativeMethodsForRestoredClass(redefinedClass);
+      Startup.redefineMethods(classDefs);
+   }
+
+   private void discardStateForRestoredClass(@Nonnull Class<?> restoredClass)
+   {
+      if (redefinedClassesWithNativeMethods.contains(restoredClass.getName())) {
+         reregisterNativeMethodsForRestoredClass(restoredClass);
       }
 
-      removeMockedClass(redefinedClass);
-      discardStateForCorrespondingFakeClassIfAny(redefinedClass);
+      removeMockedClass(restoredClass);
+      discardStateForCorrespondingFakeClassIfAny(restoredClass);
    }
 
    private void removeMockedClass(@Nonnull Class<?> mockedClass)
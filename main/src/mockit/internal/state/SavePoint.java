@@ -36,8 +36,7 @@ public final class SavePoint
       try {
          MockFixture mockFixture = TestRun.mockFixture();
          mockFixture.removeCaptureTransformers(previousCaptureTransformerCount);
-         mockFixture.restoreTransformedClasses(previousTransformedClasses);
-         mockFixture.restoreRedefinedClasses(previousRedefinedClasses);
+         mockFixture.restoreTransformedAndRedefinedClasses(previousTransformedClasses, previousRedefinedClasses);
          mockFixture.removeMockedClasses(previousMockedClasses);
          previousFakeClasses.rollback();
       }
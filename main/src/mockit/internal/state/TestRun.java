@@ -31,6 +31,7 @@ public final class TestRun
 
    // Used only by the Coverage tool:
    private int testId;
+   private boolean testMethodsReportedToCoverage;
 
    @Nullable private Class<?> currentTestClass;
    @Nullable private Object currentTestInstance;
@@ -52,6 +53,13 @@ public final class TestRun
 
    public static int getTestId() { return INSTANCE.testId; }
 
+   /**
+    * Indicates whether the test runner integration has to report each test method it executes to the Coverage tool,
+    * which is only the case when call points are taken from the test method currently running.
+    * Checking this flag doesn't load any class of the Coverage tool.
+    */
+   public static boolean areTestMethodsReportedToCoverage() { return INSTANCE.testMethodsReportedToCoverage; }
+
    @Nullable
    public static FieldTypeRedefinitions getFieldTypeRedefinitions() { return INSTANCE.fieldTypeRedefinitions; }
 
@@ -89,6 +97,8 @@ public final class TestRun
       INSTANCE.currentTestClass = testClass;
    }
 
+   public static void reportTestMethodsToCoverage() { INSTANCE.testMethodsReportedToCoverage = true; }
+
    public static void prepareForNextTest()
    {
       INSTANCE.testId++;
@@ -18,6 +18,14 @@ public final class ClassLoad
    private static final Map<String, Class<?>> LOADED_CLASSES = new ConcurrentHashMap<String, Class<?>>();
    private static final Map<String, String> SUPER_CLASSES = new ConcurrentHashMap<String, String>();
 
+   /**
+    * The super-classes obtained through {@link #getSuperClass} by the current thread while recording, by class name.
+    * Classes being written, whose super-classes get {@linkplain #addSuperClass added} while recording, map to
+    * <tt>null</tt> instead, as they are described by their own bytecode.
+    */
+   private static final ThreadLocal<Map<String, String>> RECORDED_SUPER_CLASSES =
+      new ThreadLocal<Map<String, String>>();
+
    private ClassLoad() {}
 
    public static void registerLoadedClass(@Nonnull Class<?> aClass)
@@ -142,6 +150,53 @@ public final class ClassLoad
    public static void addSuperClass(@Nonnull String classInternalName, @Nonnull String superClassInternalName)
    {
       SUPER_CLASSES.put(classInternalName.intern(), superClassInternalName.intern());
+
+      Map<String, String> recordedSuperClasses = RECORDED_SUPER_CLASSES.get();
+
+      if (recordedSuperClasses != null) {
+         recordedSuperClasses.put(classInternalName, null);
+      }
+   }
+
+   /**
+    * Starts recording the super-classes obtained by the current thread, such as those consulted when computing the
+    * stack map frames of a modified class, unless already recording.
+    *
+    * @return whether recording was started, in which case it has to be stopped with
+    * {@link #getRecordedSuperClasses(boolean)}
+    */
+   public static boolean startRecordingSuperClasses()
+   {
+      if (RECORDED_SUPER_CLASSES.get() != null) {
+         return false;
+      }
+
+      RECORDED_SUPER_CLASSES.set(new HashMap<String, String>());
+      return true;
+   }
+
+   /**
+    * Returns the super-classes recorded so far by the current thread, by class name, excluding those of classes being
+    * written.
+    *
+    * @param stopRecording whether recording is to be stopped
+    */
+   @Nonnull
+   public static Map<String, String> getRecordedSuperClasses(boolean stopRecording)
+   {
+      Map<String, String> recordedSuperClasses = RECORDED_SUPER_CLASSES.get();
+
+      if (stopRecording) {
+         RECORDED_SUPER_CLASSES.remove();
+      }
+
+      if (recordedSuperClasses == null) {
+         return Collections.emptyMap();
+      }
+
+      Map<String, String> superClasses = new HashMap<String, String>(recordedSuperClasses);
+      superClasses.values().removeAll(Collections.singleton(null));
+      return superClasses;
    }
 
    @Nonnull
@@ -160,7 +215,17 @@ public final class ClassLoad
          }
       }
 
-      return superName == null ? OBJECT : superName;
+      if (superName == null) {
+         superName = OBJECT;
+      }
+
+      Map<String, String> recordedSuperClasses = RECORDED_SUPER_CLASSES.get();
+
+      if (recordedSuperClasses != null && !recordedSuperClasses.containsKey(classDesc)) {
+         recordedSuperClasses.put(classDesc, superName);
+      }
+
+      return superName;
    }
 
    @Nullable
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.hamcrest.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.internal.state.*;
+import static mockit.internal.expectations.RecordAndReplayExecution.RECORD_OR_REPLAY_LOCK;
+
+public final class ConcurrentReplayTest
+{
+   static class Collaborator
+   {
+      int getValue(int i) { return -1; }
+      int getOtherValue() { return -1; }
+      int getLength(String text) { return -1; }
+   }
+
+   @Mocked Collaborator mock;
+   ExecutorService pool;
+
+   @Before
+   public void createThreadPool() { pool = Executors.newFixedThreadPool(4); }
+
+   @After
+   public void shutdownThreadPool() { pool.shutdownNow(); }
+
+   /**
+    * Creates the execution state of the current test, to be shared with the recording blocks which follow, and enables
+    * concurrent replay in it.
+    */
+   static void enableConcurrentReplay(boolean enabled)
+   {
+      new Expectations() {{}};
+      Object executionState = Deencapsulation.getField(TestRun.getRecordAndReplayForRunningTest(), "executionState");
+      Deencapsulation.setField(executionState, "concurrentReplay", enabled);
+   }
+
+   Future<Integer> getValueInWorkerThread(final int arg)
+   {
+      return pool.submit(new Callable<Integer>() {
+         @Override
+         public Integer call() { return mock.getValue(arg); }
+      });
+   }
+
+   int getValueInWorkerThreadWhileTestHoldsTheLock(int arg) throws Exception
+   {
+      RECORD_OR_REPLAY_LOCK.lock();
+
+      try {
+         return getValueInWorkerThread(arg).get(10, TimeUnit.SECONDS);
+      }
+      finally {
+         RECORD_OR_REPLAY_LOCK.unlock();
+      }
+   }
+
+   @Test
+   public void replayRecordedExpectationWithoutTheLockWhenEnabled() throws Exception
+   {
+      enableConcurrentReplay(true);
+      new Expectations() {{ mock.getValue(anyInt); result = 5; }};
+
+      assertEquals(5, getValueInWorkerThreadWhileTestHoldsTheLock(1));
+   }
+
+   @Test
+   public void replayRecordedExpectationWhileHoldingTheLockWhenNotEnabled() throws Exception
+   {
+      enableConcurrentReplay(false);
+      new Expectations() {{ mock.getValue(anyInt); result = 5; }};
+      Future<Integer> result;
+
+      RECORD_OR_REPLAY_LOCK.lock();
+
+      try {
+         result = getValueInWorkerThread(1);
+         Thread.sleep(100);
+         assertFalse(result.isDone());
+      }
+      finally {
+         RECORD_OR_REPLAY_LOCK.unlock();
+      }
+
+      assertEquals(5, result.get(10, TimeUnit.SECONDS).intValue());
+   }
+
+   @Test
+   public void replayRecordedExpectationsConcurrentlyFromManyThreadsAndVerifyAllInvocations() throws Exception
+   {
+      enableConcurrentReplay(true);
+      new Expectations() {{
+         mock.getValue(1); result = 1;
+         mock.getValue(2); result = 2;
+      }};
+
+      List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+
+      for (int i = 0; i < 200; i++) {
+         results.add(getValueInWorkerThread(1 + i % 2));
+      }
+
+      for (int i = 0; i < 200; i++) {
+         assertEquals(1 + i % 2, results.get(i).get().intValue());
+      }
+
+      new Verifications() {{
+         mock.getValue(1); times = 100;
+         mock.getValue(2); times = 100;
+      }};
+   }
+
+   @Test
+   public void resumeReplayingInvocationsWithoutTheLockAfterVerification() throws Exception
+   {
+      enableConcurrentReplay(true);
+      new Expectations() {{ mock.getValue(anyInt); result = 5; }};
+      assertEquals(5, mock.getValue(1));
+
+      new Verifications() {{ mock.getValue(1); times = 1; }};
+
+      assertEquals(5, getValueInWorkerThreadWhileTestHoldsTheLock(2));
+      new Verifications() {{ mock.getValue(2); times = 1; }};
+   }
+
+   @Test
+   public void matchArgumentWithDelegateMethodWhileHoldingTheLock()
+   {
+      final boolean[] lockHeldWhileMatching = {false};
+      final int[] reentrantValue = {-1};
+      enableConcurrentReplay(true);
+
+      new Expectations() {{
+         mock.getValue(with(new Delegate<Integer>() {
+            boolean matches(int i)
+            {
+               lockHeldWhileMatching[0] = RECORD_OR_REPLAY_LOCK.isHeldByCurrentThread();
+               reentrantValue[0] = mock.getOtherValue();
+               return i > 0;
+            }
+         }));
+         result = 5;
+      }};
+
+      assertEquals(5, mock.getValue(1));
+      assertTrue(lockHeldWhileMatching[0]);
+      assertEquals("real implementation called from matcher", -1, reentrantValue[0]);
+   }
+
+   @Test
+   public void matchArgumentWithHamcrestMatcherWhileHoldingTheLock()
+   {
+      final boolean[] lockHeldWhileMatching = {false};
+      enableConcurrentReplay(true);
+
+      new Expectations() {{
+         mock.getLength(withArgThat(new BaseMatcher<String>() {
+            @Override
+            public boolean matches(Object item)
+            {
+               lockHeldWhileMatching[0] = RECORD_OR_REPLAY_LOCK.isHeldByCurrentThread();
+               return true;
+            }
+
+            @Override
+            public void describeTo(Description description) {}
+         }));
+         result = 5;
+      }};
+
+      assertEquals(5, mock.getLength("test"));
+      assertTrue(lockHeldWhileMatching[0]);
+   }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class ExpectationsOnOverloadedAndGenericMethodsTest
+{
+   static class Overloads
+   {
+      int value() { return -1; }
+      int value(int i) { return -1; }
+      int value(String s) { return -1; }
+      int value(int i, int j) { return -1; }
+      long value(long l) { return -1; }
+   }
+
+   @Mocked Overloads mock;
+
+   @Test
+   public void matchInvocationsOfOverloadedMethodsOnlyWithExpectationsRecordedOnTheSameOverload()
+   {
+      new Expectations() {{
+         mock.value(1); result = 2;
+         mock.value("1"); result = 3;
+         mock.value(); result = 1;
+         mock.value(1, 1); result = 4;
+         mock.value(1L); result = 5;
+      }};
+
+      assertEquals(5, mock.value(1L));
+      assertEquals(4, mock.value(1, 1));
+      assertEquals(3, mock.value("1"));
+      assertEquals(2, mock.value(1));
+      assertEquals(1, mock.value());
+      assertEquals(0, mock.value(2));
+      assertEquals(0, mock.value("2"));
+   }
+
+   @Test
+   public void replaceExpectationRecordedEarlierOnlyForTheSameOverload()
+   {
+      new Expectations() {{
+         mock.value(1); result = 2;
+         mock.value("1"); result = 3;
+      }};
+
+      new Expectations() {{ mock.value(1); result = 20; }};
+
+      assertEquals(20, mock.value(1));
+      assertEquals(3, mock.value("1"));
+   }
+
+   @Test
+   public void verifyInvocationsOfOverloadedMethodsReplayedWithoutRecordedExpectations()
+   {
+      mock.value(1);
+      mock.value("a");
+      mock.value(1);
+      mock.value(1, 2);
+
+      new Verifications() {{
+         mock.value(1); times = 2;
+         mock.value(anyString); times = 1;
+         mock.value(anyInt, anyInt); times = 1;
+         mock.value(); times = 0;
+         mock.value(anyLong); times = 0;
+      }};
+   }
+
+   static class Base<T>
+   {
+      int count(T key) { return -1; }
+   }
+
+   static final class IntegerBase extends Base<Integer>
+   {
+      @Override int count(Integer key) { return -1; }
+   }
+
+   @Test
+   public void matchInvocationOfMethodWithoutIndexedExpectationsAgainstExpectationRecordedOnGenericMethod(
+      @Capturing final Base<Integer> anyBase)
+   {
+      new Expectations() {{ anyBase.count(1); result = 5; }};
+
+      assertEquals(5, new IntegerBase().count(1));
+   }
+
+   @Test
+   public void matchExpectationsRecordedOnGenericMethodBeforeAndAfterOthersWereIndexedForTheSameInvokedMethod(
+      @Capturing final Base<Integer> anyBase)
+   {
+      new Expectations() {{ anyBase.count(1); result = 5; }};
+      IntegerBase impl = new IntegerBase();
+
+      assertEquals(0, impl.count(2));
+      assertEquals(5, impl.count(1));
+
+      new Expectations() {{ anyBase.count(3); result = 7; }};
+
+      assertEquals(7, impl.count(3));
+      assertEquals(5, impl.count(1));
+      assertEquals(0, impl.count(2));
+   }
+}
@@ -5,6 +5,8 @@
 package mockit;
 
 import java.awt.*;
+import java.util.*;
+import java.util.List;
 import java.util.concurrent.*;
 
 import javax.swing.*;
@@ -86,6 +88,46 @@ public final class MultiThreadedExpectationsTest
       task.join();
    }
 
+   @Test
+   public void replayRecordedExpectationConcurrentlyFromManyThreads() throws Exception
+   {
+      new Expectations() {{
+         mock.doSomething(); result = 123;
+      }};
+
+      final int invocationsPerTask = 100;
+      ExecutorService pool = Executors.newFixedThreadPool(4);
+      List<Future<Integer>> tasks = new ArrayList<Future<Integer>>();
+
+      for (int i = 0; i < 8; i++) {
+         tasks.add(pool.submit(new Callable<Integer>() {
+            @Override
+            public Integer call()
+            {
+               int sum = 0;
+
+               for (int j = 0; j < invocationsPerTask; j++) {
+                  sum += mock.doSomething();
+                  mock.doSomethingElse();
+               }
+
+               return sum;
+            }
+         }));
+      }
+
+      for (Future<Integer> task : tasks) {
+         assertEquals(123 * invocationsPerTask, task.get().intValue());
+      }
+
+      pool.shutdown();
+
+      new Verifications() {{
+         mock.doSomething(); times = 8 * invocationsPerTask;
+         mock.doSomethingElse(); times = 8 * invocationsPerTask;
+      }};
+   }
+
    static class Dependency
    {
       void doSomething() {}
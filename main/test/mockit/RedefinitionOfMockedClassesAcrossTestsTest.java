@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit;
+
+import java.lang.instrument.*;
+import java.lang.reflect.*;
+
+import org.junit.*;
+import org.junit.runners.*;
+import static org.junit.Assert.*;
+
+import mockit.internal.startup.*;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public final class RedefinitionOfMockedClassesAcrossTestsTest
+{
+   public static final class Collaborator
+   {
+      public int getValue() { return 123; }
+      public static String describe() { return "real"; }
+   }
+
+   static Instrumentation realInstrumentation;
+   static int redefinitionBatches;
+   static int batchesBeforeSecondTest;
+
+   @BeforeClass
+   public static void countRedefinitions()
+   {
+      realInstrumentation = Startup.instrumentation();
+
+      Object countingInstrumentation = Proxy.newProxyInstance(
+         Instrumentation.class.getClassLoader(), new Class<?>[] {Instrumentation.class},
+         new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+               if ("redefineClasses".equals(method.getName())) {
+                  redefinitionBatches++;
+               }
+
+               try {
+                  return method.invoke(realInstrumentation, args);
+               }
+               catch (InvocationTargetException e) {
+                  throw e.getCause();
+               }
+            }
+         });
+
+      Deencapsulation.setField(Startup.class, "inst", countingInstrumentation);
+   }
+
+   @AfterClass
+   public static void restoreInstrumentation()
+   {
+      Deencapsulation.setField(Startup.class, "inst", realInstrumentation);
+   }
+
+   @Test
+   public void test1_mockClass(@Mocked Collaborator mock)
+   {
+      assertEquals(0, mock.getValue());
+      assertNull(Collaborator.describe());
+
+      batchesBeforeSecondTest = redefinitionBatches;
+   }
+
+   @Test
+   public void test2_mockSameClassAgainWithoutRedefiningIt(@Mocked final Collaborator mock)
+   {
+      new Expectations() {{ mock.getValue(); result = 45; }};
+
+      assertEquals(45, mock.getValue());
+      assertEquals(batchesBeforeSecondTest, redefinitionBatches);
+   }
+
+   @Test
+   public void test3_useRealClassAfterItWasMockedByPreviousTests()
+   {
+      assertEquals("real", Collaborator.describe());
+      assertEquals(123, new Collaborator().getValue());
+      assertEquals(batchesBeforeSecondTest + 1, redefinitionBatches);
+   }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit;
+
+import java.util.*;
+import javax.annotation.*;
+
+import org.junit.*;
+import org.junit.runners.*;
+import static org.junit.Assert.*;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public final class TestedClassWithGlobalScopeTest
+{
+   static final List<String> lifecycleEvents = new ArrayList<String>();
+
+   public static final class Repository
+   {
+      @PostConstruct void initialize() { lifecycleEvents.add("Repository initialized"); }
+      @PreDestroy void close() { lifecycleEvents.add("Repository closed"); }
+   }
+
+   public static final class ExpensiveService
+   {
+      Repository repository;
+      int uses;
+
+      @PostConstruct void initialize() { lifecycleEvents.add("Service initialized"); }
+      @PreDestroy void destroy() { lifecycleEvents.add("Service destroyed"); }
+   }
+
+   public static final class CheapService { ExpensiveService expensiveService; }
+   public static final class Counter { int count; }
+
+   @Tested(global = true, fullyInitialized = true) ExpensiveService service;
+   @Tested CheapService cheapService;
+   @Tested(global = true) Counter counter1;
+   @Tested(global = true) Counter counter2;
+
+   static ExpensiveService firstInstance;
+
+   @Test
+   public void test1_createGlobalObjectWithItsDependencies()
+   {
+      assertNotNull(service.repository);
+      assertSame(service, cheapService.expensiveService);
+      assertEquals(Arrays.asList("Repository initialized", "Service initialized"), lifecycleEvents);
+
+      firstInstance = service;
+      service.uses++;
+
+      assertNotSame(counter1, counter2);
+      counter1.count++;
+      counter2.count--;
+   }
+
+   @Test
+   public void test2_reuseGlobalObjectWithoutReinitializingIt()
+   {
+      assertSame(firstInstance, service);
+      assertSame(service, cheapService.expensiveService);
+      assertEquals(1, service.uses);
+      assertEquals(2, lifecycleEvents.size());
+
+      service = null;
+   }
+
+   @Test
+   public void test3_recreateGlobalObjectAfterDiscardingIt()
+   {
+      assertEquals(
+         Arrays.asList(
+            "Repository initialized", "Service initialized",
+            "Service destroyed", "Repository closed",
+            "Repository initialized", "Service initialized"),
+         lifecycleEvents);
+      assertNotSame(firstInstance, service);
+      assertEquals(0, service.uses);
+
+      service = null;
+   }
+
+   @Test
+   public void test4_shareGlobalObjectsByTypeAndName()
+   {
+      assertEquals(1, counter1.count);
+      assertEquals(-1, counter2.count);
+   }
+}
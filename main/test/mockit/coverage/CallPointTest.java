@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage;
+
+import java.lang.reflect.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.coverage.testRedundancy.*;
+
+public final class CallPointTest
+{
+   @After
+   public void clearCurrentTestMethod() { TestCoverage.INSTANCE.setCurrentTestMethod(null); }
+
+   @Test
+   public void callPointsNameTheTestMethodRunningInTheThreadWhichRecordsThem() throws Exception
+   {
+      Method firstTest = CallPointTest.class.getMethod("callPointsNameTheTestMethodRunningInTheThreadWhichRecordsThem");
+      final Method secondTest = CallPointTest.class.getMethod("noCallPointFromTestMethodWhenNoneIsRunning");
+      final CyclicBarrier bothTestsRunning = new CyclicBarrier(2);
+      final AtomicReference<CallPoint> callPointFromSecondTest = new AtomicReference<CallPoint>();
+
+      Thread threadForSecondTest = new Thread() {
+         @Override
+         public void run()
+         {
+            TestCoverage.INSTANCE.setCurrentTestMethod(secondTest);
+
+            try {
+               bothTestsRunning.await();
+               callPointFromSecondTest.set(CallPoint.fromTestMethodRunningInCurrentThread());
+            }
+            catch (Exception e) {
+               throw new RuntimeException(e);
+            }
+            finally {
+               TestCoverage.INSTANCE.setCurrentTestMethod(null);
+            }
+         }
+      };
+
+      TestCoverage.INSTANCE.setCurrentTestMethod(firstTest);
+      threadForSecondTest.start();
+      bothTestsRunning.await();
+      CallPoint callPointFromFirstTest = CallPoint.fromTestMethodRunningInCurrentThread();
+      threadForSecondTest.join();
+
+      assertCallPointForTestMethod(firstTest, callPointFromFirstTest);
+      assertCallPointForTestMethod(secondTest, callPointFromSecondTest.get());
+   }
+
+   static void assertCallPointForTestMethod(Method testMethod, CallPoint callPoint)
+   {
+      assertNotNull(callPoint);
+      StackTraceElement ste = callPoint.getStackTraceElement();
+      assertEquals(testMethod.getDeclaringClass().getName(), ste.getClassName());
+      assertEquals(testMethod.getName(), ste.getMethodName());
+      assertTrue(ste.getLineNumber() < 0);
+   }
+
+   @Test
+   public void noCallPointFromTestMethodWhenNoneIsRunning() throws Exception
+   {
+      Method test = CallPointTest.class.getMethod("noCallPointFromTestMethodWhenNoneIsRunning");
+      TestCoverage.INSTANCE.setCurrentTestMethod(test);
+      assertNotNull(CallPoint.fromTestMethodRunningInCurrentThread());
+
+      TestCoverage.INSTANCE.setCurrentTestMethod(null);
+
+      assertNull(CallPoint.fromTestMethodRunningInCurrentThread());
+   }
+}
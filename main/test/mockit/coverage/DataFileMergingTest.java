@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+import mockit.*;
+import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
+import mockit.external.asm.*;
+
+public final class DataFileMergingTest
+{
+   @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+   // Writes a data file with a source file present in all data files, one whose class files differ between some
+   // data files, and one present only in this data file.
+   File writeDataFile(int fileNumber) throws IOException
+   {
+      CoverageData data = new CoverageData();
+      addSourceFile(data, "mockit/Common.java", 1000L, fileNumber);
+      addSourceFile(data, "mockit/Changing.java", 2000L + fileNumber % 3, fileNumber);
+      addSourceFile(data, "mockit/Unique" + fileNumber + ".java", 3000L, fileNumber);
+
+      File dataFile = tempFolder.newFile("coverage" + fileNumber + ".ser");
+      data.writeDataToFile(dataFile);
+      return dataFile;
+   }
+
+   static void addSourceFile(CoverageData data, String sourceFile, long lastModified, int executions)
+   {
+      FileCoverageData fileData = data.getOrAddFile(sourceFile, "class");
+      Deencapsulation.setField(fileData, "lastModified", lastModified);
+
+      PerFileLineCoverage lineData = new PerFileLineCoverage();
+      fileData.lineCoverageInfo = lineData;
+      lineData.addLine(1, false);
+      lineData.addLine(2, false);
+      lineData.getOrCreateLineData(1);
+      lineData.getOrCreateLineData(2).addBranchingPoint(new Label(), new Label());
+
+      for (int i = 0; i < executions; i++) {
+         lineData.registerExecution(1, null);
+         lineData.registerExecution(2, i % 2, null);
+      }
+   }
+
+   @Test
+   public void mergeManyDataFilesInParallelWithSameResultAsWhenMergingSequentially() throws Exception
+   {
+      int fileCount = 4 * Runtime.getRuntime().availableProcessors() + 3;
+      String[] inputPaths = new String[fileCount];
+      CoverageData sequentiallyMergedData = new CoverageData();
+      int totalExecutions = 0;
+
+      for (int i = 0; i < fileCount; i++) {
+         File dataFile = writeDataFile(i);
+         inputPaths[i] = dataFile.getPath();
+         sequentiallyMergedData.mergeDataFromFile(dataFile);
+         totalExecutions += i;
+      }
+
+      CoverageData mergedData = new DataFileMerging(inputPaths).merge();
+
+      Map<String, FileCoverageData> expectedFiles = sequentiallyMergedData.getRawFileToFileData();
+      Map<String, FileCoverageData> actualFiles = mergedData.getRawFileToFileData();
+      assertEquals(fileCount + 2, actualFiles.size());
+      assertEquals(new ArrayList<String>(expectedFiles.keySet()), new ArrayList<String>(actualFiles.keySet()));
+
+      for (Map.Entry<String, FileCoverageData> fileAndData : expectedFiles.entrySet()) {
+         String sourceFile = fileAndData.getKey();
+         assertArrayEquals(sourceFile, digestOf(fileAndData.getValue()), digestOf(actualFiles.get(sourceFile)));
+      }
+
+      assertEquals(totalExecutions, mergedData.getFileData("mockit/Common.java").lineCoverageInfo.getExecutionCount(1));
+   }
+
+   static byte[] digestOf(FileCoverageData fileData) throws NoSuchAlgorithmException
+   {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      fileData.updateDigest(digest);
+      return digest.digest();
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void failWhenNoDataFilesExist() throws Exception
+   {
+      new DataFileMerging(new String[] {new File(tempFolder.getRoot(), "missing.ser").getPath()}).merge();
+   }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.data;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+import mockit.coverage.*;
+import mockit.coverage.lines.*;
+import mockit.coverage.paths.*;
+import mockit.coverage.primepaths.*;
+import mockit.external.asm.*;
+
+public final class CoverageDataOutputTest
+{
+   @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+   CoverageDataInput writeAndReadBack(CoverageDataOutput output) throws IOException
+   {
+      File file = tempFolder.newFile();
+      FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+
+      try {
+         output.writeTo(channel);
+      }
+      finally {
+         channel.close();
+      }
+
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+      assertTrue(CoverageDataInput.isInBinaryFormat(buffer));
+      return new CoverageDataInput(buffer);
+   }
+
+   @Test
+   public void readBackValuesOfEachKind() throws Exception
+   {
+      int[] varInts = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, -2, -128, Integer.MIN_VALUE};
+      CoverageDataOutput output = new CoverageDataOutput();
+
+      for (int value : varInts) {
+         output.writeVarInt(value);
+      }
+
+      output.writeIntArray(varInts);
+      output.writeIntArray(new int[0]);
+      output.writeBoolean(true);
+      output.writeBoolean(false);
+      output.writeLong(-1L);
+      output.writeLong(Long.MAX_VALUE);
+      output.writeString("first");
+      output.writeString(null);
+      output.writeString("sécond");
+      output.writeString("first");
+      output.writeBytes(new byte[] {1, -1, 0});
+
+      CoverageDataInput input = writeAndReadBack(output);
+
+      for (int value : varInts) {
+         assertEquals(value, input.readVarInt());
+      }
+
+      assertArrayEquals(varInts, input.readIntArray());
+      assertEquals(0, input.readIntArray().length);
+      assertTrue(input.readBoolean());
+      assertFalse(input.readBoolean());
+      assertEquals(-1L, input.readLong());
+      assertEquals(Long.MAX_VALUE, input.readLong());
+      assertEquals("first", input.readString());
+      assertNull(input.readString());
+      assertEquals("sécond", input.readNonNullString());
+      assertEquals("first", input.readString());
+      assertArrayEquals(new byte[] {1, -1, 0}, input.readBytes());
+   }
+
+   @Test
+   public void rejectDataWrittenInAnotherVersionOfTheFormat() throws Exception
+   {
+      ByteBuffer buffer = ByteBuffer.allocate(9);
+      buffer.putInt(CoverageDataOutput.MAGIC).putInt(CoverageDataOutput.VERSION + 1).put((byte) 0);
+      buffer.flip();
+
+      try {
+         new CoverageDataInput(buffer);
+         fail();
+      }
+      catch (IOException e) {
+         assertTrue(e.getMessage().contains("version"));
+      }
+   }
+
+   CallPoint newCallPoint(String testClass, String testMethod, int line) throws IOException
+   {
+      CoverageDataOutput output = new CoverageDataOutput();
+      output.writeString(testClass);
+      output.writeString(testMethod);
+      output.writeString(testClass.substring(testClass.lastIndexOf('.') + 1) + ".java");
+      output.writeVarInt(line);
+      output.writeVarInt(0);
+      return CallPoint.readFrom(writeAndReadBack(output));
+   }
+
+   // if (...) { line 2 } line 3
+   static MethodCoverageData buildMethodWithIfStatement()
+   {
+      NodeBuilder builder = new NodeBuilder();
+      Label afterIf = new Label();
+      builder.handleEntry(1);
+      builder.handleJump(afterIf, 1, true);
+      builder.handleRegularInstruction(2, 0);
+      builder.handleJumpTarget(afterIf, 3);
+      builder.handleExit(3);
+
+      MethodCoverageData methodData = new MethodCoverageData();
+      methodData.buildPaths(3, builder);
+      return methodData;
+   }
+
+   // if (...) { line 6 } if (...) { line 8 } line 9
+   static PPMethodCoverageData buildMethodWithTwoIfStatements()
+   {
+      PPNodeBuilder builder = new PPNodeBuilder();
+      Label afterFirstIf = new Label();
+      Label afterSecondIf = new Label();
+      builder.handleEntry(5);
+      builder.handleJump(afterFirstIf, 5, true);
+      builder.handleRegularInstruction(6, 0);
+      builder.handleJumpTarget(afterFirstIf, 7);
+      builder.handleJump(afterSecondIf, 7, true);
+      builder.handleRegularInstruction(8, 0);
+      builder.handleJumpTarget(afterSecondIf, 9);
+      builder.handleExit(9, false);
+
+      PPMethodCoverageData methodData = new PPMethodCoverageData();
+      methodData.buildPaths(9, builder);
+      return methodData;
+   }
+
+   @Test
+   public void readBackCoverageDataWithCallPointsAndPathCoverage() throws Exception
+   {
+      CoverageData data = new CoverageData();
+      data.setWithCallPoints(true);
+      FileCoverageData fileData = data.getOrAddFile("mockit/coverage/data/Sample.java", "class");
+      fileData.lastModified = 123456789L;
+
+      PerFileLineCoverage lineData = new PerFileLineCoverage();
+      fileData.lineCoverageInfo = lineData;
+      lineData.addLine(1, false);
+      lineData.addLine(2, false);
+      lineData.getOrCreateLineData(2).addBranchingPoint(new Label(), new Label());
+      assertTrue(lineData.acceptsAdditionalCallPoints(1));
+      CallPoint callPoint = newCallPoint("mockit.coverage.SampleTest", "firstTest", 25);
+      lineData.registerExecution(1, callPoint);
+      lineData.registerExecution(1, newCallPoint("mockit.coverage.SampleTest", "firstTest", 25));
+      lineData.registerExecution(1, newCallPoint("mockit.coverage.SampleTest", "secondTest", 40));
+      lineData.registerExecution(2, null);
+      lineData.registerExecution(2, 1, null);
+
+      PerFilePathCoverage pathData = new PerFilePathCoverage();
+      fileData.pathCoverageInfo = pathData;
+      MethodCoverageData methodData = buildMethodWithIfStatement();
+      pathData.addMethod(methodData);
+
+      for (int node : new int[] {0, 1, 2, 3, 4, 0, 1, 3, 4, 0, 1, 3, 4}) {
+         methodData.markNodeAsReached(node);
+      }
+
+      PerFilePPathCoverage ppathData = new PerFilePPathCoverage();
+      fileData.ppathCoverageInfo = ppathData;
+      PPMethodCoverageData ppMethodData = buildMethodWithTwoIfStatements();
+      ppathData.addMethod(ppMethodData);
+
+      for (int node : new int[] {0, 1, 2, 3, 4, 5, 6, 7, 0, 1, 3, 4, 6, 7}) {
+         ppMethodData.markNodeAsReached(node);
+      }
+
+      File dataFile = tempFolder.newFile("coverage.ser");
+      data.writeDataToFile(dataFile);
+      CoverageData readData = CoverageData.readDataFromFile(dataFile);
+
+      assertTrue(readData.isWithCallPoints());
+      FileCoverageData readFileData = readData.getFileData("mockit/coverage/data/Sample.java");
+      assertEquals(fileData.index, readFileData.index);
+      assertEquals("class", readFileData.kindOfTopLevelType);
+      assertEquals(123456789L, readFileData.lastModified);
+
+      PerFileLineCoverage readLineData = readFileData.lineCoverageInfo;
+      assertEquals(3, readLineData.getExecutionCount(1));
+      assertEquals(1, readLineData.getExecutionCount(2));
+      assertEquals(0, readLineData.getBranchData(2, 0).getExecutionCount());
+      assertEquals(1, readLineData.getBranchData(2, 1).getExecutionCount());
+
+      List<CallPoint> readCallPoints = readLineData.getLineData(1).getCallPoints();
+      assertNotNull(readCallPoints);
+      assertEquals(2, readCallPoints.size());
+      assertEquals(callPoint.getStackTraceElement(), readCallPoints.get(0).getStackTraceElement());
+      assertEquals(1, readCallPoints.get(0).getRepetitionCount());
+      assertEquals("secondTest", readCallPoints.get(1).getStackTraceElement().getMethodName());
+      assertEquals(40, readCallPoints.get(1).getStackTraceElement().getLineNumber());
+      assertEquals(0, readCallPoints.get(1).getRepetitionCount());
+      assertFalse(readLineData.getLineData(2).containsCallPoints());
+
+      MethodCoverageData readMethodData = readFileData.pathCoverageInfo.firstLineToMethodData.get(1);
+      assertEquals(methodData.getTotalPaths(), readMethodData.getTotalPaths());
+      assertEquals(2, readMethodData.getCoveredPaths());
+      assertEquals(3, readMethodData.getExecutionCount());
+
+      for (int i = 0; i < methodData.getTotalPaths(); i++) {
+         assertEquals(
+            methodData.getPaths().get(i).getExecutionCount(), readMethodData.getPaths().get(i).getExecutionCount());
+      }
+
+      PPMethodCoverageData readPPMethodData = readFileData.ppathCoverageInfo.firstLineToMethodData.get(5);
+      assertEquals(4, readPPMethodData.getTotalPaths());
+      assertEquals(ppMethodData.getCoveredPaths(), readPPMethodData.getCoveredPaths());
+      assertEquals(ppMethodData.getExecutionCount(), readPPMethodData.getExecutionCount());
+      assertEquals(2, readPPMethodData.getExecutionCount());
+
+      for (int i = 0; i < ppMethodData.getTotalPaths(); i++) {
+         assertEquals(
+            ppMethodData.getPaths().get(i).getExecutionCount(), readPPMethodData.getPaths().get(i).getExecutionCount());
+      }
+   }
+}
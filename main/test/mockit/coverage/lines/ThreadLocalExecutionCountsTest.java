@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.lines;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+import mockit.external.asm.*;
+
+public final class ThreadLocalExecutionCountsTest
+{
+   static final int THREADS = 4;
+   static final int EXECUTIONS_PER_THREAD = 20000;
+
+   int fileIndex;
+   PerFileLineCoverage fileData;
+   final AtomicInteger firstExecutions = new AtomicInteger();
+
+   void addFileWithOneLineAndOneBranchingLine(String file)
+   {
+      FileCoverageData data = CoverageData.instance().getOrAddFile(file, null);
+      fileIndex = data.index;
+      fileData = data.lineCoverageInfo;
+      fileData.addLine(1, false);
+      fileData.addLine(2, false);
+      fileData.getOrCreateLineData(2).addBranchingPoint(new Label(), new Label());
+   }
+
+   @Test
+   public void mergeCountsRecordedConcurrentlyWithTheSameTotalsAsWhenRecordingWithTheLock() throws Exception
+   {
+      addFileWithOneLineAndOneBranchingLine("mockit/coverage/lines/LockedRecording.java");
+      final PerFileLineCoverage lockedData = fileData;
+      runConcurrently(new Runnable() {
+         @Override
+         public void run()
+         {
+            for (int i = 0; i < EXECUTIONS_PER_THREAD; i++) {
+               synchronized (TestRun.class) {
+                  countIfFirstExecution(lockedData.registerExecution(1, null));
+                  countIfFirstExecution(lockedData.registerExecution(2, i % 2, null));
+               }
+            }
+         }
+      }, false);
+      int firstExecutionsWithLock = firstExecutions.getAndSet(0);
+
+      addFileWithOneLineAndOneBranchingLine("mockit/coverage/lines/LockFreeRecording.java");
+      final int lockFreeFileIndex = fileIndex;
+      runConcurrently(new Runnable() {
+         @Override
+         public void run()
+         {
+            ThreadLocalExecutionCounts counts = ThreadLocalExecutionCounts.forCurrentThread();
+
+            for (int i = 0; i < EXECUTIONS_PER_THREAD; i++) {
+               countIfFirstExecution(counts.registerExecution(lockFreeFileIndex, 1));
+               countIfFirstExecution(counts.registerExecution(lockFreeFileIndex, 2, i % 2));
+            }
+         }
+      }, true);
+      ThreadLocalExecutionCounts.mergeIntoCoverageData(CoverageData.instance());
+
+      int totalExecutions = THREADS * EXECUTIONS_PER_THREAD;
+      assertEquals(totalExecutions, lockedData.getExecutionCount(1));
+      assertEquals(lockedData.getExecutionCount(1), fileData.getExecutionCount(1));
+      assertEquals(totalExecutions / 2, fileData.getBranchData(2, 0).getExecutionCount());
+      assertEquals(lockedData.getBranchData(2, 0).getExecutionCount(),
+         fileData.getBranchData(2, 0).getExecutionCount());
+      assertEquals(lockedData.getBranchData(2, 1).getExecutionCount(),
+         fileData.getBranchData(2, 1).getExecutionCount());
+      assertEquals(firstExecutionsWithLock, firstExecutions.get());
+      assertEquals(3, firstExecutions.get());
+   }
+
+   void countIfFirstExecution(int previousExecutionCount)
+   {
+      if (previousExecutionCount == 0) {
+         firstExecutions.incrementAndGet();
+      }
+   }
+
+   static void runConcurrently(Runnable executions, boolean mergingMeanwhile) throws Exception
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+      try {
+         Future<?>[] results = new Future<?>[THREADS];
+
+         for (int i = 0; i < THREADS; i++) {
+            results[i] = executor.submit(executions);
+         }
+
+         for (Future<?> result : results) {
+            while (mergingMeanwhile && !result.isDone()) {
+               ThreadLocalExecutionCounts.mergeIntoCoverageData(CoverageData.instance());
+            }
+
+            result.get();
+         }
+      }
+      finally {
+         executor.shutdown();
+      }
+   }
+
+   @Test
+   public void mergeSameExecutionsOnlyOnce()
+   {
+      addFileWithOneLineAndOneBranchingLine("mockit/coverage/lines/RepeatedMerges.java");
+      ThreadLocalExecutionCounts counts = ThreadLocalExecutionCounts.forCurrentThread();
+
+      assertEquals(0, counts.registerExecution(fileIndex, 1));
+      assertTrue(counts.registerExecution(fileIndex, 1) > 0);
+      ThreadLocalExecutionCounts.mergeIntoCoverageData(CoverageData.instance());
+      ThreadLocalExecutionCounts.mergeIntoCoverageData(CoverageData.instance());
+      assertEquals(2, fileData.getExecutionCount(1));
+
+      assertTrue(counts.registerExecution(fileIndex, 1) > 0);
+      ThreadLocalExecutionCounts.mergeIntoCoverageData(CoverageData.instance());
+      assertEquals(3, fileData.getExecutionCount(1));
+   }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+public final class ClassWithNestedClass
+{
+   private int value;
+
+   public int compute(boolean doubled)
+   {
+      int result = new Nested().increment(value);
+
+      if (doubled) {
+         result *= 2;
+      }
+
+      value = result;
+      return result;
+   }
+
+   static final class Nested
+   {
+      int increment(int value) { return value > 1000 ? value : value + 1; }
+   }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+import mockit.coverage.data.*;
+import mockit.external.asm.*;
+
+public final class InstrumentedClassCacheTest
+{
+   static final String CLASS_NAME = ClassWithNestedClass.class.getName();
+   static final String NESTED_CLASS_NAME = ClassWithNestedClass.Nested.class.getName();
+   static final String SOURCE_FILE = "mockit/coverage/modification/ClassWithNestedClass.java";
+
+   @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+   final CoverageData coverageData = CoverageData.instance();
+   final ClassLoader loader = ClassWithNestedClass.class.getClassLoader();
+   InstrumentedClassCache cache;
+   byte[] originalClassfile;
+   String key;
+
+   @Before
+   public void createCache() throws IOException
+   {
+      forgetSourceFile();
+      cache = new InstrumentedClassCache(tempFolder.newFolder("cache"));
+      originalClassfile = readClassfile(loader, CLASS_NAME);
+      key = cache.getKey(CLASS_NAME, originalClassfile);
+   }
+
+   @After
+   public void forgetSourceFile()
+   {
+      coverageData.getRawFileToFileData().remove(SOURCE_FILE);
+   }
+
+   static byte[] readClassfile(ClassLoader loader, String className) throws IOException
+   {
+      InputStream input = loader.getResourceAsStream(className.replace('.', '/') + ".class");
+      assertNotNull(input);
+
+      try {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         byte[] buffer = new byte[4096];
+
+         for (int bytesRead; (bytesRead = input.read(buffer)) >= 0; ) {
+            bytes.write(buffer, 0, bytesRead);
+         }
+
+         return bytes.toByteArray();
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   // Modifies the class as ClassModification does on a cache miss, returning the data of its source file.
+   FileCoverageData modifyAndStore(Map<String, byte[]> modifiedClasses)
+   {
+      assertNull(cache.recoverModifiedClass(key, loader, CLASS_NAME));
+
+      int fileIndexBeforeModification = coverageData.getNextFileIndex();
+      ClassReader cr = new ClassReader(originalClassfile);
+      CoverageModifier modifier = new CoverageModifier(cr, false);
+      cr.accept(modifier);
+      byte[] modifiedClassfile = modifier.toByteArray();
+      cache.storeModifiedClass(key, loader, CLASS_NAME, modifier, modifiedClassfile, fileIndexBeforeModification);
+
+      modifiedClasses.put(CLASS_NAME, modifiedClassfile);
+      modifiedClasses.put(NESTED_CLASS_NAME, cache.recoverModifiedInnerClass(NESTED_CLASS_NAME));
+
+      FileCoverageData fileData = modifier.getFileData();
+      assertNotNull(fileData);
+      assertEquals(fileIndexBeforeModification, fileData.index);
+      return fileData;
+   }
+
+   @Test
+   public void restoreCachedClassesWithTheFileIndexAssignedWhenLoadedInDifferentOrder() throws Exception
+   {
+      Map<String, byte[]> modifiedClasses = new HashMap<String, byte[]>();
+      FileCoverageData storedFileData = modifyAndStore(modifiedClasses);
+      int storedIndex = storedFileData.index;
+
+      // In the next test run, some other source file gets its classes loaded first.
+      forgetSourceFile();
+      coverageData.getOrAddFile("mockit/coverage/modification/LoadedFirst" + storedIndex + ".java", null);
+
+      byte[] restoredClassfile = cache.recoverModifiedClass(key, loader, CLASS_NAME);
+      assertNotNull(restoredClassfile);
+      FileCoverageData restoredFileData = coverageData.getFileData(SOURCE_FILE);
+      int restoredIndex = restoredFileData.index;
+      assertTrue(restoredIndex > storedIndex);
+      assertSame(restoredFileData, coverageData.getFileData(restoredIndex));
+      assertEquals(storedFileData.getTotalItemsForAllMetrics(), restoredFileData.getTotalItemsForAllMetrics());
+
+      byte[] restoredNestedClassfile = cache.recoverModifiedInnerClass(NESTED_CLASS_NAME);
+      assertNotNull(restoredNestedClassfile);
+
+      assertRecordsToFile(modifiedClasses.get(CLASS_NAME), storedIndex, restoredClassfile, restoredIndex);
+      assertRecordsToFile(modifiedClasses.get(NESTED_CLASS_NAME), storedIndex, restoredNestedClassfile, restoredIndex);
+
+      Class<?> restoredClass = new ModifiedClassLoader(restoredClassfile, restoredNestedClassfile).loadClass(CLASS_NAME);
+      Object instance = restoredClass.newInstance();
+      assertEquals(1, restoredClass.getMethod("compute", boolean.class).invoke(instance, false));
+      assertEquals(4, restoredClass.getMethod("compute", boolean.class).invoke(instance, true));
+   }
+
+   static void assertRecordsToFile(byte[] storedClassfile, int storedIndex, byte[] restoredClassfile, int restoredIndex)
+   {
+      int[][] storedPushes = FileIndexBinding.findFileIndexPushes(storedClassfile, storedIndex);
+      assertNotNull(storedPushes);
+      assertTrue(storedPushes.length > 0 && storedPushes[storedPushes.length - 1].length > 0);
+
+      int[][] restoredPushes = FileIndexBinding.findFileIndexPushes(restoredClassfile, restoredIndex);
+      assertNotNull(restoredPushes);
+      assertArrayEquals(storedPushes, restoredPushes);
+      assertNull(FileIndexBinding.findFileIndexPushes(restoredClassfile, storedIndex));
+      assertEquals(storedClassfile.length, restoredClassfile.length);
+   }
+
+   // Loads the modified classes, with those they depend on from the parent loader.
+   static final class ModifiedClassLoader extends ClassLoader
+   {
+      private final byte[] modifiedClassfile;
+      private final byte[] modifiedNestedClassfile;
+
+      ModifiedClassLoader(byte[] modifiedClassfile, byte[] modifiedNestedClassfile)
+      {
+         super(ClassWithNestedClass.class.getClassLoader());
+         this.modifiedClassfile = modifiedClassfile;
+         this.modifiedNestedClassfile = modifiedNestedClassfile;
+      }
+
+      @Override
+      protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+      {
+         byte[] classfile = CLASS_NAME.equals(name) ? modifiedClassfile :
+            NESTED_CLASS_NAME.equals(name) ? modifiedNestedClassfile : null;
+
+         if (classfile == null) {
+            return super.loadClass(name, resolve);
+         }
+
+         Class<?> loadedClass = findLoadedClass(name);
+         return loadedClass != null ? loadedClass : defineClass(name, classfile, 0, classfile.length);
+      }
+   }
+
+   @Test
+   public void ignoreEntryWhoseNestedClassHasChanged() throws Exception
+   {
+      modifyAndStore(new HashMap<String, byte[]>());
+      forgetSourceFile();
+
+      final byte[] changedNestedClassfile = readClassfile(loader, NESTED_CLASS_NAME);
+      changedNestedClassfile[changedNestedClassfile.length - 1]++;
+      ClassLoader loaderWithChangedClass = new ClassLoader(loader) {
+         @Override
+         public InputStream getResourceAsStream(String name)
+         {
+            return name.equals(NESTED_CLASS_NAME.replace('.', '/') + ".class") ?
+               new ByteArrayInputStream(changedNestedClassfile) : super.getResourceAsStream(name);
+         }
+      };
+
+      assertNull(cache.recoverModifiedClass(key, loaderWithChangedClass, CLASS_NAME));
+      assertFalse(coverageData.getRawFileToFileData().containsKey(SOURCE_FILE));
+
+      assertNotNull(cache.recoverModifiedClass(key, loader, CLASS_NAME));
+   }
+
+   @Test
+   public void ignoreEntryForAnotherClass()
+   {
+      modifyAndStore(new HashMap<String, byte[]>());
+      forgetSourceFile();
+
+      assertNull(cache.recoverModifiedClass(key, loader, NESTED_CLASS_NAME));
+      assertFalse(coverageData.getRawFileToFileData().containsKey(SOURCE_FILE));
+   }
+
+   @Test
+   public void ignoreTruncatedEntry() throws Exception
+   {
+      modifyAndStore(new HashMap<String, byte[]>());
+      forgetSourceFile();
+
+      File entryFile = new File(tempFolder.getRoot(), "cache/" + key + ".jmc");
+      byte[] entry = Files.readAllBytes(entryFile.toPath());
+      Files.write(entryFile.toPath(), Arrays.copyOf(entry, entry.length - 3));
+
+      assertNull(cache.recoverModifiedClass(key, loader, CLASS_NAME));
+      assertFalse(coverageData.getRawFileToFileData().containsKey(SOURCE_FILE));
+   }
+
+   @Test
+   public void ignoreEntryWhenSourceFileAlreadyHasData()
+   {
+      modifyAndStore(new HashMap<String, byte[]>());
+
+      assertNull(cache.recoverModifiedClass(key, loader, CLASS_NAME));
+      assertNull(cache.recoverModifiedInnerClass(NESTED_CLASS_NAME));
+   }
+}
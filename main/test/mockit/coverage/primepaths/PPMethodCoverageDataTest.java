@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.primepaths;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.external.asm.*;
+
+public final class PPMethodCoverageDataTest
+{
+   // The nodes of a method equivalent to the following, where "other()" may throw a RuntimeException:
+   //
+   // void recursive(int depth, boolean fail) {
+   //    other();
+   //    try { if (depth > 0) recursive(depth - 1, fail); }
+   //    catch (RuntimeException e) { handle(); }
+   // }
+   static final class RecursiveMethod
+   {
+      final PPMethodCoverageData data = new PPMethodCoverageData();
+      final int callToOther;
+      final int tryStart;
+      final int ifDepth;
+      final int recursiveCall;
+      final int tryEnd;
+      final int gotoAfterHandler;
+      final int handler;
+      final int afterHandler;
+      final int returnExit;
+
+      RecursiveMethod()
+      {
+         Label start = new Label();
+         Label end = new Label();
+         Label handlerStart = new Label();
+         Label after = new Label();
+         PPNodeBuilder builder = new PPNodeBuilder();
+
+         builder.handleEntry(1);
+         builder.handleTryCatch(1, start, end, handlerStart, "java/lang/RuntimeException");
+         callToOther = builder.handleMethodCall(2, new Class<?>[] {RuntimeException.class});
+         tryStart = builder.handleJumpTarget(start, 3);
+         ifDepth = builder.handleJump(end, 3, true);
+         recursiveCall = builder.handleMethodCall(3, new Class<?>[] {RuntimeException.class});
+         tryEnd = builder.handleJumpTarget(end, 4);
+         gotoAfterHandler = builder.handleJump(after, 4, false);
+         handler = builder.handleJumpTarget(handlerStart, 5);
+         builder.handleRegularInstruction(5, 0);
+         afterHandler = builder.handleJumpTarget(after, 6);
+         returnExit = builder.handleExit(6, false);
+
+         data.buildPaths(6, builder);
+      }
+
+      // Executes the method as instrumented code would, recording the nodes reached by each invocation in "traces",
+      // in the order the invocations end.
+      void execute(int depth, boolean fail, List<int[]> traces)
+      {
+         List<Integer> trace = new ArrayList<Integer>();
+         reach(trace, 0, callToOther);
+
+         if (fail && depth == 0) {
+            traces.add(toArray(trace));
+            throw new RuntimeException();
+         }
+
+         reach(trace, tryStart, ifDepth);
+
+         if (depth > 0) {
+            reach(trace, recursiveCall);
+
+            try {
+               execute(depth - 1, fail, traces);
+               reach(trace, tryEnd, gotoAfterHandler);
+            }
+            catch (RuntimeException ignore) {
+               reach(trace, handler);
+            }
+         }
+         else {
+            reach(trace, tryEnd, gotoAfterHandler);
+         }
+
+         reach(trace, afterHandler, returnExit);
+         traces.add(toArray(trace));
+      }
+
+      private void reach(List<Integer> trace, int... nodeIndexes)
+      {
+         for (int nodeIndex : nodeIndexes) {
+            data.markNodeAsReached(nodeIndex);
+            trace.add(nodeIndex);
+         }
+      }
+
+      // Executes the given traces one after the other, with no invocation starting before the previous one ends.
+      void executeSeparately(List<int[]> traces)
+      {
+         for (int[] trace : traces) {
+            for (int nodeIndex : trace) {
+               data.markNodeAsReached(nodeIndex);
+            }
+         }
+      }
+   }
+
+   static int[] toArray(List<Integer> values)
+   {
+      int[] array = new int[values.size()];
+
+      for (int i = 0; i < array.length; i++) {
+         array[i] = values.get(i);
+      }
+
+      return array;
+   }
+
+   static void assertSameCounts(PPMethodCoverageData expected, PPMethodCoverageData actual)
+   {
+      List<PPath> expectedPaths = expected.getPaths();
+      List<PPath> actualPaths = actual.getPaths();
+      assertFalse(actualPaths.isEmpty());
+      assertEquals(expectedPaths.size(), actualPaths.size());
+
+      for (int i = 0; i < actualPaths.size(); i++) {
+         assertEquals("path " + i, expectedPaths.get(i).getExecutionCount(), actualPaths.get(i).getExecutionCount());
+      }
+   }
+
+   @Test
+   public void countRecursiveInvocationsAsIfEachOneRanSeparately()
+   {
+      RecursiveMethod method = new RecursiveMethod();
+      List<int[]> traces = new ArrayList<int[]>();
+      method.execute(3, false, traces);
+
+      RecursiveMethod separately = new RecursiveMethod();
+      separately.executeSeparately(traces);
+
+      assertEquals(4, traces.size());
+      assertSameCounts(separately.data, method.data);
+      assertTrue(method.data.getCoveredPaths() > 0);
+   }
+
+   @Test
+   public void discardInvocationsTerminatedByExceptionCaughtInCallingInvocation()
+   {
+      RecursiveMethod method = new RecursiveMethod();
+      List<int[]> traces = new ArrayList<int[]>();
+      method.execute(2, true, traces);
+      method.execute(0, false, traces);
+
+      // The innermost invocation was terminated by the exception, so only the other ones can be counted.
+      assertEquals(4, traces.size());
+      traces.remove(0);
+      RecursiveMethod separately = new RecursiveMethod();
+      separately.executeSeparately(traces);
+
+      assertSameCounts(separately.data, method.data);
+   }
+
+   // The nodes of a method equivalent to the following:
+   //
+   // void throwAndCatch(boolean fail) {
+   //    try { if (fail) throw new RuntimeException(); }
+   //    catch (RuntimeException e) { handle(); }
+   // }
+   @Test
+   public void countExecutionWithThrowCaughtInSameMethodOnlyOnceWhenItReturns()
+   {
+      Label start = new Label();
+      Label end = new Label();
+      Label handlerStart = new Label();
+      Label after = new Label();
+      PPNodeBuilder builder = new PPNodeBuilder();
+
+      builder.handleEntry(1);
+      builder.handleTryCatch(1, start, end, handlerStart, "java/lang/RuntimeException");
+      int tryStart = builder.handleJumpTarget(start, 2);
+      int ifFail = builder.handleJump(end, 2, true);
+      int throwExit = builder.handleExit(2, true);
+      int tryEnd = builder.handleJumpTarget(end, 3);
+      int gotoAfterHandler = builder.handleJump(after, 3, false);
+      int handler = builder.handleJumpTarget(handlerStart, 4);
+      builder.handleRegularInstruction(4, 0);
+      int afterHandler = builder.handleJumpTarget(after, 5);
+      int returnExit = builder.handleExit(5, false);
+
+      PPMethodCoverageData data = new PPMethodCoverageData();
+      data.buildPaths(5, builder);
+      assertFalse(data.getPaths().isEmpty());
+
+      int[] execution = {0, tryStart, ifFail, throwExit, handler, afterHandler, returnExit};
+      int[] previousCounts = new int[execution.length];
+
+      for (int i = 0; i < execution.length; i++) {
+         previousCounts[i] = data.markNodeAsReached(execution[i]);
+      }
+
+      assertEquals(-1, previousCounts[3]);
+      assertEquals(0, previousCounts[execution.length - 1]);
+
+      for (PPath path : data.getPaths()) {
+         assertTrue(path.getExecutionCount() <= 1);
+      }
+
+      int countsAfterOneExecution = data.getExecutionCount();
+      assertTrue(countsAfterOneExecution > 0);
+
+      int[] executionWithoutThrow = {0, tryStart, ifFail, tryEnd, gotoAfterHandler, afterHandler, returnExit};
+
+      for (int nodeIndex : executionWithoutThrow) {
+         data.markNodeAsReached(nodeIndex);
+      }
+
+      assertTrue(data.getExecutionCount() > countsAfterOneExecution);
+   }
+
+   @Test
+   public void countExecutionsOfSameMethodInTwoThreads() throws Exception
+   {
+      final int executionsPerThread = 1000;
+      RecursiveMethod singleExecution = new RecursiveMethod();
+      singleExecution.execute(2, true, new ArrayList<int[]>());
+      singleExecution.execute(1, false, new ArrayList<int[]>());
+
+      final RecursiveMethod method = new RecursiveMethod();
+      Callable<Void> executions = new Callable<Void>() {
+         @Override
+         public Void call()
+         {
+            for (int i = 0; i < executionsPerThread; i++) {
+               method.execute(2, true, new ArrayList<int[]>());
+               method.execute(1, false, new ArrayList<int[]>());
+            }
+
+            return null;
+         }
+      };
+      ExecutorService threads = Executors.newFixedThreadPool(2);
+
+      try {
+         Future<Void> first = threads.submit(executions);
+         Future<Void> second = threads.submit(executions);
+         first.get();
+         second.get();
+      }
+      finally {
+         threads.shutdown();
+      }
+
+      List<PPath> pathsExecutedOnce = singleExecution.data.getPaths();
+      List<PPath> paths = method.data.getPaths();
+      assertEquals(pathsExecutedOnce.size(), paths.size());
+
+      for (int i = 0; i < paths.size(); i++) {
+         int expectedCount = 2 * executionsPerThread * pathsExecutedOnce.get(i).getExecutionCount();
+         assertEquals("path " + i, expectedCount, paths.get(i).getExecutionCount());
+      }
+
+      assertTrue(method.data.getExecutionCount() > 0);
+   }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.primepaths;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.coverage.reporting.ppathCoverage.*;
+import mockit.external.asm.*;
+
+public final class PPathBuilderTest
+{
+   // Each "if" statement without an "else" doubles the number of paths from entry to exit.
+   static PPMethodCoverageData buildMethodWithSequentialIfStatements(int ifStatements)
+   {
+      PPNodeBuilder builder = new PPNodeBuilder();
+      int line = 1;
+      builder.handleEntry(line);
+
+      for (int i = 0; i < ifStatements; i++) {
+         Label afterIf = new Label();
+         builder.handleJump(afterIf, line, true);
+         builder.handleRegularInstruction(line + 1, 0);
+         builder.handleJumpTarget(afterIf, line + 2);
+         line += 2;
+      }
+
+      builder.handleExit(line, false);
+
+      PPMethodCoverageData methodData = new PPMethodCoverageData();
+      methodData.buildPaths(line, builder);
+      return methodData;
+   }
+
+   static String writeReportOutput(PPMethodCoverageData methodData)
+   {
+      StringWriter report = new StringWriter();
+      PPathCoverageOutput output = new PPathCoverageOutput(new PrintWriter(report), Arrays.asList(methodData));
+      output.writePathCoverageInfoIfLineStartsANewMethodOrConstructor(methodData.getFirstLineInBody());
+      return report.toString();
+   }
+
+   @Test
+   public void enumeratePrimePathsOfMethodBelowTheCap()
+   {
+      PPMethodCoverageData methodData = buildMethodWithSequentialIfStatements(9);
+
+      assertFalse(methodData.isTooComplex());
+      assertEquals(512, methodData.getTotalPaths());
+
+      String report = writeReportOutput(methodData);
+      assertTrue(report.contains("Path coverage: 0/512"));
+      assertFalse(report.contains("too complex"));
+   }
+
+   @Test
+   public void markMethodAboveTheCapAsTooComplexAndReportItWithANote()
+   {
+      assertEquals(1000, PPMethodCoverageData.getMaxPrimePaths());
+      PPMethodCoverageData methodData = buildMethodWithSequentialIfStatements(11);
+
+      assertTrue(methodData.isTooComplex());
+      assertEquals(0, methodData.getTotalPaths());
+      assertEquals(-1, methodData.markNodeAsReached(0));
+
+      String report = writeReportOutput(methodData);
+      assertTrue(report.contains("Path coverage: too complex (more than 1000 prime paths)"));
+   }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.primepaths;
+
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.external.asm.*;
+
+public final class PPathMatcherTest
+{
+   interface MethodShape { void build(PPNodeBuilder builder); }
+
+   static final MethodShape LOOP_WITH_CONDITIONAL_IN_BODY = new MethodShape() {
+      @Override
+      public void build(PPNodeBuilder builder)
+      {
+         Label loopCondition = new Label();
+         Label afterLoop = new Label();
+         Label afterIf = new Label();
+
+         builder.handleEntry(1);
+         builder.handleJumpTarget(loopCondition, 2);
+         builder.handleJump(afterLoop, 2, true);
+         builder.handleRegularInstruction(3, 0);
+         builder.handleJump(afterIf, 3, true);
+         builder.handleRegularInstruction(4, 0);
+         builder.handleJumpTarget(afterIf, 5);
+         builder.handleJump(loopCondition, 5, false);
+         builder.handleJumpTarget(afterLoop, 6);
+         builder.handleExit(6, false);
+      }
+   };
+
+   static final MethodShape CONDITIONALS_BEFORE_AND_INSIDE_NESTED_LOOPS = new MethodShape() {
+      @Override
+      public void build(PPNodeBuilder builder)
+      {
+         Label elseBlock = new Label();
+         Label afterIf = new Label();
+         Label outerCondition = new Label();
+         Label innerCondition = new Label();
+         Label afterInnerLoop = new Label();
+         Label afterOuterLoop = new Label();
+
+         builder.handleEntry(1);
+         builder.handleJump(elseBlock, 1, true);
+         builder.handleRegularInstruction(2, 0);
+         builder.handleJump(afterIf, 2, false);
+         builder.handleJumpTarget(elseBlock, 3);
+         builder.handleRegularInstruction(3, 0);
+         builder.handleJumpTarget(afterIf, 4);
+         builder.handleJumpTarget(outerCondition, 5);
+         builder.handleJump(afterOuterLoop, 5, true);
+         builder.handleJumpTarget(innerCondition, 6);
+         builder.handleJump(afterInnerLoop, 6, true);
+         builder.handleRegularInstruction(7, 0);
+         builder.handleJump(innerCondition, 7, false);
+         builder.handleJumpTarget(afterInnerLoop, 8);
+         builder.handleJump(outerCondition, 8, false);
+         builder.handleJumpTarget(afterOuterLoop, 9);
+         builder.handleExit(9, false);
+      }
+   };
+
+   static final class Method
+   {
+      final PPNodeBuilder builder = new PPNodeBuilder();
+      final PPMethodCoverageData data = new PPMethodCoverageData();
+      final int[][] successors;
+
+      Method(MethodShape shape)
+      {
+         shape.build(builder);
+         successors = getSuccessorsOfOriginalNodes(builder.nodes);
+         data.buildPaths(builder.nodes.get(builder.nodes.size() - 1).line, builder);
+      }
+
+      // Recorded before the paths are built, since building them simplifies the graph.
+      private static int[][] getSuccessorsOfOriginalNodes(List<PPNode> nodes)
+      {
+         int[][] successors = new int[nodes.size()][];
+
+         for (int i = 0; i < successors.length; i++) {
+            PPNode node = nodes.get(i);
+            List<Integer> nodeSuccessors = new ArrayList<Integer>();
+
+            if (node.getNextConsecutiveNode() != null) {
+               nodeSuccessors.add(indexOf(nodes, node.getNextConsecutiveNode()));
+            }
+
+            if (node.getJumpNodes() != null) {
+               for (PPNode jumpNode : node.getJumpNodes()) {
+                  nodeSuccessors.add(indexOf(nodes, jumpNode));
+               }
+            }
+
+            successors[i] = new int[nodeSuccessors.size()];
+
+            for (int j = 0; j < successors[i].length; j++) {
+               successors[i][j] = nodeSuccessors.get(j);
+            }
+         }
+
+         return successors;
+      }
+
+      private static int indexOf(List<PPNode> nodes, PPNode node)
+      {
+         for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i) == node) return i;
+         }
+
+         throw new IllegalArgumentException("Node not found: " + node);
+      }
+
+      // An execution of the method, as the sequence of node indexes reached from its entry to an exit.
+      int[] randomExecution(Random random)
+      {
+         List<Integer> trace = new ArrayList<Integer>();
+         int nodeIndex = 0;
+
+         while (true) {
+            trace.add(nodeIndex);
+            int[] nextNodes = successors[nodeIndex];
+
+            if (nextNodes.length == 0) break;
+
+            nodeIndex = nextNodes[random.nextInt(nextNodes.length)];
+         }
+
+         int[] execution = new int[trace.size()];
+
+         for (int i = 0; i < execution.length; i++) {
+            execution[i] = trace.get(i);
+         }
+
+         return execution;
+      }
+
+      void execute(int[] execution)
+      {
+         for (int nodeIndex : execution) {
+            data.markNodeAsReached(nodeIndex);
+         }
+      }
+
+      // The matching done before prime paths were matched incrementally: the whole sequence of nodes reached in the
+      // execution is searched for each prime path of the entry node, whenever an exit node is reached.
+      void executeAsBaseline(int[] execution)
+      {
+         List<PPNode> nodesReached = new ArrayList<PPNode>();
+
+         for (int nodeIndex : execution) {
+            PPNode node = builder.nodes.get(nodeIndex);
+
+            if (node.isEntry() || !node.getIncomingNodes().isEmpty()) {
+               PPNode n = node.isSimplified() ? node.getSubsumedBy() : node;
+
+               if (nodesReached.isEmpty() || nodesReached.get(nodesReached.size() - 1) != n) {
+                  nodesReached.add(n);
+               }
+            }
+
+            if (node.isExit()) {
+               PPNode start = nodesReached.get(0);
+
+               if (start.isEntry() && start.getPrimePaths() != null) {
+                  for (PPath path : start.getPrimePaths()) {
+                     if (allNodesWereReached(path.getNodes(), nodesReached)) {
+                        path.countExecution();
+                     }
+                  }
+               }
+            }
+         }
+      }
+
+      private static boolean allNodesWereReached(List<PPNode> pathNodes, List<PPNode> nodesReached)
+      {
+         PPNode startPath = pathNodes.get(0);
+         int posReached = nodesReached.indexOf(startPath);
+         if (posReached < 0) return false;
+
+         int posPath = 0;
+
+         while (true) {
+            if (nodesReached.get(posReached) != pathNodes.get(posPath)) {
+               while (nodesReached.get(posReached) != startPath) {
+                  posReached++;
+                  if (posReached >= nodesReached.size()) return false;
+               }
+
+               posPath = 0;
+            }
+
+            posPath++;
+            if (posPath == pathNodes.size()) return true;
+
+            posReached++;
+            if (posReached == nodesReached.size()) return false;
+         }
+      }
+   }
+
+   @Test
+   public void countPathExecutionsInLoopWithConditionalAsTheBaselineMatchingDid()
+   {
+      assertSameCountsAsBaseline(LOOP_WITH_CONDITIONAL_IN_BODY, 1);
+   }
+
+   @Test
+   public void countPathExecutionsInNestedLoopsAsTheBaselineMatchingDid()
+   {
+      assertSameCountsAsBaseline(CONDITIONALS_BEFORE_AND_INSIDE_NESTED_LOOPS, 2);
+   }
+
+   static void assertSameCountsAsBaseline(MethodShape shape, long seed)
+   {
+      Method method = new Method(shape);
+      Method baseline = new Method(shape);
+      List<PPath> paths = method.data.paths;
+      assertTrue(paths.size() > 1);
+      assertEquals(baseline.data.paths.size(), paths.size());
+      assertSame(paths, method.builder.nodes.get(0).getPrimePaths());
+
+      Random random = new Random(seed);
+
+      for (int i = 0; i < 200; i++) {
+         int[] execution = method.randomExecution(random);
+         method.execute(execution);
+         baseline.executeAsBaseline(execution);
+      }
+
+      for (int i = 0; i < paths.size(); i++) {
+         assertEquals("path " + i, baseline.data.paths.get(i).getExecutionCount(), paths.get(i).getExecutionCount());
+      }
+
+      assertEquals(baseline.data.getCoveredPaths(), method.data.getCoveredPaths());
+      assertEquals(baseline.data.getExecutionCount(), method.data.getExecutionCount());
+      assertTrue(method.data.getCoveredPaths() > 0);
+   }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.reporting;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
+import mockit.coverage.reporting.sourceFiles.*;
+
+public final class ReportManifestTest
+{
+   static final String UNCHANGED = "pkg/Unchanged.java";
+   static final String CHANGED = "pkg/Changed.java";
+
+   @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+   File sourceDir;
+   String outputDir;
+   final Map<String, FileCoverageData> fileToFileData = new LinkedHashMap<String, FileCoverageData>();
+
+   @Before
+   public void createSourceFilesAndTheirCoverageData() throws IOException
+   {
+      sourceDir = tempFolder.newFolder("src");
+      outputDir = tempFolder.newFolder("report").getPath();
+
+      for (String sourceFile : Arrays.asList(UNCHANGED, CHANGED)) {
+         writeSourceFile(sourceFile, "class " + sourceFile + " {}");
+
+         FileCoverageData fileData = new FileCoverageData(fileToFileData.size(), "class");
+         PerFileLineCoverage lineData = new PerFileLineCoverage();
+         lineData.addLine(1, false);
+         lineData.registerExecution(1, null);
+         fileData.lineCoverageInfo = lineData;
+         fileToFileData.put(sourceFile, fileData);
+      }
+   }
+
+   void writeSourceFile(String sourceFile, String contents) throws IOException
+   {
+      File file = new File(sourceDir, sourceFile);
+      //noinspection ResultOfMethodCallIgnored
+      file.getParentFile().mkdirs();
+      Writer output = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+      try {
+         output.write(contents);
+      }
+      finally {
+         output.close();
+      }
+   }
+
+   // Writes a report as CoverageReport does, returning the source files whose pages were generated.
+   List<String> writeReport(boolean withCallPoints) throws IOException
+   {
+      ReportManifest manifest = new ReportManifest(outputDir, withCallPoints);
+      List<String> generatedPages = new ArrayList<String>();
+
+      for (Map.Entry<String, FileCoverageData> fileAndData : fileToFileData.entrySet()) {
+         String sourceFile = fileAndData.getKey();
+         InputFile inputFile = InputFile.createIfFileExists(Collections.singletonList(sourceDir), sourceFile);
+         assertNotNull(inputFile);
+
+         if (manifest.isPageOutdated(sourceFile, inputFile, fileAndData.getValue())) {
+            File page = OutputFile.getOutputFile(outputDir, sourceFile);
+            //noinspection ResultOfMethodCallIgnored
+            page.getParentFile().mkdirs();
+            //noinspection ResultOfMethodCallIgnored
+            page.createNewFile();
+            generatedPages.add(sourceFile);
+         }
+      }
+
+      manifest.write(fileToFileData.keySet());
+      return generatedPages;
+   }
+
+   @Test
+   public void skipPagesForUnchangedSourcesAndRegenerateThoseForChangedOnes() throws Exception
+   {
+      assertEquals(Arrays.asList(UNCHANGED, CHANGED), writeReport(false));
+      assertEquals(Collections.emptyList(), writeReport(false));
+
+      writeSourceFile(CHANGED, "class Changed { int field; }");
+      assertEquals(Collections.singletonList(CHANGED), writeReport(false));
+      assertEquals(Collections.emptyList(), writeReport(false));
+   }
+
+   @Test
+   public void regeneratePageForSourceWithChangedCoverageData() throws Exception
+   {
+      writeReport(false);
+
+      fileToFileData.get(CHANGED).lineCoverageInfo.registerExecution(1, null);
+
+      assertEquals(Collections.singletonList(CHANGED), writeReport(false));
+   }
+
+   @Test
+   public void regeneratePageWhichNoLongerExists() throws Exception
+   {
+      writeReport(false);
+
+      assertTrue(OutputFile.getOutputFile(outputDir, CHANGED).delete());
+
+      assertEquals(Collections.singletonList(CHANGED), writeReport(false));
+   }
+
+   @Test
+   public void regenerateAllPagesWhenSettingsChange() throws Exception
+   {
+      writeReport(false);
+
+      assertEquals(Arrays.asList(UNCHANGED, CHANGED), writeReport(true));
+   }
+
+   @Test
+   public void regenerateAllPagesAfterIncompleteReport() throws Exception
+   {
+      writeReport(false);
+
+      // A report which fails before writing its manifest leaves none behind.
+      new ReportManifest(outputDir, false);
+
+      assertEquals(Arrays.asList(UNCHANGED, CHANGED), writeReport(false));
+   }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.external.asm;
+
+public final class FramesSample
+{
+   public static int probes;
+
+   public static void probe() { probes++; }
+
+   public static int lengthOf(boolean longer)
+   {
+      CharSequence text = "abc";
+
+      if (longer) {
+         text = new StringBuilder("abcd");
+      }
+
+      return text.length();
+   }
+
+   public static int sumOfQuotients(int[] divisors)
+   {
+      int sum = 0;
+
+      for (int divisor : divisors) {
+         try {
+            sum += 10 / divisor;
+         }
+         catch (ArithmeticException ignore) {
+            sum--;
+         }
+      }
+
+      return sum;
+   }
+
+   public static int lengthOfCopy(boolean original)
+   {
+      CharSequence text = "abc";
+
+      if (original) {
+         text = new StringBuilder("ab");
+      }
+
+      return text.length() + new StringBuilder(original ? text : "x").length();
+   }
+
+   public static String copyOf(boolean original)
+   {
+      CharSequence text = "abc";
+
+      if (original) {
+         text = new StringBuilder("ab");
+      }
+
+      return new StringBuilder(original ? text : "x").toString();
+   }
+}
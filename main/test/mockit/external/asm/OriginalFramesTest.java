@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.external.asm;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import static mockit.external.asm.Opcodes.*;
+import mockit.external.asm.OriginalFrames.*;
+
+public final class OriginalFramesTest
+{
+   static final String SAMPLE_DESC = "mockit/external/asm/FramesSample";
+   static final String SAMPLE_NAME = SAMPLE_DESC.replace('/', '.');
+
+   enum Modification { PROBES, PROBES_WITHOUT_ORIGINAL_FRAMES, ADDED_BRANCH, ADDED_LOCAL }
+
+   static byte[] originalClassfile;
+
+   @BeforeClass
+   public static void readSampleClassfile() throws IOException
+   {
+      InputStream input = FramesSample.class.getClassLoader().getResourceAsStream(SAMPLE_DESC + ".class");
+      assertNotNull(input);
+
+      try {
+         originalClassfile = new ClassReader(input).code;
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   // Inserts a call to a probe method at the start of each line of the static sample methods, as coverage does, plus
+   // the given modification in the given method, or in all of them if none is given.
+   static byte[] modifySample(final Modification modification, final String methodToModifyFurther)
+   {
+      ClassReader cr = new ClassReader(originalClassfile);
+
+      WrappingClassVisitor modifier = new WrappingClassVisitor(new ClassWriter(cr)) {
+         @Override
+         public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions)
+         {
+            MethodWriter mw = cw.visitMethod(access, name, desc, signature, exceptions);
+
+            if ("probe".equals(name) || name.charAt(0) == '<') {
+               return mw;
+            }
+
+            boolean modifyFurther = methodToModifyFurther == null || name.equals(methodToModifyFurther);
+            return new ProbeInserter(mw, modifyFurther ? modification : Modification.PROBES);
+         }
+      };
+
+      cr.accept(modifier);
+      return modifier.toByteArray();
+   }
+
+   static final class ProbeInserter extends WrappingMethodVisitor
+   {
+      final Modification modification;
+      boolean firstLabel = true;
+
+      ProbeInserter(MethodWriter mw, Modification modification)
+      {
+         super(mw);
+         this.modification = modification;
+      }
+
+      @Override
+      public void visitLabel(Label label)
+      {
+         if (modification == Modification.PROBES_WITHOUT_ORIGINAL_FRAMES) {
+            label.originalFrames = null;
+         }
+
+         mw.visitLabel(label);
+
+         if (firstLabel) {
+            firstLabel = false;
+
+            if (modification == Modification.ADDED_BRANCH) {
+               Label skipProbe = new Label();
+               mw.visitInsn(ICONST_1);
+               mw.visitJumpInsn(IFNE, skipProbe);
+               mw.visitMethodInsn(INVOKESTATIC, SAMPLE_DESC, "probe", "()V", false);
+               mw.visitLabel(skipProbe);
+            }
+            else if (modification == Modification.ADDED_LOCAL) {
+               mw.visitInsn(ICONST_0);
+               mw.visitVarInsn(ISTORE, 20);
+            }
+         }
+      }
+
+      @Override
+      public void visitLineNumber(int line, Label start)
+      {
+         mw.visitLineNumber(line, start);
+         mw.visitMethodInsn(INVOKESTATIC, SAMPLE_DESC, "probe", "()V", false);
+      }
+   }
+
+   static final class MethodFrames
+   {
+      OriginalFrames frames;
+      int maxStack;
+   }
+
+   static Map<String, MethodFrames> readFrames(byte[] classfile)
+   {
+      final Map<String, MethodFrames> framesPerMethod = new HashMap<String, MethodFrames>();
+
+      new ClassReader(classfile).accept(new ClassVisitor() {
+         @Override
+         public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions)
+         {
+            final MethodFrames methodFrames = new MethodFrames();
+            framesPerMethod.put(name, methodFrames);
+
+            return new MethodVisitor() {
+               @Override
+               public void visitLabel(Label label)
+               {
+                  if (label.originalFrames != null) {
+                     methodFrames.frames = label.originalFrames;
+                  }
+               }
+
+               @Override
+               public void visitMaxStack(int maxStack) { methodFrames.maxStack = maxStack; }
+            };
+         }
+      });
+
+      return framesPerMethod;
+   }
+
+   // Describes the positions of the frames, and their stack items, with reference types which may be computed
+   // differently from the original ones only identified as such.
+   static List<String> describePositionsAndStacks(OriginalFrames frames)
+   {
+      List<String> description = new ArrayList<String>();
+
+      for (int i = 0; i < frames.labels.length; i++) {
+         StringBuilder frame = new StringBuilder().append(frames.labels[i].position).append(':');
+
+         for (Object type : frames.stacks[i]) {
+            if (type instanceof Integer) {
+               frame.append(' ').append(type);
+            }
+            else if (type instanceof Uninitialized) {
+               Uninitialized uninitialized = (Uninitialized) type;
+               frame.append(" new ").append(uninitialized.type).append('@');
+               frame.append(uninitialized.newInstruction.position);
+            }
+            else {
+               frame.append(" ref");
+            }
+         }
+
+         description.add(frame.toString());
+      }
+
+      return description;
+   }
+
+   static Object secondLocalInLastFrame(Map<String, MethodFrames> framesPerMethod, String method)
+   {
+      OriginalFrames frames = framesPerMethod.get(method).frames;
+      Object[] locals = frames.locals[frames.locals.length - 1];
+      return locals[1];
+   }
+
+   static Class<?> loadSample(final byte[] classfile) throws ClassNotFoundException
+   {
+      ClassLoader loader = new ClassLoader(FramesSample.class.getClassLoader()) {
+         @Override
+         protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+         {
+            if (!SAMPLE_NAME.equals(name)) {
+               return super.loadClass(name, resolve);
+            }
+
+            Class<?> loadedClass = findLoadedClass(name);
+            return loadedClass != null ? loadedClass : defineClass(name, classfile, 0, classfile.length);
+         }
+      };
+
+      return loader.loadClass(SAMPLE_NAME);
+   }
+
+   // Loading the class with verification enabled checks its frames.
+   static void assertModifiedSampleWorks(byte[] classfile) throws Exception
+   {
+      Class<?> sample = loadSample(classfile);
+      Method lengthOf = sample.getMethod("lengthOf", boolean.class);
+      Method sumOfQuotients = sample.getMethod("sumOfQuotients", int[].class);
+      Method lengthOfCopy = sample.getMethod("lengthOfCopy", boolean.class);
+      Method copyOf = sample.getMethod("copyOf", boolean.class);
+
+      assertEquals(4, lengthOf.invoke(null, true));
+      assertEquals(3, lengthOf.invoke(null, false));
+      assertEquals(11, sumOfQuotients.invoke(null, new int[] {1, 0, 5}));
+      assertEquals(4, lengthOfCopy.invoke(null, true));
+      assertEquals(4, lengthOfCopy.invoke(null, false));
+      assertEquals("ab", copyOf.invoke(null, true));
+      assertEquals("x", copyOf.invoke(null, false));
+      assertTrue(sample.getField("probes").getInt(null) > 0);
+   }
+
+   @Test
+   public void carriedOverFramesMatchThoseComputedFromScratch() throws Exception
+   {
+      byte[] withCarriedOverFrames = modifySample(Modification.PROBES, null);
+      byte[] withComputedFrames = modifySample(Modification.PROBES_WITHOUT_ORIGINAL_FRAMES, null);
+      Map<String, MethodFrames> carriedOver = readFrames(withCarriedOverFrames);
+      Map<String, MethodFrames> computed = readFrames(withComputedFrames);
+
+      for (String method : Arrays.asList("lengthOf", "sumOfQuotients", "lengthOfCopy", "copyOf")) {
+         MethodFrames carriedOverFrames = carriedOver.get(method);
+         MethodFrames computedFrames = computed.get(method);
+
+         assertEquals(method, computedFrames.maxStack, carriedOverFrames.maxStack);
+         List<String> expectedFrames = describePositionsAndStacks(computedFrames.frames);
+         assertEquals(method, expectedFrames, describePositionsAndStacks(carriedOverFrames.frames));
+      }
+
+      // The original frames have the declared types of local variables, while computed ones have a common super-class.
+      assertEquals("java/lang/CharSequence", secondLocalInLastFrame(carriedOver, "lengthOf"));
+      assertEquals("java/lang/Object", secondLocalInLastFrame(computed, "lengthOf"));
+      assertEquals("java/lang/CharSequence", secondLocalInLastFrame(carriedOver, "lengthOfCopy"));
+      assertTrue(describePositionsAndStacks(carriedOver.get("lengthOfCopy").frames).toString().contains("new "));
+
+      assertModifiedSampleWorks(withCarriedOverFrames);
+      assertModifiedSampleWorks(withComputedFrames);
+   }
+
+   @Test
+   public void computeFramesFromScratchWhenABranchIsAdded() throws Exception
+   {
+      byte[] modifiedClassfile = modifySample(Modification.ADDED_BRANCH, "lengthOf");
+      Map<String, MethodFrames> framesPerMethod = readFrames(modifiedClassfile);
+
+      assertEquals("java/lang/Object", secondLocalInLastFrame(framesPerMethod, "lengthOf"));
+      assertEquals(
+         readFrames(originalClassfile).get("lengthOf").frames.labels.length + 1,
+         framesPerMethod.get("lengthOf").frames.labels.length);
+      assertEquals("java/lang/CharSequence", secondLocalInLastFrame(framesPerMethod, "lengthOfCopy"));
+      assertModifiedSampleWorks(modifiedClassfile);
+   }
+
+   @Test
+   public void computeFramesFromScratchWhenALocalVariableIsAdded() throws Exception
+   {
+      byte[] modifiedClassfile = modifySample(Modification.ADDED_LOCAL, "lengthOf");
+      Map<String, MethodFrames> framesPerMethod = readFrames(modifiedClassfile);
+
+      assertEquals("java/lang/Object", secondLocalInLastFrame(framesPerMethod, "lengthOf"));
+      assertModifiedSampleWorks(modifiedClassfile);
+   }
+
+   @Test
+   public void computeFramesFromScratchWhenCodeIsInsertedBeforeTheNewInstructionOfAnUninitializedType() throws Exception
+   {
+      // The line of the return statement starts with the NEW instruction which creates the uninitialized object.
+      OriginalFrames originalFrames = readFrames(originalClassfile).get("copyOf").frames;
+      assertTrue(describePositionsAndStacks(originalFrames).toString().contains("new "));
+
+      byte[] modifiedClassfile = modifySample(Modification.PROBES, null);
+      Map<String, MethodFrames> framesPerMethod = readFrames(modifiedClassfile);
+
+      assertEquals("java/lang/Object", secondLocalInLastFrame(framesPerMethod, "copyOf"));
+      assertTrue(describePositionsAndStacks(framesPerMethod.get("copyOf").frames).toString().contains("new "));
+      assertEquals("java/lang/CharSequence", secondLocalInLastFrame(framesPerMethod, "lengthOfCopy"));
+      assertModifiedSampleWorks(modifiedClassfile);
+   }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+import mockit.internal.ModifiedClassfileStore.*;
+import mockit.internal.util.*;
+
+public final class ModifiedClassfileStoreTest
+{
+   public static class Base { public String version() { return "version-1"; } }
+   public static final class Sub extends Base {}
+
+   static final String BASE_NAME = Base.class.getName();
+   static final String SUB_NAME = Sub.class.getName();
+   static final String SUB_DESC = SUB_NAME.replace('.', '/');
+   static final String BASE_DESC = BASE_NAME.replace('.', '/');
+   static final Map<String, String> NO_SUPER_CLASSES = Collections.emptyMap();
+
+   @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+   ModifiedClassfileStore store;
+   byte[] subClassfile;
+
+   @Before
+   public void createStore() throws IOException
+   {
+      store = new ModifiedClassfileStore(tempFolder.newFolder("store"));
+      subClassfile = readClassfile(SUB_NAME);
+   }
+
+   static byte[] readClassfile(String className) throws IOException
+   {
+      InputStream input = Sub.class.getClassLoader().getResourceAsStream(className.replace('.', '/') + ".class");
+      assertNotNull(input);
+
+      try {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         byte[] buffer = new byte[4096];
+
+         for (int bytesRead; (bytesRead = input.read(buffer)) >= 0; ) {
+            bytes.write(buffer, 0, bytesRead);
+         }
+
+         return bytes.toByteArray();
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   // Loads both classes in a new class loader, with the given version of the base class.
+   static Class<?> loadSubClassWithBaseVersion(String version) throws Exception
+   {
+      byte[] baseClassfile = readClassfile(BASE_NAME);
+      String originalVersion = "version-1";
+      assertEquals(originalVersion.length(), version.length());
+      int i = new String(baseClassfile, "ISO-8859-1").indexOf(originalVersion);
+      assertTrue(i > 0);
+      System.arraycopy(version.getBytes("ISO-8859-1"), 0, baseClassfile, i, version.length());
+
+      final Map<String, byte[]> classfiles = new HashMap<String, byte[]>();
+      classfiles.put(BASE_NAME, baseClassfile);
+      classfiles.put(SUB_NAME, readClassfile(SUB_NAME));
+
+      ClassLoader loader = new ClassLoader(Sub.class.getClassLoader()) {
+         @Override
+         protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+         {
+            byte[] classfile = classfiles.get(name);
+
+            if (classfile == null) {
+               return super.loadClass(name, resolve);
+            }
+
+            Class<?> loadedClass = findLoadedClass(name);
+            return loadedClass != null ? loadedClass : defineClass(name, classfile, 0, classfile.length);
+         }
+      };
+
+      Class<?> subClass = loader.loadClass(SUB_NAME);
+      assertSame(loader, subClass.getSuperclass().getClassLoader());
+      return subClass;
+   }
+
+   @Test
+   public void restoreStoredClassWhenNeitherTheClassNorItsOptionsNorItsSuperTypesChanged() throws Exception
+   {
+      byte[] modifiedClassfile = {1, 2, 3};
+      String key = store.computeKey("options", loadSubClassWithBaseVersion("version-1"), subClassfile);
+      store.writeEntry(key, modifiedClassfile, Collections.singletonList("some/RelatedType"), NO_SUPER_CLASSES);
+
+      String sameKey = store.computeKey("options", loadSubClassWithBaseVersion("version-1"), subClassfile);
+      StoredClassfile storedClass = store.readEntry(sameKey);
+
+      assertEquals(key, sameKey);
+      assertNotNull(storedClass);
+      assertArrayEquals(modifiedClassfile, storedClass.modifiedClassfile);
+      assertEquals(Collections.singletonList("some/RelatedType"), storedClass.relatedTypes);
+   }
+
+   @Test
+   public void missWhenTheModificationOptionsChange() throws Exception
+   {
+      Class<?> subClass = loadSubClassWithBaseVersion("version-1");
+      store.writeEntry(store.computeKey("options", subClass, subClassfile), null, null, NO_SUPER_CLASSES);
+
+      String key = store.computeKey("other options", subClass, subClassfile);
+
+      assertNull(store.readEntry(key));
+   }
+
+   @Test
+   public void missWhenASuperTypeChanges() throws Exception
+   {
+      String key = store.computeKey("options", loadSubClassWithBaseVersion("version-1"), subClassfile);
+      store.writeEntry(key, new byte[] {1, 2, 3}, null, NO_SUPER_CLASSES);
+
+      String keyWithChangedBase = store.computeKey("options", loadSubClassWithBaseVersion("version-2"), subClassfile);
+
+      assertFalse(key.equals(keyWithChangedBase));
+      assertNull(store.readEntry(keyWithChangedBase));
+   }
+
+   @Test
+   public void restoreStoredClassOnlyWhileTheSuperClassesConsultedDuringItsModificationAreTheSame() throws Exception
+   {
+      String key = store.computeKey("options", Sub.class, subClassfile);
+      store.writeEntry(key, new byte[] {1}, null, Collections.singletonMap(SUB_DESC, BASE_DESC));
+
+      assertNotNull(store.readEntry(key));
+
+      store.writeEntry(key, new byte[] {1}, null, Collections.singletonMap(SUB_DESC, "java/lang/Number"));
+      assertNull(store.readEntry(key));
+
+      store.writeEntry(key, new byte[] {1}, null, Collections.singletonMap("pkg/Missing", "java/lang/Object"));
+      assertNull(store.readEntry(key));
+   }
+
+   @Test
+   public void recordSuperClassesConsultedExceptThoseOfClassesBeingWritten()
+   {
+      assertTrue(ClassLoad.startRecordingSuperClasses());
+      Map<String, String> superClasses;
+
+      try {
+         assertFalse(ClassLoad.startRecordingSuperClasses());
+         ClassLoad.addSuperClass("pkg/BeingWritten", "java/lang/Object");
+         ClassLoad.getSuperClass("pkg/BeingWritten");
+         ClassLoad.getSuperClass(SUB_DESC);
+         ClassLoad.getSuperClass("java/lang/Integer");
+      }
+      finally {
+         superClasses = ClassLoad.getRecordedSuperClasses(true);
+      }
+
+      Map<String, String> expected = new HashMap<String, String>();
+      expected.put(SUB_DESC, BASE_DESC);
+      expected.put("java/lang/Integer", "java/lang/Number");
+      assertEquals(expected, superClasses);
+      assertTrue(ClassLoad.getRecordedSuperClasses(true).isEmpty());
+   }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.capturing;
+
+import java.io.*;
+import java.nio.charset.*;
+
+/**
+ * Builds minimal classfiles with no members, where the constant pool gets the entries added before the class is built.
+ */
+final class ClassfileBuilder
+{
+   private final ByteArrayOutputStream constantPool = new ByteArrayOutputStream();
+   private int entryCount = 1;
+
+   private int newEntry(int tag, int slots)
+   {
+      constantPool.write(tag);
+      int index = entryCount;
+      entryCount += slots;
+      return index;
+   }
+
+   private void u2(int value)
+   {
+      constantPool.write(value >>> 8);
+      constantPool.write(value);
+   }
+
+   private void u4(int value)
+   {
+      u2(value >>> 16);
+      u2(value);
+   }
+
+   int utf8(String value)
+   {
+      byte[] bytes = value.getBytes(Charset.forName("UTF-8"));
+      int index = newEntry(1, 1);
+      u2(bytes.length);
+      constantPool.write(bytes, 0, bytes.length);
+      return index;
+   }
+
+   int classEntry(String internalName)
+   {
+      int name = utf8(internalName);
+      int index = newEntry(7, 1);
+      u2(name);
+      return index;
+   }
+
+   int longEntry(long value)
+   {
+      int index = newEntry(5, 2);
+      u4((int) (value >>> 32));
+      u4((int) value);
+      return index;
+   }
+
+   int doubleEntry(double value)
+   {
+      long bits = Double.doubleToLongBits(value);
+      int index = newEntry(6, 2);
+      u4((int) (bits >>> 32));
+      u4((int) bits);
+      return index;
+   }
+
+   int nameAndType(String name, String desc)
+   {
+      int nameIndex = utf8(name);
+      int descIndex = utf8(desc);
+      int index = newEntry(12, 1);
+      u2(nameIndex);
+      u2(descIndex);
+      return index;
+   }
+
+   int methodHandleForStaticMethod(String owner, String name, String desc)
+   {
+      int ownerIndex = classEntry(owner);
+      int nameAndType = nameAndType(name, desc);
+      int methodRef = newEntry(10, 1);
+      u2(ownerIndex);
+      u2(nameAndType);
+
+      int index = newEntry(15, 1);
+      constantPool.write(6); // REF_invokeStatic
+      u2(methodRef);
+      return index;
+   }
+
+   int methodType(String desc)
+   {
+      int descIndex = utf8(desc);
+      int index = newEntry(16, 1);
+      u2(descIndex);
+      return index;
+   }
+
+   int invokeDynamic(int bootstrapMethod, String name, String desc)
+   {
+      int nameAndType = nameAndType(name, desc);
+      int index = newEntry(18, 1);
+      u2(bootstrapMethod);
+      u2(nameAndType);
+      return index;
+   }
+
+   // Adds an entry with the given tag and no content, for tags not defined in the JVM specification.
+   void unknownEntry(int tag) { newEntry(tag, 1); }
+
+   byte[] build(String className, String superClassName, String... interfaceNames)
+   {
+      int thisClass = classEntry(className);
+      int superClass = superClassName == null ? 0 : classEntry(superClassName);
+      int[] interfaces = new int[interfaceNames.length];
+
+      for (int i = 0; i < interfaceNames.length; i++) {
+         interfaces[i] = classEntry(interfaceNames[i]);
+      }
+
+      ByteArrayOutputStream classfile = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(classfile);
+
+      try {
+         out.writeInt(0xCAFEBABE);
+         out.writeShort(0);
+         out.writeShort(51);
+         out.writeShort(entryCount);
+         constantPool.writeTo(out);
+         out.writeShort(0x21); // public super
+         out.writeShort(thisClass);
+         out.writeShort(superClass);
+         out.writeShort(interfaces.length);
+
+         for (int anInterface : interfaces) {
+            out.writeShort(anInterface);
+         }
+
+         out.writeShort(0); // fields
+         out.writeShort(0); // methods
+         out.writeShort(0); // attributes
+      }
+      catch (IOException e) {
+         throw new IllegalStateException(e);
+      }
+
+      return classfile.toByteArray();
+   }
+}
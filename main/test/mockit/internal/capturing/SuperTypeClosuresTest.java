@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.capturing;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class SuperTypeClosuresTest
+{
+   // Serves the classfiles of a type named "pkg/Middle", which has the given super-class, and of "pkg/Captured".
+   static ClassLoader loaderWithMiddleTypeExtending(String superClassName)
+   {
+      final Map<String, byte[]> classfiles = new HashMap<String, byte[]>();
+      classfiles.put("pkg/Middle.class", new ClassfileBuilder().build("pkg/Middle", superClassName));
+      classfiles.put("pkg/Captured.class", new ClassfileBuilder().build("pkg/Captured", "java/lang/Object"));
+
+      return new ClassLoader(SuperTypeClosuresTest.class.getClassLoader()) {
+         @Override
+         public InputStream getResourceAsStream(String name)
+         {
+            byte[] classfile = classfiles.get(name);
+            return classfile == null ? super.getResourceAsStream(name) : new ByteArrayInputStream(classfile);
+         }
+      };
+   }
+
+   static boolean isSubtypeOfCapturedType(ClassLoader loader)
+   {
+      Thread currentThread = Thread.currentThread();
+      ClassLoader contextLoader = currentThread.getContextClassLoader();
+      currentThread.setContextClassLoader(loader);
+
+      try {
+         return SuperTypeClosures.isSubtype(loader, "pkg/Middle", new String[0], "pkg/Captured");
+      }
+      finally {
+         currentThread.setContextClassLoader(contextLoader);
+      }
+   }
+
+   @Test
+   public void keepSuperTypesOfTypesWithTheSameNameSeparateForEachClassLoader()
+   {
+      ClassLoader loaderWhereMiddleExtendsCaptured = loaderWithMiddleTypeExtending("pkg/Captured");
+      ClassLoader loaderWhereMiddleExtendsObject = loaderWithMiddleTypeExtending("java/lang/Object");
+
+      assertTrue(isSubtypeOfCapturedType(loaderWhereMiddleExtendsCaptured));
+      assertFalse(isSubtypeOfCapturedType(loaderWhereMiddleExtendsObject));
+      assertTrue(isSubtypeOfCapturedType(loaderWhereMiddleExtendsCaptured));
+   }
+}
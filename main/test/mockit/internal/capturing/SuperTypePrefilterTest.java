@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.capturing;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class SuperTypePrefilterTest
+{
+   static final byte[] CAPTURED_TYPE = SuperTypePrefilter.toBytes("pkg/Captured");
+
+   ClassfileBuilder builder;
+
+   @Before
+   public void createBuilder() { builder = new ClassfileBuilder(); }
+
+   boolean mayBeSubtype(String superClassName, String... interfaceNames)
+   {
+      byte[] classfile = builder.build("pkg/Examined", superClassName, interfaceNames);
+      return SuperTypePrefilter.mayBeSubtype(classfile, CAPTURED_TYPE);
+   }
+
+   @Test
+   public void findSuperTypesAfterLongAndDoubleEntriesWhichTakeTwoSlots()
+   {
+      builder.longEntry(Long.MAX_VALUE);
+      builder.doubleEntry(Math.PI);
+      builder.utf8("pkg/Captured");
+      builder.longEntry(1L);
+
+      assertFalse(mayBeSubtype("java/lang/Object", "java/lang/Runnable"));
+   }
+
+   @Test
+   public void findCapturedSuperClassAfterLongAndDoubleEntries()
+   {
+      builder.longEntry(2L);
+      builder.doubleEntry(2.0);
+
+      assertTrue(mayBeSubtype("pkg/Captured"));
+   }
+
+   @Test
+   public void findSuperTypesAfterMethodHandleAndInvokeDynamicEntries()
+   {
+      int bootstrapMethod = builder.methodHandleForStaticMethod(
+         "java/lang/invoke/LambdaMetafactory", "metafactory", "(Ljava/lang/invoke/MethodHandles$Lookup;)V");
+      builder.methodType("()V");
+      builder.invokeDynamic(bootstrapMethod, "run", "()Ljava/lang/Runnable;");
+
+      assertFalse(mayBeSubtype("java/lang/Object", "java/io/Serializable"));
+
+      builder = new ClassfileBuilder();
+      builder.invokeDynamic(0, "run", "()Ljava/lang/Runnable;");
+      builder.methodType("()V");
+
+      assertTrue(mayBeSubtype("java/lang/Object", "pkg/Captured"));
+   }
+
+   @Test
+   public void acceptCapturedTypeAsSuperClassOrInterface()
+   {
+      assertTrue(mayBeSubtype("pkg/Captured"));
+
+      builder = new ClassfileBuilder();
+      assertTrue(mayBeSubtype("java/lang/Object", "java/lang/Runnable", "pkg/Captured"));
+   }
+
+   @Test
+   public void acceptTypesWhoseSuperTypesGetSearched()
+   {
+      assertTrue(mayBeSubtype("pkg/Base"));
+
+      builder = new ClassfileBuilder();
+      assertTrue(mayBeSubtype("java/lang/Object", "pkg/SomeInterface"));
+   }
+
+   @Test
+   public void rejectTypesExtendingObjectOrJMockitClassesAndImplementingStandardInterfaces()
+   {
+      assertFalse(mayBeSubtype("java/lang/Object"));
+
+      builder = new ClassfileBuilder();
+      assertFalse(mayBeSubtype("mockit/MockUp", "javax/sql/DataSource"));
+
+      builder = new ClassfileBuilder();
+      assertFalse(mayBeSubtype(null));
+   }
+
+   @Test
+   public void examineClassfilesWithLargerAndThenSmallerConstantPools()
+   {
+      for (int i = 0; i < 2000; i++) {
+         builder.longEntry(i);
+         builder.utf8("entry" + i);
+      }
+
+      assertTrue(mayBeSubtype("java/lang/Object", "java/lang/Runnable", "pkg/Captured"));
+
+      builder = new ClassfileBuilder();
+      builder.longEntry(1L);
+      assertFalse(mayBeSubtype("java/lang/Object", "java/lang/Runnable"));
+
+      builder = new ClassfileBuilder();
+      assertTrue(mayBeSubtype("pkg/Captured"));
+   }
+
+   @Test
+   public void acceptClassWithConstantPoolEntryOfUnknownKind()
+   {
+      builder.unknownEntry(2);
+
+      assertTrue(mayBeSubtype("java/lang/Object"));
+   }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.expectations;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.*;
+import mockit.internal.state.*;
+
+public final class MockedMethodTest
+{
+   static Map<String, MockedMethod> registeredMethods()
+   {
+      return Deencapsulation.getField(MockedMethod.class, "METHODS");
+   }
+
+   @Test
+   public void shareKeyBetweenRegistrationsOfTheSameMethodAndExecutionMode()
+   {
+      String key = MockedMethod.register(1, "pkg/Some", "doIt(I)V", null, ExecutionMode.Regular);
+      MockedMethod method = MockedMethod.get(key);
+
+      assertSame(key, MockedMethod.register(1, "pkg/Some", "doIt(I)V", null, ExecutionMode.Regular));
+      assertSame(method, MockedMethod.get(key));
+
+      String partialKey = MockedMethod.register(1, "pkg/Some", "doIt(I)V", null, ExecutionMode.Partial);
+      assertFalse(key.equals(partialKey));
+      assertNotSame(method, MockedMethod.get(partialKey));
+   }
+
+   @Test
+   public void recreateMethodFromKeyRegisteredInAnotherJVM()
+   {
+      String signature = "<T:Ljava/lang/Object;>()Ljava/util/List<TT;>;";
+      String key =
+         MockedMethod.register(9, "pkg/Other", "list()Ljava/util/List;", signature, ExecutionMode.PerInstance);
+      MockedMethod registered = registeredMethods().remove(key);
+
+      MockedMethod method = MockedMethod.get(key);
+
+      assertNotSame(registered, method);
+      assertSame(method, MockedMethod.get(key));
+      assertEquals(9, method.access);
+      assertEquals("pkg/Other", method.classDesc);
+      assertEquals("list()Ljava/util/List;", method.nameAndDesc);
+      assertEquals(signature, method.genericSignature);
+      assertSame(ExecutionMode.PerInstance, method.executionMode);
+      assertFalse(method.constructor);
+   }
+
+   @Test
+   public void registerMethodAndResolveItByKey()
+   {
+      String key = MockedMethod.register(8, "pkg/Registered", "<init>(J)V", null, ExecutionMode.Partial);
+
+      MockedMethod method = MockedMethod.get(key);
+
+      assertSame(method, MockedMethod.get(new String(key)));
+      assertEquals(8, method.access);
+      assertEquals("pkg/Registered", method.classDesc);
+      assertEquals("<init>(J)V", method.nameAndDesc);
+      assertNull(method.genericSignature);
+      assertSame(ExecutionMode.Partial, method.executionMode);
+      assertTrue(method.constructor);
+   }
+
+   @Test
+   public void parseKeyOfMethodNeverRegistered()
+   {
+      String key = "pkg/Unregistered run(Ljava/lang/String;)I 10 " + ExecutionMode.PerInstance.ordinal();
+
+      MockedMethod method = MockedMethod.get(key);
+
+      assertSame(method, MockedMethod.get(key));
+      assertEquals(10, method.access);
+      assertEquals("pkg/Unregistered", method.classDesc);
+      assertEquals("run(Ljava/lang/String;)I", method.nameAndDesc);
+      assertNull(method.genericSignature);
+      assertSame(ExecutionMode.PerInstance, method.executionMode);
+      assertFalse(method.constructor);
+   }
+
+   @Test
+   public void rejectMalformedKeys()
+   {
+      for (String key : new String[] {"pkg/Some doIt()V", "pkg/Some doIt()V public 0", "pkg/Some doIt()V 1 99"}) {
+         try {
+            MockedMethod.get(key);
+            fail(key);
+         }
+         catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains(key));
+         }
+      }
+   }
+
+   public static final class Collaborator {}
+
+   static Class<?> loadCopyOfCollaboratorInNewClassLoader() throws Exception
+   {
+      String classfileName = Collaborator.class.getName().replace('.', '/') + ".class";
+      InputStream classfile = MockedMethodTest.class.getClassLoader().getResourceAsStream(classfileName);
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+      try {
+         byte[] buffer = new byte[1024];
+         int n;
+
+         while ((n = classfile.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+         }
+      }
+      finally {
+         classfile.close();
+      }
+
+      ClassLoader newLoader = new ClassLoader(null) {
+         {
+            byte[] definition = bytes.toByteArray();
+            defineClass(Collaborator.class.getName(), definition, 0, definition.length);
+         }
+      };
+
+      return Class.forName(Collaborator.class.getName(), false, newLoader);
+   }
+
+   @Test
+   public void resolveMockedClassOfStaticMethodFromTheClassLoaderOfTheRegisteringClass() throws Exception
+   {
+      Class<?> copyOfCollaborator = loadCopyOfCollaboratorInNewClassLoader();
+      assertNotSame(Collaborator.class, copyOfCollaborator);
+      String classDesc = Collaborator.class.getName().replace('.', '/');
+      ClassLoader newLoader = copyOfCollaborator.getClassLoader();
+      ClassLoader testLoader = Collaborator.class.getClassLoader();
+
+      SavePoint savePoint = new SavePoint();
+
+      try {
+         TestRun.mockFixture().registerMockedClass(Collaborator.class);
+
+         String keyFromNewLoader = MockedMethod.register(newLoader, 9, classDesc, "a()V", null, ExecutionMode.Regular);
+         String keyFromTestLoader =
+            MockedMethod.register(testLoader, 9, classDesc, "b()V", null, ExecutionMode.Regular);
+
+         assertFalse(MockedMethod.get(keyFromNewLoader).isStillMocked(null));
+         assertFalse(MockedMethod.get(keyFromNewLoader).isStillMocked(null));
+         assertTrue(MockedMethod.get(keyFromTestLoader).isStillMocked(null));
+
+         // Once the same key is registered from a different class loader, the mocked class is no longer cached.
+         MockedMethod.register(testLoader, 9, classDesc, "a()V", null, ExecutionMode.Regular);
+         assertTrue(MockedMethod.get(keyFromNewLoader).isStillMocked(null));
+      }
+      finally {
+         savePoint.rollback();
+      }
+   }
+}
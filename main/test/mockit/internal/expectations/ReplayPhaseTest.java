@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.expectations;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.*;
+import mockit.internal.expectations.invocation.*;
+
+public final class ReplayPhaseTest
+{
+   ReplayPhase replay;
+   Expectation recorded;
+
+   @Before
+   public void createReplayPhase()
+   {
+      RecordAndReplayExecution execution = new RecordAndReplayExecution();
+      replay = Deencapsulation.getField(execution, "replayPhase");
+      ExpectedInvocation invocation =
+         new ExpectedInvocation(null, "mockit/Collaborator", "doSomething(I)V", new Object[] {1});
+      recorded = new Expectation(invocation);
+   }
+
+   @Test
+   public void moveInvocationsReplayedConcurrentlyToTheListsInReplayOrderWhenStopped()
+   {
+      assertTrue(replay.addConcurrentInvocation(recorded, null, new Object[] {1}));
+      assertTrue(replay.addConcurrentInvocation(recorded, null, new Object[] {2}));
+      assertTrue(replay.invocations.isEmpty());
+
+      replay.stopConcurrentReplay();
+
+      assertEquals(2, replay.invocations.size());
+      assertEquals(2, replay.invocationArguments.get(1)[0]);
+      assertEquals(2, recorded.constraints.invocationCount);
+   }
+
+   @Test
+   public void rejectInvocationsReplayedConcurrentlyWhileStopped()
+   {
+      replay.stopConcurrentReplay();
+
+      assertFalse(replay.addConcurrentInvocation(recorded, null, new Object[] {1}));
+
+      replay.stopConcurrentReplay();
+      assertTrue(replay.invocations.isEmpty());
+      assertEquals(0, recorded.constraints.invocationCount);
+   }
+
+   @Test
+   public void acceptInvocationsReplayedConcurrentlyAgainWhenResumed()
+   {
+      replay.stopConcurrentReplay();
+      replay.resumeConcurrentReplay();
+
+      assertTrue(replay.addConcurrentInvocation(recorded, null, new Object[] {1}));
+
+      replay.stopConcurrentReplay();
+      assertEquals(1, replay.invocations.size());
+   }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.injection;
+
+import java.util.*;
+import javax.annotation.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.*;
+
+public final class GlobalTestedObjectsTest
+{
+   static final List<String> lifecycleEvents = new ArrayList<String>();
+
+   public static final class Repository
+   {
+      @PostConstruct void initialize() { lifecycleEvents.add("Repository initialized"); }
+      @PreDestroy void close() { lifecycleEvents.add("Repository closed"); }
+   }
+
+   public static final class Service
+   {
+      Repository repository;
+
+      @PostConstruct void initialize() { lifecycleEvents.add("Service initialized"); }
+      @PreDestroy void destroy() { lifecycleEvents.add("Service destroyed"); }
+   }
+
+   public static final class OtherService
+   {
+      @PreDestroy void destroy() { lifecycleEvents.add("Other service destroyed"); }
+   }
+
+   public static final class TestClass
+   {
+      @Tested(global = true, fullyInitialized = true) Service service;
+      @Tested(global = true) OtherService otherService;
+   }
+
+   static final InjectionPoint SERVICE_KEY = new InjectionPoint(Service.class, "service");
+   static final InjectionPoint OTHER_SERVICE_KEY = new InjectionPoint(OtherService.class, "otherService");
+
+   TestClass createTestedObjects()
+   {
+      TestClass testClassInstance = new TestClass();
+      TestedClassInstantiations testedClasses = new TestedClassInstantiations();
+      assertTrue(testedClasses.findTestedAndInjectableMembers(TestClass.class));
+      testedClasses.assignNewInstancesToTestedFields(testClassInstance, false);
+      return testClassInstance;
+   }
+
+   @After
+   public void discardGlobalTestedObjectsCreatedByThisTest()
+   {
+      InjectionState.discardGlobalTestedObjects(Arrays.asList(SERVICE_KEY, OTHER_SERVICE_KEY));
+      lifecycleEvents.clear();
+   }
+
+   @Test
+   public void discardGlobalObjectGraphsInUseAtTheEndOfTheTestRun()
+   {
+      TestClass testClassInstance = createTestedObjects();
+      assertSame(testClassInstance.service, InjectionState.getGlobalTestedObject(SERVICE_KEY));
+      assertEquals(Arrays.asList("Repository initialized", "Service initialized"), lifecycleEvents);
+      lifecycleEvents.clear();
+
+      InjectionState.discardGlobalTestedObjects(Collections.singletonList(SERVICE_KEY));
+
+      assertEquals(Arrays.asList("Service destroyed", "Repository closed"), lifecycleEvents);
+      assertNull(InjectionState.getGlobalTestedObject(SERVICE_KEY));
+      assertSame(testClassInstance.otherService, InjectionState.getGlobalTestedObject(OTHER_SERVICE_KEY));
+   }
+
+   @Test
+   public void recreateGlobalObjectGraphOnlyAfterItIsDiscarded()
+   {
+      TestClass first = createTestedObjects();
+      TestClass second = createTestedObjects();
+
+      assertSame(first.service, second.service);
+      assertSame(first.service.repository, second.service.repository);
+      assertEquals(2, lifecycleEvents.size());
+
+      InjectionState.discardGlobalTestedObjects(Arrays.asList(SERVICE_KEY, OTHER_SERVICE_KEY));
+      TestClass third = createTestedObjects();
+
+      assertNotSame(first.service, third.service);
+      assertNotSame(first.otherService, third.otherService);
+      assertEquals(
+         Arrays.asList(
+            "Repository initialized", "Service initialized",
+            "Service destroyed", "Repository closed", "Other service destroyed",
+            "Repository initialized", "Service initialized"),
+         lifecycleEvents);
+   }
+}
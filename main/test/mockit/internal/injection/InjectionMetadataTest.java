@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.injection;
+
+import java.lang.reflect.*;
+import java.util.*;
+import javax.annotation.*;
+import javax.inject.*;
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.springframework.beans.factory.annotation.*;
+
+import mockit.*;
+import mockit.internal.injection.InjectionMetadata.*;
+import mockit.internal.injection.InjectionPoint.*;
+
+public final class InjectionMetadataTest
+{
+   @SuppressWarnings("unused")
+   static final class ClassWithConstructorsOfAllAccessibilities
+   {
+      private ClassWithConstructorsOfAllAccessibilities(String s) {}
+      ClassWithConstructorsOfAllAccessibilities(int i) {}
+      protected ClassWithConstructorsOfAllAccessibilities(long l) {}
+      public ClassWithConstructorsOfAllAccessibilities() {}
+      @Inject ClassWithConstructorsOfAllAccessibilities(double d) {}
+   }
+
+   @SuppressWarnings("unused")
+   static final class ClassWithInjectionPoints
+   {
+      @Inject Runnable required;
+      @Autowired(required = false) Runnable optional;
+      @Value("${someProperty:12}") int withValue;
+      @Resource(name = "first") Runnable named;
+      @Inject @Named("second") Runnable qualified;
+      Runnable notAnnotated;
+      static Runnable staticField;
+      volatile Runnable volatileField;
+      final Runnable finalField = null;
+   }
+
+   @SuppressWarnings("unused")
+   static class BaseClass
+   {
+      @PostConstruct void initializeBase() {}
+      @PreDestroy void terminateBase() {}
+   }
+
+   @SuppressWarnings("unused")
+   static class MiddleClass extends BaseClass
+   {
+      void notALifecycleMethod() {}
+   }
+
+   @SuppressWarnings("unused")
+   static final class SubClass extends MiddleClass
+   {
+      @PostConstruct void initialize() {}
+   }
+
+   @SuppressWarnings("unused")
+   static final class ServletWithLifecycleMethods extends HttpServlet
+   {
+      @Override public void init(ServletConfig config) {}
+      @Override public void destroy() {}
+   }
+
+   @Test
+   public void sortConstructorsWithMostAccessibleFirst()
+   {
+      InjectionMetadata metadata = InjectionMetadata.forClass(ClassWithConstructorsOfAllAccessibilities.class);
+
+      List<ConstructorMetadata> constructors = metadata.getConstructorsWithMostAccessibleFirst();
+
+      assertEquals(5, constructors.size());
+      assertEquals(Modifier.PUBLIC, constructors.get(0).access);
+      assertEquals(Modifier.PROTECTED, constructors.get(1).access);
+      assertEquals(0, constructors.get(2).access);
+      assertEquals(0, constructors.get(3).access);
+      assertEquals(Modifier.PRIVATE, constructors.get(4).access);
+      assertEquals("<init>()V", constructors.get(0).descriptor);
+      assertEquals("<init>(J)V", constructors.get(1).descriptor);
+      assertEquals("<init>(Ljava/lang/String;)V", constructors.get(4).descriptor);
+   }
+
+   @Test
+   public void findAnnotatedConstructor()
+   {
+      ConstructorMetadata annotated =
+         InjectionMetadata.forClass(ClassWithConstructorsOfAllAccessibilities.class).getAnnotatedConstructor();
+
+      assertNotNull(annotated);
+      assertEquals("<init>(D)V", annotated.descriptor);
+      assertNull(InjectionMetadata.forClass(SubClass.class).getAnnotatedConstructor());
+   }
+
+   @Test
+   public void detectKindsOfInjectionPointAndQualifiersOfInjectableFields() throws Exception
+   {
+      InjectionMetadata metadata = InjectionMetadata.forClass(ClassWithInjectionPoints.class);
+
+      assertKindAndQualifiedName(metadata, "required", KindOfInjectionPoint.Required, null);
+      assertKindAndQualifiedName(metadata, "optional", KindOfInjectionPoint.Optional, null);
+      assertKindAndQualifiedName(metadata, "withValue", KindOfInjectionPoint.WithValue, null);
+      assertKindAndQualifiedName(metadata, "named", KindOfInjectionPoint.Required, "first");
+      assertKindAndQualifiedName(metadata, "qualified", KindOfInjectionPoint.Required, "second");
+      assertKindAndQualifiedName(metadata, "notAnnotated", KindOfInjectionPoint.NotAnnotated, null);
+   }
+
+   void assertKindAndQualifiedName(
+      InjectionMetadata metadata, String fieldName, KindOfInjectionPoint expectedKind, String expectedName)
+      throws NoSuchFieldException
+   {
+      Field field = ClassWithInjectionPoints.class.getDeclaredField(fieldName);
+
+      assertTrue(fieldName, metadata.getInjectableFields().contains(field));
+      assertSame(fieldName, expectedKind, metadata.getKindOfInjectionPoint(field));
+      assertEquals(fieldName, expectedName, metadata.getQualifiedName(field));
+   }
+
+   @Test
+   public void excludeStaticVolatileAndFinalFieldsFromInjectableFields() throws Exception
+   {
+      InjectionMetadata metadata = InjectionMetadata.forClass(ClassWithInjectionPoints.class);
+      List<Field> injectableFields = metadata.getInjectableFields();
+
+      for (String fieldName : new String[] {"staticField", "volatileField", "finalField"}) {
+         Field field = ClassWithInjectionPoints.class.getDeclaredField(fieldName);
+         assertFalse(fieldName, injectableFields.contains(field));
+
+         try {
+            metadata.getKindOfInjectionPoint(field);
+            fail();
+         }
+         catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains(fieldName));
+         }
+      }
+
+      assertEquals(6, injectableFields.size());
+      assertEquals(ClassWithInjectionPoints.class.getDeclaredFields().length, metadata.getDeclaredFields().length);
+   }
+
+   @Test
+   public void nameInjectionPointsOfDeclaredFieldsAfterTheirQualifiers()
+   {
+      InjectionMetadata metadata = InjectionMetadata.forClass(ClassWithInjectionPoints.class);
+      Field[] fields = metadata.getDeclaredFields();
+      InjectionPoint[] injectionPoints = metadata.getInjectionPointsOfDeclaredFields();
+
+      for (int i = 0; i < fields.length; i++) {
+         String qualifiedName = "named".equals(fields[i].getName()) ? "first" :
+            "qualified".equals(fields[i].getName()) ? "second" : null;
+
+         assertEquals(qualifiedName == null ? fields[i].getName() : qualifiedName, injectionPoints[i].name);
+         assertEquals(qualifiedName != null, injectionPoints[i].qualified);
+      }
+   }
+
+   @Test
+   public void findLifecycleMethodsDeclaredInEachClassOfSuperclassChain() throws Exception
+   {
+      InjectionMetadata forSubClass = InjectionMetadata.forClass(SubClass.class);
+      InjectionMetadata forMiddleClass = InjectionMetadata.forClass(MiddleClass.class);
+      InjectionMetadata forBaseClass = InjectionMetadata.forClass(BaseClass.class);
+
+      assertEquals(SubClass.class.getDeclaredMethod("initialize"), forSubClass.getInitializationMethod(false));
+      assertNull(forSubClass.getTerminationMethod(false));
+      assertNull(forMiddleClass.getInitializationMethod(false));
+      assertNull(forMiddleClass.getTerminationMethod(false));
+      assertEquals(BaseClass.class.getDeclaredMethod("initializeBase"), forBaseClass.getInitializationMethod(false));
+      assertEquals(BaseClass.class.getDeclaredMethod("terminateBase"), forBaseClass.getTerminationMethod(false));
+
+      LifecycleMethods lifecycleMethods = new LifecycleMethods();
+      lifecycleMethods.findLifecycleMethods(SubClass.class);
+
+      Map<Class<?>, Method> initializationMethods = Deencapsulation.getField(lifecycleMethods, "initializationMethods");
+      Map<Class<?>, Method> terminationMethods = Deencapsulation.getField(lifecycleMethods, "terminationMethods");
+      assertEquals(2, initializationMethods.size());
+      assertEquals(BaseClass.class, terminationMethods.keySet().iterator().next());
+   }
+
+   @Test
+   public void findServletLifecycleMethodsOnlyWhenTheClassIsAServlet() throws Exception
+   {
+      InjectionMetadata metadata = InjectionMetadata.forClass(ServletWithLifecycleMethods.class);
+
+      Method init = ServletWithLifecycleMethods.class.getDeclaredMethod("init", ServletConfig.class);
+      assertEquals(init, metadata.getInitializationMethod(true));
+      assertEquals(ServletWithLifecycleMethods.class.getDeclaredMethod("destroy"), metadata.getTerminationMethod(true));
+      assertNull(metadata.getInitializationMethod(false));
+      assertNull(metadata.getTerminationMethod(false));
+   }
+
+   @Test
+   public void shareMetadataForTheSameClass()
+   {
+      InjectionMetadata metadata = InjectionMetadata.forClass(SubClass.class);
+
+      assertSame(metadata, InjectionMetadata.forClass(SubClass.class));
+      assertSame(metadata.getConstructorsWithMostAccessibleFirst(), metadata.getConstructorsWithMostAccessibleFirst());
+      assertNotSame(metadata, InjectionMetadata.forClass(MiddleClass.class));
+   }
+}
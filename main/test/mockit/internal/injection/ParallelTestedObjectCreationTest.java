@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.injection;
+
+import java.util.*;
+import javax.annotation.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.*;
+
+public final class ParallelTestedObjectCreationTest
+{
+   static final List<String> initializations = Collections.synchronizedList(new ArrayList<String>());
+   static Thread testThread;
+
+   static void initialized(Object testedObject)
+   {
+      String name = testedObject.getClass().getSimpleName();
+      initializations.add(Thread.currentThread() == testThread ? name : name + " on another thread");
+   }
+
+   public static final class ForSetup
+   {
+      @PostConstruct void initialize() { initialized(this); }
+   }
+
+   public static final class First
+   {
+      final Thread constructedIn = Thread.currentThread();
+
+      @PostConstruct void initialize() { initialized(this); }
+   }
+
+   public static final class Second
+   {
+      final Thread constructedIn = Thread.currentThread();
+
+      @PostConstruct void initialize() { initialized(this); }
+   }
+
+   public static final class Dependent
+   {
+      final Thread constructedIn = Thread.currentThread();
+      final First first;
+
+      public Dependent(First first) { this.first = first; }
+
+      @PostConstruct void initialize() { initialized(this); }
+   }
+
+   public static final class TestClass
+   {
+      @Tested(availableDuringSetup = true) ForSetup forSetup;
+      @Tested First first;
+      @Tested Second second;
+      @Tested Dependent dependent;
+   }
+
+   TestClass testClassInstance;
+   TestedClassInstantiations testedClasses;
+
+   @Before
+   public void enableParallelCreation()
+   {
+      initializations.clear();
+      testThread = Thread.currentThread();
+
+      testClassInstance = new TestClass();
+      testedClasses = new TestedClassInstantiations();
+      testedClasses.setParallelCreation(true);
+      assertTrue(testedClasses.findTestedAndInjectableMembers(TestClass.class));
+   }
+
+   void createTestedObjects()
+   {
+      testedClasses.assignNewInstancesToTestedFields(testClassInstance, true);
+      testedClasses.assignNewInstancesToTestedFields(testClassInstance, false);
+   }
+
+   @Test
+   public void createAllTestedObjectsOnTheTestThreadWhenParallelCreationIsDisabled()
+   {
+      testedClasses.setParallelCreation(false);
+
+      createTestedObjects();
+
+      assertSame(testThread, testClassInstance.first.constructedIn);
+      assertSame(testThread, testClassInstance.second.constructedIn);
+      assertEquals(Arrays.asList("ForSetup", "First", "Second", "Dependent"), initializations);
+   }
+
+   @Test
+   public void createIndependentTestedObjectsOnDaemonWorkerThreads()
+   {
+      createTestedObjects();
+
+      assertNotSame(testThread, testClassInstance.first.constructedIn);
+      assertNotSame(testThread, testClassInstance.second.constructedIn);
+      assertTrue(testClassInstance.first.constructedIn.isDaemon());
+   }
+
+   @Test
+   public void createTestedObjectWhichDependsOnAnotherAfterTheOtherIsPublished()
+   {
+      createTestedObjects();
+
+      assertSame(testThread, testClassInstance.dependent.constructedIn);
+      assertSame(testClassInstance.first, testClassInstance.dependent.first);
+   }
+
+   @Test
+   public void publishTestedObjectsInDeclarationOrderOnTheTestThread()
+   {
+      createTestedObjects();
+
+      assertEquals(Arrays.asList("ForSetup", "First", "Second", "Dependent"), initializations);
+   }
+
+   @Test
+   public void createOnlyTestedObjectsAvailableDuringSetupBeforeSetupAndKeepThemAfterwards()
+   {
+      testedClasses.assignNewInstancesToTestedFields(testClassInstance, true);
+      ForSetup forSetup = testClassInstance.forSetup;
+
+      assertNotNull(forSetup);
+      assertNull(testClassInstance.first);
+      assertNull(testClassInstance.second);
+      assertNull(testClassInstance.dependent);
+      assertEquals(Collections.singletonList("ForSetup"), initializations);
+
+      testedClasses.assignNewInstancesToTestedFields(testClassInstance, false);
+
+      assertSame(forSetup, testClassInstance.forSetup);
+      assertNotNull(testClassInstance.first);
+      assertNotNull(testClassInstance.second);
+      assertEquals(Arrays.asList("ForSetup", "First", "Second", "Dependent"), initializations);
+   }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.reflection;
+
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.*;
+
+public final class CachedGenericTypeReflectionTest
+{
+   public interface GenericSupplier<T> { T get(); }
+   public interface IntegerSupplier extends GenericSupplier<Integer> {}
+   public interface ListSupplier extends GenericSupplier<List<String>> {}
+
+   static final String GENERIC_SIGNATURE = "()TT;";
+   static final String SUPPLIER_DESC = "mockit/internal/reflection/CachedGenericTypeReflectionTest$GenericSupplier";
+
+   @Mocked IntegerSupplier integerSupplier;
+   @Mocked ListSupplier listSupplier;
+
+   @Test
+   public void resolveReturnTypeOfTheSameGenericMethodSeparatelyForEachMockedSubtype()
+   {
+      CachedGenericTypeReflection forIntegers = CachedGenericTypeReflection.forClass(integerSupplier.getClass());
+      CachedGenericTypeReflection forLists = CachedGenericTypeReflection.forClass(listSupplier.getClass());
+
+      assertNotSame(forIntegers, forLists);
+
+      for (int i = 0; i < 2; i++) {
+         assertEquals("Ljava/lang/Integer;", forIntegers.resolveReturnType(GENERIC_SIGNATURE));
+         assertEquals("Ljava/util/List;", forLists.resolveReturnType(GENERIC_SIGNATURE));
+      }
+   }
+
+   @Test
+   public void resolveSignatureOfTheSameGenericMethodSeparatelyForEachMockedSubtype()
+   {
+      CachedGenericTypeReflection forIntegers = CachedGenericTypeReflection.forClass(integerSupplier.getClass());
+      CachedGenericTypeReflection forLists = CachedGenericTypeReflection.forClass(listSupplier.getClass());
+
+      for (int i = 0; i < 2; i++) {
+         assertEquals("()Ljava/lang/Integer;", forIntegers.resolveSignature(SUPPLIER_DESC, GENERIC_SIGNATURE));
+         assertEquals("()Ljava/util/List;", forLists.resolveSignature(SUPPLIER_DESC, GENERIC_SIGNATURE));
+      }
+   }
+
+   @Test
+   public void reuseCachedReflectionForTheSameMockedSubtype()
+   {
+      Class<?> mockedClass = integerSupplier.getClass();
+
+      assertSame(CachedGenericTypeReflection.forClass(mockedClass), CachedGenericTypeReflection.forClass(mockedClass));
+   }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.startup;
+
+import java.lang.instrument.*;
+import java.lang.ref.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.*;
+
+public final class LoadedClassIndexTest
+{
+   static Map<String, ?> classesLoadedSinceIndexed()
+   {
+      return Deencapsulation.getField(LoadedClassIndex.class, "CLASSES_LOADED_SINCE_INDEXED");
+   }
+
+   static Map<String, ? extends Reference<Class<?>>> loadedClasses()
+   {
+      return Deencapsulation.getField(LoadedClassIndex.class, "LOADED_CLASSES");
+   }
+
+   static Class<?> newClassInNewLoader()
+   {
+      ClassLoader newLoader = new ClassLoader(null) {};
+      return Proxy.getProxyClass(newLoader, Runnable.class);
+   }
+
+   @Test
+   public void findClassLoadedAfterTheIndexWasBuilt()
+   {
+      assertSame(LoadedClassIndexTest.class, Startup.getClassIfLoaded(LoadedClassIndexTest.class.getName()));
+
+      Class<?> proxyClass = newClassInNewLoader();
+
+      assertSame(proxyClass, Startup.getClassIfLoaded(proxyClass.getName()));
+      assertFalse(classesLoadedSinceIndexed().containsKey(proxyClass.getName()));
+   }
+
+   @Test
+   public void findClassLoadedAfterTheIndexWasBuiltWithoutSearchingAllLoadedClasses()
+   {
+      assertNotNull(Startup.getClassIfLoaded(LoadedClassIndexTest.class.getName()));
+      final Instrumentation realInstrumentation = Startup.instrumentation();
+      final int[] searches = {0};
+
+      Instrumentation countingInstrumentation = (Instrumentation) Proxy.newProxyInstance(
+         Instrumentation.class.getClassLoader(), new Class<?>[] {Instrumentation.class},
+         new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+               if ("getAllLoadedClasses".equals(method.getName())) {
+                  searches[0]++;
+               }
+
+               return method.invoke(realInstrumentation, args);
+            }
+         });
+
+      Class<?> proxyClass = newClassInNewLoader();
+      assertTrue(classesLoadedSinceIndexed().containsKey(proxyClass.getName()));
+
+      assertSame(proxyClass, LoadedClassIndex.findLoadedClass(countingInstrumentation, proxyClass.getName()));
+      assertSame(proxyClass, LoadedClassIndex.findLoadedClass(countingInstrumentation, proxyClass.getName()));
+      assertNull(LoadedClassIndex.findLoadedClass(countingInstrumentation, "mockit.internal.startup.NotLoaded"));
+      assertEquals(0, searches[0]);
+   }
+
+   @Test
+   public void dropNameOfClassWhichFailedToLoadAfterTheFirstLookup()
+   {
+      String className = "mockit.internal.startup.ClassWhichFailedToLoad";
+      LoadedClassIndex.addClassBeingLoaded(null, className.replace('.', '/'));
+      assertTrue(classesLoadedSinceIndexed().containsKey(className));
+
+      assertNull(Startup.getClassIfLoaded(className));
+
+      assertFalse(classesLoadedSinceIndexed().containsKey(className));
+      assertNull(Startup.getClassIfLoaded(className));
+   }
+
+   @Test
+   public void purgeEntriesOfUnloadedClassesWhenAddingClassesToTheIndex()
+   {
+      Class<?> firstClass = newClassInNewLoader();
+      String firstClassName = firstClass.getName();
+      assertSame(firstClass, Startup.getClassIfLoaded(firstClassName));
+
+      Reference<Class<?>> firstClassRef = loadedClasses().get(firstClassName);
+      firstClassRef.clear();
+      assertTrue(firstClassRef.enqueue());
+
+      Class<?> secondClass = newClassInNewLoader();
+      assertSame(secondClass, Startup.getClassIfLoaded(secondClass.getName()));
+
+      assertFalse(loadedClasses().containsKey(firstClassName));
+      assertTrue(loadedClasses().containsKey(secondClass.getName()));
+   }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.startup;
+
+import java.io.*;
+import java.lang.instrument.*;
+import java.lang.reflect.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.*;
+
+public final class StartupTest
+{
+   static final class Versioned { static String version() { return "version-1"; } }
+   static final class OtherVersioned { static String version() { return "version-1"; } }
+
+   static byte[] original;
+   static byte[] modified;
+   static byte[] otherOriginal;
+   static byte[] otherModified;
+
+   @BeforeClass
+   public static void readClassfiles() throws IOException
+   {
+      original = readClassfile(Versioned.class);
+      modified = withVersion2(original);
+      otherOriginal = readClassfile(OtherVersioned.class);
+      otherModified = withVersion2(otherOriginal);
+   }
+
+   static byte[] readClassfile(Class<?> aClass) throws IOException
+   {
+      InputStream input = aClass.getClassLoader().getResourceAsStream(aClass.getName().replace('.', '/') + ".class");
+      assertNotNull(input);
+
+      try {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         byte[] buffer = new byte[4096];
+
+         for (int bytesRead; (bytesRead = input.read(buffer)) >= 0; ) {
+            bytes.write(buffer, 0, bytesRead);
+         }
+
+         return bytes.toByteArray();
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   static byte[] withVersion2(byte[] classfile) throws IOException
+   {
+      byte[] modifiedClassfile = classfile.clone();
+      int i = new String(modifiedClassfile, "ISO-8859-1").indexOf("version-1");
+      assertTrue(i > 0);
+      modifiedClassfile[i + "version-".length()] = '2';
+      return modifiedClassfile;
+   }
+
+   // Counts the batches of redefinitions, and the classes in the last one.
+   static final class RedefinitionCounter implements InvocationHandler
+   {
+      final Instrumentation instrumentation;
+      int batches;
+      int classesInLastBatch;
+
+      RedefinitionCounter(Instrumentation instrumentation) { this.instrumentation = instrumentation; }
+
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+      {
+         if ("redefineClasses".equals(method.getName())) {
+            batches++;
+            classesInLastBatch = ((Object[]) args[0]).length;
+         }
+
+         try {
+            return method.invoke(instrumentation, args);
+         }
+         catch (InvocationTargetException e) {
+            throw e.getCause();
+         }
+      }
+   }
+
+   Instrumentation realInstrumentation;
+   RedefinitionCounter redefinitions;
+
+   @Before
+   public void countRedefinitions()
+   {
+      realInstrumentation = Startup.instrumentation();
+      redefinitions = new RedefinitionCounter(realInstrumentation);
+      Object countingInstrumentation = Proxy.newProxyInstance(
+         Instrumentation.class.getClassLoader(), new Class<?>[] {Instrumentation.class}, redefinitions);
+      Deencapsulation.setField(Startup.class, "inst", countingInstrumentation);
+   }
+
+   @After
+   public void restoreOriginalClasses()
+   {
+      Deencapsulation.setField(Startup.class, "inst", realInstrumentation);
+      Startup.redefineMethods(new ClassDefinition(Versioned.class, original));
+      Startup.redefineMethods(new ClassDefinition(OtherVersioned.class, otherOriginal));
+   }
+
+   @Test
+   public void redefineClassAgainAfterItWasRestored()
+   {
+      Startup.redefineMethods(Versioned.class, modified);
+      assertEquals("version-2", Versioned.version());
+
+      Startup.redefineMethods(Versioned.class, original);
+      assertEquals("version-1", Versioned.version());
+
+      Startup.redefineMethods(Versioned.class, modified);
+      assertEquals("version-2", Versioned.version());
+
+      Startup.redefineMethods(Versioned.class, modified.clone());
+      assertEquals("version-2", Versioned.version());
+   }
+
+   @Test
+   public void redefineClassAgainAfterItWasRedefinedByOtherMeans() throws Exception
+   {
+      Startup.redefineMethods(Versioned.class, modified);
+      assertEquals("version-2", Versioned.version());
+
+      Startup.instrumentation().redefineClasses(new ClassDefinition(Versioned.class, original));
+      Startup.forgetRedefinition(Versioned.class);
+      assertEquals("version-1", Versioned.version());
+
+      Startup.redefineMethods(Versioned.class, modified);
+      assertEquals("version-2", Versioned.version());
+   }
+
+   @Test
+   public void skipBothTheDeferredRestorationAndTheNextRedefinitionWhenIdentical()
+   {
+      Startup.redefineMethods(Versioned.class, modified);
+      assertEquals(1, redefinitions.batches);
+
+      Startup.deferRestoration(Versioned.class, original);
+      Startup.redefineMethods(Versioned.class, modified.clone());
+
+      assertEquals(1, redefinitions.batches);
+      assertEquals("version-2", Versioned.version());
+   }
+
+   @Test
+   public void performDeferredRestorationInTheSameBatchAsTheNextRedefinition()
+   {
+      Startup.redefineMethods(Versioned.class, modified);
+      Startup.deferRestoration(Versioned.class, original);
+      assertEquals("version-2", Versioned.version());
+
+      Startup.redefineMethods(OtherVersioned.class, otherModified);
+
+      assertEquals(2, redefinitions.batches);
+      assertEquals(2, redefinitions.classesInLastBatch);
+      assertEquals("version-1", Versioned.version());
+      assertEquals("version-2", OtherVersioned.version());
+   }
+
+   @Test
+   public void performDeferredRestorationsWhenOneOfTheirClassesIsUsedAgain()
+   {
+      Startup.redefineMethods(Versioned.class, modified);
+      Startup.redefineMethods(OtherVersioned.class, otherModified);
+      Startup.deferRestoration(Versioned.class, original);
+      Startup.deferRestoration(OtherVersioned.class, otherOriginal);
+
+      assertFalse(Startup.restoreDeferredDefinitionsIfAnyFor("mockit/internal/startup/StartupTest"));
+      assertTrue(Startup.restoreDeferredDefinitionsIfAnyFor("mockit/internal/startup/StartupTest$Versioned"));
+
+      assertEquals(3, redefinitions.batches);
+      assertEquals(2, redefinitions.classesInLastBatch);
+      assertEquals("version-1", Versioned.version());
+      assertEquals("version-1", OtherVersioned.version());
+      assertFalse(Startup.restoreDeferredDefinitionsIfAnyFor("mockit/internal/startup/StartupTest$Versioned"));
+   }
+
+   @Test
+   public void dropDeferredRestorationWhenTheClassIsRedefinedByOtherMeans() throws Exception
+   {
+      Startup.redefineMethods(Versioned.class, modified);
+      Startup.deferRestoration(Versioned.class, original);
+
+      realInstrumentation.redefineClasses(new ClassDefinition(Versioned.class, modified));
+      Startup.forgetRedefinition(Versioned.class);
+      Startup.restoreDeferredDefinitions();
+
+      assertEquals(1, redefinitions.batches);
+      assertEquals("version-2", Versioned.version());
+   }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2006 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.state;
+
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.internal.startup.*;
+
+public final class CachedClassfilesTest
+{
+   static final class First {}
+   static final class Second {}
+   static final class Third {}
+
+   final List<CachedClassfiles> caches = new ArrayList<CachedClassfiles>();
+   final ClassLoader loader = new ClassLoader() {};
+
+   CachedClassfiles createCache(long maxCachedBytes, boolean compressColdClassfiles)
+   {
+      CachedClassfiles cache = new CachedClassfiles(maxCachedBytes, compressColdClassfiles);
+      Startup.instrumentation().addTransformer(cache, true);
+      caches.add(cache);
+      return cache;
+   }
+
+   @After
+   public void removeCaches()
+   {
+      for (CachedClassfiles cache : caches) {
+         Startup.instrumentation().removeTransformer(cache);
+      }
+   }
+
+   static String desc(Class<?> aClass) { return aClass.getName().replace('.', '/'); }
+
+   static byte[] compressibleClassfile(int length)
+   {
+      byte[] classfile = new byte[length];
+
+      for (int i = 0; i < length; i++) {
+         classfile[i] = (byte) (i % 10);
+      }
+
+      return classfile;
+   }
+
+   @Test
+   public void evictLeastRecentlyUsedClassfileAndCaptureItAgainWhenRequestedFromItsClassLoader()
+   {
+      CachedClassfiles unboundedCache = createCache(0, false);
+      byte[] first = unboundedCache.getClassfileOf(First.class);
+      byte[] second = unboundedCache.getClassfileOf(Second.class);
+      byte[] third = unboundedCache.getClassfileOf(Third.class);
+      assertNotNull(first);
+      assertNotNull(second);
+      assertNotNull(third);
+
+      CachedClassfiles cache = createCache(first.length + second.length + third.length / 2, false);
+      cache.getClassfileOf(First.class);
+      cache.getClassfileOf(Second.class);
+      assertEquals(0, cache.evictions.get());
+
+      cache.getClassfileOf(Third.class);
+
+      assertEquals(1, cache.evictions.get());
+      assertEquals(second.length + third.length, cache.cachedBytes.get());
+
+      long misses = cache.misses.get();
+      byte[] recaptured = cache.getClassfileOf(First.class.getClassLoader(), desc(First.class));
+
+      assertArrayEquals(first, recaptured);
+      assertEquals(misses + 1, cache.misses.get());
+      assertArrayEquals(second, cache.getClassfileOf(Second.class.getClassLoader(), desc(Second.class)));
+   }
+
+   @Test
+   public void compressLeastRecentlyUsedClassfilesInsteadOfEvictingThem()
+   {
+      CachedClassfiles cache = createCache(2500, true);
+      byte[] classfileA = compressibleClassfile(1000);
+      byte[] classfileB = compressibleClassfile(1000);
+      byte[] classfileC = compressibleClassfile(1000);
+      cache.addClassfile(loader, "pkg/A", classfileA, false);
+      cache.addClassfile(loader, "pkg/B", classfileB, false);
+      cache.addClassfile(loader, "pkg/C", classfileC, false);
+
+      assertEquals(0, cache.evictions.get());
+      assertTrue(cache.cachedBytes.get() < 2500 - 2500 / 10);
+      assertArrayEquals(classfileA, cache.getClassfileOf(loader, "pkg/A"));
+      assertArrayEquals(classfileB, cache.getClassfileOf(loader, "pkg/B"));
+      assertArrayEquals(classfileC, cache.getClassfileOf(loader, "pkg/C"));
+      assertEquals(3, cache.hits.get());
+      assertEquals(0, cache.misses.get());
+   }
+
+   @Test
+   public void countHitsAndMissesAndCachedBytes()
+   {
+      CachedClassfiles cache = createCache(0, false);
+      cache.addClassfile(loader, "pkg/A", new byte[100], false);
+      cache.addClassfile(null, "pkg/B", new byte[50], true);
+      assertEquals(150, cache.cachedBytes.get());
+
+      cache.addClassfile(loader, "pkg/A", new byte[80], false);
+      assertEquals(130, cache.cachedBytes.get());
+
+      assertNotNull(cache.getClassfileOf(loader, "pkg/A"));
+      assertNotNull(cache.getClassfileOf("pkg/B"));
+      assertEquals(2, cache.hits.get());
+
+      assertNull(cache.getClassfileOf(loader, "pkg/NeverCached"));
+      assertEquals(0, cache.misses.get());
+
+      assertNull(cache.getClassfileOf("pkg/NotLoaded"));
+      assertEquals(1, cache.misses.get());
+      assertEquals(2, cache.hits.get());
+      assertEquals(0, cache.evictions.get());
+   }
+}